@@ -0,0 +1,150 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.Bin;
+import com.aerospike.client.Info;
+import com.aerospike.client.Key;
+import com.aerospike.client.Language;
+import com.aerospike.client.Value;
+import com.aerospike.client.cluster.Node;
+import com.aerospike.client.policy.WritePolicy;
+
+/**
+ * The list UDFs of redis.lua against the versions they replaced, kept in
+ * redis_list_baseline.lua. Each benchmark leaves the list at its starting
+ * size, and runs on one thread. JMH times the whole call on the client:
+ * the round trip, the record read and write, and the UDF. So after every
+ * measurement iteration, each node's own UDF latency histogram for that
+ * iteration is printed too. The iterations last 10 seconds, one slice of
+ * the histogram. Keep the JMH results with the histograms:
+ * <pre>
+ * java -Dhost=127.0.0.1 -Dlua=../../lua/redis.lua -jar target/benchmarks.jar ListCommands -rf json -rff list-udfs.json | tee list-udfs.log
+ * </pre>
+ * The 100k element list is about 200 KB, so the namespace needs a
+ * write-block-size of 256K or more.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class ListCommandsBenchmark {
+
+	private static final String BIN = "redis-bin";
+	private static final String BASELINE = "redis_list_baseline";
+
+	@Param({ "10", "1000", "100000" })
+	public int size;
+
+	@Param({ BASELINE, "redis" })
+	public String module;
+
+	private AerospikeClient asClient;
+	private WritePolicy writePolicy;
+	private Key key;
+
+	@Setup(Level.Trial)
+	public void connect() {
+		this.asClient = new AerospikeClient(System.getProperty("host", "127.0.0.1"), Integer.getInteger("port", 3000));
+		this.writePolicy = new WritePolicy();
+		this.asClient.register(null, getClass().getClassLoader(), BASELINE + ".lua", BASELINE + ".lua", Language.LUA)
+				.waitTillComplete();
+		this.asClient.register(null, System.getProperty("lua", "../../lua/redis.lua"), "redis.lua", Language.LUA)
+				.waitTillComplete();
+		this.key = new Key(System.getProperty("namespace", "test"), "redisBenchmark", "benchmark-list");
+	}
+
+	/*
+	 * Single character elements with a unique pivot in the middle, rewritten
+	 * before every iteration so both modules start from the same list
+	 */
+	@Setup(Level.Iteration)
+	public void fill() {
+		List<String> elements = new ArrayList<String>(this.size);
+		for (int i = 0; i < this.size; i++) {
+			elements.add((i == this.size / 2) ? "pivot" : "e");
+		}
+		this.asClient.put(this.writePolicy, this.key, new Bin(BIN, elements));
+	}
+
+	/*
+	 * The server's UDF latency: each line is a 10 second slice with the
+	 * calls per second and the share of them over 1, 8 and 64 ms
+	 */
+	@TearDown(Level.Iteration)
+	public void serverLatency() {
+		for (Node node : this.asClient.getNodes()) {
+			System.out.println(node.getName() + " " + Info.request(node, "latency:hist=udf;back=10;duration=10;slice=10"));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void close() {
+		this.asClient.delete(this.writePolicy, this.key);
+		this.asClient.close();
+	}
+
+	private Object execute(String function, Value... args) {
+		Value[] values = new Value[args.length + 1];
+		values[0] = Value.get(BIN);
+		System.arraycopy(args, 0, values, 1, args.length);
+		return this.asClient.execute(this.writePolicy, this.key, this.module, function, values);
+	}
+
+	@Benchmark
+	public Object lpushRpop() {
+		execute("LPUSH", Value.get("x"));
+		return execute("RPOP", Value.get(1));
+	}
+
+	@Benchmark
+	public Object linsertLrem() {
+		execute("LINSERT", Value.get("BEFORE"), Value.get("pivot"), Value.get("x"));
+		return execute("LREM", Value.get(1), Value.get("x"));
+	}
+
+	@Benchmark
+	public Object lpushLtrim() {
+		execute("LPUSH", Value.get("x"));
+		if (BASELINE.equals(this.module)) {
+			// the baseline removed the elements after start up to stop
+			return execute("LTRIM", Value.get(this.size), Value.get(this.size + 1));
+		}
+		return execute("LTRIM", Value.get(0), Value.get(this.size - 1));
+	}
+}
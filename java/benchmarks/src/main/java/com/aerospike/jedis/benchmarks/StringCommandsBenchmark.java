@@ -0,0 +1,114 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.jedis.RedisClient;
+
+/**
+ * The String command paths against a live cluster. Run with the GC profiler
+ * to see the bytes allocated per operation (gc.alloc.rate.norm):
+ * <pre>
+ * java -Dhost=127.0.0.1 -jar target/benchmarks.jar StringCommands -prof gc
+ * </pre>
+ * keyCache 0 computes every digest; 1024 caches the Keys of the benchmark's
+ * 64 keys, as for a set of hot keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringCommandsBenchmark {
+
+	private static final int KEYS = 64;
+
+	@Param({ "0", "1024" })
+	public int keyCache;
+
+	private AerospikeClient asClient;
+	private RedisClient jedis;
+	private final String[] keys = new String[KEYS];
+	private int next;
+
+	@Setup(Level.Trial)
+	public void connect() {
+		this.asClient = new AerospikeClient(System.getProperty("host", "127.0.0.1"), Integer.getInteger("port", 3000));
+		this.jedis = new RedisClient(this.asClient, System.getProperty("namespace", "test"), "redisBenchmark");
+		this.jedis.setKeyCache(this.keyCache);
+		for (int i = 0; i < KEYS; i++) {
+			this.keys[i] = "benchmark-key-" + i;
+			this.jedis.set(this.keys[i], "value-" + i);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void close() {
+		this.asClient.close();
+	}
+
+	private String key() {
+		return this.keys[this.next++ & (KEYS - 1)];
+	}
+
+	@Benchmark
+	public String get() {
+		return this.jedis.get(key());
+	}
+
+	@Benchmark
+	public String set() {
+		return this.jedis.set(key(), "value");
+	}
+
+	@Benchmark
+	public String setex() {
+		return this.jedis.setex(key(), 3600, "value");
+	}
+
+	@Benchmark
+	public long setnx() {
+		return this.jedis.setnx(key(), "value");
+	}
+
+	@Benchmark
+	public long expire() {
+		return this.jedis.expire(key(), 3600);
+	}
+
+	@Benchmark
+	public long incr() {
+		return this.jedis.incrBy("benchmark-counter", 1);
+	}
+}
@@ -0,0 +1,513 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Bin;
+import com.aerospike.client.IAerospikeClient;
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+import com.aerospike.client.ResultCode;
+import com.aerospike.client.Value;
+import com.aerospike.client.policy.BatchPolicy;
+import com.aerospike.client.policy.GenerationPolicy;
+import com.aerospike.client.policy.RecordExistsAction;
+import com.aerospike.client.policy.WritePolicy;
+
+/**
+ * Redis bitmaps on blob bins.
+ * <p>
+ * The first {@link #SEGMENT_BYTES} of a bitmap live in the value bin of the
+ * key's own record, so a small bitmap is an ordinary Redis string. Past that
+ * the bitmap is split into segment records of the same size, and the head
+ * record counts them. SETBIT and GETBIT run as UDFs on the one segment they
+ * touch; BITCOUNT, BITPOS and BITOP batch read the segments and work on them
+ * a 64 bit word at a time. Segments missing in the middle read as zeros.
+ * The head carries an epoch that its segments are stamped with, and take
+ * its TTL, so the segments of a bitmap whose head was overwritten or has
+ * expired are not seen by a new bitmap of the same key.
+ * A head compressed by SET is inflated on read, and rewritten plain before
+ * the first SETBIT or GETBIT on it, since the UDFs cannot inflate it.
+ */
+final class BitmapStore {
+
+	static final int SEGMENT_BYTES = 64 * 1024;
+	static final long SEGMENT_BITS = SEGMENT_BYTES * 8L;
+	static final long MAX_OFFSET = 4294967295L; // 2^32 - 1, as in Redis
+	static final String SEGMENTS_BIN = "redis-segments";
+	static final String EPOCH_BIN = "redis-bitepoch";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final long AS_TIME_OFFSET = 1262304000000L; // in milliseconds
+	private static final Random random = new Random();
+
+	/**
+	 * The segments of one bitmap as read; null segments are all zeros.
+	 */
+	static final class Bitmap {
+		final byte[][] segments;
+		final long length; // in bytes
+
+		Bitmap(byte[][] segments) {
+			this.segments = segments;
+			long length = 0;
+			for (int s = segments.length - 1; s >= 0; s--) {
+				if (segments[s] != null) {
+					length = (long) s * SEGMENT_BYTES + segments[s].length;
+					break;
+				}
+			}
+			this.length = length;
+		}
+
+		/**
+		 * The segment's bytes padded with zeros, or cut, to exactly size.
+		 */
+		byte[] span(int s, int size) {
+			byte[] segment = (s < this.segments.length) ? this.segments[s] : null;
+			if (segment != null && segment.length == size)
+				return segment;
+			byte[] padded = new byte[size];
+			if (segment != null)
+				System.arraycopy(segment, 0, padded, 0, Math.min(size, segment.length));
+			return padded;
+		}
+	}
+
+	private final IAerospikeClient asClient;
+	private final WritePolicy writePolicy;
+	private final BatchPolicy batchPolicy = new BatchPolicy();
+	private final String namespace;
+	private final String set;
+	private final String segmentSet;
+	private final String bin;
+	private final String keyBin; // null when keys are stored as user keys
+	private final Compression compression;
+
+	BitmapStore(IAerospikeClient asClient, WritePolicy writePolicy, String namespace, String set, String segmentSet,
+			String bin, String keyBin, Compression compression) {
+		this.asClient = asClient;
+		this.writePolicy = writePolicy;
+		this.namespace = namespace;
+		this.set = set;
+		this.segmentSet = segmentSet;
+		this.bin = bin;
+		this.keyBin = keyBin;
+		this.compression = compression;
+	}
+
+	private Key segmentKey(String key, int segment) {
+		if (segment == 0)
+			return new Key(this.namespace, this.set, key);
+		return new Key(this.namespace, this.segmentSet, key + '\u0000' + segment);
+	}
+
+	private static void checkOffset(long offset) {
+		if (offset < 0 || offset > MAX_OFFSET)
+			throw new AerospikeException(ResultCode.PARAMETER_ERROR, "ERR bit offset is not an integer or out of range");
+	}
+
+	/**
+	 * A new epoch; 53 bits, so it passes through a Lua number unchanged.
+	 */
+	private static long newEpoch() {
+		return random.nextLong() >>> 11;
+	}
+
+	boolean setBit(String key, long offset, boolean value) {
+		checkOffset(offset);
+		int segment = (int) (offset / SEGMENT_BITS);
+		List<?> result;
+		if (segment > 0) {
+			// make sure the head counts the segment, and learn its epoch and TTL
+			List<?> head = (List<?>) this.asClient.execute(this.writePolicy, segmentKey(key, 0), "redis",
+					"BITMAP_SEGMENTS", Value.get(SEGMENTS_BIN), Value.get(segment + 1), Value.get(EPOCH_BIN),
+					Value.get(newEpoch()), Value.get(this.keyBin), Value.get(key));
+			result = (List<?>) this.asClient.execute(segmentPolicy(head), segmentKey(key, segment), "redis", "SETBIT",
+					Value.get(this.bin), Value.get(offset % SEGMENT_BITS), Value.get(value ? 1 : 0), Value.get(Compression.FLAG_BIN),
+					Value.get(EPOCH_BIN), Value.get(((Number) head.get(0)).longValue()));
+			return ((Number) result.get(0)).intValue() == 1;
+		}
+		while (true) {
+			result = (List<?>) this.asClient.execute(this.writePolicy, segmentKey(key, 0), "redis", "SETBIT",
+					Value.get(this.bin), Value.get(offset), Value.get(value ? 1 : 0), Value.get(Compression.FLAG_BIN));
+			if (((Number) result.get(0)).intValue() != -1)
+				break;
+			inflateHead(key);
+		}
+		return ((Number) result.get(0)).intValue() == 1;
+	}
+
+	/**
+	 * A write policy giving a segment the TTL of its head, from the result
+	 * of BITMAP_SEGMENTS.
+	 */
+	private WritePolicy segmentPolicy(List<?> head) {
+		if (((Number) head.get(1)).intValue() == 1)
+			return this.writePolicy; // created with this policy
+		int ttl = ((Number) head.get(2)).intValue();
+		WritePolicy wp = new WritePolicy(this.writePolicy);
+		wp.expiration = (ttl == 0) ? -1 : ttl;
+		return wp;
+	}
+
+	/**
+	 * Gives the segments of a bitmap the TTL EXPIRE or PERSIST gave its head.
+	 */
+	void touchSegments(String key, int count, WritePolicy policy) {
+		WritePolicy wp = new WritePolicy(policy);
+		wp.recordExistsAction = RecordExistsAction.UPDATE_ONLY;
+		for (int s = 1; s < count; s++) {
+			try {
+				this.asClient.touch(wp, segmentKey(key, s));
+			} catch (AerospikeException e) {
+				if (e.getResultCode() != ResultCode.KEY_NOT_FOUND_ERROR)
+					throw e;
+			}
+		}
+	}
+
+	boolean getBit(String key, long offset) {
+		checkOffset(offset);
+		int segment = (int) (offset / SEGMENT_BITS);
+		if (segment > 0) {
+			Record[] records = this.asClient.get(this.batchPolicy,
+					new Key[] { segmentKey(key, 0), segmentKey(key, segment) }, this.bin, EPOCH_BIN);
+			if (!current(records[0], records[1]))
+				return false;
+			byte[] bytes = toBytes(records[1].getValue(this.bin));
+			int index = (int) ((offset % SEGMENT_BITS) / 8);
+			return index < bytes.length && ((bytes[index] >> (7 - (int) (offset % 8))) & 1) == 1;
+		}
+		Object bit = this.asClient.execute(this.writePolicy, segmentKey(key, 0), "redis", "GETBIT",
+				Value.get(this.bin), Value.get(offset % SEGMENT_BITS), Value.get(Compression.FLAG_BIN));
+		if (bit != null && ((Number) bit).intValue() == -1) {
+			// a compressed head, read it here rather than rewrite it
+			byte[] head = read(key)[0].span(0, (int) (offset / 8) + 1);
+			return ((head[(int) (offset / 8)] >> (7 - (int) (offset % 8))) & 1) == 1;
+		}
+		return bit != null && ((Number) bit).intValue() == 1;
+	}
+
+	/**
+	 * Whether a segment record was written for the bitmap its head holds now.
+	 */
+	private static boolean current(Record head, Record segment) {
+		if (head == null || segment == null)
+			return false;
+		Object epoch = head.getValue(EPOCH_BIN);
+		return epoch != null && epoch.equals(segment.getValue(EPOCH_BIN));
+	}
+
+	/**
+	 * Rewrites a compressed head record with its plain bytes, keeping its
+	 * TTL. Losing the race to another write is fine, the caller tries again.
+	 */
+	private void inflateHead(String key) {
+		Key head = segmentKey(key, 0);
+		Record record = this.asClient.get(this.writePolicy, head, this.bin, Compression.FLAG_BIN);
+		if (!Compression.isCompressed(record))
+			return;
+		WritePolicy wp = new WritePolicy(this.writePolicy);
+		wp.generationPolicy = GenerationPolicy.EXPECT_GEN_EQUAL;
+		wp.generation = record.generation;
+		if (record.expiration == 0) {
+			wp.expiration = -1;
+		} else {
+			long ttl = record.expiration - (System.currentTimeMillis() - AS_TIME_OFFSET) / 1000;
+			wp.expiration = (int) Math.max(1, ttl);
+		}
+		try {
+			this.asClient.put(wp, head, new Bin(this.bin, Compression.decompress(record, this.bin, this.compression)),
+					Compression.flag(false));
+		} catch (AerospikeException e) {
+			if (e.getResultCode() != ResultCode.GENERATION_ERROR)
+				throw e;
+		}
+	}
+
+	/**
+	 * Reads the head records of every key in one batch, then every further
+	 * segment of every key in a second batch.
+	 */
+	Bitmap[] read(String... keys) {
+		Key[] heads = new Key[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			heads[i] = segmentKey(keys[i], 0);
+		}
+		Record[] records = this.asClient.get(this.batchPolicy, heads, this.bin, Compression.FLAG_BIN, SEGMENTS_BIN,
+				EPOCH_BIN);
+		byte[][][] segments = new byte[keys.length][][];
+		List<Key> rest = new ArrayList<Key>();
+		for (int i = 0; i < keys.length; i++) {
+			Record record = records[i];
+			if (record == null) {
+				segments[i] = new byte[0][];
+				continue;
+			}
+			int count = (record.getValue(SEGMENTS_BIN) == null) ? 1 : record.getInt(SEGMENTS_BIN);
+			segments[i] = new byte[count][];
+			segments[i][0] = toBytes(Compression.decompress(record, this.bin, this.compression));
+			for (int s = 1; s < count; s++) {
+				rest.add(segmentKey(keys[i], s));
+			}
+		}
+		if (!rest.isEmpty()) {
+			Record[] more = this.asClient.get(this.batchPolicy, rest.toArray(new Key[rest.size()]), this.bin, EPOCH_BIN);
+			int next = 0;
+			for (int i = 0; i < keys.length; i++) {
+				for (int s = 1; s < segments[i].length; s++) {
+					Record record = more[next++];
+					segments[i][s] = current(records[i], record) ? toBytes(record.getValue(this.bin)) : null;
+				}
+			}
+		}
+		Bitmap[] bitmaps = new Bitmap[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			bitmaps[i] = new Bitmap(segments[i]);
+		}
+		return bitmaps;
+	}
+
+	private static byte[] toBytes(Object value) {
+		if (value == null || value instanceof byte[])
+			return (byte[]) value;
+		if (value instanceof String)
+			return ((String) value).getBytes(UTF8);
+		throw new AerospikeException(ResultCode.BIN_TYPE_ERROR,
+				"WRONGTYPE Operation against a key holding the wrong kind of value");
+	}
+
+	/**
+	 * Counts the set bits between two byte offsets, inclusive. Negative
+	 * offsets count from the end, as in Redis.
+	 */
+	long bitCount(String key, long start, long end) {
+		Bitmap bitmap = read(key)[0];
+		long length = bitmap.length;
+		if (start < 0)
+			start = Math.max(0, length + start);
+		if (end < 0)
+			end = Math.max(0, length + end);
+		if (end >= length)
+			end = length - 1;
+		if (start > end || length == 0)
+			return 0;
+		long count = 0;
+		int first = (int) (start / SEGMENT_BYTES);
+		int last = (int) (end / SEGMENT_BYTES);
+		for (int s = first; s <= last; s++) {
+			byte[] segment = bitmap.segments[s];
+			if (segment == null)
+				continue;
+			long base = (long) s * SEGMENT_BYTES;
+			int from = (int) Math.max(0, start - base);
+			int to = (int) Math.min(segment.length, end - base + 1);
+			if (from < to)
+				count += bitCount(segment, from, to);
+		}
+		return count;
+	}
+
+	/**
+	 * Position of the first bit with the given value between two byte
+	 * offsets. As in Redis, looking for a clear bit without an explicit end
+	 * treats the bitmap as padded with zeros on the right.
+	 */
+	long bitPos(String key, boolean value, long start, long end, boolean endGiven) {
+		Bitmap bitmap = read(key)[0];
+		long length = bitmap.length;
+		if (length == 0)
+			return value ? -1 : 0;
+		if (start < 0)
+			start = Math.max(0, length + start);
+		if (end < 0)
+			end = Math.max(0, length + end);
+		if (end >= length)
+			end = length - 1;
+		if (start > end)
+			return -1;
+		int first = (int) (start / SEGMENT_BYTES);
+		int last = (int) (end / SEGMENT_BYTES);
+		for (int s = first; s <= last; s++) {
+			long base = (long) s * SEGMENT_BYTES;
+			int size = (int) Math.min(SEGMENT_BYTES, length - base);
+			if (value && bitmap.segments[s] == null)
+				continue;
+			byte[] segment = bitmap.span(s, size);
+			int from = (int) Math.max(0, start - base);
+			int to = (int) Math.min(size, end - base + 1);
+			long pos = bitPos(segment, from, to, value);
+			if (pos >= 0)
+				return base * 8 + pos;
+		}
+		if (value || endGiven)
+			return -1;
+		return (end + 1) * 8;
+	}
+
+	/**
+	 * Stores the result of AND, OR, XOR or NOT over the sources at the
+	 * destination and returns its length in bytes. All-zero segments in the
+	 * middle of the result are not stored.
+	 */
+	long bitOp(RedisClient.BITOP op, String destKey, String... srcKeys) {
+		if (op == RedisClient.BITOP.NOT && srcKeys.length != 1)
+			throw new AerospikeException(ResultCode.PARAMETER_ERROR, "ERR BITOP NOT must be called with a single source key.");
+		String[] keys = new String[srcKeys.length + 1];
+		System.arraycopy(srcKeys, 0, keys, 0, srcKeys.length);
+		keys[srcKeys.length] = destKey;
+		Bitmap[] bitmaps = read(keys);
+		Bitmap old = bitmaps[srcKeys.length];
+		long length = 0;
+		for (int i = 0; i < srcKeys.length; i++) {
+			length = Math.max(length, bitmaps[i].length);
+		}
+		int count = (int) ((length + SEGMENT_BYTES - 1) / SEGMENT_BYTES);
+		Bin epoch = new Bin(EPOCH_BIN, newEpoch());
+		for (int s = 0; s < count; s++) {
+			int size = (int) Math.min(SEGMENT_BYTES, length - (long) s * SEGMENT_BYTES);
+			byte[] result = combine(op, bitmaps, srcKeys.length, s, size);
+			if (s == 0 && this.keyBin == null) {
+				this.asClient.put(this.writePolicy, segmentKey(destKey, 0), new Bin(this.bin, result), new Bin(SEGMENTS_BIN, count),
+						epoch, Compression.flag(false));
+			} else if (s == 0) {
+				this.asClient.put(this.writePolicy, segmentKey(destKey, 0), new Bin(this.keyBin, destKey),
+						new Bin(this.bin, result), new Bin(SEGMENTS_BIN, count), epoch, Compression.flag(false));
+			} else if (s < count - 1 && isZero(result)) {
+				if (s < old.segments.length)
+					this.asClient.delete(this.writePolicy, segmentKey(destKey, s));
+			} else {
+				this.asClient.put(this.writePolicy, segmentKey(destKey, s), new Bin(this.bin, result), epoch);
+			}
+		}
+		deleteSegments(destKey, Math.max(count, 1), old.segments.length);
+		if (count == 0)
+			this.asClient.delete(this.writePolicy, segmentKey(destKey, 0));
+		return length;
+	}
+
+	void deleteSegments(String key, int from, int to) {
+		for (int s = from; s < to; s++) {
+			this.asClient.delete(this.writePolicy, segmentKey(key, s));
+		}
+	}
+
+	private static byte[] combine(RedisClient.BITOP op, Bitmap[] bitmaps, int sources, int s, int size) {
+		byte[] result = new byte[size];
+		System.arraycopy(bitmaps[0].span(s, size), 0, result, 0, size);
+		ByteBuffer out = ByteBuffer.wrap(result);
+		int words = size & ~7;
+		if (op == RedisClient.BITOP.NOT) {
+			for (int i = 0; i < words; i += 8) {
+				out.putLong(i, ~out.getLong(i));
+			}
+			for (int i = words; i < size; i++) {
+				result[i] = (byte) ~result[i];
+			}
+			return result;
+		}
+		for (int k = 1; k < sources; k++) {
+			byte[] other = bitmaps[k].span(s, size);
+			ByteBuffer in = ByteBuffer.wrap(other);
+			switch (op) {
+			case AND:
+				for (int i = 0; i < words; i += 8) {
+					out.putLong(i, out.getLong(i) & in.getLong(i));
+				}
+				for (int i = words; i < size; i++) {
+					result[i] &= other[i];
+				}
+				break;
+			case OR:
+				for (int i = 0; i < words; i += 8) {
+					out.putLong(i, out.getLong(i) | in.getLong(i));
+				}
+				for (int i = words; i < size; i++) {
+					result[i] |= other[i];
+				}
+				break;
+			case XOR:
+				for (int i = 0; i < words; i += 8) {
+					out.putLong(i, out.getLong(i) ^ in.getLong(i));
+				}
+				for (int i = words; i < size; i++) {
+					result[i] ^= other[i];
+				}
+				break;
+			default:
+				break;
+			}
+		}
+		return result;
+	}
+
+	static long bitCount(byte[] bytes, int from, int to) {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		long count = 0;
+		int i = from;
+		for (; i + 8 <= to; i += 8) {
+			count += Long.bitCount(buffer.getLong(i));
+		}
+		for (; i < to; i++) {
+			count += Integer.bitCount(bytes[i] & 0xff);
+		}
+		return count;
+	}
+
+	/**
+	 * Bit offset, from the start of the array, of the first bit with the
+	 * given value in bytes [from, to), or -1. Words are read big endian so
+	 * bit 0 is the most significant bit of the first byte.
+	 */
+	static long bitPos(byte[] bytes, int from, int to, boolean value) {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		long skip = value ? 0 : -1L;
+		int i = from;
+		for (; i + 8 <= to; i += 8) {
+			long word = buffer.getLong(i);
+			if (word != skip)
+				return i * 8L + Long.numberOfLeadingZeros(value ? word : ~word);
+		}
+		for (; i < to; i++) {
+			int b = value ? (bytes[i] & 0xff) : (~bytes[i] & 0xff);
+			if (b != 0)
+				return i * 8L + Integer.numberOfLeadingZeros(b) - 24;
+		}
+		return -1;
+	}
+
+	private static boolean isZero(byte[] bytes) {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		int words = bytes.length & ~7;
+		for (int i = 0; i < words; i += 8) {
+			if (buffer.getLong(i) != 0)
+				return false;
+		}
+		for (int i = words; i < bytes.length; i++) {
+			if (bytes[i] != 0)
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import com.aerospike.client.Key;
+
+/**
+ * Emulates Redis blocking list pops (BLPOP, BRPOP, BRPOPLPUSH).
+ * <p>
+ * Aerospike has no way to park a request on the server, so each waiting
+ * caller registers a {@link Waiter} that retries its pop on a small shared
+ * scheduler. Retries back off exponentially while the lists stay empty, and
+ * a push made through any RedisClient in this JVM wakes the waiters on that
+ * key straight away. Only the longest waiting caller on a key polls it; the
+ * others stay idle until it leaves, so N waiters on one key cost the pops of
+ * one. The calling thread itself only parks, so thousands of waiting
+ * consumers cost a handful of scheduler threads.
+ */
+final class BlockingPopScheduler {
+
+	static final long INITIAL_BACKOFF = 2; // in milliseconds
+	static final long MAX_BACKOFF = 500; // in milliseconds
+
+	private static final int WAITING = 0;
+	private static final int POPPING = 1;
+	private static final int DONE = 2;
+	private static final int CANCELLED = 3;
+
+	private static volatile BlockingPopScheduler shared;
+
+	/**
+	 * One pop attempt; returns null when every list is still empty.
+	 */
+	interface PopAttempt {
+		Object attempt();
+	}
+
+	private final ScheduledExecutorService executor;
+	private final Map<Key, List<Waiter>> waiters = new HashMap<Key, List<Waiter>>();
+	private volatile int waiting = 0;
+
+	private BlockingPopScheduler(int threads) {
+		this.executor = new ScheduledThreadPoolExecutor(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "redis-blocking-pop-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	static BlockingPopScheduler shared() {
+		BlockingPopScheduler scheduler = shared;
+		if (scheduler == null) {
+			synchronized (BlockingPopScheduler.class) {
+				scheduler = shared;
+				if (scheduler == null) {
+					int threads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+					scheduler = new BlockingPopScheduler(threads);
+					shared = scheduler;
+				}
+			}
+		}
+		return scheduler;
+	}
+
+	/**
+	 * Wakes any waiters blocked on the key. Called after every local push, so
+	 * it does nothing (and creates nothing) until somebody has blocked.
+	 */
+	static void signal(Key key) {
+		BlockingPopScheduler scheduler = shared;
+		if (scheduler != null && scheduler.waiting > 0)
+			scheduler.wake(key);
+	}
+
+	/**
+	 * Blocks the calling thread until the attempt returns a value or the
+	 * timeout expires. A timeout of 0 blocks indefinitely, as in Redis.
+	 * Returns null on timeout or if the thread is interrupted.
+	 */
+	Object await(Key[] keys, PopAttempt attempt, long timeoutMillis) {
+		Object value = attempt.attempt();
+		if (value != null)
+			return value;
+		long deadline = (timeoutMillis > 0) ? System.currentTimeMillis() + timeoutMillis : 0;
+		Waiter waiter = new Waiter(keys, attempt, deadline, Thread.currentThread());
+		register(waiter);
+		synchronized (waiter) {
+			waiter.next(INITIAL_BACKOFF);
+		}
+		return waiter.park();
+	}
+
+	private void register(Waiter waiter) {
+		synchronized (this.waiters) {
+			for (Key key : waiter.keys) {
+				List<Waiter> list = this.waiters.get(key);
+				if (list == null) {
+					list = new ArrayList<Waiter>(1);
+					this.waiters.put(key, list);
+				}
+				list.add(waiter);
+			}
+			this.waiting++;
+		}
+	}
+
+	/*
+	 * Removes the waiter and wakes the waiters that now lead its keys
+	 */
+	private void unregister(Waiter waiter) {
+		List<Waiter> leaders = new ArrayList<Waiter>(waiter.keys.length);
+		synchronized (this.waiters) {
+			for (Key key : waiter.keys) {
+				List<Waiter> list = this.waiters.get(key);
+				if (list != null) {
+					boolean led = !list.isEmpty() && list.get(0) == waiter;
+					list.remove(waiter);
+					if (list.isEmpty())
+						this.waiters.remove(key);
+					else if (led)
+						leaders.add(list.get(0));
+				}
+			}
+			this.waiting--;
+		}
+		for (Waiter leader : leaders) {
+			leader.wake();
+		}
+	}
+
+	private void wake(Key key) {
+		Waiter leader;
+		synchronized (this.waiters) {
+			List<Waiter> list = this.waiters.get(key);
+			if (list == null)
+				return;
+			leader = list.get(0);
+		}
+		leader.wake();
+	}
+
+	/*
+	 * True if the waiter has waited longest on any of its keys
+	 */
+	private boolean leads(Waiter waiter) {
+		synchronized (this.waiters) {
+			for (Key key : waiter.keys) {
+				List<Waiter> list = this.waiters.get(key);
+				if (list != null && list.get(0) == waiter)
+					return true;
+			}
+			return false;
+		}
+	}
+
+	private final class Waiter implements Runnable {
+		private final Key[] keys;
+		private final PopAttempt attempt;
+		private final long deadline;
+		private final Thread thread;
+		private final AtomicInteger state = new AtomicInteger(WAITING);
+		private ScheduledFuture<?> future;
+		private long backoff = INITIAL_BACKOFF;
+		private boolean signalled;
+		private volatile Object result;
+		private volatile RuntimeException failure;
+
+		Waiter(Key[] keys, PopAttempt attempt, long deadline, Thread thread) {
+			this.keys = keys;
+			this.attempt = attempt;
+			this.deadline = deadline;
+			this.thread = thread;
+		}
+
+		synchronized void schedule(long delay) {
+			if (this.deadline > 0)
+				delay = Math.max(0, Math.min(delay, this.deadline - System.currentTimeMillis()));
+			this.future = executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+		}
+
+		/*
+		 * Polls again after the backoff if this waiter leads one of its keys;
+		 * otherwise idles until woken, or until the deadline to time out
+		 */
+		synchronized void next(long backoff) {
+			if (leads(this))
+				schedule(backoff);
+			else if (this.deadline > 0)
+				schedule(this.deadline - System.currentTimeMillis());
+			else
+				this.future = null;
+		}
+
+		synchronized void wake() {
+			if (this.state.get() != WAITING || (this.future != null && !this.future.cancel(false))) {
+				// An attempt is running or about to; make it retry straight away
+				this.signalled = true;
+				return;
+			}
+			this.backoff = INITIAL_BACKOFF;
+			this.future = executor.schedule(this, 0, TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public void run() {
+			if (!this.state.compareAndSet(WAITING, POPPING))
+				return;
+			synchronized (this) {
+				this.signalled = false;
+			}
+			Object value;
+			try {
+				value = this.attempt.attempt();
+			} catch (RuntimeException e) {
+				finish(null, e);
+				return;
+			}
+			if (value != null || (this.deadline > 0 && System.currentTimeMillis() >= this.deadline)) {
+				finish(value, null);
+				return;
+			}
+			synchronized (this) {
+				this.state.set(WAITING);
+				if (this.signalled) {
+					this.signalled = false;
+					this.backoff = INITIAL_BACKOFF;
+					schedule(0);
+				} else {
+					this.backoff = Math.min(this.backoff * 2, MAX_BACKOFF);
+					next(this.backoff);
+				}
+			}
+		}
+
+		private void finish(Object value, RuntimeException e) {
+			this.result = value;
+			this.failure = e;
+			this.state.set(DONE);
+			unregister(this);
+			LockSupport.unpark(this.thread);
+		}
+
+		Object park() {
+			boolean interrupted = false;
+			while (this.state.get() != DONE) {
+				LockSupport.park(this);
+				if (Thread.interrupted()) {
+					interrupted = true;
+					if (this.state.compareAndSet(WAITING, CANCELLED)) {
+						synchronized (this) {
+							if (this.future != null)
+								this.future.cancel(false);
+						}
+						unregister(this);
+						Thread.currentThread().interrupt();
+						return null;
+					}
+					// A pop is in flight; wait for it so the element is not lost
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+			if (this.failure != null)
+				throw this.failure;
+			return this.result;
+		}
+	}
+}
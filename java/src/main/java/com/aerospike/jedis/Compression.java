@@ -0,0 +1,260 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Bin;
+import com.aerospike.client.Record;
+import com.aerospike.client.ResultCode;
+import com.aerospike.client.Value;
+
+/**
+ * Compresses string values above a size threshold with zlib, optionally
+ * primed with a preset dictionary trained on sample values. A compressed
+ * value is a blob of a header byte and a zlib stream, and its record has
+ * {@link #FLAG_BIN} set; any other value is stored as it is, with the flag
+ * cleared. Compressed and plain values coexist, and since only the flag
+ * tells them apart, no user value is ever mistaken for a compressed one.
+ * <p>
+ * Each thread keeps its Deflater, Inflater and buffer, so compressing
+ * allocates nothing: the compressed bytes are written to the command buffer
+ * straight from the thread's buffer.
+ */
+public final class Compression {
+
+	static final byte HEADER = (byte) 0xC5;
+	static final String FLAG_BIN = "redis-zip";
+	private static final Value FLAGGED = Value.get(1);
+	private static final int SHINGLE = 8; // bytes per dictionary candidate
+
+	private static final class Codec {
+		final Deflater deflater;
+		final Inflater inflater = new Inflater();
+		final CharsetEncoder encoder = ValueCodecs.UTF_8.newEncoder();
+		byte[] buffer = new byte[64 * 1024];
+		byte[] input = new byte[64 * 1024];
+
+		/*
+		 * Encodes the string as UTF-8 into input, returning the length.
+		 */
+		int encode(String string) {
+			if (this.input.length < string.length() * 3)
+				this.input = new byte[Integer.highestOneBit(string.length() * 3) << 1];
+			ByteBuffer out = ByteBuffer.wrap(this.input);
+			this.encoder.reset();
+			this.encoder.encode(CharBuffer.wrap(string), out, true);
+			this.encoder.flush(out);
+			return out.position();
+		}
+
+		Codec(int level) {
+			this.deflater = new Deflater(level);
+		}
+	}
+
+	private final int threshold;
+	private final int level;
+	private final byte[] dictionary;
+	private final long dictionaryId;
+	private final ThreadLocal<Codec> codecs = new ThreadLocal<Codec>() {
+		@Override
+		protected Codec initialValue() {
+			return new Codec(level);
+		}
+	};
+
+	Compression(int threshold, int level, byte[] dictionary) {
+		this.threshold = threshold;
+		this.level = level;
+		this.dictionary = (dictionary == null || dictionary.length == 0) ? null : dictionary.clone();
+		this.dictionaryId = (this.dictionary == null) ? 0 : adler32(this.dictionary);
+	}
+
+	private static long adler32(byte[] bytes) {
+		Adler32 adler = new Adler32();
+		adler.update(bytes);
+		return adler.getValue();
+	}
+
+	/**
+	 * The value to store: compressed if it is a string or blob of at least
+	 * threshold bytes that compresses, else the value itself. A compressed
+	 * value refers to the calling thread's buffer and must be written before
+	 * the thread compresses again.
+	 */
+	Value compress(Value value) {
+		Object object = value.getObject();
+		Codec codec = this.codecs.get();
+		byte[] bytes;
+		int count;
+		if (object instanceof String) {
+			String string = (String) object;
+			if (string.length() < this.threshold / 3)
+				return value; // can't reach the threshold in UTF-8
+			count = codec.encode(string);
+			bytes = codec.input;
+		} else if (object instanceof byte[]) {
+			bytes = (byte[]) object;
+			count = bytes.length;
+		} else {
+			return value;
+		}
+		if (count < this.threshold)
+			return value;
+		Deflater deflater = codec.deflater;
+		deflater.reset();
+		if (this.dictionary != null)
+			deflater.setDictionary(this.dictionary);
+		deflater.setInput(bytes, 0, count);
+		deflater.finish();
+		byte[] buffer = codec.buffer;
+		if (buffer.length < count)
+			buffer = codec.buffer = new byte[Integer.highestOneBit(count) << 1];
+		buffer[0] = HEADER;
+		int length = 1 + deflater.deflate(buffer, 1, count - 1);
+		if (!deflater.finished())
+			return value; // no smaller than the value
+		return Value.get(buffer, 0, length);
+	}
+
+	/**
+	 * The flag bin to write along with a value: set for a compressed value,
+	 * cleared for any other.
+	 */
+	static Bin flag(boolean compressed) {
+		return new Bin(FLAG_BIN, compressed ? FLAGGED : Value.getAsNull());
+	}
+
+	/**
+	 * Whether the record, read with {@link #FLAG_BIN}, holds a compressed value.
+	 */
+	static boolean isCompressed(Record record) {
+		return record != null && record.getValue(FLAG_BIN) != null;
+	}
+
+	/**
+	 * The value in the record's bin with any compression undone: compressed
+	 * values come back as the bytes that were compressed, anything else as
+	 * it is. The record must have been read with {@link #FLAG_BIN}.
+	 * compression may be null, for a client that reads but does not compress.
+	 */
+	static Object decompress(Record record, String bin, Compression compression) {
+		if (record == null)
+			return null;
+		return isCompressed(record) ? decompress(record.getValue(bin), compression) : record.getValue(bin);
+	}
+
+	/**
+	 * Undoes the compression of a value known to be compressed.
+	 */
+	static Object decompress(Object stored, Compression compression) {
+		if (!(stored instanceof byte[]) || ((byte[]) stored).length < 1 || ((byte[]) stored)[0] != HEADER)
+			throw new AerospikeException(ResultCode.SERIALIZE_ERROR, "ERR compressed value is corrupt");
+		byte[] bytes = (byte[]) stored;
+		Codec codec = (compression == null) ? plain.get() : compression.codecs.get();
+		Inflater inflater = codec.inflater;
+		inflater.reset();
+		inflater.setInput(bytes, 1, bytes.length - 1);
+		byte[] buffer = codec.buffer;
+		int length = 0;
+		try {
+			while (!inflater.finished()) {
+				if (length == buffer.length)
+					buffer = codec.buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				int inflated = inflater.inflate(buffer, length, buffer.length - length);
+				if (inflated == 0 && inflater.needsDictionary()) {
+					if (compression == null || compression.dictionary == null
+							|| compression.dictionaryId != (inflater.getAdler() & 0xFFFFFFFFL))
+						throw new AerospikeException(ResultCode.SERIALIZE_ERROR, "ERR value compressed with an unknown dictionary");
+					inflater.setDictionary(compression.dictionary);
+				} else if (inflated == 0 && inflater.needsInput()) {
+					throw new AerospikeException(ResultCode.SERIALIZE_ERROR, "ERR truncated compressed value");
+				}
+				length += inflated;
+			}
+		} catch (DataFormatException e) {
+			throw new AerospikeException(ResultCode.SERIALIZE_ERROR, e);
+		}
+		return Arrays.copyOf(buffer, length);
+	}
+
+	private static final ThreadLocal<Codec> plain = new ThreadLocal<Codec>() {
+		@Override
+		protected Codec initialValue() {
+			return new Codec(Deflater.DEFAULT_COMPRESSION);
+		}
+	};
+
+	/**
+	 * Builds a preset dictionary of up to size bytes from sample values: the
+	 * byte sequences shared by the most samples, the most common last, where
+	 * zlib reaches them with the shortest distances.
+	 */
+	public static byte[] train(List<byte[]> samples, int size) {
+		final Map<Long, Integer> counts = new HashMap<Long, Integer>();
+		Map<Long, byte[]> firstSeen = new HashMap<Long, byte[]>();
+		for (byte[] sample : samples) {
+			Set<Long> seen = new HashSet<Long>();
+			for (int i = 0; i + SHINGLE <= sample.length; i++) {
+				long shingle = 0;
+				for (int j = 0; j < SHINGLE; j++)
+					shingle = (shingle << 8) | (sample[i + j] & 0xFF);
+				if (!seen.add(shingle))
+					continue;
+				Integer count = counts.get(shingle);
+				counts.put(shingle, (count == null) ? 1 : count + 1);
+				if (count == null)
+					firstSeen.put(shingle, Arrays.copyOfRange(sample, i, i + SHINGLE));
+			}
+		}
+		List<Long> shared = new ArrayList<Long>();
+		for (Map.Entry<Long, Integer> entry : counts.entrySet()) {
+			if (entry.getValue() > 1)
+				shared.add(entry.getKey());
+		}
+		Collections.sort(shared, new Comparator<Long>() {
+			@Override
+			public int compare(Long a, Long b) {
+				return counts.get(b).compareTo(counts.get(a));
+			}
+		});
+		int chosen = Math.min(shared.size(), size / SHINGLE);
+		byte[] dictionary = new byte[chosen * SHINGLE];
+		for (int i = 0; i < chosen; i++) {
+			// the most common shingle goes at the end
+			System.arraycopy(firstSeen.get(shared.get(i)), 0, dictionary, (chosen - 1 - i) * SHINGLE, SHINGLE);
+		}
+		return dictionary;
+	}
+}
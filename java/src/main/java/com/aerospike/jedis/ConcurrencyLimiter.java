@@ -0,0 +1,170 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.IAerospikeClient;
+import com.aerospike.client.ResultCode;
+
+/**
+ * Caps the number of commands a RedisClient has in flight, and adapts the
+ * cap to the latency the cluster shows, in the manner of TCP Vegas.
+ * <p>
+ * The shortest latency seen is taken as the cost of a command with no
+ * queueing. While completed commands show fewer than {@link #ALPHA}
+ * commands queued, the limit grows by about one per round trip; while they
+ * show more than {@link #BETA}, it shrinks by about one per round trip. A timeout cuts the limit by
+ * {@link #BACKOFF}. Once the limit is reached a command either fails at once
+ * with COMMAND_REJECTED, or waits up to maxWait for a slot. A freed slot
+ * wakes one waiting command.
+ */
+final class ConcurrencyLimiter {
+
+	static final double ALPHA = 3;
+	static final double BETA = 6;
+	static final double BACKOFF = 0.9;
+	static final long MIN_RTT_RESET = 10000; // in milliseconds, so the no-load latency can rise again
+
+	private final int maxLimit;
+	private final long maxWait; // in milliseconds, 0 to reject at once
+	private double limit;
+	private int inFlight = 0;
+	private int waiting = 0;
+	private final Lock lock = new ReentrantLock();
+	private final Condition slotFreed = this.lock.newCondition();
+	private long minRtt = Long.MAX_VALUE; // in microseconds
+	private long minRttSince = System.currentTimeMillis();
+
+	ConcurrencyLimiter(int initialLimit, int maxLimit, long maxWait) {
+		this.maxLimit = Math.max(1, maxLimit);
+		this.limit = Math.max(1, Math.min(initialLimit, this.maxLimit));
+		this.maxWait = maxWait;
+	}
+
+	int limit() {
+		this.lock.lock();
+		try {
+			return (int) this.limit;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	int inFlight() {
+		this.lock.lock();
+		try {
+			return this.inFlight;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * A client that takes a slot from this limiter around every command.
+	 */
+	IAerospikeClient wrap(IAerospikeClient client) {
+		return new LimitedClient(this, client);
+	}
+
+	/*
+	 * Takes a slot, and returns the time the command starts. A Lock rather
+	 * than a monitor, so a virtual thread waiting for a slot parks without
+	 * pinning its carrier.
+	 */
+	long acquire() {
+		this.lock.lock();
+		try {
+			if (this.inFlight < (int) this.limit) {
+				this.inFlight++;
+				return System.nanoTime();
+			}
+			if (this.maxWait <= 0)
+				throw rejected();
+			long remaining = TimeUnit.MILLISECONDS.toNanos(this.maxWait);
+			this.waiting++;
+			try {
+				while (this.inFlight >= (int) this.limit) {
+					if (remaining <= 0)
+						throw rejected();
+					remaining = this.slotFreed.awaitNanos(remaining);
+				}
+			} finally {
+				this.waiting--;
+			}
+			this.inFlight++;
+			// the limit may have grown by more than the slot this one took
+			if (this.waiting > 0 && this.inFlight < (int) this.limit)
+				this.slotFreed.signal();
+			return System.nanoTime();
+		} catch (InterruptedException e) {
+			// pass on a wakeup this one may have taken
+			if (this.waiting > 0 && this.inFlight < (int) this.limit)
+				this.slotFreed.signal();
+			Thread.currentThread().interrupt();
+			throw rejected();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/*
+	 * Gives back the slot of a command started at start; failure is null if
+	 * it succeeded.
+	 */
+	void release(long start, AerospikeException failure) {
+		long rtt = (System.nanoTime() - start) / 1000;
+		boolean timedOut = failure != null && failure.getResultCode() == ResultCode.TIMEOUT;
+		this.lock.lock();
+		try {
+			adjust(rtt, timedOut);
+			if (this.waiting > 0 && this.inFlight < (int) this.limit)
+				this.slotFreed.signal();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private void adjust(long rtt, boolean timedOut) {
+		this.inFlight--;
+		long now = System.currentTimeMillis();
+		if (now - this.minRttSince > MIN_RTT_RESET) {
+			this.minRtt = Long.MAX_VALUE;
+			this.minRttSince = now;
+		}
+		if (timedOut) {
+			this.limit = Math.max(1, this.limit * BACKOFF);
+		} else {
+			this.minRtt = Math.min(this.minRtt, Math.max(1, rtt));
+			double queued = this.limit * (1 - (double) this.minRtt / Math.max(1, rtt));
+			// one step per limit's worth of commands, i.e. about once per round trip
+			if (queued < ALPHA && this.inFlight + 1 >= this.limit / 2)
+				this.limit = Math.min(this.maxLimit, this.limit + 1 / this.limit);
+			else if (queued > BETA)
+				this.limit = Math.max(1, this.limit - 1 / this.limit);
+		}
+	}
+
+	private AerospikeException rejected() {
+		return new AerospikeException(ResultCode.COMMAND_REJECTED, "ERR client overloaded: " + this.inFlight
+				+ " commands in flight, limit " + (int) this.limit);
+	}
+}
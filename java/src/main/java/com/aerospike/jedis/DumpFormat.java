@@ -0,0 +1,94 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.ResultCode;
+import com.aerospike.client.util.Packer;
+import com.aerospike.client.util.Unpacker;
+
+/**
+ * The payload of DUMP and RESTORE, and of the records of a keyspace
+ * archive: the value in MessagePack, as the client packs list and map bins,
+ * followed by a two byte format version and a CRC32 of what precedes it,
+ * both little endian as in a Redis DUMP payload.
+ * <p>
+ * Strings, blobs, integers, doubles, lists and hashes round trip with their
+ * types. Values are stored uncompressed, so a payload restores into a client
+ * with other compression settings.
+ */
+public final class DumpFormat {
+
+	public static final int VERSION = 1;
+
+	private static final String BAD_PAYLOAD = "ERR DUMP payload version or checksum are wrong";
+
+	private DumpFormat() {
+	}
+
+	public static byte[] serialize(Object value) {
+		byte[] packed = pack(value);
+		byte[] payload = new byte[packed.length + 6];
+		System.arraycopy(packed, 0, payload, 0, packed.length);
+		payload[packed.length] = (byte) VERSION;
+		payload[packed.length + 1] = (byte) (VERSION >>> 8);
+		CRC32 crc = new CRC32();
+		crc.update(payload, 0, packed.length + 2);
+		long checksum = crc.getValue();
+		for (int i = 0; i < 4; i++)
+			payload[packed.length + 2 + i] = (byte) (checksum >>> (8 * i));
+		return payload;
+	}
+
+	public static Object deserialize(byte[] payload) {
+		if (payload == null || payload.length < 7)
+			throw new AerospikeException(ResultCode.PARAMETER_ERROR, BAD_PAYLOAD);
+		int end = payload.length - 6;
+		int version = (payload[end] & 0xFF) | (payload[end + 1] & 0xFF) << 8;
+		CRC32 crc = new CRC32();
+		crc.update(payload, 0, end + 2);
+		long checksum = 0;
+		for (int i = 3; i >= 0; i--)
+			checksum = (checksum << 8) | (payload[end + 2 + i] & 0xFF);
+		if (version != VERSION || checksum != crc.getValue())
+			throw new AerospikeException(ResultCode.PARAMETER_ERROR, BAD_PAYLOAD);
+		return unpack(payload, 0, end);
+	}
+
+	static byte[] pack(Object value) {
+		Packer packer = new Packer();
+		try {
+			packer.packObject(value);
+		} catch (IOException e) {
+			throw new AerospikeException(ResultCode.SERIALIZE_ERROR, e);
+		}
+		return packer.toByteArray();
+	}
+
+	static Object unpack(byte[] bytes, int offset, int length) {
+		try {
+			return new Unpacker.ObjectUnpacker(bytes, offset, length).unpackObject();
+		} catch (IOException e) {
+			throw new AerospikeException(ResultCode.SERIALIZE_ERROR, e);
+		} catch (ClassNotFoundException e) {
+			throw new AerospikeException(ResultCode.SERIALIZE_ERROR, e);
+		}
+	}
+}
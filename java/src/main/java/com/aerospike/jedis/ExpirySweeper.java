@@ -0,0 +1,378 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.IAerospikeClient;
+import com.aerospike.client.Key;
+import com.aerospike.client.Log;
+import com.aerospike.client.Record;
+import com.aerospike.client.ScanCallback;
+import com.aerospike.client.policy.Policy;
+import com.aerospike.client.policy.ScanPolicy;
+
+/**
+ * Finds the keys of a database that expire, and reports each one when it
+ * does, as Redis keyspace notifications do. Aerospike expires records on
+ * the server without telling anybody; this sweeper makes the expiry visible.
+ * <p>
+ * Every interval, a scan reads the record headers and key bins of the set,
+ * on the nodes in parallel and paced to a rate limit. Keys whose expiry
+ * time falls before the next sweep are queued. When a queued key's time
+ * comes, its header is read again. If the record is gone, the key has
+ * expired: the hot-key cache drops it and the listeners are called. If
+ * the TTL was extended, the key is queued again or left for a later sweep.
+ * Keys deleted or flushed through the client are dropped from the queue,
+ * so they are not taken for expired ones.
+ * <p>
+ * With event publishing on, an expiry is also published to
+ * <code>__keyevent@&lt;db&gt;__:expired</code> (the key as message) and
+ * <code>__keyspace@&lt;db&gt;__:&lt;key&gt;</code> (message "expired"), so
+ * RedisPubSub subscribers receive it.
+ */
+public final class ExpirySweeper {
+
+	private static final long AS_TIME_OFFSET = 1262304000000L; // in milliseconds
+	private static final long RECHECK_MILLIS = 1000;
+
+	/**
+	 * Called on the sweeper's thread for every key that expired.
+	 */
+	public interface Listener {
+		void expired(String key);
+	}
+
+	private static final class Expiry implements Delayed {
+		final String key;
+		final Key asKey;
+		final long expireAt;
+
+		Expiry(String key, Key asKey, long expireAt) {
+			this.key = key;
+			this.asKey = asKey;
+			this.expireAt = expireAt;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(this.expireAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed other) {
+			long difference = this.expireAt - ((Expiry) other).expireAt;
+			return (difference < 0) ? -1 : (difference > 0) ? 1 : 0;
+		}
+	}
+
+	private final RedisClient jedis;
+	private final IAerospikeClient asClient;
+	private final String namespace;
+	private final String set;
+	private final String keyBin;
+	private final int db;
+	private final Policy policy = new Policy();
+	private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+	private final DelayQueue<Expiry> queue = new DelayQueue<Expiry>();
+	private final ConcurrentMap<String, Long> queued = new ConcurrentHashMap<String, Long>();
+	private final AtomicLong expired = new AtomicLong();
+	private final AtomicLong recordsScanned = new AtomicLong();
+	private final AtomicLong sweeps = new AtomicLong();
+	private volatile long intervalMillis = 60000;
+	private volatile long nanosPerRecord = 0;
+	private volatile int concurrency = 0;
+	private volatile boolean publishEvents;
+	private volatile boolean running;
+	private long nextRecord;
+	private Thread sweeper;
+	private Thread notifier;
+
+	ExpirySweeper(RedisClient jedis, IAerospikeClient asClient, String namespace, String set, String keyBin, int db) {
+		this.jedis = jedis;
+		this.asClient = asClient;
+		this.namespace = namespace;
+		this.set = set;
+		this.keyBin = keyBin;
+		this.db = db;
+	}
+
+	public ExpirySweeper addListener(Listener listener) {
+		this.listeners.add(listener);
+		return this;
+	}
+
+	public ExpirySweeper removeListener(Listener listener) {
+		this.listeners.remove(listener);
+		return this;
+	}
+
+	/**
+	 * Time between the starts of two sweeps, one minute by default. A key
+	 * is only seen if a sweep runs while it exists, so the interval should
+	 * be shorter than the shortest TTL that must be reported.
+	 */
+	public ExpirySweeper setInterval(long intervalMillis) {
+		this.intervalMillis = Math.max(1, intervalMillis);
+		return this;
+	}
+
+	/**
+	 * Caps the records a sweep reads per second, over all nodes, so it does
+	 * not compete with the application's traffic; 0 for no limit. Takes
+	 * effect at once, also during a sweep.
+	 */
+	public ExpirySweeper setRate(int recordsPerSecond) {
+		this.nanosPerRecord = (recordsPerSecond > 0) ? TimeUnit.SECONDS.toNanos(1) / recordsPerSecond : 0;
+		return this;
+	}
+
+	/**
+	 * The nodes a sweep scans at once; 0, the default, scans all of them.
+	 */
+	public ExpirySweeper setConcurrency(int nodes) {
+		this.concurrency = Math.max(0, nodes);
+		return this;
+	}
+
+	/**
+	 * Publishes each expiry to the Redis keyspace notification channels.
+	 */
+	public ExpirySweeper setPublishEvents(boolean publish) {
+		this.publishEvents = publish;
+		return this;
+	}
+
+	public synchronized ExpirySweeper start() {
+		if (this.running)
+			return this;
+		this.running = true;
+		this.jedis.sweeperStarted(this);
+		this.sweeper = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				sweepLoop();
+			}
+		}, "redis-expiry-sweeper");
+		this.notifier = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				notifyLoop();
+			}
+		}, "redis-expiry-notifier");
+		this.sweeper.setDaemon(true);
+		this.notifier.setDaemon(true);
+		this.sweeper.start();
+		this.notifier.start();
+		return this;
+	}
+
+	/**
+	 * Stops the sweeper; a sweep in progress ends at the next record.
+	 */
+	public synchronized void stop() {
+		if (!this.running)
+			return;
+		this.running = false;
+		this.jedis.sweeperStopped(this);
+		this.sweeper.interrupt();
+		this.notifier.interrupt();
+		this.queue.clear();
+		this.queued.clear();
+	}
+
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	public long getExpiredCount() {
+		return this.expired.get();
+	}
+
+	public long getRecordsScanned() {
+		return this.recordsScanned.get();
+	}
+
+	public long getSweeps() {
+		return this.sweeps.get();
+	}
+
+	/**
+	 * Keys waiting for their expiry time.
+	 */
+	public int getQueued() {
+		return this.queue.size();
+	}
+
+	/*
+	 * Scans the set once and queues the keys that expire before the next
+	 * sweep. Returns the number of keys queued.
+	 */
+	private int sweep() {
+		final long horizon = System.currentTimeMillis() + this.intervalMillis;
+		final int[] found = new int[1];
+		ScanPolicy scanPolicy = new ScanPolicy();
+		scanPolicy.concurrentNodes = true;
+		scanPolicy.maxConcurrentNodes = this.concurrency;
+		try {
+			this.asClient.scanAll(scanPolicy, this.namespace, this.set, new ScanCallback() {
+				@Override
+				public void scanCallback(Key key, Record record) throws AerospikeException {
+					if (!running)
+						throw new AerospikeException.ScanTerminated();
+					recordsScanned.incrementAndGet();
+					pace();
+					if (record.expiration <= 0)
+						return; // never expires
+					long expireAt = record.expiration * 1000L + AS_TIME_OFFSET;
+					Object userKey = RedisClient.userKey(key, record, keyBin);
+					if (expireAt > horizon || !(userKey instanceof String))
+						return;
+					if (enqueue((String) userKey, key, expireAt)) {
+						synchronized (found) {
+							found[0]++;
+						}
+					}
+				}
+			}, this.keyBin);
+		} catch (AerospikeException.ScanTerminated e) {
+			// stopped
+		}
+		this.sweeps.incrementAndGet();
+		return found[0];
+	}
+
+	private boolean enqueue(String key, Key asKey, long expireAt) {
+		Long current = this.queued.put(key, expireAt);
+		if (current != null && current == expireAt)
+			return false;
+		this.queue.add(new Expiry(key, asKey, expireAt));
+		return true;
+	}
+
+	/*
+	 * The client deleted key; if its record is gone when its time comes, it
+	 * did not expire
+	 */
+	void deleted(String key) {
+		this.queued.remove(key);
+	}
+
+	/*
+	 * The client flushed the database; keys that survived are queued again
+	 * by the next sweep
+	 */
+	void flushed() {
+		this.queued.clear();
+		this.queue.clear();
+	}
+
+	private void pace() {
+		long perRecord = this.nanosPerRecord;
+		if (perRecord == 0)
+			return;
+		long wait;
+		synchronized (this) {
+			long now = System.nanoTime();
+			this.nextRecord = Math.max(this.nextRecord + perRecord, now);
+			wait = this.nextRecord - now;
+		}
+		if (wait > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			} catch (InterruptedException e) {
+				throw new AerospikeException.ScanTerminated();
+			}
+		}
+	}
+
+	private void sweepLoop() {
+		while (this.running) {
+			long started = System.currentTimeMillis();
+			try {
+				sweep();
+			} catch (RuntimeException e) {
+				// try again next interval; a cluster error must not end the sweeper
+				if (Log.warnEnabled())
+					Log.warn("Expiry sweep failed: " + e.getMessage());
+			}
+			try {
+				Thread.sleep(Math.max(0, started + this.intervalMillis - System.currentTimeMillis()));
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	private void notifyLoop() {
+		while (this.running) {
+			Expiry expiry;
+			try {
+				expiry = this.queue.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			Long current = this.queued.get(expiry.key);
+			if (current == null || current != expiry.expireAt)
+				continue; // queued again with another time
+			try {
+				check(expiry);
+			} catch (RuntimeException e) {
+				this.queued.remove(expiry.key);
+				if (Log.warnEnabled())
+					Log.warn("Expiry check of " + expiry.key + " failed: " + e.getMessage());
+			}
+		}
+	}
+
+	private void check(Expiry expiry) {
+		Record header = this.asClient.getHeader(this.policy, expiry.asKey);
+		if (header != null) {
+			// the TTL was changed, or the server clock is behind this one
+			long expireAt = header.expiration * 1000L + AS_TIME_OFFSET;
+			if (header.expiration <= 0 || expireAt > System.currentTimeMillis() + this.intervalMillis)
+				this.queued.remove(expiry.key);
+			else
+				enqueue(expiry.key, expiry.asKey, Math.max(expireAt, expiry.expireAt + RECHECK_MILLIS));
+			return;
+		}
+		if (!this.queued.remove(expiry.key, expiry.expireAt))
+			return; // deleted by the client meanwhile
+		this.expired.incrementAndGet();
+		this.jedis.expired(expiry.key);
+		for (Listener listener : this.listeners) {
+			try {
+				listener.expired(expiry.key);
+			} catch (RuntimeException e) {
+				if (Log.warnEnabled())
+					Log.warn("Expiry listener failed: " + e.getMessage());
+			}
+		}
+		if (this.publishEvents) {
+			this.jedis.publish("__keyevent@" + this.db + "__:expired", expiry.key);
+			this.jedis.publish("__keyspace@" + this.db + "__:" + expiry.key, "expired");
+		}
+	}
+}
@@ -0,0 +1,61 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+/**
+ * A longitude, latitude pair in degrees.
+ */
+public class GeoCoordinate {
+
+	private final double longitude;
+	private final double latitude;
+
+	public GeoCoordinate(double longitude, double latitude) {
+		this.longitude = longitude;
+		this.latitude = latitude;
+	}
+
+	public double getLongitude() {
+		return this.longitude;
+	}
+
+	public double getLatitude() {
+		return this.latitude;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o)
+			return true;
+		if (!(o instanceof GeoCoordinate))
+			return false;
+		GeoCoordinate other = (GeoCoordinate) o;
+		return Double.compare(this.longitude, other.longitude) == 0
+				&& Double.compare(this.latitude, other.latitude) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		long bits = Double.doubleToLongBits(this.longitude) * 31 + Double.doubleToLongBits(this.latitude);
+		return (int) (bits ^ (bits >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		return "(" + this.longitude + "," + this.latitude + ")";
+	}
+}
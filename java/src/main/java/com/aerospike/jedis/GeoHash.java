@@ -0,0 +1,263 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Geohash arithmetic, ported from Redis (geohash.c and geohash_helper.c) so
+ * that scores are identical to those of a Redis sorted set.
+ * <p>
+ * A hash interleaves <code>step</code> bits of latitude (even bits) and
+ * longitude (odd bits); a member's score is the 52 bit hash at step 26.
+ */
+final class GeoHash {
+
+	static final int STEP_MAX = 26;
+	static final double LAT_MIN = -85.05112878;
+	static final double LAT_MAX = 85.05112878;
+	static final double LONG_MIN = -180;
+	static final double LONG_MAX = 180;
+
+	private static final double MERCATOR_MAX = 20037726.37;
+	private static final double EARTH_RADIUS_IN_METERS = 6372797.560856;
+
+	private GeoHash() {
+	}
+
+	static boolean isValid(double longitude, double latitude) {
+		return longitude >= LONG_MIN && longitude <= LONG_MAX && latitude >= LAT_MIN && latitude <= LAT_MAX;
+	}
+
+	static long encode(double longitude, double latitude, int step) {
+		double latOffset = (latitude - LAT_MIN) / (LAT_MAX - LAT_MIN) * (1L << step);
+		double longOffset = (longitude - LONG_MIN) / (LONG_MAX - LONG_MIN) * (1L << step);
+		return interleave((long) latOffset, (long) longOffset);
+	}
+
+	static long score(double longitude, double latitude) {
+		return encode(longitude, latitude, STEP_MAX);
+	}
+
+	/**
+	 * The cell of a hash as {longitude min, longitude max, latitude min,
+	 * latitude max}.
+	 */
+	static double[] decode(long bits, int step) {
+		long separated = deinterleave(bits);
+		long latCell = separated & 0xffffffffL;
+		long longCell = separated >>> 32;
+		double cells = 1L << step;
+		return new double[] { LONG_MIN + (longCell / cells) * (LONG_MAX - LONG_MIN),
+				LONG_MIN + ((longCell + 1) / cells) * (LONG_MAX - LONG_MIN),
+				LAT_MIN + (latCell / cells) * (LAT_MAX - LAT_MIN),
+				LAT_MIN + ((latCell + 1) / cells) * (LAT_MAX - LAT_MIN) };
+	}
+
+	/**
+	 * The center of a member's cell, as GEOPOS returns it.
+	 */
+	static GeoCoordinate position(long score) {
+		double[] area = decode(score, STEP_MAX);
+		double longitude = Math.max(LONG_MIN, Math.min(LONG_MAX, (area[0] + area[1]) / 2));
+		double latitude = Math.max(LAT_MIN, Math.min(LAT_MAX, (area[2] + area[3]) / 2));
+		return new GeoCoordinate(longitude, latitude);
+	}
+
+	private static long interleave(long x, long y) {
+		return spread(x) | (spread(y) << 1);
+	}
+
+	private static long spread(long v) {
+		v &= 0xffffffffL;
+		v = (v | (v << 16)) & 0x0000ffff0000ffffL;
+		v = (v | (v << 8)) & 0x00ff00ff00ff00ffL;
+		v = (v | (v << 4)) & 0x0f0f0f0f0f0f0f0fL;
+		v = (v | (v << 2)) & 0x3333333333333333L;
+		v = (v | (v << 1)) & 0x5555555555555555L;
+		return v;
+	}
+
+	/**
+	 * Even bits to the low word, odd bits to the high word.
+	 */
+	private static long deinterleave(long bits) {
+		return squash(bits) | (squash(bits >>> 1) << 32);
+	}
+
+	private static long squash(long v) {
+		v &= 0x5555555555555555L;
+		v = (v | (v >>> 1)) & 0x3333333333333333L;
+		v = (v | (v >>> 2)) & 0x0f0f0f0f0f0f0f0fL;
+		v = (v | (v >>> 4)) & 0x00ff00ff00ff00ffL;
+		v = (v | (v >>> 8)) & 0x0000ffff0000ffffL;
+		v = (v | (v >>> 16)) & 0x00000000ffffffffL;
+		return v;
+	}
+
+	/**
+	 * The neighbouring cell, dx cells east and dy cells north.
+	 */
+	static long move(long bits, int step, int dx, int dy) {
+		if (dx != 0) {
+			long x = bits & 0xaaaaaaaaaaaaaaaaL;
+			long y = bits & 0x5555555555555555L;
+			long zz = 0x5555555555555555L >>> (64 - step * 2);
+			if (dx > 0) {
+				x = x + (zz + 1);
+			} else {
+				x = x | zz;
+				x = x - (zz + 1);
+			}
+			x &= (0xaaaaaaaaaaaaaaaaL >>> (64 - step * 2));
+			bits = x | y;
+		}
+		if (dy != 0) {
+			long x = bits & 0xaaaaaaaaaaaaaaaaL;
+			long y = bits & 0x5555555555555555L;
+			long zz = 0xaaaaaaaaaaaaaaaaL >>> (64 - step * 2);
+			if (dy > 0) {
+				y = y + (zz + 1);
+			} else {
+				y = y | zz;
+				y = y - (zz + 1);
+			}
+			y &= (0x5555555555555555L >>> (64 - step * 2));
+			bits = x | y;
+		}
+		return bits;
+	}
+
+	static int estimateStepsByRadius(double rangeMeters, double latitude) {
+		if (rangeMeters == 0)
+			return STEP_MAX;
+		int step = 1;
+		while (rangeMeters < MERCATOR_MAX) {
+			rangeMeters *= 2;
+			step++;
+		}
+		step -= 2; // make sure the range is included in most of the base cases
+		if (latitude > 66 || latitude < -66) {
+			step--;
+			if (latitude > 80 || latitude < -80)
+				step--;
+		}
+		return Math.max(1, Math.min(STEP_MAX, step));
+	}
+
+	/**
+	 * Score ranges, each {min inclusive, max exclusive}, covering a box of
+	 * the given half width and half height in meters around the center: the
+	 * center's cell and the neighbours the box reaches, merged where they
+	 * are adjacent.
+	 */
+	static List<long[]> coveringRanges(double longitude, double latitude, double halfWidth, double halfHeight) {
+		double latDelta = Math.toDegrees(halfHeight / EARTH_RADIUS_IN_METERS);
+		double longDeltaTop = Math.toDegrees(halfWidth / EARTH_RADIUS_IN_METERS
+				/ Math.cos(Math.toRadians(latitude + latDelta)));
+		double longDeltaBottom = Math.toDegrees(halfWidth / EARTH_RADIUS_IN_METERS
+				/ Math.cos(Math.toRadians(latitude - latDelta)));
+		double longDelta = (latitude < 0) ? longDeltaBottom : longDeltaTop;
+		double minLong = longitude - longDelta;
+		double maxLong = longitude + longDelta;
+		double minLat = latitude - latDelta;
+		double maxLat = latitude + latDelta;
+
+		double radius = Math.sqrt(halfWidth * halfWidth + halfHeight * halfHeight);
+		int step = estimateStepsByRadius(radius, latitude);
+		long hash = encode(longitude, latitude, step);
+		if (step > 1) {
+			double[] north = decode(move(hash, step, 0, 1), step);
+			double[] south = decode(move(hash, step, 0, -1), step);
+			double[] east = decode(move(hash, step, 1, 0), step);
+			double[] west = decode(move(hash, step, -1, 0), step);
+			if (north[3] < maxLat || south[2] > minLat || east[1] < maxLong || west[0] > minLong) {
+				step--;
+				hash = encode(longitude, latitude, step);
+			}
+		}
+		double[] area = decode(hash, step);
+		// skip the neighbours the box cannot reach
+		boolean south = true, north = true, west = true, east = true;
+		if (step >= 2) {
+			south = area[2] >= minLat;
+			north = area[3] <= maxLat;
+			west = area[0] >= minLong;
+			east = area[1] <= maxLong;
+		}
+		List<long[]> ranges = new ArrayList<long[]>(9);
+		for (int dy = -1; dy <= 1; dy++) {
+			if ((dy < 0 && !south) || (dy > 0 && !north))
+				continue;
+			for (int dx = -1; dx <= 1; dx++) {
+				if ((dx < 0 && !west) || (dx > 0 && !east))
+					continue;
+				long cell = move(hash, step, dx, dy);
+				int shift = (STEP_MAX - step) * 2;
+				ranges.add(new long[] { cell << shift, (cell + 1) << shift });
+			}
+		}
+		return merge(ranges);
+	}
+
+	private static List<long[]> merge(List<long[]> ranges) {
+		long[][] sorted = ranges.toArray(new long[ranges.size()][]);
+		Arrays.sort(sorted, new Comparator<long[]>() {
+			@Override
+			public int compare(long[] a, long[] b) {
+				return (a[0] < b[0]) ? -1 : ((a[0] == b[0]) ? 0 : 1);
+			}
+		});
+		List<long[]> merged = new ArrayList<long[]>(sorted.length);
+		for (long[] range : sorted) {
+			long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+			if (last != null && range[0] <= last[1])
+				last[1] = Math.max(last[1], range[1]);
+			else
+				merged.add(new long[] { range[0], range[1] });
+		}
+		return merged;
+	}
+
+	/**
+	 * Great circle distance in meters (haversine), as GEODIST computes it.
+	 */
+	static double distance(double long1, double lat1, double long2, double lat2) {
+		double lat1r = Math.toRadians(lat1);
+		double lat2r = Math.toRadians(lat2);
+		double u = Math.sin((lat2r - lat1r) / 2);
+		double v = Math.sin(Math.toRadians(long2 - long1) / 2);
+		double a = u * u + Math.cos(lat1r) * Math.cos(lat2r) * v * v;
+		return 2.0 * EARTH_RADIUS_IN_METERS * Math.asin(Math.sqrt(a));
+	}
+
+	/**
+	 * Distance from the center if the point lies in the box, else -1.
+	 */
+	static double distanceIfInBox(double longitude, double latitude, double halfWidth, double halfHeight,
+			double pointLong, double pointLat) {
+		double latDistance = EARTH_RADIUS_IN_METERS * Math.abs(Math.toRadians(pointLat) - Math.toRadians(latitude));
+		if (latDistance > halfHeight)
+			return -1;
+		if (distance(pointLong, pointLat, longitude, pointLat) > halfWidth)
+			return -1;
+		return distance(longitude, latitude, pointLong, pointLat);
+	}
+}
@@ -0,0 +1,51 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+/**
+ * One member found by GEOSEARCH, with its distance from the center in the
+ * unit of the query and its position.
+ */
+public class GeoRadiusResponse {
+
+	private final String member;
+	private final double distance;
+	private final GeoCoordinate coordinate;
+
+	public GeoRadiusResponse(String member, double distance, GeoCoordinate coordinate) {
+		this.member = member;
+		this.distance = distance;
+		this.coordinate = coordinate;
+	}
+
+	public String getMember() {
+		return this.member;
+	}
+
+	public double getDistance() {
+		return this.distance;
+	}
+
+	public GeoCoordinate getCoordinate() {
+		return this.coordinate;
+	}
+
+	@Override
+	public String toString() {
+		return this.member + " " + this.distance + " " + this.coordinate;
+	}
+}
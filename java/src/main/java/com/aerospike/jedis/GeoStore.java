@@ -0,0 +1,311 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Bin;
+import com.aerospike.client.IAerospikeClient;
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+import com.aerospike.client.ResultCode;
+import com.aerospike.client.Value;
+import com.aerospike.client.large.LargeList;
+import com.aerospike.client.policy.BatchPolicy;
+import com.aerospike.client.policy.GenerationPolicy;
+import com.aerospike.client.policy.Policy;
+import com.aerospike.client.policy.RecordExistsAction;
+import com.aerospike.client.policy.WritePolicy;
+
+/**
+ * Redis GEO sets on a geohash ordered large list.
+ * <p>
+ * Each member is an element of a LargeList on the key's record, a string of
+ * its 52 bit geohash score in 13 hex digits followed by the member name, so
+ * the list is ordered by score and a score range is a single range read on
+ * the server. GEOSEARCH reads the few score ranges covering the search area
+ * and filters the candidates by exact distance here. A record per member
+ * (key and member) holds its score, so positions are found with one batch
+ * read; it carries the epoch of the GEO set it belongs to, so members of a
+ * set whose key was overwritten are not seen by a new one. A GEOADD holds
+ * the member record while it moves the member's element, so concurrent
+ * GEOADDs of a member leave one element. DEL removes the member records
+ * with the set.
+ */
+final class GeoStore {
+
+	static final String GEO_BIN = "redis-geo";
+	static final String EPOCH_BIN = "redis-epoch";
+	static final String SCORE_BIN = "redis-score";
+	static final String PENDING_BIN = "redis-pending"; // the score a GEOADD holding the member is writing
+	static final String UNTIL_BIN = "redis-until"; // when that hold runs out, in milliseconds
+
+	private static final long HOLD_MILLIS = 1000;
+	private static final long HOLD_WAIT = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private static final int SCORE_DIGITS = 13;
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private static final Random random = new Random();
+
+	private final IAerospikeClient asClient;
+	private final WritePolicy writePolicy;
+	private final Policy policy;
+	private final BatchPolicy batchPolicy = new BatchPolicy();
+	private final String namespace;
+	private final String set;
+	private final String memberSet;
+	private final String keyBin; // null when keys are stored as user keys
+
+	GeoStore(IAerospikeClient asClient, WritePolicy writePolicy, Policy policy, String namespace, String set,
+			String memberSet, String keyBin) {
+		this.asClient = asClient;
+		this.writePolicy = writePolicy;
+		this.policy = policy;
+		this.namespace = namespace;
+		this.set = set;
+		this.memberSet = memberSet;
+		this.keyBin = keyBin;
+	}
+
+	private Key headKey(String key) {
+		return new Key(this.namespace, this.set, key);
+	}
+
+	private Key memberKey(String key, String member) {
+		return new Key(this.namespace, this.memberSet, key + '\u0000' + member);
+	}
+
+	private LargeList list(String key) {
+		return this.asClient.getLargeList(this.writePolicy, headKey(key), GEO_BIN);
+	}
+
+	static String element(long score, String member) {
+		char[] digits = new char[SCORE_DIGITS];
+		for (int i = SCORE_DIGITS - 1; i >= 0; i--) {
+			digits[i] = HEX[(int) (score & 0xf)];
+			score >>>= 4;
+		}
+		return new String(digits) + member;
+	}
+
+	/**
+	 * A range bound; scores past 52 bits sort after every element.
+	 */
+	private static String bound(long score) {
+		return (score >= 1L << 52) ? "g" : element(score, "");
+	}
+
+	/**
+	 * Reads the set's epoch and the scores of the members in one batch. A
+	 * score is null when the member is not in the set.
+	 */
+	private Long[] scores(String key, String[] members, long[] epoch) {
+		Key[] keys = new Key[members.length + 1];
+		keys[0] = headKey(key);
+		for (int i = 0; i < members.length; i++) {
+			keys[i + 1] = memberKey(key, members[i]);
+		}
+		Record[] records = this.asClient.get(this.batchPolicy, keys, EPOCH_BIN, SCORE_BIN);
+		Long[] scores = new Long[members.length];
+		if (records[0] == null || records[0].getValue(EPOCH_BIN) == null)
+			return scores;
+		epoch[0] = (Long) records[0].getValue(EPOCH_BIN);
+		for (int i = 0; i < members.length; i++) {
+			Record record = records[i + 1];
+			if (record != null && epoch[0] == ((Long) record.getValue(EPOCH_BIN)).longValue())
+				scores[i] = (Long) record.getValue(SCORE_BIN);
+		}
+		return scores;
+	}
+
+	long add(String key, Map<String, GeoCoordinate> members) {
+		String[] names = members.keySet().toArray(new String[members.size()]);
+		long[] scores = new long[names.length];
+		for (int i = 0; i < names.length; i++) {
+			GeoCoordinate coordinate = members.get(names[i]);
+			if (!GeoHash.isValid(coordinate.getLongitude(), coordinate.getLatitude()))
+				throw new AerospikeException(ResultCode.PARAMETER_ERROR, "ERR invalid longitude,latitude pair "
+						+ coordinate.getLongitude() + "," + coordinate.getLatitude());
+			scores[i] = GeoHash.score(coordinate.getLongitude(), coordinate.getLatitude());
+		}
+		Record head = this.asClient.get(this.policy, headKey(key), EPOCH_BIN);
+		long epoch;
+		if (head == null || head.getValue(EPOCH_BIN) == null) {
+			Object current = this.asClient.execute(this.writePolicy, headKey(key), "redis", "GEO_EPOCH",
+					Value.get(EPOCH_BIN), Value.get(random.nextLong() | 1),
+					(this.keyBin == null) ? Value.getAsNull() : Value.get(this.keyBin), Value.get(key));
+			epoch = ((Number) current).longValue();
+		} else {
+			epoch = (Long) head.getValue(EPOCH_BIN);
+		}
+		LargeList list = list(key);
+		long added = 0;
+		for (int i = 0; i < names.length; i++) {
+			if (move(key, list, epoch, names[i], scores[i]))
+				added++;
+		}
+		return added;
+	}
+
+	/*
+	 * Puts the member at score, and returns true if it was not in the set.
+	 * The member record is held while the list changes, so GEOADDs of one
+	 * member take turns and leave it a single element. A hold left by a
+	 * client that stopped runs out, and the next GEOADD removes its element.
+	 */
+	private boolean move(String key, LargeList list, long epoch, String member, long score) {
+		Key memberKey = memberKey(key, member);
+		while (true) {
+			Record record = this.asClient.get(this.policy, memberKey);
+			boolean current = record != null && epoch == ((Long) record.getValue(EPOCH_BIN)).longValue();
+			Long old = current ? (Long) record.getValue(SCORE_BIN) : null;
+			Long pending = current ? (Long) record.getValue(PENDING_BIN) : null;
+			if (pending != null && ((Number) record.getValue(UNTIL_BIN)).longValue() > System.currentTimeMillis()) {
+				LockSupport.parkNanos(HOLD_WAIT); // another GEOADD holds the member
+				continue;
+			}
+			if (pending == null && old != null && old == score)
+				return false;
+			WritePolicy hold = new WritePolicy(this.writePolicy);
+			if (record == null) {
+				hold.recordExistsAction = RecordExistsAction.CREATE_ONLY;
+			} else {
+				hold.generationPolicy = GenerationPolicy.EXPECT_GEN_EQUAL;
+				hold.generation = record.generation;
+			}
+			try {
+				this.asClient.put(hold, memberKey, new Bin(EPOCH_BIN, epoch),
+						new Bin(SCORE_BIN, (old == null) ? Value.getAsNull() : Value.get(old)), new Bin(PENDING_BIN, score),
+						new Bin(UNTIL_BIN, System.currentTimeMillis() + HOLD_MILLIS));
+			} catch (AerospikeException e) {
+				if (e.getResultCode() != ResultCode.GENERATION_ERROR && e.getResultCode() != ResultCode.KEY_EXISTS_ERROR)
+					throw e;
+				continue;
+			}
+			if (pending != null && pending != score && !pending.equals(old))
+				remove(list, pending, member);
+			if (old != null && old != score)
+				remove(list, old, member);
+			list.update(Value.get(element(score, member)));
+			WritePolicy release = new WritePolicy(this.writePolicy);
+			release.generationPolicy = GenerationPolicy.EXPECT_GEN_EQUAL;
+			release.generation = (record == null) ? 1 : record.generation + 1;
+			try {
+				this.asClient.put(release, memberKey, new Bin(EPOCH_BIN, epoch), new Bin(SCORE_BIN, score),
+						new Bin(PENDING_BIN, Value.getAsNull()), new Bin(UNTIL_BIN, Value.getAsNull()));
+			} catch (AerospikeException e) {
+				// the hold ran out and another GEOADD took the member over; it finishes the move
+				if (e.getResultCode() != ResultCode.GENERATION_ERROR)
+					throw e;
+			}
+			return old == null;
+		}
+	}
+
+	private static void remove(LargeList list, long score, String member) {
+		try {
+			list.remove(Value.get(element(score, member)));
+		} catch (AerospikeException e) {
+			if (e.getResultCode() != ResultCode.LARGE_ITEM_NOT_FOUND)
+				throw e;
+		}
+	}
+
+	/**
+	 * Deletes the member records of the set, then the set itself.
+	 */
+	void delete(String key) {
+		List<?> elements;
+		try {
+			elements = list(key).scan();
+		} catch (AerospikeException e) {
+			if (e.getResultCode() != ResultCode.LARGE_ITEM_NOT_FOUND && e.getResultCode() != ResultCode.BIN_NOT_FOUND)
+				throw e;
+			elements = null;
+		}
+		if (elements != null) {
+			for (Object item : elements) {
+				this.asClient.delete(this.writePolicy, memberKey(key, ((String) item).substring(SCORE_DIGITS)));
+			}
+		}
+		this.asClient.delete(this.writePolicy, headKey(key));
+	}
+
+	List<GeoCoordinate> positions(String key, String... members) {
+		Long[] scores = scores(key, members, new long[1]);
+		List<GeoCoordinate> result = new ArrayList<GeoCoordinate>(members.length);
+		for (Long score : scores) {
+			result.add((score == null) ? null : GeoHash.position(score));
+		}
+		return result;
+	}
+
+	/**
+	 * Members within a radius, or within a box when height is not negative,
+	 * nearest first. Sizes are in the given unit.
+	 */
+	List<GeoRadiusResponse> search(String key, GeoCoordinate center, double width, double height, GeoUnit unit,
+			int count) {
+		Record head = this.asClient.get(this.policy, headKey(key), EPOCH_BIN);
+		List<GeoRadiusResponse> result = new ArrayList<GeoRadiusResponse>();
+		if (head == null)
+			return result;
+		boolean box = height >= 0;
+		double halfWidth = box ? unit.toMeters(width) / 2 : unit.toMeters(width);
+		double halfHeight = box ? unit.toMeters(height) / 2 : halfWidth;
+		double longitude = center.getLongitude();
+		double latitude = center.getLatitude();
+		LargeList list = list(key);
+		for (long[] range : GeoHash.coveringRanges(longitude, latitude, halfWidth, halfHeight)) {
+			List<?> elements = list.range(Value.get(bound(range[0])), Value.get(bound(range[1])));
+			if (elements == null)
+				continue;
+			for (Object item : elements) {
+				String element = (String) item;
+				GeoCoordinate position = GeoHash.position(Long.parseLong(element.substring(0, SCORE_DIGITS), 16));
+				double meters;
+				if (box) {
+					meters = GeoHash.distanceIfInBox(longitude, latitude, halfWidth, halfHeight,
+							position.getLongitude(), position.getLatitude());
+				} else {
+					meters = GeoHash.distance(longitude, latitude, position.getLongitude(), position.getLatitude());
+					if (meters > halfWidth)
+						meters = -1;
+				}
+				if (meters >= 0)
+					result.add(new GeoRadiusResponse(element.substring(SCORE_DIGITS), unit.fromMeters(meters), position));
+			}
+		}
+		Collections.sort(result, new Comparator<GeoRadiusResponse>() {
+			@Override
+			public int compare(GeoRadiusResponse a, GeoRadiusResponse b) {
+				return Double.compare(a.getDistance(), b.getDistance());
+			}
+		});
+		if (count > 0 && result.size() > count)
+			return new ArrayList<GeoRadiusResponse>(result.subList(0, count));
+		return result;
+	}
+}
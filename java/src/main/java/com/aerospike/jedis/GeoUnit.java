@@ -0,0 +1,38 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+/**
+ * Distance units accepted by the GEO commands.
+ */
+public enum GeoUnit {
+	M(1), KM(1000), MI(1609.34), FT(0.3048);
+
+	private final double meters;
+
+	private GeoUnit(double meters) {
+		this.meters = meters;
+	}
+
+	public double toMeters(double distance) {
+		return distance * this.meters;
+	}
+
+	public double fromMeters(double meters) {
+		return meters / this.meters;
+	}
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A set of Redis glob patterns (as used by PSUBSCRIBE and KEYS) compiled into
+ * one trie, so a channel name is matched against every pattern in a single
+ * pass instead of pattern by pattern.
+ * <p>
+ * Supports <code>*</code>, <code>?</code>, <code>[abc]</code>,
+ * <code>[^abc]</code>, <code>[a-z]</code> and <code>\</code> escapes. Not
+ * thread safe; callers synchronize.
+ */
+final class GlobTrie<V> {
+
+	private static final class CharClass {
+		final boolean negated;
+		final String members; // pairs of inclusive range bounds
+
+		CharClass(boolean negated, String members) {
+			this.negated = negated;
+			this.members = members;
+		}
+
+		boolean matches(char c) {
+			for (int i = 0; i < this.members.length(); i += 2) {
+				if (c >= this.members.charAt(i) && c <= this.members.charAt(i + 1))
+					return !this.negated;
+			}
+			return this.negated;
+		}
+	}
+
+	private static final class Node<V> {
+		final boolean star;
+		Map<Character, Node<V>> literals;
+		Node<V> any;
+		Node<V> starChild;
+		Map<String, Node<V>> classKeys;
+		List<CharClass> classes;
+		List<Node<V>> classNodes;
+		Map<String, List<V>> values;
+
+		Node(boolean star) {
+			this.star = star;
+		}
+
+		boolean isEmpty() {
+			return (this.literals == null || this.literals.isEmpty()) && this.any == null
+					&& this.starChild == null && (this.classKeys == null || this.classKeys.isEmpty())
+					&& (this.values == null || this.values.isEmpty());
+		}
+	}
+
+	/**
+	 * A pattern that matched, with the value registered against it.
+	 */
+	static final class Match<V> {
+		final String pattern;
+		final V value;
+
+		Match(String pattern, V value) {
+			this.pattern = pattern;
+			this.value = value;
+		}
+	}
+
+	private final Node<V> root = new Node<V>(false);
+	private int size = 0;
+
+	int size() {
+		return this.size;
+	}
+
+	void add(String pattern, V value) {
+		Node<V> node = this.root;
+		int i = 0;
+		while (i < pattern.length()) {
+			char c = pattern.charAt(i);
+			if (c == '*') {
+				while (i < pattern.length() && pattern.charAt(i) == '*')
+					i++;
+				if (node.starChild == null)
+					node.starChild = new Node<V>(true);
+				node = node.starChild;
+				continue;
+			} else if (c == '?') {
+				if (node.any == null)
+					node.any = new Node<V>(false);
+				node = node.any;
+			} else if (c == '[' && pattern.indexOf(']', i + 1) > i) {
+				int end = pattern.indexOf(']', i + 1);
+				String key = pattern.substring(i, end + 1);
+				if (node.classKeys == null) {
+					node.classKeys = new HashMap<String, Node<V>>();
+					node.classes = new ArrayList<CharClass>();
+					node.classNodes = new ArrayList<Node<V>>();
+				}
+				Node<V> next = node.classKeys.get(key);
+				if (next == null) {
+					next = new Node<V>(false);
+					node.classKeys.put(key, next);
+					node.classes.add(compileClass(pattern.substring(i + 1, end)));
+					node.classNodes.add(next);
+				}
+				node = next;
+				i = end;
+			} else {
+				if (c == '\\' && i + 1 < pattern.length())
+					c = pattern.charAt(++i);
+				if (node.literals == null)
+					node.literals = new HashMap<Character, Node<V>>();
+				Node<V> next = node.literals.get(c);
+				if (next == null) {
+					next = new Node<V>(false);
+					node.literals.put(c, next);
+				}
+				node = next;
+			}
+			i++;
+		}
+		if (node.values == null)
+			node.values = new HashMap<String, List<V>>();
+		List<V> list = node.values.get(pattern);
+		if (list == null) {
+			list = new ArrayList<V>(1);
+			node.values.put(pattern, list);
+		}
+		list.add(value);
+		this.size++;
+	}
+
+	/**
+	 * Removes one registration of the value against the pattern. Branches of
+	 * the trie are left in place; they are cheap and usually reused.
+	 */
+	boolean remove(String pattern, V value) {
+		List<Node<V>> found = new ArrayList<Node<V>>();
+		collectTerminals(this.root, pattern, found);
+		for (Node<V> node : found) {
+			List<V> list = node.values.get(pattern);
+			if (list != null && list.remove(value)) {
+				if (list.isEmpty())
+					node.values.remove(pattern);
+				this.size--;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void collectTerminals(Node<V> node, String pattern, List<Node<V>> found) {
+		if (node.values != null && node.values.containsKey(pattern))
+			found.add(node);
+		if (node.literals != null) {
+			for (Node<V> child : node.literals.values())
+				collectTerminals(child, pattern, found);
+		}
+		if (node.any != null)
+			collectTerminals(node.any, pattern, found);
+		if (node.starChild != null)
+			collectTerminals(node.starChild, pattern, found);
+		if (node.classNodes != null) {
+			for (Node<V> child : node.classNodes)
+				collectTerminals(child, pattern, found);
+		}
+	}
+
+	boolean isEmpty() {
+		return this.size == 0 || this.root.isEmpty();
+	}
+
+	/**
+	 * Returns every (pattern, value) registration whose pattern matches the
+	 * string. The trie is walked as an NFA, one step per character.
+	 */
+	List<Match<V>> match(String s) {
+		List<Match<V>> result = new ArrayList<Match<V>>();
+		if (this.size == 0)
+			return result;
+		Map<Node<V>, Boolean> current = new IdentityHashMap<Node<V>, Boolean>();
+		addWithClosure(current, this.root);
+		for (int i = 0; i < s.length() && !current.isEmpty(); i++) {
+			char c = s.charAt(i);
+			Map<Node<V>, Boolean> next = new IdentityHashMap<Node<V>, Boolean>();
+			for (Node<V> node : current.keySet()) {
+				if (node.star)
+					addWithClosure(next, node);
+				if (node.literals != null) {
+					Node<V> child = node.literals.get(c);
+					if (child != null)
+						addWithClosure(next, child);
+				}
+				if (node.any != null)
+					addWithClosure(next, node.any);
+				if (node.classes != null) {
+					for (int j = 0; j < node.classes.size(); j++) {
+						if (node.classes.get(j).matches(c))
+							addWithClosure(next, node.classNodes.get(j));
+					}
+				}
+			}
+			current = next;
+		}
+		for (Node<V> node : current.keySet()) {
+			if (node.values != null) {
+				for (Map.Entry<String, List<V>> entry : node.values.entrySet()) {
+					for (V value : entry.getValue())
+						result.add(new Match<V>(entry.getKey(), value));
+				}
+			}
+		}
+		return result;
+	}
+
+	boolean matches(String s) {
+		return !match(s).isEmpty();
+	}
+
+	private void addWithClosure(Map<Node<V>, Boolean> states, Node<V> node) {
+		while (node != null && states.put(node, Boolean.TRUE) == null) {
+			// a star also matches the empty string
+			node = node.starChild;
+		}
+	}
+
+	private static CharClass compileClass(String body) {
+		boolean negated = body.startsWith("^");
+		if (negated)
+			body = body.substring(1);
+		StringBuilder members = new StringBuilder();
+		for (int i = 0; i < body.length(); i++) {
+			char c = body.charAt(i);
+			if (c == '\\' && i + 1 < body.length()) {
+				c = body.charAt(++i);
+				members.append(c).append(c);
+			} else if (i + 2 < body.length() && body.charAt(i + 1) == '-') {
+				char end = body.charAt(i + 2);
+				members.append((char) Math.min(c, end)).append((char) Math.max(c, end));
+				i += 2;
+			} else {
+				members.append(c).append(c);
+			}
+		}
+		return new CharClass(negated, members.toString());
+	}
+}
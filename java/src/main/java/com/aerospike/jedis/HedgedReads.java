@@ -0,0 +1,294 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+import com.aerospike.client.ResultCode;
+import com.aerospike.client.listener.ExecuteListener;
+import com.aerospike.client.listener.RecordArrayListener;
+import com.aerospike.client.listener.RecordListener;
+
+/**
+ * Hedged reads: when a read has not answered within a delay taken from a
+ * percentile of recent read latencies, the same read is sent again to the
+ * replicas. A stalled node (GC pause, migration) then costs one delay
+ * instead of a full timeout.
+ * <p>
+ * On an AsyncClient both reads race: the first stays in flight while the
+ * hedge goes out, and whichever answers first is used. A blocking read
+ * can't be left running, so on a blocking client the first read is sent
+ * with the delay as its timeout and the hedge follows when it times out.
+ * <p>
+ * Hedges draw on a credit that each read tops up by the budget fraction, so
+ * they never exceed that fraction of reads, however slow the cluster gets.
+ * With no credit left a read is not hedged and gets its full timeout.
+ */
+final class HedgedReads {
+
+	static final int SAMPLES = 1024; // recent latencies kept
+	static final int RECOMPUTE_EVERY = 64; // reads between percentile updates
+	static final long INITIAL_DELAY = 5000; // in microseconds, until enough reads are seen
+	static final long CREDIT = 1000000; // credit units spent by one hedge
+	static final long MAX_CREDIT = 10 * CREDIT; // hedges that can be saved up for a burst
+
+	/**
+	 * One read; hedge is true for the duplicate sent to the replicas.
+	 * timeout, in milliseconds, replaces the policy's own unless it is 0.
+	 */
+	interface Read<T> {
+		T read(boolean hedge, int timeout);
+	}
+
+	/**
+	 * One read started on an AsyncClient, which hands its result to answer.
+	 */
+	interface AsyncRead<T> {
+		void start(boolean hedge, Answer answer);
+	}
+
+	/**
+	 * Receives the result of one of the racing reads, and frees its slot
+	 * under the concurrency limit.
+	 */
+	static final class Answer implements RecordListener, RecordArrayListener, ExecuteListener {
+		private final Race race;
+		private final ConcurrencyLimiter limiter;
+		private final long acquired;
+
+		Answer(Race race, ConcurrencyLimiter limiter, long acquired) {
+			this.race = race;
+			this.limiter = limiter;
+			this.acquired = acquired;
+		}
+
+		@Override
+		public void onSuccess(Key key, Record record) {
+			done(record, null);
+		}
+
+		@Override
+		public void onSuccess(Key[] keys, Record[] records) {
+			done(records, null);
+		}
+
+		@Override
+		public void onSuccess(Key key, Object value) {
+			done(value, null);
+		}
+
+		@Override
+		public void onFailure(AerospikeException failure) {
+			done(null, failure);
+		}
+
+		private void done(Object value, AerospikeException failure) {
+			if (this.limiter != null)
+				this.limiter.release(this.acquired, failure);
+			this.race.answer(value, failure);
+		}
+	}
+
+	/**
+	 * The reads sent for one caller; the first to succeed wins, and the race
+	 * fails only when every read has failed.
+	 */
+	private static final class Race {
+		private final CountDownLatch answered = new CountDownLatch(1);
+		private int running; // reads that have not answered
+		private Object value;
+		private AerospikeException failure;
+
+		void start(AsyncRead<?> read, boolean hedge, ConcurrencyLimiter limiter) {
+			synchronized (this) {
+				this.running++;
+			}
+			long acquired = 0;
+			try {
+				if (limiter != null)
+					acquired = limiter.acquire();
+			} catch (AerospikeException e) {
+				answer(null, e);
+				return;
+			}
+			Answer answer = new Answer(this, limiter, acquired);
+			try {
+				read.start(hedge, answer);
+			} catch (AerospikeException e) {
+				answer.onFailure(e);
+			}
+		}
+
+		synchronized void answer(Object value, AerospikeException failure) {
+			this.running--;
+			if (this.answered.getCount() == 0)
+				return; // decided already
+			if (failure == null) {
+				this.value = value;
+				this.answered.countDown();
+			} else if (this.running == 0) {
+				this.failure = failure;
+				this.answered.countDown();
+			}
+		}
+
+		boolean await(long micros) {
+			try {
+				return this.answered.await(micros, TimeUnit.MICROSECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new AerospikeException(ResultCode.TIMEOUT, "Interrupted waiting for a read");
+			}
+		}
+
+		/**
+		 * Waits for the first read to succeed, or the last to fail; the
+		 * reads' own timeouts bound the wait.
+		 */
+		@SuppressWarnings("unchecked")
+		<T> T result() {
+			try {
+				this.answered.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new AerospikeException(ResultCode.TIMEOUT, "Interrupted waiting for a read");
+			}
+			synchronized (this) {
+				if (this.failure != null)
+					throw this.failure;
+				return (T) this.value;
+			}
+		}
+	}
+
+	private final double percentile;
+	private final long creditPerRead;
+	private final long[] latencies = new long[SAMPLES]; // in microseconds
+	private final AtomicLong reads = new AtomicLong();
+	private final AtomicLong credit = new AtomicLong(CREDIT);
+	private final AtomicLong hedges = new AtomicLong();
+	private volatile long delay = INITIAL_DELAY; // in microseconds
+
+	/**
+	 * @param percentile of recent read latencies to wait before hedging, e.g. 95
+	 * @param budget largest fraction of reads that may be hedged, e.g. 0.05
+	 */
+	HedgedReads(double percentile, double budget) {
+		this.percentile = Math.min(100, Math.max(0, percentile));
+		this.creditPerRead = (long) (Math.min(1, Math.max(0, budget)) * CREDIT);
+	}
+
+	long delayMicros() {
+		return this.delay;
+	}
+
+	long hedges() {
+		return this.hedges.get();
+	}
+
+	/**
+	 * Runs the read, hedged; timeout is the policy's own in milliseconds, 0
+	 * for none.
+	 */
+	<T> T read(Read<T> read, int timeout) {
+		addCredit();
+		long start = System.nanoTime();
+		int wait = (int) Math.max(1, (this.delay + 999) / 1000);
+		if ((timeout > 0 && wait >= timeout) || this.credit.get() < CREDIT) {
+			// the read times out before a hedge could go, or no hedge could go
+			T value = read.read(false, 0);
+			record((System.nanoTime() - start) / 1000);
+			return value;
+		}
+		try {
+			T value = read.read(false, wait);
+			record((System.nanoTime() - start) / 1000);
+			return value;
+		} catch (AerospikeException e) {
+			if (e.getResultCode() != ResultCode.TIMEOUT)
+				throw e;
+		}
+		boolean hedge = spendCredit();
+		if (hedge)
+			this.hedges.incrementAndGet();
+		T value = read.read(hedge, (timeout > 0) ? timeout - wait : 0);
+		// the whole wait is recorded, so the delay can grow past itself
+		record((System.nanoTime() - start) / 1000);
+		return value;
+	}
+
+	/**
+	 * Runs the read on an AsyncClient, hedged: the hedge races the first
+	 * read instead of waiting for it to time out. limiter, if not null,
+	 * caps the reads in flight.
+	 */
+	<T> T race(AsyncRead<T> read, ConcurrencyLimiter limiter) {
+		addCredit();
+		long start = System.nanoTime();
+		Race race = new Race();
+		race.start(read, false, limiter);
+		if (!race.await(this.delay) && spendCredit()) {
+			this.hedges.incrementAndGet();
+			race.start(read, true, limiter);
+		}
+		T value = race.result();
+		record((System.nanoTime() - start) / 1000);
+		return value;
+	}
+
+	private void addCredit() {
+		long current;
+		do {
+			current = this.credit.get();
+			if (current >= MAX_CREDIT)
+				return;
+		} while (!this.credit.compareAndSet(current, Math.min(MAX_CREDIT, current + this.creditPerRead)));
+	}
+
+	private boolean spendCredit() {
+		long current;
+		do {
+			current = this.credit.get();
+			if (current < CREDIT)
+				return false;
+		} while (!this.credit.compareAndSet(current, current - CREDIT));
+		return true;
+	}
+
+	private void record(long micros) {
+		long count = this.reads.getAndIncrement();
+		synchronized (this.latencies) {
+			this.latencies[(int) (count % SAMPLES)] = micros;
+		}
+		if (count + 1 >= RECOMPUTE_EVERY && (count + 1) % RECOMPUTE_EVERY == 0) {
+			int size = (int) Math.min(count + 1, SAMPLES);
+			long[] sorted;
+			synchronized (this.latencies) {
+				sorted = Arrays.copyOf(this.latencies, size);
+			}
+			Arrays.sort(sorted);
+			int index = (int) Math.ceil(this.percentile / 100 * size) - 1;
+			this.delay = sorted[Math.max(0, Math.min(size - 1, index))];
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+/**
+ * A frequently read key reported by RedisClient.hotKeys(), with its
+ * estimated number of reads in the current sampling window.
+ */
+public class HotKey {
+
+	private final String key;
+	private final long reads;
+	private final boolean hot;
+
+	public HotKey(String key, long reads, boolean hot) {
+		this.key = key;
+		this.reads = reads;
+		this.hot = hot;
+	}
+
+	public String getKey() {
+		return this.key;
+	}
+
+	public long getReads() {
+		return this.reads;
+	}
+
+	/**
+	 * True if the key is read often enough to be replicated or cached.
+	 */
+	public boolean isHot() {
+		return this.hot;
+	}
+
+	@Override
+	public String toString() {
+		return this.key + " " + this.reads + (this.hot ? " hot" : "");
+	}
+}
@@ -0,0 +1,249 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Finds the keys that take a large share of the reads made by a RedisClient.
+ * <p>
+ * One read in every sampleRate is counted in a count-min sketch, which
+ * estimates the frequency of any key in fixed memory however many keys are
+ * read. The keys with the highest estimates are kept as the top K; a top K
+ * key that takes at least {@link #HOT_SHARE} of the sampled reads is hot.
+ * Every {@link #WINDOW} samples the counts are halved, so keys that cool
+ * down drop out. A short lived local cache for hot keys lives here too; a
+ * read is cached only if no write of the key was seen while it ran.
+ */
+final class HotKeyTracker {
+
+	static final int DEPTH = 4;
+	static final int WIDTH = 4096; // counters per row, a power of two
+	static final int WINDOW = 65536; // samples between halvings
+	static final double HOT_SHARE = 0.01;
+	static final int MIN_SAMPLES = 1000; // before anything is called hot
+
+	private static final int STAMPS = 1024; // write counters, a power of two
+
+	static final class Cached {
+		final Object value;
+		final long expires;
+
+		Cached(Object value, long expires) {
+			this.value = value;
+			this.expires = expires;
+		}
+	}
+
+	private final int topK;
+	private final int sampleRate;
+	private final AtomicIntegerArray counters = new AtomicIntegerArray(DEPTH * WIDTH);
+	private final AtomicLong reads = new AtomicLong();
+	private final AtomicLong samples = new AtomicLong();
+	private final Map<String, Long> top = new HashMap<String, Long>();
+	private volatile long topMinimum = 0;
+	private volatile Set<String> hot = Collections.emptySet();
+	private final ConcurrentHashMap<String, Cached> cache = new ConcurrentHashMap<String, Cached>();
+	private final AtomicLongArray stamps = new AtomicLongArray(STAMPS);
+
+	HotKeyTracker(int topK, int sampleRate) {
+		this.topK = topK;
+		this.sampleRate = Math.max(1, sampleRate);
+	}
+
+	/**
+	 * Counts a read of the key if it is sampled, and returns true if the key is hot.
+	 */
+	boolean read(String key) {
+		if (this.sampleRate > 1 && this.reads.incrementAndGet() % this.sampleRate != 0)
+			return this.hot.contains(key);
+		long estimate = increment(key);
+		long count = this.samples.incrementAndGet();
+		if (count % WINDOW == 0)
+			decay();
+		if (estimate > this.topMinimum)
+			offer(key, estimate);
+		return this.hot.contains(key);
+	}
+
+	/*
+	 * Conservative update: only the rows holding the minimum are raised,
+	 * which keeps the overestimate from collisions small. The rows are
+	 * indexed by h1 + row * h2, two independent hashes of the key, so keys
+	 * that collide in one row rarely collide in another.
+	 */
+	private long increment(String key) {
+		int h1 = 0x9e3779b9;
+		int h2 = 0x85ebca6b;
+		for (int i = 0; i < key.length(); i++) {
+			char c = key.charAt(i);
+			h1 = (h1 ^ c) * 0x01000193;
+			h2 = Integer.rotateLeft(h2 ^ (c * 0xcc9e2d51), 13) * 5 + 0xe6546b64;
+		}
+		h1 = mix(h1);
+		h2 = mix(h2) | 1;
+		int minimum = Integer.MAX_VALUE;
+		for (int row = 0; row < DEPTH; row++) {
+			minimum = Math.min(minimum, this.counters.get(slot(row, h1, h2)));
+		}
+		for (int row = 0; row < DEPTH; row++) {
+			int slot = slot(row, h1, h2);
+			if (this.counters.get(slot) == minimum)
+				this.counters.compareAndSet(slot, minimum, minimum + 1);
+		}
+		return minimum + 1L;
+	}
+
+	private static int slot(int row, int h1, int h2) {
+		return row * WIDTH + ((h1 + row * h2) & (WIDTH - 1));
+	}
+
+	private static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		return h ^ (h >>> 16);
+	}
+
+	private synchronized void offer(String key, long estimate) {
+		if (this.top.containsKey(key) || this.top.size() < this.topK) {
+			this.top.put(key, estimate);
+		} else if (estimate > this.topMinimum) {
+			String coldest = null;
+			long coldestCount = Long.MAX_VALUE;
+			for (Map.Entry<String, Long> entry : this.top.entrySet()) {
+				if (entry.getValue() < coldestCount) {
+					coldest = entry.getKey();
+					coldestCount = entry.getValue();
+				}
+			}
+			this.top.remove(coldest);
+			this.cache.remove(coldest);
+			this.top.put(key, estimate);
+		} else {
+			return;
+		}
+		publish();
+	}
+
+	private synchronized void decay() {
+		for (int i = 0; i < this.counters.length(); i++) {
+			this.counters.set(i, this.counters.get(i) >>> 1);
+		}
+		for (Map.Entry<String, Long> entry : this.top.entrySet()) {
+			entry.setValue(entry.getValue() >>> 1);
+		}
+		this.samples.addAndGet(-WINDOW / 2);
+		publish();
+	}
+
+	/*
+	 * Republishes the hot set and the entry bar of the top K; called with the lock held.
+	 */
+	private void publish() {
+		long total = this.samples.get();
+		long minimum = (this.top.size() < this.topK) ? 0 : Long.MAX_VALUE;
+		Set<String> hotKeys = new HashSet<String>();
+		for (Map.Entry<String, Long> entry : this.top.entrySet()) {
+			minimum = Math.min(minimum, entry.getValue());
+			if (total >= MIN_SAMPLES && entry.getValue() >= total * HOT_SHARE)
+				hotKeys.add(entry.getKey());
+		}
+		this.topMinimum = minimum;
+		if (!hotKeys.equals(this.hot)) {
+			this.hot = hotKeys;
+			this.cache.keySet().retainAll(hotKeys);
+		}
+	}
+
+	/**
+	 * The top K keys, most read first, with their reads scaled up by the sample rate.
+	 */
+	synchronized List<HotKey> hotKeys() {
+		List<HotKey> result = new ArrayList<HotKey>(this.top.size());
+		for (Map.Entry<String, Long> entry : this.top.entrySet()) {
+			result.add(new HotKey(entry.getKey(), entry.getValue() * this.sampleRate, this.hot.contains(entry.getKey())));
+		}
+		Collections.sort(result, new Comparator<HotKey>() {
+			@Override
+			public int compare(HotKey a, HotKey b) {
+				return (a.getReads() < b.getReads()) ? 1 : (a.getReads() > b.getReads()) ? -1 : 0;
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * The cached read of a hot key, or null if there is none or it has expired.
+	 */
+	Cached cached(String key) {
+		Cached cached = this.cache.get(key);
+		if (cached != null && cached.expires < System.currentTimeMillis()) {
+			this.cache.remove(key);
+			return null;
+		}
+		return cached;
+	}
+
+	/**
+	 * The write stamp of the key, taken before a read that may be cached.
+	 */
+	long stamp(String key) {
+		return this.stamps.get(key.hashCode() & (STAMPS - 1));
+	}
+
+	/**
+	 * Caches a read of a hot key, unless the key was written since stamp
+	 * was taken; then the value may be older than the write.
+	 */
+	void cache(String key, Object value, long millis, long stamp) {
+		if (!this.hot.contains(key) || stamp(key) != stamp)
+			return;
+		Cached cached = new Cached(value, System.currentTimeMillis() + millis);
+		this.cache.put(key, cached);
+		if (stamp(key) != stamp)
+			this.cache.remove(key, cached); // a write came in meanwhile
+	}
+
+	void invalidate(String key) {
+		this.stamps.incrementAndGet(key.hashCode() & (STAMPS - 1));
+		this.cache.remove(key);
+	}
+
+	void invalidateAll() {
+		this.cache.clear();
+	}
+
+	/**
+	 * A new, empty tracker with the same settings, for another database.
+	 */
+	HotKeyTracker copy() {
+		return new HotKeyTracker(this.topK, this.sampleRate);
+	}
+}
@@ -0,0 +1,257 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import java.nio.charset.Charset;
+
+/**
+ * HyperLogLog register arithmetic, byte compatible with Redis.
+ * <p>
+ * A value is the same string Redis stores: a 16 byte header ("HYLL", the
+ * encoding, three unused bytes and a little endian cached cardinality whose
+ * top bit marks it stale) followed by either 16384 packed 6 bit registers
+ * (dense) or run length opcodes (sparse). Elements are hashed here with
+ * MurmurHash64A exactly as Redis does, and only the resulting register
+ * updates are sent to the PFADD UDF.
+ */
+final class HyperLogLog {
+
+	static final int P = 14;
+	static final int Q = 64 - P;
+	static final int REGISTERS = 1 << P;
+	static final int REGISTER_MAX = 63;
+	static final int HEADER_SIZE = 16;
+	static final int DENSE_SIZE = HEADER_SIZE + (REGISTERS * 6 + 7) / 8;
+	static final int DENSE = 0;
+	static final int SPARSE = 1;
+
+	private static final double ALPHA_INF = 0.721347520444481703680;
+	private static final long SEED = 0xadc83b19L;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private HyperLogLog() {
+	}
+
+	static long hash(String element) {
+		return murmurHash64A(element.getBytes(UTF8), SEED);
+	}
+
+	/**
+	 * Register index for a hash: its low P bits.
+	 */
+	static int index(long hash) {
+		return (int) (hash & (REGISTERS - 1));
+	}
+
+	/**
+	 * Register value for a hash: 1 + the number of trailing zeros in the
+	 * remaining Q bits.
+	 */
+	static int rank(long hash) {
+		hash >>>= P;
+		hash |= 1L << Q;
+		return Long.numberOfTrailingZeros(hash) + 1;
+	}
+
+	static long murmurHash64A(byte[] data, long seed) {
+		final long m = 0xc6a4a7935bd1e995L;
+		final int r = 47;
+		int length = data.length;
+		long h = seed ^ (length * m);
+		int end = length - (length & 7);
+		for (int i = 0; i < end; i += 8) {
+			long k = (data[i] & 0xffL) | (data[i + 1] & 0xffL) << 8 | (data[i + 2] & 0xffL) << 16
+					| (data[i + 3] & 0xffL) << 24 | (data[i + 4] & 0xffL) << 32 | (data[i + 5] & 0xffL) << 40
+					| (data[i + 6] & 0xffL) << 48 | (data[i + 7] & 0xffL) << 56;
+			k *= m;
+			k ^= k >>> r;
+			k *= m;
+			h ^= k;
+			h *= m;
+		}
+		switch (length & 7) {
+		case 7:
+			h ^= (data[end + 6] & 0xffL) << 48;
+		case 6:
+			h ^= (data[end + 5] & 0xffL) << 40;
+		case 5:
+			h ^= (data[end + 4] & 0xffL) << 32;
+		case 4:
+			h ^= (data[end + 3] & 0xffL) << 24;
+		case 3:
+			h ^= (data[end + 2] & 0xffL) << 16;
+		case 2:
+			h ^= (data[end + 1] & 0xffL) << 8;
+		case 1:
+			h ^= (data[end] & 0xffL);
+			h *= m;
+		}
+		h ^= h >>> r;
+		h *= m;
+		h ^= h >>> r;
+		return h;
+	}
+
+	static boolean isHyperLogLog(byte[] value) {
+		return value != null && value.length >= HEADER_SIZE && value[0] == 'H' && value[1] == 'Y'
+				&& value[2] == 'L' && value[3] == 'L' && (value[4] == DENSE || value[4] == SPARSE);
+	}
+
+	/**
+	 * The cached cardinality, or -1 if it is stale.
+	 */
+	static long cachedCardinality(byte[] value) {
+		if ((value[15] & 0x80) != 0)
+			return -1;
+		long card = 0;
+		for (int i = 15; i >= 8; i--) {
+			card = (card << 8) | (value[i] & 0xff);
+		}
+		return card;
+	}
+
+	/**
+	 * Unpacks a dense or sparse value into one byte per register.
+	 */
+	static void unpack(byte[] value, byte[] registers) {
+		if (value[4] == DENSE) {
+			// four 6 bit registers in every three bytes
+			for (int reg = 0, i = HEADER_SIZE; reg < REGISTERS; reg += 4, i += 3) {
+				int b0 = value[i] & 0xff;
+				int b1 = value[i + 1] & 0xff;
+				int b2 = value[i + 2] & 0xff;
+				registers[reg] = (byte) (b0 & REGISTER_MAX);
+				registers[reg + 1] = (byte) (((b0 >>> 6) | (b1 << 2)) & REGISTER_MAX);
+				registers[reg + 2] = (byte) (((b1 >>> 4) | (b2 << 4)) & REGISTER_MAX);
+				registers[reg + 3] = (byte) (b2 >>> 2);
+			}
+		} else {
+			int reg = 0;
+			for (int i = HEADER_SIZE; i < value.length && reg < REGISTERS; i++) {
+				int op = value[i] & 0xff;
+				if ((op & 0xc0) == 0) {
+					// ZERO: 00xxxxxx
+					int run = (op & 0x3f) + 1;
+					fill(registers, reg, run, (byte) 0);
+					reg += run;
+				} else if ((op & 0xc0) == 0x40) {
+					// XZERO: 01xxxxxx yyyyyyyy
+					int run = (((op & 0x3f) << 8) | (value[++i] & 0xff)) + 1;
+					fill(registers, reg, run, (byte) 0);
+					reg += run;
+				} else {
+					// VAL: 1vvvvvxx
+					int run = (op & 0x3) + 1;
+					fill(registers, reg, run, (byte) (((op >>> 2) & 0x1f) + 1));
+					reg += run;
+				}
+			}
+			if (reg != REGISTERS)
+				throw new IllegalArgumentException("Invalid sparse HyperLogLog");
+		}
+	}
+
+	private static void fill(byte[] registers, int from, int run, byte value) {
+		int to = Math.min(REGISTERS, from + run);
+		for (int i = from; i < to; i++) {
+			registers[i] = value;
+		}
+	}
+
+	/**
+	 * Merges the registers into max, keeping the larger value of each. The
+	 * loop is a plain element-wise max so the JIT can vectorize it.
+	 */
+	static void merge(byte[] max, byte[] registers) {
+		for (int i = 0; i < REGISTERS; i++) {
+			max[i] = (byte) Math.max(max[i], registers[i]);
+		}
+	}
+
+	/**
+	 * Packs registers into a dense value with a stale cached cardinality.
+	 */
+	static byte[] packDense(byte[] registers) {
+		byte[] value = new byte[DENSE_SIZE];
+		value[0] = 'H';
+		value[1] = 'Y';
+		value[2] = 'L';
+		value[3] = 'L';
+		value[4] = DENSE;
+		value[15] = (byte) 0x80;
+		for (int reg = 0, i = HEADER_SIZE; reg < REGISTERS; reg += 4, i += 3) {
+			int r0 = registers[reg];
+			int r1 = registers[reg + 1];
+			int r2 = registers[reg + 2];
+			int r3 = registers[reg + 3];
+			value[i] = (byte) (r0 | (r1 << 6));
+			value[i + 1] = (byte) ((r1 >>> 2) | (r2 << 4));
+			value[i + 2] = (byte) ((r2 >>> 4) | (r3 << 2));
+		}
+		return value;
+	}
+
+	/**
+	 * Cardinality estimate from unpacked registers, using the same improved
+	 * estimator as Redis (Ertl, "New cardinality estimation algorithms for
+	 * HyperLogLog sketches").
+	 */
+	static long count(byte[] registers) {
+		int[] histogram = new int[64];
+		for (int i = 0; i < REGISTERS; i++) {
+			histogram[registers[i]]++;
+		}
+		double m = REGISTERS;
+		double z = m * tau((m - histogram[Q + 1]) / m);
+		for (int j = Q; j >= 1; --j) {
+			z += histogram[j];
+			z *= 0.5;
+		}
+		z += m * sigma(histogram[0] / m);
+		return Math.round(ALPHA_INF * m * m / z);
+	}
+
+	private static double sigma(double x) {
+		if (x == 1.0)
+			return Double.POSITIVE_INFINITY;
+		double zPrime;
+		double y = 1;
+		double z = x;
+		do {
+			x *= x;
+			zPrime = z;
+			z += x * y;
+			y += y;
+		} while (zPrime != z);
+		return z;
+	}
+
+	private static double tau(double x) {
+		if (x == 0.0 || x == 1.0)
+			return 0.0;
+		double zPrime;
+		double y = 1.0;
+		double z = 1 - x;
+		do {
+			x = Math.sqrt(x);
+			zPrime = z;
+			y *= 0.5;
+			z -= Math.pow(1 - x, 2) * y;
+		} while (zPrime != z);
+		return z / 3;
+	}
+}
@@ -0,0 +1,59 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import com.aerospike.client.Key;
+
+/**
+ * A direct mapped cache of Keys for String keys, so a key that is used again
+ * soon does not compute its RIPEMD-160 digest again. A slot holds the last
+ * key that hashed to it; a miss replaces it. Keys are immutable, so slots
+ * are read and written without locking.
+ */
+final class KeyCache {
+
+	private final String namespace;
+	private final String set;
+	private final Key[] keys;
+	private final int mask;
+
+	KeyCache(String namespace, String set, int size) {
+		this.namespace = namespace;
+		this.set = set;
+		int slots = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+		this.keys = new Key[slots];
+		this.mask = slots - 1;
+	}
+
+	/**
+	 * An empty cache of the same size for another set.
+	 */
+	KeyCache forSet(String set) {
+		return new KeyCache(this.namespace, set, this.keys.length);
+	}
+
+	Key get(String key) {
+		int hash = key.hashCode();
+		int index = (hash ^ (hash >>> 16)) & this.mask;
+		Key cached = this.keys[index];
+		if (cached != null && key.equals(cached.userKey.getObject()))
+			return cached;
+		Key created = new Key(this.namespace, this.set, key);
+		this.keys[index] = created;
+		return created;
+	}
+}
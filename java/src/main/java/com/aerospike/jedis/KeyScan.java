@@ -0,0 +1,265 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.IAerospikeClient;
+import com.aerospike.client.Info;
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+import com.aerospike.client.ScanCallback;
+import com.aerospike.client.cluster.Node;
+import com.aerospike.client.policy.ScanPolicy;
+
+/**
+ * A KEYS scan that runs on several nodes at once. Workers take the nodes
+ * one after another, so no node has more than one scan from this client,
+ * and the number of workers caps how many nodes are scanned together.
+ * Matching keys are put on a bounded queue by the workers and taken off,
+ * in arrival order, by the thread that iterates the scan. When the queue is
+ * full the workers wait, which holds back their scans, so a reader that
+ * stops early should cancel() the scan.
+ * <p>
+ * The scan starts when it is created. Progress is the number of records
+ * scanned against the set size the nodes reported at the start.
+ */
+public final class KeyScan implements Iterable<String> {
+
+	private static final long IDLE_PARK = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final int QUEUE_CAPACITY = 10000;
+
+	private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "redis-key-scan-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final IAerospikeClient asClient;
+	private final ScanPolicy scanPolicy;
+	private final String namespace;
+	private final String set;
+	private final String keyBin;
+	private final Pattern pattern;
+	private final Node[] nodes;
+	private final BlockingQueue<String> keys = new ArrayBlockingQueue<String>(QUEUE_CAPACITY);
+	private final AtomicInteger nextNode = new AtomicInteger();
+	private final AtomicInteger nodesScanned = new AtomicInteger();
+	private final AtomicInteger workers = new AtomicInteger();
+	private final AtomicLong recordsScanned = new AtomicLong();
+	private final long expectedRecords;
+	private volatile boolean cancelled;
+	private volatile RuntimeException failure;
+	private volatile Thread consumer;
+
+	KeyScan(IAerospikeClient asClient, ScanPolicy scanPolicy, String namespace, String set, String keyBin,
+			String pattern, int concurrency) {
+		this.asClient = asClient;
+		this.scanPolicy = scanPolicy;
+		this.namespace = namespace;
+		this.set = set;
+		this.keyBin = keyBin;
+		this.pattern = Pattern.compile(pattern);
+		this.nodes = asClient.getNodes();
+		this.expectedRecords = expectedRecords();
+		int count = Math.max(1, Math.min(concurrency, this.nodes.length));
+		this.workers.set(count);
+		for (int i = 0; i < count; i++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					work();
+				}
+			});
+		}
+	}
+
+	private long expectedRecords() {
+		// ns=test:set=tweets:objects=68763:... or, before server 3.9, ns_name=test:set_name=tweets:n_objects=68763:...
+		Pattern objects = Pattern.compile("(?:ns_name|ns)=" + Pattern.quote(this.namespace) + ":(?:set_name|set)="
+				+ Pattern.quote(this.set) + ":(?:n_objects|objects)=(\\d+)");
+		Pattern replication = Pattern.compile("(?:repl-factor|replication-factor)=(\\d+)");
+		long total = 0;
+		long copies = 1;
+		for (Node node : this.nodes) {
+			try {
+				Matcher matcher = objects.matcher(Info.request(node, "sets"));
+				while (matcher.find())
+					total += Long.parseLong(matcher.group(1));
+				// the object count includes the replicas, a scan returns only the masters
+				matcher = replication.matcher(Info.request(node, "namespace/" + this.namespace));
+				if (matcher.find())
+					copies = Math.max(copies, Long.parseLong(matcher.group(1)));
+			} catch (AerospikeException e) {
+				// the progress estimate does without this node
+			}
+		}
+		return total / Math.max(1, Math.min(copies, this.nodes.length));
+	}
+
+	private void work() {
+		ScanCallback callback = new ScanCallback() {
+			@Override
+			public void scanCallback(Key key, Record record) throws AerospikeException {
+				if (cancelled)
+					throw new AerospikeException.ScanTerminated();
+				recordsScanned.incrementAndGet();
+				Object keyString = RedisClient.userKey(key, record, keyBin);
+				if (keyString instanceof String && pattern.matcher((String) keyString).matches())
+					queue((String) keyString);
+			}
+		};
+		try {
+			int index;
+			while (!this.cancelled && (index = this.nextNode.getAndIncrement()) < this.nodes.length) {
+				this.asClient.scanNode(this.scanPolicy, this.nodes[index], this.namespace, this.set, callback, this.keyBin);
+				this.nodesScanned.incrementAndGet();
+				LockSupport.unpark(this.consumer);
+			}
+		} catch (AerospikeException.ScanTerminated e) {
+			// cancelled
+		} catch (RuntimeException e) {
+			this.failure = e;
+			this.cancelled = true;
+		} finally {
+			this.workers.decrementAndGet();
+			LockSupport.unpark(this.consumer);
+		}
+	}
+
+	/*
+	 * Waits while the queue is full, until the key fits or the scan is cancelled
+	 */
+	private void queue(String key) {
+		try {
+			while (!this.keys.offer(key, IDLE_PARK, TimeUnit.NANOSECONDS)) {
+				if (this.cancelled)
+					throw new AerospikeException.ScanTerminated();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			this.cancelled = true;
+			throw new AerospikeException.ScanTerminated();
+		}
+	}
+
+	/**
+	 * Stops the scan; the workers end at the next record they receive.
+	 */
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	public boolean isDone() {
+		return this.workers.get() == 0;
+	}
+
+	public int getNodeCount() {
+		return this.nodes.length;
+	}
+
+	public int getNodesScanned() {
+		return this.nodesScanned.get();
+	}
+
+	public long getRecordsScanned() {
+		return this.recordsScanned.get();
+	}
+
+	/**
+	 * The fraction of the set scanned so far, from 0 to 1.
+	 */
+	public double getProgress() {
+		if (isDone() || this.nodes.length == 0)
+			return 1;
+		if (this.expectedRecords == 0)
+			return (double) this.nodesScanned.get() / this.nodes.length;
+		return Math.min(0.99, (double) this.recordsScanned.get() / this.expectedRecords);
+	}
+
+	/**
+	 * Takes the next matching key, waiting for the workers if none is queued.
+	 * Returns null when the scan has finished or was cancelled; a node that
+	 * failed is reported here.
+	 */
+	public String next() {
+		this.consumer = Thread.currentThread();
+		while (true) {
+			String key = this.keys.poll();
+			if (key != null)
+				return key;
+			if (isDone()) {
+				key = this.keys.poll();
+				if (key == null && this.failure != null)
+					throw this.failure;
+				return key;
+			}
+			LockSupport.parkNanos(this, IDLE_PARK);
+		}
+	}
+
+	/**
+	 * Iterates the matching keys; can be used once, by one thread.
+	 */
+	@Override
+	public Iterator<String> iterator() {
+		return new Iterator<String>() {
+			private String next = KeyScan.this.next();
+
+			@Override
+			public boolean hasNext() {
+				return this.next != null;
+			}
+
+			@Override
+			public String next() {
+				if (this.next == null)
+					throw new NoSuchElementException();
+				String current = this.next;
+				this.next = KeyScan.this.next();
+				return current;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
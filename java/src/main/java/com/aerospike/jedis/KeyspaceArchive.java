@@ -0,0 +1,405 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.IAerospikeClient;
+import com.aerospike.client.Key;
+import com.aerospike.client.Log;
+import com.aerospike.client.Record;
+import com.aerospike.client.ResultCode;
+import com.aerospike.client.ScanCallback;
+import com.aerospike.client.cluster.Node;
+import com.aerospike.client.policy.ScanPolicy;
+
+/**
+ * A keyspace archive: every key of a set with its value and expiry time,
+ * in a local file, for RedisClient.exportKeyspace() and importKeyspace().
+ * <p>
+ * The file is a header followed by deflated blocks of about 1 MB of
+ * records. Each block is length prefixed: uncompressed length, compressed
+ * length, record count and CRC32 of the uncompressed bytes, then the
+ * compressed bytes. A block with an uncompressed length of 0 ends the file.
+ * A record is its key and value in MessagePack, as in {@link DumpFormat},
+ * each length prefixed, and its expiry time in Unix milliseconds, -1 for
+ * none. Values kept in several records, bitmaps past their first segment,
+ * GEO sets and streams, are skipped with a warning.
+ * <p>
+ * The export scans the nodes in parallel; each scan thread fills and
+ * compresses its own blocks. The import reads the file through a memory
+ * map and hands whole blocks to a pool of writers, which inflate and write
+ * them.
+ */
+final class KeyspaceArchive {
+
+	private static final byte[] MAGIC = { 'R', 'K', 'S', 'A' };
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+	private static final int BLOCK_HEADER_SIZE = 16;
+	private static final int BLOCK_SIZE = 1 << 20; // uncompressed bytes per block
+	private static final long WINDOW = 1L << 28; // bytes mapped at a time
+	private static final long AS_TIME_OFFSET = 1262304000000L; // in milliseconds
+
+	private static final class Block {
+		final byte[] compressed;
+		final int length;
+		final int count;
+		final int crc;
+
+		Block(byte[] compressed, int length, int count, int crc) {
+			this.compressed = compressed;
+			this.length = length;
+			this.count = count;
+			this.crc = crc;
+		}
+	}
+
+	private static final Block END = new Block(null, 0, 0, 0);
+
+	private final RedisClient jedis;
+	private final IAerospikeClient asClient;
+	private final ScanPolicy scanPolicy;
+	private final String namespace;
+	private final String set;
+	private final String redisBin;
+	private final String keyBin;
+	private final Compression compression;
+	private final AtomicLong records = new AtomicLong();
+	private volatile Throwable failure;
+
+	KeyspaceArchive(RedisClient jedis, IAerospikeClient asClient, ScanPolicy scanPolicy, String namespace, String set,
+			String redisBin, String keyBin, Compression compression) {
+		this.jedis = jedis;
+		this.asClient = asClient;
+		this.scanPolicy = scanPolicy;
+		this.namespace = namespace;
+		this.set = set;
+		this.redisBin = redisBin;
+		this.keyBin = keyBin;
+		this.compression = compression;
+	}
+
+	long export(File file, int concurrency) throws IOException {
+		final FileOutputStream out = new FileOutputStream(file);
+		final FileChannel channel = out.getChannel();
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.put(MAGIC).putInt(VERSION).flip();
+			writeFully(channel, header);
+
+			final Node[] nodes = this.asClient.getNodes();
+			final AtomicInteger nextNode = new AtomicInteger();
+			Thread[] workers = new Thread[Math.max(1, Math.min(concurrency, nodes.length))];
+			for (int i = 0; i < workers.length; i++) {
+				workers[i] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							scan(nodes, nextNode, channel);
+						} catch (Throwable e) {
+							failure = e;
+						}
+					}
+				}, "redis-keyspace-export-" + i);
+				workers[i].setDaemon(true);
+				workers[i].start();
+			}
+			for (Thread worker : workers)
+				join(worker);
+			rethrow();
+			writeFully(channel, ByteBuffer.allocate(BLOCK_HEADER_SIZE));
+			channel.force(false);
+		} finally {
+			out.close();
+		}
+		return this.records.get();
+	}
+
+	private void scan(Node[] nodes, AtomicInteger nextNode, final FileChannel channel) throws IOException {
+		final ByteArrayOutputStream raw = new ByteArrayOutputStream(BLOCK_SIZE + (BLOCK_SIZE >> 2));
+		final DataOutputStream data = new DataOutputStream(raw);
+		final int[] count = new int[1];
+		final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			ScanCallback callback = new ScanCallback() {
+				@Override
+				public void scanCallback(Key key, Record record) throws AerospikeException {
+					if (failure != null)
+						throw new AerospikeException.ScanTerminated();
+					Object stored = record.getValue(redisBin);
+					Object userKey = RedisClient.userKey(key, record, keyBin);
+					String spread = RedisClient.spreadType(record);
+					if (spread != null) {
+						if (Log.warnEnabled())
+							Log.warn("Keyspace export skipped " + ((userKey == null) ? key : userKey) + ", a " + spread
+									+ " kept in several records");
+						return;
+					}
+					if (stored == null || userKey == null)
+						return; // not a record of the Redis commands
+					long expireAt = -1;
+					if (record.expiration > 0) {
+						expireAt = record.expiration * 1000L + AS_TIME_OFFSET;
+						if (expireAt <= System.currentTimeMillis())
+							return;
+					}
+					try {
+						byte[] packedKey = DumpFormat.pack(userKey);
+						byte[] packedValue = DumpFormat.pack(Compression.decompress(record, redisBin, compression));
+						data.writeInt(packedKey.length);
+						data.write(packedKey);
+						data.writeLong(expireAt);
+						data.writeInt(packedValue.length);
+						data.write(packedValue);
+						count[0]++;
+						records.incrementAndGet();
+						if (raw.size() >= BLOCK_SIZE) {
+							flush(channel, raw, count[0], deflater);
+							count[0] = 0;
+						}
+					} catch (IOException e) {
+						throw new AerospikeException(ResultCode.SERIALIZE_ERROR, e);
+					}
+				}
+			};
+			int index;
+			while (this.failure == null && (index = nextNode.getAndIncrement()) < nodes.length) {
+				this.asClient.scanNode(this.scanPolicy, nodes[index], this.namespace, this.set, callback,
+						this.redisBin, Compression.FLAG_BIN, this.keyBin, BitmapStore.SEGMENTS_BIN, GeoStore.EPOCH_BIN,
+						StreamStore.LENGTH_BIN);
+			}
+			if (count[0] > 0)
+				flush(channel, raw, count[0], deflater);
+		} catch (AerospikeException.ScanTerminated e) {
+			// another worker failed
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteArrayOutputStream raw, int count, Deflater deflater)
+			throws IOException {
+		byte[] bytes = raw.toByteArray();
+		raw.reset();
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		deflater.reset();
+		deflater.setInput(bytes);
+		deflater.finish();
+		byte[] compressed = new byte[bytes.length + 64];
+		int length = 0;
+		while (!deflater.finished()) {
+			if (length == compressed.length)
+				compressed = Arrays.copyOf(compressed, compressed.length * 2);
+			length += deflater.deflate(compressed, length, compressed.length - length);
+		}
+		ByteBuffer block = ByteBuffer.allocate(BLOCK_HEADER_SIZE + length);
+		block.putInt(bytes.length).putInt(length).putInt(count).putInt((int) crc.getValue());
+		block.put(compressed, 0, length).flip();
+		synchronized (channel) {
+			writeFully(channel, block);
+		}
+	}
+
+	long load(File file, final boolean replace) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		final BlockingQueue<Block> blocks = new ArrayBlockingQueue<Block>(16);
+		Thread[] writers = new Thread[Math.max(4, 2 * Runtime.getRuntime().availableProcessors())];
+		try {
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			if (size < HEADER_SIZE)
+				throw new IOException("Not a keyspace archive: " + file);
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, WINDOW));
+			long mapStart = 0;
+			byte[] magic = new byte[MAGIC.length];
+			map.get(magic);
+			if (!Arrays.equals(magic, MAGIC) || map.getInt() != VERSION)
+				throw new IOException("Not a keyspace archive: " + file);
+
+			for (int i = 0; i < writers.length; i++) {
+				writers[i] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							write(blocks, replace);
+						} catch (InterruptedException e) {
+							failure = e;
+						}
+					}
+				}, "redis-keyspace-import-" + i);
+				writers[i].setDaemon(true);
+				writers[i].start();
+			}
+
+			long position = HEADER_SIZE;
+			while (this.failure == null) {
+				if (position + BLOCK_HEADER_SIZE > size)
+					throw new IOException("Keyspace archive is truncated: " + file);
+				if (position + BLOCK_HEADER_SIZE > mapStart + map.limit()) {
+					mapStart = position;
+					map = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, Math.min(size - mapStart, WINDOW));
+				}
+				map.position((int) (position - mapStart));
+				int length = map.getInt();
+				int compressedLength = map.getInt();
+				int count = map.getInt();
+				int crc = map.getInt();
+				if (length == 0)
+					break;
+				long end = position + BLOCK_HEADER_SIZE + compressedLength;
+				if (compressedLength < 0 || end > size)
+					throw new IOException("Keyspace archive is truncated: " + file);
+				if (end > mapStart + map.limit()) {
+					mapStart = position;
+					map = channel.map(FileChannel.MapMode.READ_ONLY, mapStart,
+							Math.min(size - mapStart, Math.max(WINDOW, end - mapStart)));
+					map.position(BLOCK_HEADER_SIZE);
+				}
+				byte[] compressed = new byte[compressedLength];
+				map.get(compressed);
+				blocks.put(new Block(compressed, length, count, crc));
+				position = end;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Keyspace import interrupted");
+		} finally {
+			try {
+				for (Thread writer : writers) {
+					if (writer != null)
+						blocks.put(END);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			for (Thread writer : writers) {
+				if (writer != null)
+					join(writer);
+			}
+			in.close();
+		}
+		rethrow();
+		return this.records.get();
+	}
+
+	/*
+	 * Runs until the END block; after a failure it keeps taking blocks, so
+	 * the reader never waits on a full queue
+	 */
+	private void write(BlockingQueue<Block> blocks, boolean replace) throws InterruptedException {
+		Inflater inflater = new Inflater();
+		try {
+			while (true) {
+				Block block = blocks.take();
+				if (block == END)
+					return;
+				if (this.failure != null)
+					continue;
+				try {
+					write(block, inflater, replace);
+				} catch (Throwable e) {
+					this.failure = e;
+				}
+			}
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private void write(Block block, Inflater inflater, boolean replace) throws DataFormatException, IOException {
+		byte[] bytes = new byte[block.length];
+		inflater.reset();
+		inflater.setInput(block.compressed);
+		int length = 0;
+		while (length < bytes.length && !inflater.finished()) {
+			int inflated = inflater.inflate(bytes, length, bytes.length - length);
+			if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+				break;
+			length += inflated;
+		}
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, length);
+		if (length != bytes.length || (int) crc.getValue() != block.crc)
+			throw new IOException("Keyspace archive block is corrupt");
+		ByteBuffer records = ByteBuffer.wrap(bytes);
+		for (int i = 0; i < block.count; i++) {
+			int keyLength = records.getInt();
+			Object key = DumpFormat.unpack(bytes, records.position(), keyLength);
+			records.position(records.position() + keyLength);
+			long expireAt = records.getLong();
+			int valueLength = records.getInt();
+			Object value = DumpFormat.unpack(bytes, records.position(), valueLength);
+			records.position(records.position() + valueLength);
+			int expiration = -1; // never expires
+			if (expireAt >= 0) {
+				long ttl = expireAt - System.currentTimeMillis();
+				if (ttl <= 0)
+					continue;
+				expiration = (int) Math.max(1, (ttl + 999) / 1000);
+			}
+			if (this.jedis.restoreValue(key, value, expiration, replace))
+				this.records.incrementAndGet();
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	private static void join(Thread thread) throws InterruptedIOException {
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Keyspace archive interrupted");
+		}
+	}
+
+	private void rethrow() throws IOException {
+		Throwable e = this.failure;
+		if (e instanceof IOException)
+			throw (IOException) e;
+		if (e instanceof RuntimeException)
+			throw (RuntimeException) e;
+		if (e instanceof Error)
+			throw (Error) e;
+		if (e != null)
+			throw new IOException(e);
+	}
+}
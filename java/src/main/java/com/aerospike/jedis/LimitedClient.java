@@ -0,0 +1,913 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import java.util.List;
+import java.util.Map;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Bin;
+import com.aerospike.client.IAerospikeClient;
+import com.aerospike.client.Key;
+import com.aerospike.client.Language;
+import com.aerospike.client.Operation;
+import com.aerospike.client.Record;
+import com.aerospike.client.ScanCallback;
+import com.aerospike.client.Value;
+import com.aerospike.client.admin.Privilege;
+import com.aerospike.client.admin.Role;
+import com.aerospike.client.admin.User;
+import com.aerospike.client.cluster.Node;
+import com.aerospike.client.large.LargeList;
+import com.aerospike.client.large.LargeMap;
+import com.aerospike.client.large.LargeSet;
+import com.aerospike.client.large.LargeStack;
+import com.aerospike.client.policy.AdminPolicy;
+import com.aerospike.client.policy.BatchPolicy;
+import com.aerospike.client.policy.Policy;
+import com.aerospike.client.policy.QueryPolicy;
+import com.aerospike.client.policy.ScanPolicy;
+import com.aerospike.client.policy.WritePolicy;
+import com.aerospike.client.query.IndexCollectionType;
+import com.aerospike.client.query.IndexType;
+import com.aerospike.client.query.RecordSet;
+import com.aerospike.client.query.ResultSet;
+import com.aerospike.client.query.Statement;
+import com.aerospike.client.task.ExecuteTask;
+import com.aerospike.client.task.IndexTask;
+import com.aerospike.client.task.RegisterTask;
+
+/**
+ * A client that takes a slot from a {@link ConcurrencyLimiter} around every
+ * record command, and around every call on the large lists it hands out.
+ * Scans, queries, UDF registration and admin commands pass straight through.
+ */
+final class LimitedClient implements IAerospikeClient {
+
+	private final ConcurrencyLimiter limiter;
+	private final IAerospikeClient client;
+
+	LimitedClient(ConcurrencyLimiter limiter, IAerospikeClient client) {
+		this.limiter = limiter;
+		this.client = client;
+	}
+
+	@Override
+	public void close() {
+		this.client.close();
+	}
+
+	@Override
+	public boolean isConnected() {
+		return this.client.isConnected();
+	}
+
+	@Override
+	public Node[] getNodes() {
+		return this.client.getNodes();
+	}
+
+	@Override
+	public List<String> getNodeNames() {
+		return this.client.getNodeNames();
+	}
+
+	@Override
+	public Node getNode(String nodeName) throws AerospikeException.InvalidNode {
+		return this.client.getNode(nodeName);
+	}
+
+	@Override
+	public void put(WritePolicy policy, Key key, Bin... bins) throws AerospikeException {
+		long start = this.limiter.acquire();
+		AerospikeException failure = null;
+		try {
+			this.client.put(policy, key, bins);
+		} catch (AerospikeException e) {
+			throw failure = e;
+		} finally {
+			this.limiter.release(start, failure);
+		}
+	}
+
+	@Override
+	public void append(WritePolicy policy, Key key, Bin... bins) throws AerospikeException {
+		long start = this.limiter.acquire();
+		AerospikeException failure = null;
+		try {
+			this.client.append(policy, key, bins);
+		} catch (AerospikeException e) {
+			throw failure = e;
+		} finally {
+			this.limiter.release(start, failure);
+		}
+	}
+
+	@Override
+	public void prepend(WritePolicy policy, Key key, Bin... bins) throws AerospikeException {
+		long start = this.limiter.acquire();
+		AerospikeException failure = null;
+		try {
+			this.client.prepend(policy, key, bins);
+		} catch (AerospikeException e) {
+			throw failure = e;
+		} finally {
+			this.limiter.release(start, failure);
+		}
+	}
+
+	@Override
+	public void add(WritePolicy policy, Key key, Bin... bins) throws AerospikeException {
+		long start = this.limiter.acquire();
+		AerospikeException failure = null;
+		try {
+			this.client.add(policy, key, bins);
+		} catch (AerospikeException e) {
+			throw failure = e;
+		} finally {
+			this.limiter.release(start, failure);
+		}
+	}
+
+	@Override
+	public boolean delete(WritePolicy policy, Key key) throws AerospikeException {
+		long start = this.limiter.acquire();
+		AerospikeException failure = null;
+		try {
+			return this.client.delete(policy, key);
+		} catch (AerospikeException e) {
+			throw failure = e;
+		} finally {
+			this.limiter.release(start, failure);
+		}
+	}
+
+	@Override
+	public void touch(WritePolicy policy, Key key) throws AerospikeException {
+		long start = this.limiter.acquire();
+		AerospikeException failure = null;
+		try {
+			this.client.touch(policy, key);
+		} catch (AerospikeException e) {
+			throw failure = e;
+		} finally {
+			this.limiter.release(start, failure);
+		}
+	}
+
+	@Override
+	public boolean exists(Policy policy, Key key) throws AerospikeException {
+		long start = this.limiter.acquire();
+		AerospikeException failure = null;
+		try {
+			return this.client.exists(policy, key);
+		} catch (AerospikeException e) {
+			throw failure = e;
+		} finally {
+			this.limiter.release(start, failure);
+		}
+	}
+
+	@Override
+	public boolean[] exists(Policy policy, Key[] keys) throws AerospikeException {
+		long start = this.limiter.acquire();
+		AerospikeException failure = null;
+		try {
+			return this.client.exists(policy, keys);
+		} catch (AerospikeException e) {
+			throw failure = e;
+		} finally {
+			this.limiter.release(start, failure);
+		}
+	}
+
+	@Override
+	public boolean[] exists(BatchPolicy policy, Key[] keys) throws AerospikeException {
+		long start = this.limiter.acquire();
+		AerospikeException failure = null;
+		try {
+			return this.client.exists(policy, keys);
+		} catch (AerospikeException e) {
+			throw failure = e;
+		} finally {
+			this.limiter.release(start, failure);
+		}
+	}
+
+	@Override
+	public Record get(Policy policy, Key key) throws AerospikeException {
+		long start = this.limiter.acquire();
+		AerospikeException failure = null;
+		try {
+			return this.client.get(policy, key);
+		} catch (AerospikeException e) {
+			throw failure = e;
+		} finally {
+			this.limiter.release(start, failure);
+		}
+	}
+
+	@Override
+	public Record get(Policy policy, Key key, String... binNames) throws AerospikeException {
+		long start = this.limiter.acquire();
+		AerospikeException failure = null;
+		try {
+			return this.client.get(policy, key, binNames);
+		} catch (AerospikeException e) {
+			throw failure = e;
+		} finally {
+			this.limiter.release(start, failure);
+		}
+	}
+
+	@Override
+	public Record getHeader(Policy policy, Key key) throws AerospikeException {
+		long start = this.limiter.acquire();
+		AerospikeException failure = null;
+		try {
+			return this.client.getHeader(policy, key);
+		} catch (AerospikeException e) {
+			throw failure = e;
+		} finally {
+			this.limiter.release(start, failure);
+		}
+	}
+
+	@Override
+	public Record[] get(Policy policy, Key[] keys) throws AerospikeException {
+		long start = this.limiter.acquire();
+		AerospikeException failure = null;
+		try {
+			return this.client.get(policy, keys);
+		} catch (AerospikeException e) {
+			throw failure = e;
+		} finally {
+			this.limiter.release(start, failure);
+		}
+	}
+
+	@Override
+	public Record[] get(BatchPolicy policy, Key[] keys) throws AerospikeException {
+		long start = this.limiter.acquire();
+		AerospikeException failure = null;
+		try {
+			return this.client.get(policy, keys);
+		} catch (AerospikeException e) {
+			throw failure = e;
+		} finally {
+			this.limiter.release(start, failure);
+		}
+	}
+
+	@Override
+	public Record[] get(Policy policy, Key[] keys, String... binNames) throws AerospikeException {
+		long start = this.limiter.acquire();
+		AerospikeException failure = null;
+		try {
+			return this.client.get(policy, keys, binNames);
+		} catch (AerospikeException e) {
+			throw failure = e;
+		} finally {
+			this.limiter.release(start, failure);
+		}
+	}
+
+	@Override
+	public Record[] get(BatchPolicy policy, Key[] keys, String... binNames) throws AerospikeException {
+		long start = this.limiter.acquire();
+		AerospikeException failure = null;
+		try {
+			return this.client.get(policy, keys, binNames);
+		} catch (AerospikeException e) {
+			throw failure = e;
+		} finally {
+			this.limiter.release(start, failure);
+		}
+	}
+
+	@Override
+	public Record[] getHeader(Policy policy, Key[] keys) throws AerospikeException {
+		long start = this.limiter.acquire();
+		AerospikeException failure = null;
+		try {
+			return this.client.getHeader(policy, keys);
+		} catch (AerospikeException e) {
+			throw failure = e;
+		} finally {
+			this.limiter.release(start, failure);
+		}
+	}
+
+	@Override
+	public Record[] getHeader(BatchPolicy policy, Key[] keys) throws AerospikeException {
+		long start = this.limiter.acquire();
+		AerospikeException failure = null;
+		try {
+			return this.client.getHeader(policy, keys);
+		} catch (AerospikeException e) {
+			throw failure = e;
+		} finally {
+			this.limiter.release(start, failure);
+		}
+	}
+
+	@Override
+	public Record operate(WritePolicy policy, Key key, Operation... operations) throws AerospikeException {
+		long start = this.limiter.acquire();
+		AerospikeException failure = null;
+		try {
+			return this.client.operate(policy, key, operations);
+		} catch (AerospikeException e) {
+			throw failure = e;
+		} finally {
+			this.limiter.release(start, failure);
+		}
+	}
+
+	@Override
+	public Object execute(Policy policy, Key key, String packageName, String functionName, Value... args) throws AerospikeException {
+		long start = this.limiter.acquire();
+		AerospikeException failure = null;
+		try {
+			return this.client.execute(policy, key, packageName, functionName, args);
+		} catch (AerospikeException e) {
+			throw failure = e;
+		} finally {
+			this.limiter.release(start, failure);
+		}
+	}
+
+	@Override
+	public Object execute(WritePolicy policy, Key key, String packageName, String functionName, Value... args) throws AerospikeException {
+		long start = this.limiter.acquire();
+		AerospikeException failure = null;
+		try {
+			return this.client.execute(policy, key, packageName, functionName, args);
+		} catch (AerospikeException e) {
+			throw failure = e;
+		} finally {
+			this.limiter.release(start, failure);
+		}
+	}
+
+	@Override
+	public void scanAll(ScanPolicy policy, String namespace, String setName, ScanCallback callback, String... binNames) throws AerospikeException {
+		this.client.scanAll(policy, namespace, setName, callback, binNames);
+	}
+
+	@Override
+	public void scanNode(ScanPolicy policy, String nodeName, String namespace, String setName, ScanCallback callback, String... binNames) throws AerospikeException {
+		this.client.scanNode(policy, nodeName, namespace, setName, callback, binNames);
+	}
+
+	@Override
+	public void scanNode(ScanPolicy policy, Node node, String namespace, String setName, ScanCallback callback, String... binNames) throws AerospikeException {
+		this.client.scanNode(policy, node, namespace, setName, callback, binNames);
+	}
+
+	@Override
+	public LargeList getLargeList(Policy policy, Key key, String binName, String userModule) {
+		return new LimitedLargeList(this.limiter, this.client.getLargeList(policy, key, binName, userModule));
+	}
+
+	@Override
+	public LargeList getLargeList(WritePolicy policy, Key key, String binName, String userModule) {
+		return new LimitedLargeList(this.limiter, this.client.getLargeList(policy, key, binName, userModule));
+	}
+
+	@Override
+	public LargeList getLargeList(WritePolicy policy, Key key, String binName) {
+		return new LimitedLargeList(this.limiter, this.client.getLargeList(policy, key, binName));
+	}
+
+	@Override
+	public LargeMap getLargeMap(Policy policy, Key key, String binName, String userModule) {
+		return this.client.getLargeMap(policy, key, binName, userModule);
+	}
+
+	@Override
+	public LargeMap getLargeMap(WritePolicy policy, Key key, String binName, String userModule) {
+		return this.client.getLargeMap(policy, key, binName, userModule);
+	}
+
+	@Override
+	public LargeSet getLargeSet(Policy policy, Key key, String binName, String userModule) {
+		return this.client.getLargeSet(policy, key, binName, userModule);
+	}
+
+	@Override
+	public LargeSet getLargeSet(WritePolicy policy, Key key, String binName, String userModule) {
+		return this.client.getLargeSet(policy, key, binName, userModule);
+	}
+
+	@Override
+	public LargeStack getLargeStack(Policy policy, Key key, String binName, String userModule) {
+		return this.client.getLargeStack(policy, key, binName, userModule);
+	}
+
+	@Override
+	public LargeStack getLargeStack(WritePolicy policy, Key key, String binName, String userModule) {
+		return this.client.getLargeStack(policy, key, binName, userModule);
+	}
+
+	@Override
+	public RegisterTask register(Policy policy, String clientPath, String serverPath, Language language) throws AerospikeException {
+		return this.client.register(policy, clientPath, serverPath, language);
+	}
+
+	@Override
+	public RegisterTask register(Policy policy, ClassLoader resourceLoader, String resourcePath, String serverPath, Language language) throws AerospikeException {
+		return this.client.register(policy, resourceLoader, resourcePath, serverPath, language);
+	}
+
+	@Override
+	public ExecuteTask execute(Policy policy, Statement statement, String packageName, String functionName, Value... functionArgs) throws AerospikeException {
+		return this.client.execute(policy, statement, packageName, functionName, functionArgs);
+	}
+
+	@Override
+	public ExecuteTask execute(WritePolicy policy, Statement statement, String packageName, String functionName, Value... functionArgs) throws AerospikeException {
+		return this.client.execute(policy, statement, packageName, functionName, functionArgs);
+	}
+
+	@Override
+	public RecordSet query(QueryPolicy policy, Statement statement) throws AerospikeException {
+		return this.client.query(policy, statement);
+	}
+
+	@Override
+	public RecordSet queryNode(QueryPolicy policy, Statement statement, Node node) throws AerospikeException {
+		return this.client.queryNode(policy, statement, node);
+	}
+
+	@Override
+	public ResultSet queryAggregate(QueryPolicy policy, Statement statement, String packageName, String functionName, Value... functionArgs) throws AerospikeException {
+		return this.client.queryAggregate(policy, statement, packageName, functionName, functionArgs);
+	}
+
+	@Override
+	public ResultSet queryAggregate(QueryPolicy policy, Statement statement) throws AerospikeException {
+		return this.client.queryAggregate(policy, statement);
+	}
+
+	@Override
+	public IndexTask createIndex(Policy policy, String namespace, String setName, String indexName, String binName, IndexType indexType) throws AerospikeException {
+		return this.client.createIndex(policy, namespace, setName, indexName, binName, indexType);
+	}
+
+	@Override
+	public IndexTask createIndex(Policy policy, String namespace, String setName, String indexName, String binName, IndexType indexType, IndexCollectionType indexCollectionType) throws AerospikeException {
+		return this.client.createIndex(policy, namespace, setName, indexName, binName, indexType, indexCollectionType);
+	}
+
+	@Override
+	public void dropIndex(Policy policy, String namespace, String setName, String indexName) throws AerospikeException {
+		this.client.dropIndex(policy, namespace, setName, indexName);
+	}
+
+	@Override
+	public void createUser(AdminPolicy policy, String user, String password, List<String> roles) throws AerospikeException {
+		this.client.createUser(policy, user, password, roles);
+	}
+
+	@Override
+	public void dropUser(AdminPolicy policy, String user) throws AerospikeException {
+		this.client.dropUser(policy, user);
+	}
+
+	@Override
+	public void changePassword(AdminPolicy policy, String user, String password) throws AerospikeException {
+		this.client.changePassword(policy, user, password);
+	}
+
+	@Override
+	public void grantRoles(AdminPolicy policy, String user, List<String> roles) throws AerospikeException {
+		this.client.grantRoles(policy, user, roles);
+	}
+
+	@Override
+	public void revokeRoles(AdminPolicy policy, String user, List<String> roles) throws AerospikeException {
+		this.client.revokeRoles(policy, user, roles);
+	}
+
+	@Override
+	public void createRole(AdminPolicy policy, String roleName, List<Privilege> privileges) throws AerospikeException {
+		this.client.createRole(policy, roleName, privileges);
+	}
+
+	@Override
+	public void dropRole(AdminPolicy policy, String roleName) throws AerospikeException {
+		this.client.dropRole(policy, roleName);
+	}
+
+	@Override
+	public void grantPrivileges(AdminPolicy policy, String roleName, List<Privilege> privileges) throws AerospikeException {
+		this.client.grantPrivileges(policy, roleName, privileges);
+	}
+
+	@Override
+	public void revokePrivileges(AdminPolicy policy, String roleName, List<Privilege> privileges) throws AerospikeException {
+		this.client.revokePrivileges(policy, roleName, privileges);
+	}
+
+	@Override
+	public User queryUser(AdminPolicy policy, String user) throws AerospikeException {
+		return this.client.queryUser(policy, user);
+	}
+
+	@Override
+	public List<User> queryUsers(AdminPolicy policy) throws AerospikeException {
+		return this.client.queryUsers(policy);
+	}
+
+	@Override
+	public Role queryRole(AdminPolicy policy, String roleName) throws AerospikeException {
+		return this.client.queryRole(policy, roleName);
+	}
+
+	@Override
+	public List<Role> queryRoles(AdminPolicy policy) throws AerospikeException {
+		return this.client.queryRoles(policy);
+	}
+
+	/**
+	 * A large list whose calls, each a UDF call on the server, take a slot.
+	 */
+	private static final class LimitedLargeList extends LargeList {
+
+		private final ConcurrencyLimiter limiter;
+		private final LargeList list;
+
+		LimitedLargeList(ConcurrencyLimiter limiter, LargeList list) {
+			// every call goes to the wrapped list, so this one needs no client
+			super(null, null, null, null);
+			this.limiter = limiter;
+			this.list = list;
+		}
+
+		@Override
+		public void add(Value value) throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				this.list.add(value);
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public void add(Value... values) throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				this.list.add(values);
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public void add(List<?> values) throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				this.list.add(values);
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public void update(Value value) throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				this.list.update(value);
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public void update(Value... values) throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				this.list.update(values);
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public void update(List<?> values) throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				this.list.update(values);
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public void remove(Value value) throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				this.list.remove(value);
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public void remove(List<?> values) throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				this.list.remove(values);
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public int remove(Value begin, Value end) throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				return this.list.remove(begin, end);
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public List<?> find(Value value) throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				return this.list.find(value);
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public List<?> findThenFilter(Value value, String filterModule, String filterName, Value... filterArgs) throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				return this.list.findThenFilter(value, filterModule, filterName, filterArgs);
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public List<?> findFirst(int count) throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				return this.list.findFirst(count);
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public List<?> findFirst(int count, String filterModule, String filterName, Value... filterArgs) throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				return this.list.findFirst(count, filterModule, filterName, filterArgs);
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public List<?> findLast(int count) throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				return this.list.findLast(count);
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public List<?> findLast(int count, String filterModule, String filterName, Value... filterArgs) throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				return this.list.findLast(count, filterModule, filterName, filterArgs);
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public List<?> findFrom(Value begin, int count) throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				return this.list.findFrom(begin, count);
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public List<?> findFrom(Value begin, int count, String filterModule, String filterName, Value... filterArgs) throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				return this.list.findFrom(begin, count, filterModule, filterName, filterArgs);
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public List<?> range(Value begin, Value end) throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				return this.list.range(begin, end);
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public List<?> range(Value begin, Value end, int count) throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				return this.list.range(begin, end, count);
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public List<?> range(Value begin, Value end, String filterModule, String filterName, Value... filterArgs) throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				return this.list.range(begin, end, filterModule, filterName, filterArgs);
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public List<?> range(Value begin, Value end, int count, String filterModule, String filterName, Value... filterArgs) throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				return this.list.range(begin, end, count, filterModule, filterName, filterArgs);
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public List<?> scan() throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				return this.list.scan();
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public List<?> filter(String filterModule, String filterName, Value... filterArgs) throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				return this.list.filter(filterModule, filterName, filterArgs);
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public void destroy() throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				this.list.destroy();
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public int size() throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				return this.list.size();
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public Map<?, ?> getConfig() throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				return this.list.getConfig();
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+
+		@Override
+		public void setPageSize(int pageSize) throws AerospikeException {
+			long start = this.limiter.acquire();
+			AerospikeException failure = null;
+			try {
+				this.list.setPageSize(pageSize);
+			} catch (AerospikeException e) {
+				throw failure = e;
+			} finally {
+				this.limiter.release(start, failure);
+			}
+		}
+	}
+}
@@ -0,0 +1,201 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.IAerospikeClient;
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+import com.aerospike.client.async.AsyncClient;
+import com.aerospike.client.listener.DeleteListener;
+import com.aerospike.client.listener.ExecuteListener;
+import com.aerospike.client.listener.ExistsArrayListener;
+import com.aerospike.client.listener.ExistsListener;
+import com.aerospike.client.listener.RecordArrayListener;
+import com.aerospike.client.listener.RecordListener;
+import com.aerospike.client.listener.WriteListener;
+
+/**
+ * Runs the blocking record commands of IAerospikeClient on an AsyncClient.
+ * <p>
+ * The calling thread starts the command on the async client's selector
+ * threads and parks with LockSupport until the listener hands back the
+ * result. A virtual thread that parks gives up its carrier, so a very large
+ * number of waiting requests needs only the selector threads and a few
+ * carriers. Commands with no async form (scans, queries, large data types,
+ * UDFs called with a read Policy) run synchronously as before.
+ */
+final class ParkingClient {
+
+	private static final Method NO_ASYNC_FORM;
+
+	static {
+		try {
+			NO_ASYNC_FORM = Object.class.getMethod("toString");
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// IAerospikeClient method to the AsyncClient method taking a listener
+	private static final Map<Method, Method> asyncForms = new ConcurrentHashMap<Method, Method>();
+
+	private ParkingClient() {
+	}
+
+	static IAerospikeClient wrap(final AsyncClient client) {
+		return (IAerospikeClient) Proxy.newProxyInstance(IAerospikeClient.class.getClassLoader(),
+				new Class<?>[] { IAerospikeClient.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						Method async = asyncForm(method);
+						try {
+							if (async == null)
+								return method.invoke(client, args);
+							Listener listener = new Listener(Thread.currentThread());
+							Object[] asyncArgs = new Object[args.length + 1];
+							asyncArgs[0] = args[0];
+							asyncArgs[1] = listener;
+							System.arraycopy(args, 1, asyncArgs, 2, args.length - 1);
+							async.invoke(client, asyncArgs);
+							return listener.await();
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				});
+	}
+
+	private static Method asyncForm(Method method) {
+		Method async = asyncForms.get(method);
+		if (async == null) {
+			async = findAsyncForm(method);
+			asyncForms.put(method, (async == null) ? NO_ASYNC_FORM : async);
+		}
+		return (async == NO_ASYNC_FORM) ? null : async;
+	}
+
+	private static Method findAsyncForm(Method method) {
+		Class<?>[] types = method.getParameterTypes();
+		if (types.length < 2 || types[1] != Key.class && types[1] != Key[].class)
+			return null;
+		boolean batch = types[1] == Key[].class;
+		String name = method.getName();
+		Class<?> listener;
+		if (name.equals("put") || name.equals("append") || name.equals("prepend") || name.equals("add") || name.equals("touch"))
+			listener = WriteListener.class;
+		else if (name.equals("delete"))
+			listener = DeleteListener.class;
+		else if (name.equals("exists"))
+			listener = batch ? ExistsArrayListener.class : ExistsListener.class;
+		else if (name.equals("get") || name.equals("getHeader") || name.equals("operate"))
+			listener = batch ? RecordArrayListener.class : RecordListener.class;
+		else if (name.equals("execute"))
+			listener = ExecuteListener.class;
+		else
+			return null;
+		Class<?>[] asyncTypes = new Class<?>[types.length + 1];
+		asyncTypes[0] = types[0];
+		asyncTypes[1] = listener;
+		System.arraycopy(types, 1, asyncTypes, 2, types.length - 1);
+		try {
+			return AsyncClient.class.getMethod(name, asyncTypes);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Receives the result of one command and unparks the thread waiting for it.
+	 */
+	private static final class Listener implements WriteListener, DeleteListener, ExistsListener, ExistsArrayListener,
+			RecordListener, RecordArrayListener, ExecuteListener {
+		private final Thread waiter;
+		private volatile boolean done;
+		private Object result;
+		private AerospikeException failure;
+
+		Listener(Thread waiter) {
+			this.waiter = waiter;
+		}
+
+		Object await() {
+			boolean interrupted = false;
+			// the command always completes, if only by timing out
+			while (!this.done) {
+				LockSupport.park(this);
+				if (Thread.interrupted())
+					interrupted = true;
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+			if (this.failure != null)
+				throw this.failure;
+			return this.result;
+		}
+
+		private void complete(Object result, AerospikeException failure) {
+			this.result = result;
+			this.failure = failure;
+			this.done = true;
+			LockSupport.unpark(this.waiter);
+		}
+
+		@Override
+		public void onSuccess(Key key) {
+			complete(null, null);
+		}
+
+		@Override
+		public void onSuccess(Key key, boolean exists) {
+			complete(exists, null);
+		}
+
+		@Override
+		public void onSuccess(Key[] keys, boolean[] exists) {
+			complete(exists, null);
+		}
+
+		@Override
+		public void onSuccess(Key key, Record record) {
+			complete(record, null);
+		}
+
+		@Override
+		public void onSuccess(Key[] keys, Record[] records) {
+			complete(records, null);
+		}
+
+		@Override
+		public void onSuccess(Key key, Object result) {
+			complete(result, null);
+		}
+
+		@Override
+		public void onFailure(AerospikeException e) {
+			complete(null, e);
+		}
+	}
+}
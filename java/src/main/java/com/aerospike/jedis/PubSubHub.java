@@ -0,0 +1,317 @@
+/*
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.Key;
+import com.aerospike.client.Log;
+import com.aerospike.client.Record;
+import com.aerospike.client.Value;
+import com.aerospike.client.policy.BatchPolicy;
+import com.aerospike.client.policy.Policy;
+
+/**
+ * Delivers Pub/Sub messages to every RedisPubSub subscriber in this JVM.
+ * <p>
+ * Each channel is a ring buffer record written by the PUBLISH UDF. One hub
+ * exists per RedisClient, shared by its database views; it polls every subscribed
+ * channel with a single batch read of the sequence bins, then tails only the
+ * channels that moved and fans the messages out to the local subscribers.
+ * Pattern subscriptions are compiled into a {@link GlobTrie} and matched
+ * against the channel directory, which PUBLISH updates when a channel is
+ * first used. A hub whose client was closed stops polling.
+ */
+final class PubSubHub {
+
+	static final String SEQ_BIN = "redis-seq";
+	static final String RING_BIN = "redis-ring";
+	static final String DIRECTORY_BIN = "redis-channels";
+	static final String DIRECTORY_KEY = "redis-pubsub-channels";
+	static final int CAPACITY = 1024; // messages kept per channel
+
+	private static final long POLL_INTERVAL = 2; // in milliseconds
+	private static final long DIRECTORY_INTERVAL = 500; // in milliseconds
+
+	private static final ScheduledExecutorService poller = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "redis-pubsub-poller");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private static final class Channel {
+		final String name;
+		final Key key;
+		final List<RedisPubSub> subscribers = new CopyOnWriteArrayList<RedisPubSub>();
+		volatile long lastSeq;
+		volatile boolean patternMatched;
+
+		Channel(String name, Key key, long lastSeq) {
+			this.name = name;
+			this.key = key;
+			this.lastSeq = lastSeq;
+		}
+	}
+
+	private final AerospikeClient asClient;
+	private final String namespace;
+	private final String set;
+	private final Policy policy = new Policy();
+	private final BatchPolicy batchPolicy = new BatchPolicy();
+	private final Map<String, Channel> channels = new ConcurrentHashMap<String, Channel>();
+	private final GlobTrie<RedisPubSub> patterns = new GlobTrie<RedisPubSub>();
+	private final Map<String, Long> patternSince = new HashMap<String, Long>();
+	private final AtomicBoolean polling = new AtomicBoolean();
+	private volatile boolean pollAgain;
+	private volatile long lastDirectoryRead;
+	private ScheduledFuture<?> pollTask;
+
+	private final Runnable pollRunnable = new Runnable() {
+		@Override
+		public void run() {
+			poll();
+		}
+	};
+
+	PubSubHub(AerospikeClient asClient, String namespace, String set) {
+		this.asClient = asClient;
+		this.namespace = namespace;
+		this.set = set;
+	}
+
+	Key channelKey(String channel) {
+		return new Key(this.namespace, this.set, channel);
+	}
+
+	/**
+	 * Number of local subscribers that will receive a message on the channel.
+	 */
+	synchronized int receivers(String channel) {
+		Channel state = this.channels.get(channel);
+		int count = (state == null) ? 0 : state.subscribers.size();
+		return count + this.patterns.match(channel).size();
+	}
+
+	/**
+	 * Called after a local PUBLISH so subscribers in this JVM see it without
+	 * waiting for the next poll.
+	 */
+	void published() {
+		if (!this.channels.isEmpty())
+			poller.execute(this.pollRunnable);
+	}
+
+	synchronized void subscribe(RedisPubSub subscriber, String... names) {
+		for (String name : names) {
+			if (!subscriber.addChannel(name))
+				continue;
+			Channel channel = this.channels.get(name);
+			if (channel == null) {
+				channel = new Channel(name, channelKey(name), currentSeq(name));
+				this.channels.put(name, channel);
+			}
+			channel.subscribers.add(subscriber);
+		}
+		startPolling();
+	}
+
+	synchronized void unsubscribe(RedisPubSub subscriber, String... names) {
+		for (String name : names) {
+			if (!subscriber.removeChannel(name))
+				continue;
+			Channel channel = this.channels.get(name);
+			if (channel != null) {
+				channel.subscribers.remove(subscriber);
+				if (channel.subscribers.isEmpty() && !channel.patternMatched)
+					this.channels.remove(name);
+			}
+		}
+		stopPollingIfIdle();
+	}
+
+	synchronized void psubscribe(RedisPubSub subscriber, String... patterns) {
+		for (String pattern : patterns) {
+			if (!subscriber.addPattern(pattern))
+				continue;
+			this.patterns.add(pattern, subscriber);
+			if (!this.patternSince.containsKey(pattern))
+				this.patternSince.put(pattern, System.currentTimeMillis());
+		}
+		this.lastDirectoryRead = 0;
+		startPolling();
+	}
+
+	synchronized void punsubscribe(RedisPubSub subscriber, String... patterns) {
+		for (String pattern : patterns) {
+			if (!subscriber.removePattern(pattern))
+				continue;
+			this.patterns.remove(pattern, subscriber);
+		}
+		for (Channel channel : this.channels.values()) {
+			if (channel.patternMatched && !this.patterns.matches(channel.name)) {
+				channel.patternMatched = false;
+				if (channel.subscribers.isEmpty())
+					this.channels.remove(channel.name);
+			}
+		}
+		if (this.patterns.isEmpty())
+			this.patternSince.clear();
+		stopPollingIfIdle();
+	}
+
+	private long currentSeq(String name) {
+		Record record = this.asClient.get(this.policy, channelKey(name), SEQ_BIN);
+		return (record == null || record.getValue(SEQ_BIN) == null) ? 0 : record.getLong(SEQ_BIN);
+	}
+
+	private void startPolling() {
+		if (this.pollTask == null)
+			this.pollTask = poller.scheduleWithFixedDelay(this.pollRunnable, 0, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	private void stopPollingIfIdle() {
+		if (this.pollTask != null && this.channels.isEmpty() && this.patterns.isEmpty()) {
+			this.pollTask.cancel(false);
+			this.pollTask = null;
+		}
+	}
+
+	private void poll() {
+		if (!this.asClient.isConnected()) {
+			// the client was closed; nothing will be delivered any more
+			synchronized (this) {
+				if (this.pollTask != null) {
+					this.pollTask.cancel(false);
+					this.pollTask = null;
+				}
+			}
+			return;
+		}
+		if (!this.polling.compareAndSet(false, true)) {
+			this.pollAgain = true;
+			return;
+		}
+		try {
+			do {
+				this.pollAgain = false;
+				pollOnce();
+			} while (this.pollAgain);
+		} catch (RuntimeException e) {
+			// keep polling; a transient cluster error must not end the subscriptions
+			if (Log.warnEnabled())
+				Log.warn("Pub/Sub poll failed: " + e.getMessage());
+		} finally {
+			this.polling.set(false);
+		}
+	}
+
+	private void pollOnce() {
+		if (!this.patterns.isEmpty() && System.currentTimeMillis() - this.lastDirectoryRead >= DIRECTORY_INTERVAL)
+			readDirectory();
+
+		Channel[] polled = this.channels.values().toArray(new Channel[0]);
+		if (polled.length == 0)
+			return;
+		Key[] keys = new Key[polled.length];
+		for (int i = 0; i < polled.length; i++) {
+			keys[i] = polled[i].key;
+		}
+		Record[] records = this.asClient.get(this.batchPolicy, keys, SEQ_BIN);
+		for (int i = 0; i < polled.length; i++) {
+			Record record = records[i];
+			if (record == null || record.getValue(SEQ_BIN) == null)
+				continue;
+			long seq = record.getLong(SEQ_BIN);
+			if (seq < polled[i].lastSeq)
+				polled[i].lastSeq = 0; // the ring record expired and was recreated
+			if (seq > polled[i].lastSeq)
+				tail(polled[i]);
+		}
+	}
+
+	private void tail(Channel channel) {
+		List<?> result = (List<?>) this.asClient.execute(this.policy, channel.key, "redis", "PUBSUB_TAIL",
+				Value.get(RING_BIN), Value.get(SEQ_BIN), Value.get(CAPACITY), Value.get(channel.lastSeq));
+		if (result == null || result.isEmpty())
+			return;
+		channel.lastSeq = ((Number) result.get(0)).longValue();
+		List<GlobTrie.Match<RedisPubSub>> matches;
+		synchronized (this) {
+			matches = this.patterns.match(channel.name);
+		}
+		for (int i = 1; i < result.size(); i++) {
+			String message = (String) result.get(i);
+			for (RedisPubSub subscriber : channel.subscribers) {
+				subscriber.deliver(channel.name, message);
+			}
+			for (GlobTrie.Match<RedisPubSub> match : matches) {
+				match.value.deliver(match.pattern, channel.name, message);
+			}
+		}
+	}
+
+	/*
+	 * Starts tracking directory channels that match a pattern. A channel
+	 * created after the pattern subscription is read from its first message,
+	 * so the first messages published on a new channel are not missed.
+	 */
+	@SuppressWarnings("unchecked")
+	private void readDirectory() {
+		this.lastDirectoryRead = System.currentTimeMillis();
+		Record record = this.asClient.get(this.policy, channelKey(DIRECTORY_KEY), DIRECTORY_BIN);
+		if (record == null || record.getValue(DIRECTORY_BIN) == null)
+			return;
+		Map<String, Object> directory = (Map<String, Object>) record.getValue(DIRECTORY_BIN);
+		synchronized (this) {
+			for (Map.Entry<String, Object> entry : directory.entrySet()) {
+				String name = entry.getKey();
+				Channel channel = this.channels.get(name);
+				if (channel != null && channel.patternMatched)
+					continue;
+				List<GlobTrie.Match<RedisPubSub>> matches = this.patterns.match(name);
+				if (matches.isEmpty())
+					continue;
+				if (channel == null) {
+					long created = ((Number) entry.getValue()).longValue();
+					boolean newer = true;
+					for (GlobTrie.Match<RedisPubSub> match : matches) {
+						Long since = this.patternSince.get(match.pattern);
+						if (since != null && created < since)
+							newer = false;
+					}
+					channel = new Channel(name, channelKey(name), newer ? 0 : currentSeq(name));
+					this.channels.put(name, channel);
+				}
+				channel.patternMatched = true;
+			}
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import org.reactivestreams.Publisher;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.IAerospikeClient;
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+import com.aerospike.client.ScanCallback;
+import com.aerospike.client.Value;
+import com.aerospike.client.cluster.Node;
+import com.aerospike.client.policy.Policy;
+import com.aerospike.client.policy.ScanPolicy;
+
+/**
+ * Reactive Streams versions of the commands that can return very large
+ * results. Elements are emitted only as fast as the subscriber requests
+ * them. KEYS streams a scan one node at a time. A list or hash is a single
+ * bin, which the server must read whole for any part of it, so the
+ * collection reads fetch the bin once, a record's worth at most, and emit
+ * it from the client.
+ */
+public class ReactiveCommands {
+
+	private static final int MAX_PENDING = 10000;
+
+	private final IAerospikeClient asClient;
+	private final Policy policy;
+	private final ScanPolicy scanPolicy;
+	private final String namespace;
+	private final String redisSet;
+	private final String redisBin;
+	private final String keyBin;
+
+	ReactiveCommands(IAerospikeClient asClient, Policy policy, ScanPolicy scanPolicy, String namespace,
+			String redisSet, String redisBin, String keyBin) {
+		this.asClient = asClient;
+		this.policy = policy;
+		this.scanPolicy = scanPolicy;
+		this.namespace = namespace;
+		this.redisSet = redisSet;
+		this.redisBin = redisBin;
+		this.keyBin = keyBin;
+	}
+
+	/**
+	 * The keys matching the pattern (a regular expression, as for
+	 * RedisClient.keys()). The scan runs one node at a time. Keys it finds
+	 * while there is no demand are kept, up to 10,000 of them; beyond that the
+	 * scan waits for the subscriber.
+	 */
+	public Publisher<String> keys(final String pattern) {
+		return new StreamingPublisher<String>() {
+			@Override
+			void produce(final Emitter<String> emitter) {
+				final Queue<String> pending = new ArrayDeque<String>();
+				ScanCallback callback = new ScanCallback() {
+					@Override
+					public void scanCallback(Key key, Record record) throws AerospikeException {
+						if (emitter.isCancelled())
+							throw new AerospikeException.ScanTerminated();
+						Object keyString = RedisClient.userKey(key, record, keyBin);
+						if (!(keyString instanceof String) || !((String) keyString).matches(pattern))
+							return;
+						pending.add((String) keyString);
+						while (!pending.isEmpty() && emitter.tryEmit(pending.peek()))
+							pending.poll();
+						while (pending.size() >= MAX_PENDING) {
+							if (!emitter.emit(pending.poll()))
+								throw new AerospikeException.ScanTerminated();
+						}
+					}
+				};
+				try {
+					for (Node node : asClient.getNodes()) {
+						if (emitter.isCancelled())
+							return;
+						asClient.scanNode(scanPolicy, node, namespace, redisSet, callback, keyBin);
+						while (!pending.isEmpty()) {
+							if (!emitter.emit(pending.poll()))
+								return;
+						}
+					}
+				} catch (AerospikeException.ScanTerminated e) {
+					// cancelled by the subscriber
+				}
+			}
+		};
+	}
+
+	/**
+	 * The elements of a list from start to stop inclusive, as in LRANGE.
+	 */
+	public Publisher<String> lrange(final String key, final long start, final long stop) {
+		return new StreamingPublisher<String>() {
+			@Override
+			void produce(Emitter<String> emitter) {
+				Object value = read(key);
+				if (!(value instanceof List))
+					return;
+				List<?> list = (List<?>) value;
+				int size = list.size();
+				long from = (start < 0) ? Math.max(0, size + start) : start;
+				long to = Math.min(size - 1, (stop < 0) ? size + stop : stop);
+				for (long i = from; i <= to; i++) {
+					if (!emitter.emit(ValueCodecs.UTF8.decode(list.get((int) i))))
+						return;
+				}
+			}
+		};
+	}
+
+	/**
+	 * The values of a hash, as in HVALS.
+	 */
+	public Publisher<String> hvals(final String key) {
+		return new StreamingPublisher<String>() {
+			@Override
+			void produce(Emitter<String> emitter) {
+				Object value = read(key);
+				if (!(value instanceof Map))
+					return;
+				for (Object field : ((Map<?, ?>) value).values()) {
+					if (!emitter.emit(ValueCodecs.UTF8.decode(field)))
+						return;
+				}
+			}
+		};
+	}
+
+	/**
+	 * The fields and values of a hash, as in HGETALL.
+	 */
+	public Publisher<Map.Entry<String, String>> hgetAll(final String key) {
+		return new StreamingPublisher<Map.Entry<String, String>>() {
+			@Override
+			void produce(Emitter<Map.Entry<String, String>> emitter) {
+				Object value = read(key);
+				if (!(value instanceof Map))
+					return;
+				for (Map.Entry<?, ?> field : ((Map<?, ?>) value).entrySet()) {
+					Map.Entry<String, String> entry = new AbstractMap.SimpleImmutableEntry<String, String>(
+							ValueCodecs.UTF8.decode(field.getKey()), ValueCodecs.UTF8.decode(field.getValue()));
+					if (!emitter.emit(entry))
+						return;
+				}
+			}
+		};
+	}
+
+	private Object read(String key) {
+		Record record = this.asClient.get(this.policy, asKey(key), this.redisBin);
+		return (record == null) ? null : record.getValue(this.redisBin);
+	}
+
+	private Key asKey(String key) {
+		return new Key(this.namespace, this.redisSet, key);
+	}
+}
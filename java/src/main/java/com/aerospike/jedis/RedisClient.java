@@ -16,6 +16,8 @@
  */
 package com.aerospike.jedis;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -23,12 +25,18 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
 
 import com.aerospike.client.AerospikeClient;
 import com.aerospike.client.AerospikeException;
 import com.aerospike.client.Bin;
+import com.aerospike.client.IAerospikeClient;
 import com.aerospike.client.Info;
 import com.aerospike.client.Key;
 import com.aerospike.client.Language;
@@ -37,35 +45,109 @@ import com.aerospike.client.Record;
 import com.aerospike.client.ResultCode;
 import com.aerospike.client.ScanCallback;
 import com.aerospike.client.Value;
+import com.aerospike.client.async.AsyncClient;
 import com.aerospike.client.cluster.Node;
+import com.aerospike.client.listener.RecordListener;
+import com.aerospike.client.policy.BatchPolicy;
+import com.aerospike.client.policy.GenerationPolicy;
 import com.aerospike.client.policy.Policy;
 import com.aerospike.client.policy.QueryPolicy;
 import com.aerospike.client.policy.RecordExistsAction;
+import com.aerospike.client.policy.Replica;
 import com.aerospike.client.policy.ScanPolicy;
 import com.aerospike.client.policy.WritePolicy;
 
-public class RedisClient{
+public class RedisClient implements Cloneable {
 
-	private AerospikeClient asClient;
+	private IAerospikeClient asClient; // wrapped by the concurrency limiter, when set
+	private IAerospikeClient baseClient; // parks on an AsyncClient, when given one
+	private AerospikeClient aerospikeClient;
 	private WritePolicy writePolicy;
 	private Policy policy;
 	private ScanPolicy scanPolicy;
 	private QueryPolicy queryPolicy;
+	private int scanConcurrency;
+	private volatile Compression compression;
 	private String namespace;
 	private String redisBin = "redis-bin";
 	private String redisSet = null;
 	private String keyBin = "redis-key-bin";
+	private final String[] redisBins = { this.redisBin, Compression.FLAG_BIN };
+	private final Operation getValue = Operation.get(this.redisBin);
+	private WritePolicy createOnlyPolicy;
+	private WritePolicy replaceOnlyPolicy;
+	private WritePolicy updatePolicy;
+	private final ThreadLocal<WritePolicy> expiryPolicies = new ThreadLocal<WritePolicy>() {
+		@Override
+		protected WritePolicy initialValue() {
+			return new WritePolicy();
+		}
+	};
+	private volatile KeyCache keyCache;
+	private boolean storeKeyBin = true;
+	private String pubSubSet = "redis-pubsub";
+	private final AtomicReference<PubSubHub> pubSubHub = new AtomicReference<PubSubHub>(); // shared with the db views
+	private final AtomicReference<ScriptRegistry> scriptRegistry = new AtomicReference<ScriptRegistry>(); // shared with the db views
+	private String streamSet = "redis-stream";
+	private long streamBucketMillis = 60000;
+	private int streamBucketEntries = 1000;
+	private StreamStore streamStore;
+	private String bitmapSet = "redis-bitmap";
+	private BitmapStore bitmapStore;
+	private String geoSet = "redis-geo";
+	private GeoStore geoStore;
+	private final ThreadLocal<Map<Key, Integer>> watches = new ThreadLocal<Map<Key, Integer>>();
+	private volatile HotKeyTracker hotKeyTracker;
+	private HOT_KEY_READS hotKeyReads = HOT_KEY_READS.MASTER;
+	private Policy hotKeyPolicy;
+	private long hotKeyCacheMillis;
+	private volatile HedgedReads hedgedReads;
+	private Policy hedgePolicy;
+	private BatchPolicy hedgeBatchPolicy;
+	private volatile ConcurrencyLimiter limiter;
+	private int db = 0;
+	private String dbZeroSet; // the set of database 0, once another is selected
+	private volatile List<ExpirySweeper> sweepers = new CopyOnWriteArrayList<ExpirySweeper>();
+	private final Map<Integer, RedisClient> dbViews = new ConcurrentHashMap<Integer, RedisClient>();
 	
+	private static final int DATABASES = 16;
 	private static final long AS_TIME_OFFSET = 1262304000000L;// in milliseconds
 
 	public enum LIST_POSITION {
 		BEFORE, AFTER;
 	}
 
+	public enum BITOP {
+		AND, OR, XOR, NOT;
+	}
+
+	/**
+	 * Where GET reads a hot key from: its master like any other key, the
+	 * master and replicas in turn, a random replica, or a local cache.
+	 */
+	public enum HOT_KEY_READS {
+		MASTER, MASTER_PROLES, RANDOM, CACHE;
+	}
+
+	/**
+	 * Where KEYS finds a record's Redis key: in the redis-key-bin written
+	 * with every value (BIN, the default), or in the user key Aerospike
+	 * stores with the record when it is sent with the write (USER_KEY).
+	 */
+	public enum KEY_STORAGE {
+		BIN, USER_KEY;
+	}
+
 	public RedisClient() {
 		super();
 		this.writePolicy = new WritePolicy();
 		this.writePolicy.recordExistsAction = RecordExistsAction.REPLACE;
+		this.createOnlyPolicy = new WritePolicy();
+		this.createOnlyPolicy.recordExistsAction = RecordExistsAction.CREATE_ONLY;
+		this.replaceOnlyPolicy = new WritePolicy();
+		this.replaceOnlyPolicy.recordExistsAction = RecordExistsAction.REPLACE_ONLY;
+		this.updatePolicy = new WritePolicy();
+		this.updatePolicy.recordExistsAction = RecordExistsAction.UPDATE;
 		this.policy = new Policy();
 		this.scanPolicy = new ScanPolicy();
 		this.queryPolicy = new QueryPolicy();
@@ -75,20 +157,55 @@ public class RedisClient{
 
 	public RedisClient(final String host, final int port, String namespace, String set) {
 		this();
-		this.asClient = new AerospikeClient(host, port);
+		this.aerospikeClient = new AerospikeClient(host, port);
+		this.baseClient = this.aerospikeClient;
+		this.asClient = this.baseClient;
 		this.namespace = namespace;
-		this.redisSet = set;
+		useSet(set);
 		checkUdfRegistration();
 	}
 
 	public RedisClient(AerospikeClient asClient, String namespace, String set) {
 		this();
+		this.aerospikeClient = asClient;
+		this.baseClient = asClient;
 		this.asClient = asClient;
 		this.namespace = namespace;
-		this.redisSet = set;
+		useSet(set);
 		checkUdfRegistration();
 	}
 
+	/**
+	 * Runs the record commands on the async client. The calling thread parks
+	 * until the reply arrives, which frees the carrier of a virtual thread.
+	 */
+	public RedisClient(AsyncClient asClient, String namespace, String set) {
+		this();
+		this.aerospikeClient = asClient;
+		this.baseClient = ParkingClient.wrap(asClient);
+		this.asClient = this.baseClient;
+		this.namespace = namespace;
+		useSet(set);
+		checkUdfRegistration();
+	}
+
+	/*
+	 * Sets the client's set, and the sets of the records its values own
+	 * besides their own, named after it so clients on different sets never
+	 * share them
+	 */
+	private void useSet(String set) {
+		String[] sets = ownedSets(set);
+		this.redisSet = sets[0];
+		this.bitmapSet = sets[1];
+		this.geoSet = sets[2];
+		this.streamSet = sets[3];
+	}
+
+	private static String[] ownedSets(String set) {
+		return new String[] { set, set + "-bitmap", set + "-geo", set + "-stream" };
+	}
+
 	public RedisClient(final String host, final int port, String namespace, String set, final int timeout) {
 		this(host, port, namespace, set);
 		setTimeout(timeout);
@@ -97,8 +214,163 @@ public class RedisClient{
 	public void setTimeout(int timeout){
 		this.policy.timeout = timeout;
 		this.writePolicy.timeout = timeout;
+		this.createOnlyPolicy.timeout = timeout;
+		this.replaceOnlyPolicy.timeout = timeout;
+		this.updatePolicy.timeout = timeout;
 		this.scanPolicy.timeout = timeout;
 		this.queryPolicy.timeout = timeout;
+		if (this.hotKeyPolicy != null)
+			this.hotKeyPolicy.timeout = timeout;
+		if (this.hedgePolicy != null) {
+			this.hedgePolicy.timeout = timeout;
+			this.hedgeBatchPolicy.timeout = timeout;
+		}
+	}
+
+	/**
+	 * Hedges GET, MGET and HGET: a read that has not answered within the
+	 * given percentile of recent read latencies is sent again to the
+	 * replicas, and the first reply is used. At most budget (a fraction, e.g.
+	 * 0.05) of reads are hedged. A percentile of 0 turns hedging off.
+	 */
+	public void setHedgedReads(double percentile, double budget){
+		if (percentile <= 0) {
+			this.hedgedReads = null;
+			return;
+		}
+		Policy replicaPolicy = new Policy(this.policy);
+		replicaPolicy.replica = Replica.MASTER_PROLES;
+		BatchPolicy replicaBatchPolicy = new BatchPolicy(this.policy);
+		replicaBatchPolicy.replica = Replica.MASTER_PROLES;
+		this.hedgePolicy = replicaPolicy;
+		this.hedgeBatchPolicy = replicaBatchPolicy;
+		this.hedgedReads = new HedgedReads(percentile, budget);
+	}
+
+	/**
+	 * Compresses string values of at least threshold bytes, primed with the
+	 * dictionary if one is given (see Compression.train). Compressed values
+	 * are read whether or not compression is on. A threshold of 0 stops
+	 * compressing new values; keep passing the dictionary while values
+	 * compressed with it remain.
+	 */
+	public void setCompression(int threshold, byte[] dictionary){
+		if (threshold <= 0 && dictionary == null)
+			this.compression = null;
+		else
+			this.compression = new Compression((threshold > 0) ? threshold : Integer.MAX_VALUE, Deflater.DEFAULT_COMPRESSION, dictionary);
+		// bitmaps inflate with the dictionary
+		this.bitmapStore = null;
+	}
+
+	/**
+	 * Caps the commands this client has in flight. The cap starts at
+	 * initialLimit and follows the cluster's latency, up to maxLimit. At the
+	 * cap a command waits up to maxWaitMillis for a slot, then fails with
+	 * COMMAND_REJECTED; a maxWaitMillis of 0 fails at once. An initialLimit of
+	 * 0 removes the cap.
+	 */
+	public void setConcurrencyLimit(int initialLimit, int maxLimit, long maxWaitMillis){
+		if (initialLimit > 0) {
+			this.limiter = new ConcurrencyLimiter(initialLimit, maxLimit, maxWaitMillis);
+			this.asClient = this.limiter.wrap(this.baseClient);
+		} else {
+			this.limiter = null;
+			this.asClient = this.baseClient;
+		}
+		// the stores are created again with the new client
+		this.bitmapStore = null;
+		this.geoStore = null;
+		this.streamStore = null;
+	}
+
+	/**
+	 * The current concurrency limit, or 0 if there is none.
+	 */
+	public int getConcurrencyLimit(){
+		ConcurrencyLimiter current = this.limiter;
+		return (current == null) ? 0 : current.limit();
+	}
+
+	/**
+	 * The number of commands in flight, when a concurrency limit is set.
+	 */
+	public int getInFlight(){
+		ConcurrencyLimiter current = this.limiter;
+		return (current == null) ? 0 : current.inFlight();
+	}
+
+	/**
+	 * The number of reads hedged so far, or 0 if hedging is off.
+	 */
+	public long hedgedReadCount(){
+		HedgedReads hedged = this.hedgedReads;
+		return (hedged == null) ? 0 : hedged.hedges();
+	}
+
+	/**
+	 * Samples one GET in every sampleRate to find the topK most read keys.
+	 * A topK of 0 turns the sampling off.
+	 */
+	public void setHotKeyTracking(int topK, int sampleRate){
+		this.hotKeyTracker = (topK > 0) ? new HotKeyTracker(topK, sampleRate) : null;
+	}
+
+	/**
+	 * Sets how GET reads the keys found to be hot. Cached values are kept for
+	 * cacheMillis; writes made through this client drop them straight away,
+	 * writes made elsewhere are seen once they expire.
+	 */
+	public void setHotKeyReads(HOT_KEY_READS reads, long cacheMillis){
+		if (reads == HOT_KEY_READS.MASTER_PROLES || reads == HOT_KEY_READS.RANDOM) {
+			Policy replicaPolicy = new Policy(this.policy);
+			replicaPolicy.replica = (reads == HOT_KEY_READS.RANDOM) ? Replica.RANDOM : Replica.MASTER_PROLES;
+			this.hotKeyPolicy = replicaPolicy;
+		}
+		this.hotKeyCacheMillis = cacheMillis;
+		this.hotKeyReads = reads;
+	}
+
+	/**
+	 * The most read keys found by hot key tracking, most read first.
+	 */
+	public List<HotKey> hotKeys(){
+		HotKeyTracker tracker = this.hotKeyTracker;
+		return (tracker == null) ? new ArrayList<HotKey>() : tracker.hotKeys();
+	}
+
+	/*
+	 * Called after every write of key, here and by transactions
+	 */
+	void written(Object key){
+		HotKeyTracker tracker = this.hotKeyTracker;
+		if (tracker != null)
+			tracker.invalidate(key.toString());
+	}
+
+	/*
+	 * Called when this client deleted key, so the running sweepers do not
+	 * report it as expired
+	 */
+	void deleted(Object key){
+		written(key);
+		for (ExpirySweeper sweeper : this.sweepers)
+			sweeper.deleted(key.toString());
+	}
+
+	/*
+	 * Called by the ExpirySweeper when a key of this client's database expired
+	 */
+	void expired(String key){
+		written(key);
+	}
+
+	void sweeperStarted(ExpirySweeper sweeper){
+		this.sweepers.add(sweeper);
+	}
+
+	void sweeperStopped(ExpirySweeper sweeper){
+		this.sweepers.remove(sweeper);
 	}
 
 	private void checkUdfRegistration(){
@@ -109,15 +381,15 @@ public class RedisClient{
 	}
 	
 	public AerospikeClient getAerispikeClient(){
-		return this.asClient;
+		return this.aerospikeClient;
 	}
 	
-	private String[] infoAll(AerospikeClient client,
+	private String[] infoAll(IAerospikeClient client,
 			String infoString) {
 		String[] messages = new String[client.getNodes().length];
 		int index = 0;
 		for (Node node : client.getNodes()){
-			messages[index] = Info.request(node, infoString);
+			messages[index++] = Info.request(node, infoString);
 		}
 		return messages;
 	}
@@ -132,19 +404,188 @@ public class RedisClient{
 	}
 
 
+	/**
+	 * Caches the Keys, and so the digests, of up to size recently used
+	 * String keys; hot keys are then hashed once instead of on every
+	 * command. A size of 0 turns the cache off.
+	 */
+	public void setKeyCache(int size){
+		this.keyCache = (size > 0) ? new KeyCache(this.namespace, this.redisSet, size) : null;
+	}
+
+	/**
+	 * Chooses how the Redis key of a record is kept for KEYS. With USER_KEY
+	 * the String commands and transactions store only the value and send the
+	 * key with the write, for Aerospike to store. KEYS reads either form, so
+	 * records written before the change are still found; see
+	 * migrateKeyStorage() to convert them.
+	 */
+	public void setKeyStorage(KEY_STORAGE storage){
+		boolean userKey = (storage == KEY_STORAGE.USER_KEY);
+		this.storeKeyBin = !userKey;
+		this.writePolicy.sendKey = userKey;
+		this.createOnlyPolicy.sendKey = userKey;
+		this.replaceOnlyPolicy.sendKey = userKey;
+		this.updatePolicy.sendKey = userKey;
+		this.bitmapStore = null;
+		this.geoStore = null;
+		this.streamStore = null;
+	}
+
+	/**
+	 * Converts the records of the set that keep their Redis key in the
+	 * redis-key-bin: each is rewritten with the key sent for Aerospike to
+	 * store, and the bin removed, keeping its TTL. A record that changes
+	 * meanwhile is left for the next run. Returns the number converted.
+	 */
+	public long migrateKeyStorage() {
+		final AtomicLong migrated = new AtomicLong();
+		this.asClient.scanAll(this.scanPolicy, this.namespace, this.redisSet, new ScanCallback() {
+
+			@Override
+			public void scanCallback(Key key, Record record) throws AerospikeException {
+				Object keyValue = (record.bins == null) ? null : record.bins.get(keyBin);
+				if (keyValue == null || key.userKey != null)
+					return;
+				Key withUserKey = new Key(namespace, redisSet, Value.get(keyValue));
+				if (!Arrays.equals(withUserKey.digest, key.digest))
+					return; // not a key this client wrote
+				WritePolicy wp = new WritePolicy();
+				wp.timeout = writePolicy.timeout;
+				wp.sendKey = true;
+				wp.recordExistsAction = RecordExistsAction.UPDATE_ONLY;
+				wp.generationPolicy = GenerationPolicy.EXPECT_GEN_EQUAL;
+				wp.generation = record.generation;
+				if (record.expiration == 0) {
+					wp.expiration = -1;
+				} else {
+					long ttl = record.expiration - (System.currentTimeMillis() - AS_TIME_OFFSET) / 1000;
+					if (ttl <= 0)
+						return; // about to expire
+					wp.expiration = (int) ttl;
+				}
+				try {
+					asClient.operate(wp, withUserKey, Operation.put(Bin.asNull(keyBin)));
+					migrated.incrementAndGet();
+				} catch (AerospikeException e) {
+					if (e.getResultCode() != ResultCode.GENERATION_ERROR && e.getResultCode() != ResultCode.KEY_NOT_FOUND_ERROR)
+						throw e;
+				}
+			}
+		}, this.keyBin);
+		return migrated.get();
+	}
+
+	/*
+	 * The Redis key of a scanned record: the user key stored with the
+	 * record, or else the redis-key-bin.
+	 */
+	static Object userKey(Key key, Record record, String keyBin) {
+		if (key.userKey != null)
+			return key.userKey.getObject();
+		return (record.bins == null) ? null : record.bins.get(keyBin);
+	}
+
+	private Key asKey(Object key) {
+		KeyCache cache = this.keyCache;
+		if (cache != null && key instanceof String)
+			return cache.get((String) key);
+		return new Key(this.namespace, this.redisSet, Value.get(key));
+	}
+
+	/*
+	 * This thread's policy for writes that set an expiration; it is reused
+	 * by the next such write on the thread, once this one has returned.
+	 */
+	private WritePolicy expiryPolicy(RecordExistsAction action, int expiration) {
+		WritePolicy wp = this.expiryPolicies.get();
+		wp.timeout = this.writePolicy.timeout;
+		wp.sendKey = this.writePolicy.sendKey;
+		wp.recordExistsAction = action;
+		wp.expiration = expiration;
+		return wp;
+	}
+
 	public String set(Object key, Object value){
 		return set(null, key, value);
 	}
+
+	public String set(byte[] key, byte[] value){
+		return set(null, key, ValueCodecs.BYTES.encode(value));
+	}
+
+	/**
+	 * Stores length bytes of value from offset, written straight from the
+	 * array without copying the slice first.
+	 */
+	public String set(Object key, byte[] value, int offset, int length){
+		return set(null, key, Value.get(value, offset, length));
+	}
+
+	/**
+	 * Stores value as the codec encodes it.
+	 */
+	public <T> String set(Object key, T value, ValueCodec<T> codec){
+		return set(null, key, codec.encode(value));
+	}
 	
 	public String set(WritePolicy wp, Object key, Object value){
-			Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
-			Bin keyBin = new Bin(this.keyBin , key);
-			Bin valueBin = new Bin(this.redisBin, Value.get(value));
-			this.asClient.put((wp == null) ? this.writePolicy : wp, asKey, keyBin, valueBin);
+			Key asKey = asKey(key);
+			Value plain = Value.get(value);
+			Value stored = plain;
+			Compression compressor = this.compression;
+			if (compressor != null)
+				stored = compressor.compress(plain);
+			Bin valueBin = new Bin(this.redisBin, stored);
+			Bin flagBin = Compression.flag(stored != plain);
+			if (this.storeKeyBin)
+				this.asClient.put((wp == null) ? this.writePolicy : wp, asKey, new Bin(this.keyBin, asKey.userKey), valueBin, flagBin);
+			else
+				this.asClient.put((wp == null) ? this.writePolicy : wp, asKey, valueBin, flagBin);
+			written(key);
 			return "OK";
 		
 	}
 	
+	/**
+	 * Writes a whole value for key in this client's record layout, replacing
+	 * any value: a String or byte[] as SET stores it, a List as a list and a
+	 * Map as a hash. expiration is in seconds, -1 for never and 0 for the
+	 * namespace default as with SET. For bulk loads, such as the RDB importer.
+	 */
+	public void putValue(Object key, Object value, int expiration) {
+		WritePolicy wp = new WritePolicy(this.writePolicy);
+		wp.expiration = expiration;
+		putValue(wp, key, value);
+	}
+
+	private void putValue(WritePolicy wp, Object key, Object value) {
+		if (!(value instanceof List) && !(value instanceof Map)) {
+			set(wp, key, value);
+			return;
+		}
+		putStored(wp, key, value, false);
+	}
+
+	/*
+	 * Writes a value as it is stored, compressed or not
+	 */
+	private void putStored(WritePolicy wp, Object key, Object stored, boolean compressed) {
+		Key asKey = asKey(key);
+		Bin valueBin;
+		if (stored instanceof List)
+			valueBin = new Bin(this.redisBin, (List<?>) stored);
+		else if (stored instanceof Map)
+			valueBin = new Bin(this.redisBin, (Map<?, ?>) stored);
+		else
+			valueBin = new Bin(this.redisBin, Value.get(stored));
+		if (this.storeKeyBin)
+			this.asClient.put(wp, asKey, new Bin(this.keyBin, asKey.userKey), valueBin, Compression.flag(compressed));
+		else
+			this.asClient.put(wp, asKey, valueBin, Compression.flag(compressed));
+		written(key);
+	}
+
 	public String mset(final String... keysvalues) {
 		if (keysvalues.length % 2 != 0)
 			return "Keys and Values mismatch";
@@ -162,38 +603,45 @@ public class RedisClient{
 		return "OK";
 	}
 	
+	/**
+	 * Sets all the keys, or none if any of them exists. Keys created before
+	 * an existing one is found are deleted again, unless they have been
+	 * written since (checked by generation).
+	 */
 	public long msetnx(final String... keysvalues) {
 		if (keysvalues.length % 2 != 0)
 			return 0L;
-		long retVal = 0L;
-		String key = null;
-		WritePolicy wp = new WritePolicy();
-		wp.timeout = this.writePolicy.timeout;
+		WritePolicy wp = new WritePolicy(this.writePolicy);
 		wp.recordExistsAction = RecordExistsAction.CREATE_ONLY;
-		boolean isKey = true;
+		int created = 0;
 		try {
-			for (String keyvalue : keysvalues){
-				if (isKey) {
-					key = keyvalue;
-					isKey = false;
-				} else {
-					set(wp, key, Value.get(keyvalue));
-					retVal++;
-					isKey = true;
-				}
+			for (; created < keysvalues.length; created += 2){
+				set(wp, keysvalues[created], Value.get(keysvalues[created + 1]));
 			}
+			return 1L;
 		} catch (AerospikeException e){
 			if (e.getResultCode() != ResultCode.KEY_EXISTS_ERROR)
 				throw e;
 		}
-		return retVal;
+		WritePolicy undo = new WritePolicy(this.writePolicy);
+		undo.generationPolicy = GenerationPolicy.EXPECT_GEN_EQUAL;
+		undo.generation = 1;
+		for (int i = 0; i < created; i += 2){
+			try {
+				this.asClient.delete(undo, new Key(this.namespace, this.redisSet, keysvalues[i]));
+				deleted(keysvalues[i]);
+			} catch (AerospikeException e){
+				if (e.getResultCode() != ResultCode.GENERATION_ERROR)
+					throw e;
+			}
+		}
+		return 0L;
     }
 
 
 
 	public String setex(Object key, int expiration, Object value) {
-		WritePolicy wp = new WritePolicy();
-		wp.expiration = expiration;
+		WritePolicy wp = expiryPolicy(RecordExistsAction.UPDATE, expiration);
 		set(wp, key, Value.get(value));
 		return "OK";
 	}
@@ -206,9 +654,7 @@ public class RedisClient{
 
 	public long setnx(Object key, Object value) {
 		try {
-			WritePolicy wp = new WritePolicy();
-			wp.recordExistsAction = RecordExistsAction.CREATE_ONLY;
-			set(wp, key, value);
+			set(this.createOnlyPolicy, key, value);
 			return 1;
 		} catch (AerospikeException e){
 			if (e.getResultCode() == ResultCode.KEY_EXISTS_ERROR)
@@ -220,9 +666,7 @@ public class RedisClient{
 
 	public long setxx(Object key, Object value) {
 		try {
-			WritePolicy wp = new WritePolicy();
-			wp.recordExistsAction = RecordExistsAction.REPLACE_ONLY;
-			set(wp, key, value);
+			set(this.replaceOnlyPolicy, key, value);
 			return 1;
 		} catch (AerospikeException e){
 			if (e.getResultCode() == ResultCode.KEY_NOT_FOUND_ERROR)
@@ -233,13 +677,13 @@ public class RedisClient{
 	}
 
 	public boolean exists(Object key) {
-		Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
+		Key asKey = asKey(key);
 		return this.asClient.exists(this.writePolicy, asKey);
 	}
 
 	public long del(Object key) {
-			Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
-			this.asClient.delete(writePolicy, asKey);
+			Key asKey = asKey(key);
+			deleteRecord(key, asKey);
 			return 1;
 	}
 
@@ -248,24 +692,51 @@ public class RedisClient{
 	public long del(Object ...keys) {
 		long count = 0;
 		for (Object key : keys){
-			Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
-			this.asClient.delete(writePolicy, asKey);
+			Key asKey = asKey(key);
+			deleteRecord(key, asKey);
 			count++;
 		}
 		return count;
 	}
 
+	/*
+	 * One UDF call deletes the record and returns what else it owned: the
+	 * segment records of a segmented bitmap, or the bucket records of a
+	 * stream. A GEO set is left in place, to be deleted here with its
+	 * member records.
+	 */
+	private void deleteRecord(Object key, Key asKey) {
+		List<?> owned = (List<?>) this.asClient.execute(this.writePolicy, asKey, "redis", "DEL",
+				Value.get(BitmapStore.SEGMENTS_BIN), Value.get(StreamStore.BUCKETS_BIN), Value.get(GeoStore.EPOCH_BIN));
+		deleted(key);
+		if (owned == null)
+			return;
+		int segments = ((Number) owned.get(0)).intValue();
+		int buckets = ((Number) owned.get(1)).intValue();
+		if (((Number) owned.get(2)).intValue() == 1)
+			geo().delete(key.toString());
+		if (segments > 1)
+			bitmaps().deleteSegments(key.toString(), 1, segments);
+		if (buckets > 0)
+			streams().deleteBuckets(key.toString(), buckets);
+	}
+
 
 
 	public Set<String> keys(final String pattern) {
 		final Set<String> result = new HashSet<String>();
+		if (this.scanConcurrency > 0) {
+			for (String key : scanKeys(pattern))
+				result.add(key);
+			return result;
+		}
 		this.asClient.scanAll(this.scanPolicy, this.namespace, this.redisSet, new ScanCallback() {
 			
 			@Override
 			public void scanCallback(Key key, Record record) throws AerospikeException {
-				String keyString = (String) record.bins.get(keyBin);
-				if (keyString.matches(pattern)){
-					result.add(keyString);
+				Object keyString = userKey(key, record, keyBin);
+				if (keyString instanceof String && ((String) keyString).matches(pattern)){
+					result.add((String) keyString);
 				}
 			}
 		}, this.keyBin);
@@ -273,6 +744,28 @@ public class RedisClient{
 		return result;
 	}
 
+	/**
+	 * Starts a KEYS scan on up to the scan concurrency nodes at once (all
+	 * nodes when it is 0) and returns it at once, to be iterated, watched or
+	 * cancelled while it runs.
+	 */
+	public KeyScan scanKeys(String pattern) {
+		int concurrency = (this.scanConcurrency > 0) ? this.scanConcurrency : Integer.MAX_VALUE;
+		return new KeyScan(this.asClient, this.scanPolicy, this.namespace, this.redisSet, this.keyBin, pattern, concurrency);
+	}
+
+	/**
+	 * The number of nodes KEYS scans at once, one scan per node. 0, the
+	 * default, leaves the scan to the client's scanAll.
+	 */
+	public void setScanConcurrency(int nodes) {
+		this.scanConcurrency = Math.max(0, nodes);
+	}
+
+	public int getScanConcurrency() {
+		return this.scanConcurrency;
+	}
+
 
 	public Set<byte[]> keys(byte[] binaryPattern) {
 		final String pattern = binaryPattern.toString();
@@ -281,9 +774,9 @@ public class RedisClient{
 			
 			@Override
 			public void scanCallback(Key key, Record record) throws AerospikeException {
-				String keyString = (String) record.bins.get(keyBin);
-				if (keyString.matches(pattern)){
-					result.add(keyString.getBytes());
+				Object keyString = userKey(key, record, keyBin);
+				if (keyString instanceof String && ((String) keyString).matches(pattern)){
+					result.add(((String) keyString).getBytes());
 				}
 			}
 		}, this.keyBin);
@@ -293,46 +786,278 @@ public class RedisClient{
 
 
 	public String get(Object key) {
-		Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
-		Record record = this.asClient.get(this.policy, asKey, this.redisBin);
-		if (record == null)
-			return null;
-		String value = (String) record.getValue(this.redisBin);
+		return get(key, ValueCodecs.UTF8);
+	}
+
+	public byte[] get(byte[] key) {
+		return get(key, ValueCodecs.BYTES);
+	}
+
+	/**
+	 * Reads the value of key through the codec; null if there is no value.
+	 */
+	public <T> T get(Object key, ValueCodec<T> codec) {
+		return decode(codec, getValue(key));
+	}
+
+	private <T> T decode(ValueCodec<T> codec, Object value) {
+		return (value == null) ? null : codec.decode(value);
+	}
+
+	private Object getValue(Object key) {
+		Key asKey = asKey(key);
+		HotKeyTracker tracker = this.hotKeyTracker;
+		if (tracker != null && tracker.read(key.toString()))
+			return getHot(tracker, key.toString(), asKey);
+		Record record = read(this.policy, asKey, this.redisBins);
+		return Compression.decompress(record, this.redisBin, this.compression);
+	}
+
+	private Object getHot(HotKeyTracker tracker, String key, Key asKey) {
+		HOT_KEY_READS reads = this.hotKeyReads;
+		if (reads == HOT_KEY_READS.CACHE) {
+			HotKeyTracker.Cached cached = tracker.cached(key);
+			if (cached != null)
+				return cached.value;
+		}
+		Policy readPolicy = (reads == HOT_KEY_READS.MASTER_PROLES || reads == HOT_KEY_READS.RANDOM) ? this.hotKeyPolicy : this.policy;
+		long stamp = tracker.stamp(key);
+		Record record = read(readPolicy, asKey, this.redisBins);
+		Object value = Compression.decompress(record, this.redisBin, this.compression);
+		if (reads == HOT_KEY_READS.CACHE)
+			tracker.cache(key, value, this.hotKeyCacheMillis, stamp);
 		return value;
 	}
 
+	private Record read(final Policy readPolicy, final Key asKey, final String... bins) {
+		HedgedReads hedged = this.hedgedReads;
+		if (hedged == null)
+			return this.asClient.get(readPolicy, asKey, bins);
+		final AsyncClient async = asyncClient();
+		if (async != null) {
+			return hedged.race(new HedgedReads.AsyncRead<Record>() {
+				@Override
+				public void start(boolean hedge, HedgedReads.Answer answer) {
+					async.get(hedge ? hedgePolicy : readPolicy, answer, asKey, bins);
+				}
+			}, this.limiter);
+		}
+		return hedged.read(new HedgedReads.Read<Record>() {
+			@Override
+			public Record read(boolean hedge, int timeout) {
+				return asClient.get(timed(hedge ? hedgePolicy : readPolicy, timeout), asKey, bins);
+			}
+		}, readPolicy.timeout);
+	}
+
+	/*
+	 * The async client the commands run on, which hedged reads race on; null
+	 * for a blocking client
+	 */
+	private AsyncClient asyncClient() {
+		return (this.aerospikeClient instanceof AsyncClient) ? (AsyncClient) this.aerospikeClient : null;
+	}
+
+	/*
+	 * The policy with another timeout, for hedged reads; 0 keeps its own
+	 */
+	private static Policy timed(Policy policy, int timeout) {
+		if (timeout == 0)
+			return policy;
+		Policy timed = new Policy(policy);
+		timed.timeout = timeout;
+		return timed;
+	}
+
+	private static BatchPolicy timed(BatchPolicy policy, int timeout) {
+		if (timeout == 0)
+			return policy;
+		BatchPolicy timed = (policy == null) ? new BatchPolicy() : new BatchPolicy(policy);
+		timed.timeout = timeout;
+		return timed;
+	}
+
+	private static WritePolicy timed(WritePolicy policy, int timeout) {
+		if (timeout == 0)
+			return policy;
+		WritePolicy timed = new WritePolicy(policy);
+		timed.timeout = timeout;
+		return timed;
+	}
+
 
 	public List<String> mget(Object ...keys) {
+		return mget(ValueCodecs.UTF8, keys);
+	}
+
+	public <T> List<T> mget(ValueCodec<T> codec, Object ...keys) {
 		Key[] asKeys = new Key[keys.length];
 		for (int i = 0; i < keys.length; i++){
 			asKeys[i] = new Key(this.namespace, this.redisSet, Value.get(keys[i]));
 		}
-		Record[] records = this.asClient.get(null, asKeys, this.redisBin);
-		List<String> result = new ArrayList<String>();
+		Record[] records;
+		HedgedReads hedged = this.hedgedReads;
+		final AsyncClient async = asyncClient();
+		if (hedged == null) {
+			records = this.asClient.get(null, asKeys, this.redisBins);
+		} else if (async != null) {
+			final Key[] batchKeys = asKeys;
+			records = hedged.race(new HedgedReads.AsyncRead<Record[]>() {
+				@Override
+				public void start(boolean hedge, HedgedReads.Answer answer) {
+					async.get(hedge ? hedgeBatchPolicy : (BatchPolicy) null, answer, batchKeys, redisBins);
+				}
+			}, this.limiter);
+		} else {
+			final Key[] batchKeys = asKeys;
+			records = hedged.read(new HedgedReads.Read<Record[]>() {
+				@Override
+				public Record[] read(boolean hedge, int timeout) {
+					return asClient.get(timed(hedge ? hedgeBatchPolicy : null, timeout), batchKeys, redisBins);
+				}
+			}, 0);
+		}
+		List<T> result = new ArrayList<T>();
 		for (Record record : records){
-			result.add((record == null) ? null : (String) record.getValue(this.redisBin));
+			result.add(decode(codec, Compression.decompress(record, this.redisBin, this.compression)));
 		}
 		return result;
 	}
 
 
+	/**
+	 * The value of key serialized in {@link DumpFormat}, or null if there
+	 * is no value. Like Redis, the payload does not carry the TTL. Values
+	 * kept in several records, bitmaps past their first segment, GEO sets
+	 * and streams, cannot be dumped.
+	 */
+	public byte[] dump(Object key) {
+		Record record = read(this.policy, asKey(key), this.redisBin, Compression.FLAG_BIN, BitmapStore.SEGMENTS_BIN,
+				GeoStore.EPOCH_BIN, StreamStore.LENGTH_BIN);
+		if (record == null)
+			return null;
+		String spread = spreadType(record);
+		if (spread != null)
+			throw new AerospikeException(ResultCode.PARAMETER_ERROR, "ERR DUMP of a " + spread + " kept in several records is not supported");
+		Object value = Compression.decompress(record, this.redisBin, this.compression);
+		return (value == null) ? null : DumpFormat.serialize(value);
+	}
+
+	/*
+	 * The kind of value a head record stands for when the value lives in
+	 * other records too, or null when its value bin is the whole value
+	 */
+	static String spreadType(Record record) {
+		Object segments = record.getValue(BitmapStore.SEGMENTS_BIN);
+		if (segments != null && ((Number) segments).intValue() > 1)
+			return "bitmap";
+		if (record.getValue(GeoStore.EPOCH_BIN) != null)
+			return "GEO set";
+		if (record.getValue(StreamStore.LENGTH_BIN) != null)
+			return "stream";
+		return null;
+	}
+
+	/**
+	 * Creates key with a value from dump(); ttl is in milliseconds, 0 for
+	 * no expiry as with SET. Fails with BUSYKEY if the key exists.
+	 */
+	public String restore(Object key, int ttl, byte[] serializedValue) {
+		Object value = DumpFormat.deserialize(serializedValue);
+		if (!restoreValue(key, value, (ttl <= 0) ? -1 : Math.max(1, (ttl + 999) / 1000), false))
+			throw new AerospikeException(ResultCode.KEY_EXISTS_ERROR, "BUSYKEY Target key name already exists.");
+		return "OK";
+	}
+
+	/**
+	 * RESTORE with REPLACE: as restore(), replacing any value of key.
+	 */
+	public String restoreReplace(Object key, int ttl, byte[] serializedValue) {
+		Object value = DumpFormat.deserialize(serializedValue);
+		restoreValue(key, value, (ttl <= 0) ? -1 : Math.max(1, (ttl + 999) / 1000), true);
+		return "OK";
+	}
+
+	/*
+	 * Writes a whole value; expiration is in seconds, -1 for never. False if
+	 * replace is off and the key exists
+	 */
+	boolean restoreValue(Object key, Object value, int expiration, boolean replace) {
+		WritePolicy wp = new WritePolicy(replace ? this.writePolicy : this.createOnlyPolicy);
+		wp.expiration = expiration;
+		try {
+			putValue(wp, key, value);
+			return true;
+		} catch (AerospikeException e) {
+			if (!replace && e.getResultCode() == ResultCode.KEY_EXISTS_ERROR)
+				return false;
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes every key of this client's set, with its value and expiry
+	 * time, to a local archive file. The nodes are scanned in parallel, as
+	 * many at once as setScanConcurrency() allows (all of them by default).
+	 * Values that dump() refuses are skipped, with a warning in the log.
+	 * Returns the number of keys written.
+	 */
+	public long exportKeyspace(File file) throws IOException {
+		int concurrency = (this.scanConcurrency > 0) ? this.scanConcurrency : Integer.MAX_VALUE;
+		return new KeyspaceArchive(this, this.asClient, this.scanPolicy, this.namespace, this.redisSet, this.redisBin,
+				this.keyBin, this.compression).export(file, concurrency);
+	}
+
+	/**
+	 * Loads an archive written by exportKeyspace(), possibly into another
+	 * cluster, namespace or set. Keys that exist are left alone unless
+	 * replace is set. Keys whose expiry time has passed are skipped. Returns
+	 * the number of keys written.
+	 */
+	public long importKeyspace(File file, boolean replace) throws IOException {
+		return new KeyspaceArchive(this, this.asClient, this.scanPolicy, this.namespace, this.redisSet, this.redisBin,
+				this.keyBin, this.compression).load(file, replace);
+	}
+
 	public String rename(Object oldKey, Object newKey) {
 		Key oldAsKey = new Key(this.namespace, this.redisSet, Value.get(oldKey));
-		Record record = this.asClient.get(policy, oldAsKey);
-		this.set(newKey, (String) record.getValue(this.redisBin)); 
-		this.asClient.delete(this.writePolicy, oldAsKey);
-		return "OK";
+		while (true) {
+			Record record = this.asClient.get(policy, oldAsKey);
+			if (record == null)
+				throw new AerospikeException(ResultCode.KEY_NOT_FOUND_ERROR, "ERR no such key");
+			String spread = spreadType(record);
+			if (spread != null)
+				throw new AerospikeException(ResultCode.PARAMETER_ERROR, "ERR RENAME of a " + spread + " kept in several records is not supported");
+			if (oldAsKey.equals(new Key(this.namespace, this.redisSet, Value.get(newKey))))
+				return "OK";
+			// the stored value is copied as it is, with the time it has left
+			WritePolicy copy = new WritePolicy(this.writePolicy);
+			if (record.expiration == 0) {
+				copy.expiration = -1;
+			} else {
+				long ttl = record.expiration - (System.currentTimeMillis() - AS_TIME_OFFSET) / 1000;
+				copy.expiration = (int) Math.max(1, ttl);
+			}
+			putStored(copy, newKey, record.getValue(this.redisBin), Compression.isCompressed(record));
+			// only delete the value that was copied; if it changed meanwhile, copy again
+			WritePolicy wp = new WritePolicy(this.writePolicy);
+			wp.generationPolicy = GenerationPolicy.EXPECT_GEN_EQUAL;
+			wp.generation = record.generation;
+			try {
+				this.asClient.delete(wp, oldAsKey);
+				deleted(oldKey);
+				return "OK";
+			} catch (AerospikeException e) {
+				if (e.getResultCode() != ResultCode.GENERATION_ERROR)
+					throw e;
+			}
+		}
 	}
 
 
 	public long expire(Object key, long expiration) {
 		try {
-			Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
-			WritePolicy wp = new WritePolicy();
-			wp.expiration = (int) expiration;
-			wp.recordExistsAction = RecordExistsAction.UPDATE_ONLY;
-			wp.timeout = this.writePolicy.timeout;
-			this.asClient.touch(wp, asKey);
+			touch(key, expiryPolicy(RecordExistsAction.UPDATE_ONLY, (int) expiration));
 			return 1; 
 		} catch (AerospikeException e) {
 			if (e.getResultCode() == ResultCode.KEY_NOT_FOUND_ERROR){
@@ -352,11 +1077,7 @@ public class RedisClient{
 	public long expireAt(Object key, long unixTime) {
 		try {
 			long now = System.currentTimeMillis();
-			Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
-			WritePolicy wp = new WritePolicy();
-			wp.recordExistsAction = RecordExistsAction.UPDATE_ONLY;
-			wp.expiration = (int) ((unixTime - now) / 1000);
-			this.asClient.touch(wp, asKey);
+			touch(key, expiryPolicy(RecordExistsAction.UPDATE_ONLY, (int) ((unixTime - now) / 1000)));
 			return 1;
 		} catch (AerospikeException e){
 			if (e.getResultCode() == ResultCode.KEY_NOT_FOUND_ERROR){
@@ -373,13 +1094,21 @@ public class RedisClient{
 	}
 
 	public long persist(Object key) {
-		Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
-		WritePolicy wp = new WritePolicy();
-		wp.expiration = -1;
-		this.asClient.touch(wp, asKey);
+		touch(key, expiryPolicy(RecordExistsAction.UPDATE, -1));
 		return 1L;
 	}
 
+	/*
+	 * Sets the TTL of a key, and of the segment records of a bitmap so
+	 * they expire with it
+	 */
+	private void touch(Object key, WritePolicy wp) {
+		Record record = this.asClient.operate(wp, asKey(key), Operation.touch(), Operation.get(BitmapStore.SEGMENTS_BIN));
+		Object segments = (record == null) ? null : record.getValue(BitmapStore.SEGMENTS_BIN);
+		if (segments != null && ((Number) segments).intValue() > 1)
+			bitmaps().touchSegments(key.toString(), ((Number) segments).intValue(), wp);
+	}
+
 	public long dbSize() {
 		// ns_name=test:set_name=tweets:n_objects=68763:set-stop-write-count=0:set-evict-hwm-count=0:set-enable-xdr=use-default:set-delete=false;
 		Pattern pattern = Pattern.compile("ns_name=" + this.namespace + ":set_name=" + this.redisSet + ":n_objects=(\\d+)");
@@ -394,13 +1123,213 @@ public class RedisClient{
 		return size;
 	}
 
+	/**
+	 * Switches this client to database db, as SELECT does for a connection.
+	 * Database 0 is the set given to the constructor, and database n the set
+	 * with "-n" appended; each database's bitmap, geo and stream sets are
+	 * named after its set. The switch is seen by every thread using this client, so a
+	 * client shared by threads should use db() instead.
+	 */
+	public String select(int db) {
+		checkDb(db);
+		switchDb(db);
+		return "OK";
+	}
+
+	public int getDB() {
+		return this.db;
+	}
+
+	/**
+	 * A client for database db that shares this client's AerospikeClient,
+	 * policies and settings. Views are created once and cached, so taking
+	 * one costs a map lookup; configure the client before taking views.
+	 */
+	public RedisClient db(int db) {
+		checkDb(db);
+		if (db == this.db)
+			return this;
+		RedisClient view = this.dbViews.get(db);
+		if (view == null) {
+			synchronized (this.dbViews) {
+				view = this.dbViews.get(db);
+				if (view == null) {
+					try {
+						view = (RedisClient) clone();
+					} catch (CloneNotSupportedException e) {
+						throw new IllegalStateException(e);
+					}
+					view.switchDb(db);
+					this.dbViews.put(db, view);
+				}
+			}
+		}
+		return view;
+	}
+
+	private static void checkDb(int db) {
+		if (db < 0 || db >= DATABASES)
+			throw new AerospikeException(ResultCode.PARAMETER_ERROR, "ERR DB index is out of range");
+	}
+
+	private void switchDb(int db) {
+		if (this.dbZeroSet == null)
+			this.dbZeroSet = this.redisSet;
+		this.db = db;
+		useSet(dbSet(this.dbZeroSet, db));
+		// the sweepers of the old database do not see this one's deletes
+		this.sweepers = new CopyOnWriteArrayList<ExpirySweeper>();
+		this.bitmapStore = null;
+		this.geoStore = null;
+		this.streamStore = null;
+		KeyCache cache = this.keyCache;
+		if (cache != null)
+			this.keyCache = cache.forSet(this.redisSet);
+		HotKeyTracker tracker = this.hotKeyTracker;
+		if (tracker != null)
+			this.hotKeyTracker = tracker.copy();
+	}
+
+	private static String dbSet(String set, int db) {
+		return (db == 0) ? set : set + "-" + db;
+	}
+
+	/**
+	 * Removes every key of the current database by truncating its sets on
+	 * the server, which drops the records of all partitions at once instead
+	 * of deleting them one by one. Servers older than 3.12 have no truncate;
+	 * there the sets are scanned and each record deleted.
+	 */
+	public String flushDB() {
+		return flushDB(0);
+	}
+
+	/**
+	 * FLUSHDB of the keys last written before beforeMillis, a Unix time in
+	 * milliseconds; keys written since are kept. 0 removes every key.
+	 */
+	public String flushDB(long beforeMillis) {
+		Set<String> existing = existingSets();
+		for (String set : dbSets(this.db)) {
+			if (existing.contains(set))
+				truncate(set, beforeMillis);
+		}
+		HotKeyTracker tracker = this.hotKeyTracker;
+		if (tracker != null)
+			tracker.invalidateAll();
+		for (ExpirySweeper sweeper : this.sweepers)
+			sweeper.flushed();
+		return "OK";
+	}
+
+	/**
+	 * Removes every key of every database. Only the sets of this client's
+	 * databases are truncated, not the namespace, which other applications
+	 * may share.
+	 */
+	public String flushAll() {
+		return flushAll(0);
+	}
+
+	/**
+	 * FLUSHALL of the keys last written before beforeMillis, as for
+	 * flushDB(beforeMillis).
+	 */
+	public String flushAll(long beforeMillis) {
+		Set<String> existing = existingSets();
+		for (int i = 0; i < DATABASES; i++) {
+			for (String set : dbSets(i)) {
+				if (existing.contains(set))
+					truncate(set, beforeMillis);
+			}
+		}
+		List<RedisClient> clients = new ArrayList<RedisClient>(this.dbViews.values());
+		clients.add(this);
+		for (RedisClient client : clients) {
+			HotKeyTracker tracker = client.hotKeyTracker;
+			if (tracker != null)
+				tracker.invalidateAll();
+			for (ExpirySweeper sweeper : client.sweepers)
+				sweeper.flushed();
+		}
+		return "OK";
+	}
+
+	/*
+	 * The sets of database db, all named after its set; none for a client
+	 * without a set, whose bitmap, geo and stream sets may be shared
+	 */
+	private String[] dbSets(int db) {
+		String zero = (this.dbZeroSet != null) ? this.dbZeroSet : this.redisSet;
+		return (zero == null) ? new String[0] : ownedSets(dbSet(zero, db));
+	}
+
+	/*
+	 * The sets of the namespace that hold records; truncating a set the
+	 * server has not seen would create it
+	 */
+	private Set<String> existingSets() {
+		// ns=test:set=tweets:objects=68763:... or, before server 3.9, ns_name=test:set_name=tweets:n_objects=68763:...
+		Pattern pattern = Pattern.compile("(?:ns_name|ns)=" + Pattern.quote(this.namespace) + ":(?:set_name|set)=([^:;]+)");
+		Set<String> sets = new HashSet<String>();
+		for (String info : infoAll(this.asClient, "sets")) {
+			Matcher matcher = pattern.matcher(info);
+			while (matcher.find())
+				sets.add(matcher.group(1));
+		}
+		return sets;
+	}
+
+	/*
+	 * A truncate sent to one node is carried out by the whole cluster
+	 */
+	private void truncate(String set, long beforeMillis) {
+		String command = "truncate:namespace=" + this.namespace + ";set=" + set;
+		if (beforeMillis > 0)
+			command += ";lut=" + beforeMillis * 1000000L; // in nanoseconds
+		String answer = null;
+		AerospikeException failure = null;
+		for (Node node : this.asClient.getNodes()) {
+			try {
+				answer = Info.request(node, command);
+			} catch (AerospikeException e) {
+				failure = e;
+				continue;
+			}
+			if (answer != null && answer.trim().equalsIgnoreCase("ok"))
+				return;
+			if (answer != null && answer.trim().length() > 0)
+				throw new AerospikeException(ResultCode.SERVER_ERROR, "ERR truncate of " + set + " failed: " + answer);
+		}
+		if (answer == null)
+			throw (failure != null) ? failure : new AerospikeException(ResultCode.SERVER_NOT_AVAILABLE, "ERR no cluster nodes");
+		// the nodes do not know the command
+		if (beforeMillis > 0)
+			throw new AerospikeException(ResultCode.PARAMETER_ERROR, "ERR flushing keys written before a time needs Aerospike 3.12 or later");
+		deleteAll(set);
+	}
+
+	private void deleteAll(String set) {
+		ScanPolicy deletePolicy = new ScanPolicy();
+		deletePolicy.timeout = this.scanPolicy.timeout;
+		deletePolicy.includeBinData = false;
+		deletePolicy.concurrentNodes = true;
+		deletePolicy.maxConcurrentNodes = this.scanConcurrency;
+		this.asClient.scanAll(deletePolicy, this.namespace, set, new ScanCallback() {
+			@Override
+			public void scanCallback(Key key, Record record) throws AerospikeException {
+				asClient.delete(writePolicy, key);
+			}
+		});
+	}
+
 	public String echo(String message) {
 		return message;
 	}
 
 	public Long ttl(Object key) {
 		try {
-			Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
+			Key asKey = asKey(key);
 			Record record = this.asClient.getHeader(this.policy, asKey);
 			long now = (System.currentTimeMillis() - AS_TIME_OFFSET) / 1000;
 			long exp = record.expiration;
@@ -437,18 +1366,19 @@ public class RedisClient{
 
 
 	public long incrBy(Object key, long increment) {
-		Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
-		Bin keyBin = new Bin(this.keyBin , key);
+		Key asKey = asKey(key);
 		Bin addBin = new Bin(this.redisBin, Value.get(increment));
-		WritePolicy wp = new WritePolicy();
-		wp.recordExistsAction = RecordExistsAction.UPDATE;
-		Record record = this.asClient.operate(wp, asKey, Operation.put(keyBin), Operation.add(addBin), Operation.get(this.redisBin));
+		Record record = this.storeKeyBin
+				? this.asClient.operate(this.updatePolicy, asKey, Operation.put(new Bin(this.keyBin, asKey.userKey)), Operation.add(addBin), this.getValue)
+				: this.asClient.operate(this.updatePolicy, asKey, Operation.add(addBin), this.getValue);
+		written(key);
 		return record.getInt(this.redisBin);
 	}
 
 	public double incrByFloat(Object key, double value) {
-		Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
+		Key asKey = asKey(key);
 		Object ret = this.asClient.execute(this.writePolicy, asKey, "redis", "INCRBYFLOAT", Value.get(this.redisBin), Value.get(value));
+		written(key);
 		return (Double) ret;
 	}
 
@@ -459,32 +1389,77 @@ public class RedisClient{
 
 
 	public long decrBy(Object key, long i) {
-		Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
-		Bin keyBin = new Bin(this.keyBin , key);
+		Key asKey = asKey(key);
 		Bin addBin = new Bin(this.redisBin, -i);
-		WritePolicy wp = new WritePolicy();
-		wp.recordExistsAction = RecordExistsAction.UPDATE;
-		Record record = this.asClient.operate(wp, asKey, Operation.put(keyBin), Operation.add(addBin), Operation.get(this.redisBin));
+		Record record = this.storeKeyBin
+				? this.asClient.operate(this.updatePolicy, asKey, Operation.put(new Bin(this.keyBin, asKey.userKey)), Operation.add(addBin), this.getValue)
+				: this.asClient.operate(this.updatePolicy, asKey, Operation.add(addBin), this.getValue);
+		written(key);
 		return record.getInt(this.redisBin);
 	}
 
 
 	public Object getSet(Object key, Object value) {
-		Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
-		return this.asClient.execute(this.writePolicy, asKey, "redis", "GETSET", Value.get(this.redisBin), Value.get(value));
+		Key asKey = asKey(key);
+		// the old value, and 1 if it was compressed; empty if there was none
+		List<?> old = (List<?>) this.asClient.execute(this.writePolicy, asKey, "redis", "GETSET", Value.get(this.redisBin),
+				Value.get(value), Value.get(Compression.FLAG_BIN));
+		written(key);
+		if (old.isEmpty())
+			return null;
+		if (((Number) old.get(1)).intValue() == 1)
+			return decode(ValueCodecs.UTF8, Compression.decompress(old.get(0), this.compression));
+		return old.get(0);
 	}
 
 
 	public long append(Object key, Object value) {
-		Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
-		Bin keyBin = new Bin(this.keyBin , key);
+		if (this.compression != null)
+			return appendCompressed(key, value);
+		Key asKey = asKey(key);
 		Bin appendBin = new Bin(this.redisBin, Value.get(value));
-		WritePolicy wp = new WritePolicy();
-		wp.recordExistsAction = RecordExistsAction.UPDATE;
-		Record record = this.asClient.operate(wp, asKey, Operation.put(keyBin), Operation.append(appendBin), Operation.get(this.redisBin));
+		Record record = this.storeKeyBin
+				? this.asClient.operate(this.updatePolicy, asKey, Operation.put(new Bin(this.keyBin, asKey.userKey)), Operation.append(appendBin), this.getValue)
+				: this.asClient.operate(this.updatePolicy, asKey, Operation.append(appendBin), this.getValue);
+		written(key);
 		return ((String)record.getValue(this.redisBin)).length();
 	}
 
+	/*
+	 * The server can't append to a compressed value, so the value is read,
+	 * appended to and written back with the time it has left, again if it
+	 * changed meanwhile.
+	 */
+	private long appendCompressed(Object key, Object value) {
+		Key asKey = asKey(key);
+		while (true) {
+			Record record = this.asClient.get(this.policy, asKey, this.redisBins);
+			String old = decode(ValueCodecs.UTF8, Compression.decompress(record, this.redisBin, this.compression));
+			String appended = (old == null) ? value.toString() : old + value;
+			WritePolicy wp = new WritePolicy(this.writePolicy);
+			if (record == null) {
+				wp.recordExistsAction = RecordExistsAction.CREATE_ONLY;
+			} else {
+				wp.recordExistsAction = RecordExistsAction.REPLACE;
+				wp.generationPolicy = GenerationPolicy.EXPECT_GEN_EQUAL;
+				wp.generation = record.generation;
+				if (record.expiration == 0) {
+					wp.expiration = -1;
+				} else {
+					long ttl = record.expiration - (System.currentTimeMillis() - AS_TIME_OFFSET) / 1000;
+					wp.expiration = (int) Math.max(1, ttl);
+				}
+			}
+			try {
+				set(wp, key, appended);
+				return appended.length();
+			} catch (AerospikeException e) {
+				if (e.getResultCode() != ResultCode.GENERATION_ERROR && e.getResultCode() != ResultCode.KEY_EXISTS_ERROR)
+					throw e;
+			}
+		}
+	}
+
 	public String getRange(String key, long startOffset, long endOffset) {
 		String result = get(key);
 		return result.substring((int)startOffset, (int)endOffset+1);
@@ -502,12 +1477,131 @@ public class RedisClient{
 		return (long) result.length();
 	}
 
+/*
+ * Transactions
+ */
+
+	/**
+	 * Records the generation of each key (0 if it does not exist) for the
+	 * next transaction started on this thread.
+	 */
+	public String watch(String... keys) {
+		Key[] asKeys = new Key[keys.length];
+		for (int i = 0; i < keys.length; i++){
+			asKeys[i] = new Key(this.namespace, this.redisSet, keys[i]);
+		}
+		Record[] records = this.asClient.getHeader(null, asKeys);
+		Map<Key, Integer> watched = this.watches.get();
+		if (watched == null){
+			watched = new HashMap<Key, Integer>();
+			this.watches.set(watched);
+		}
+		for (int i = 0; i < keys.length; i++){
+			if (!watched.containsKey(asKeys[i]))
+				watched.put(asKeys[i], (records[i] == null) ? 0 : records[i].generation);
+		}
+		return "OK";
+	}
+
+
+	public String unwatch() {
+		this.watches.remove();
+		return "OK";
+	}
+
+
+	/**
+	 * Starts a transaction; it takes over the keys watched on this thread.
+	 */
+	public Transaction multi() {
+		Map<Key, Integer> watched = this.watches.get();
+		this.watches.remove();
+		if (watched == null)
+			watched = new HashMap<Key, Integer>();
+		return new Transaction(this, this.asClient, this.writePolicy, this.namespace, this.redisSet, 
+				this.redisBin, this.storeKeyBin ? this.keyBin : null, this.compression, watched);
+	}
+
+
+	/**
+	 * Watches the keys, runs the block and EXECs, starting again while a
+	 * watched key changed. Returns the EXEC results, or null if every
+	 * attempt conflicted.
+	 */
+	public List<Object> multi(TransactionBlock block, int maxAttempts, String... watchKeys) {
+		for (int attempt = 0; attempt < maxAttempts; attempt++){
+			watch(watchKeys);
+			Transaction transaction = multi();
+			block.execute(this, transaction);
+			List<Object> results = transaction.exec();
+			if (results != null)
+				return results;
+		}
+		return null;
+	}
+
+/*
+ * Bitmap operations
+ */
+
+	private BitmapStore bitmaps() {
+		if (this.bitmapStore == null)
+			this.bitmapStore = new BitmapStore(this.asClient, this.writePolicy, this.namespace, this.redisSet, 
+					this.bitmapSet, this.redisBin, this.storeKeyBin ? this.keyBin : null, this.compression);
+		return this.bitmapStore;
+	}
+
+
+	public boolean setbit(String key, long offset, boolean value) {
+		boolean old = bitmaps().setBit(key, offset, value);
+		written(key);
+		return old;
+	}
+
+
+	public boolean getbit(String key, long offset) {
+		return bitmaps().getBit(key, offset);
+	}
+
+
+	public long bitcount(String key) {
+		return bitmaps().bitCount(key, 0, -1);
+	}
+
+
+	public long bitcount(String key, long start, long end) {
+		return bitmaps().bitCount(key, start, end);
+	}
+
+
+	public long bitop(BITOP op, String destKey, String... srcKeys) {
+		long length = bitmaps().bitOp(op, destKey, srcKeys);
+		written(destKey);
+		return length;
+	}
+
+
+	public long bitpos(String key, boolean value) {
+		return bitmaps().bitPos(key, value, 0, -1, false);
+	}
+
+
+	public long bitpos(String key, boolean value, long start) {
+		return bitmaps().bitPos(key, value, start, -1, false);
+	}
+
+
+	public long bitpos(String key, boolean value, long start, long end) {
+		return bitmaps().bitPos(key, value, start, end, true);
+	}
+
 /*
  * List operations
  */
 	public long rpush(String key, String value) {
 		Key asKey = new Key(this.namespace, this.redisSet, key);
 		Integer result =  (Integer) this.asClient.execute(this.writePolicy, asKey, "redis", "RPUSH", Value.get(this.redisBin), Value.get(value));
+		BlockingPopScheduler.signal(asKey);
 		return result.longValue();
 	}
 
@@ -515,6 +1609,7 @@ public class RedisClient{
 	public long lpush(String key, String value) {
 		Key asKey = new Key(this.namespace, this.redisSet, key);
 		Integer result =  (Integer) this.asClient.execute(this.writePolicy, asKey, "redis", "LPUSH", Value.get(this.redisBin), Value.get(value));
+		BlockingPopScheduler.signal(asKey);
 		return result.longValue();
 	}
 
@@ -560,7 +1655,7 @@ public class RedisClient{
 	public String lpop(String key) {
 		Key asKey = new Key(this.namespace, this.redisSet, key);
 		List<String> result = (List<String>) this.asClient.execute(this.writePolicy, asKey, "redis", "LPOP", Value.get(this.redisBin), Value.get(1));
-		if (result.size() == 0)
+		if (result == null || result.size() == 0)
 			return null;
 		return result.get(0);
 	}
@@ -578,14 +1673,73 @@ public class RedisClient{
 		Key asPopKey = new Key(this.namespace, this.redisSet, popKey);
 		Key asPushKey = new Key(this.namespace, this.redisSet, pushKey);
 		List poppedValue = (List) this.asClient.execute(this.writePolicy, asPopKey, "redis", "RPOP", Value.get(this.redisBin), Value.get(1));
-		this.asClient.execute(this.writePolicy, asPushKey, "redis", "LPUSH", Value.get(this.redisBin), Value.get(poppedValue.get(0)));
+		if (poppedValue == null || poppedValue.isEmpty())
+			return null;
+		try {
+			this.asClient.execute(this.writePolicy, asPushKey, "redis", "LPUSH", Value.get(this.redisBin), Value.get(poppedValue.get(0)));
+		} catch (AerospikeException e) {
+			// put the element back rather than lose it
+			this.asClient.execute(this.writePolicy, asPopKey, "redis", "RPUSH", Value.get(this.redisBin), Value.get(poppedValue.get(0)));
+			throw e;
+		}
+		BlockingPopScheduler.signal(asPushKey);
 		return poppedValue.get(0).toString();
 	}
 
+	/*
+	 * Blocking operations. Aerospike cannot hold a request open on the server, so
+	 * the caller is parked while the shared BlockingPopScheduler retries the pop
+	 * with exponential backoff. Pushes made through this JVM wake waiters at once.
+	 * A timeout of 0 blocks indefinitely; null is returned when the timeout expires.
+	 */
+	public List<String> blpop(int timeout, String... keys) {
+		return blockingPop(timeout, true, keys);
+	}
+
+
+	public List<String> brpop(int timeout, String... keys) {
+		return blockingPop(timeout, false, keys);
+	}
+
+
+	@SuppressWarnings("unchecked")
+	private List<String> blockingPop(int timeout, final boolean left, final String... keys) {
+		final Key[] asKeys = new Key[keys.length];
+		for (int i = 0; i < keys.length; i++){
+			asKeys[i] = new Key(this.namespace, this.redisSet, keys[i]);
+		}
+		return (List<String>) BlockingPopScheduler.shared().await(asKeys, new BlockingPopScheduler.PopAttempt() {
+
+			@Override
+			public Object attempt() {
+				for (String key : keys){
+					String value = left ? lpop(key) : rpop(key);
+					if (value != null)
+						return Arrays.asList(key, value);
+				}
+				return null;
+			}
+		}, timeout * 1000L);
+	}
+
+
+	public String brpoplpush(final String source, final String destination, int timeout) {
+		Key[] asKeys = new Key[] {new Key(this.namespace, this.redisSet, source)};
+		return (String) BlockingPopScheduler.shared().await(asKeys, new BlockingPopScheduler.PopAttempt() {
+
+			@Override
+			public Object attempt() {
+				// rpoplpush puts the element back if the push fails
+				return rpoplpush(source, destination);
+			}
+		}, timeout * 1000L);
+	}
+
 
 	public long lpushx(String key, String value) {
 		Key asKey = new Key(this.namespace, this.redisSet, key);
 		Object result = this.asClient.execute(this.writePolicy, asKey, "redis", "LPUSHX", Value.get(this.redisBin), Value.get(value));
+		BlockingPopScheduler.signal(asKey);
 		return ((Integer)result).longValue();
 	}
 
@@ -593,6 +1747,7 @@ public class RedisClient{
 	public long rpushx(String key, String value) {
 		Key asKey = new Key(this.namespace, this.redisSet, key);
 		Object result = this.asClient.execute(this.writePolicy, asKey, "redis", "RPUSHX", Value.get(this.redisBin), Value.get(value));
+		BlockingPopScheduler.signal(asKey);
 		return ((Integer)result).longValue();
 	}
 
@@ -602,6 +1757,7 @@ public class RedisClient{
 		Key asKey = new Key(this.namespace, this.redisSet, key);
 		Object result =  this.asClient.execute(this.writePolicy, asKey, "redis", "LINSERT", Value.get(this.redisBin), 
 				Value.get(position.toString()), Value.get(piviot), Value.get(value));
+		BlockingPopScheduler.signal(asKey);
 		return ((Integer)result).longValue();
 	}
 /*
@@ -617,9 +1773,48 @@ public class RedisClient{
 
 
 	public Object hget(String key, String field) {
-		Key asKey = new Key(this.namespace, this.redisSet, key);
-		return this.asClient.execute(this.writePolicy, asKey, "redis", "HGET", Value.get(this.redisBin), 
-				Value.get(field));
+		final Key asKey = new Key(this.namespace, this.redisSet, key);
+		final String hashField = field;
+		HedgedReads hedged = this.hedgedReads;
+		if (hedged == null)
+			return this.asClient.execute(this.writePolicy, asKey, "redis", "HGET", Value.get(this.redisBin), 
+					Value.get(field));
+		final AsyncClient async = asyncClient();
+		if (async != null) {
+			return hedged.race(new HedgedReads.AsyncRead<Object>() {
+				@Override
+				public void start(boolean hedge, final HedgedReads.Answer answer) {
+					if (!hedge) {
+						async.execute(writePolicy, answer, asKey, "redis", "HGET", Value.get(redisBin), Value.get(hashField));
+						return;
+					}
+					// UDFs run on the master, so the hedge reads the hash and picks the field
+					async.get(hedgePolicy, new RecordListener() {
+						@Override
+						public void onSuccess(Key key, Record record) {
+							Object hash = (record == null) ? null : record.getValue(redisBin);
+							answer.onSuccess(key, (hash instanceof Map) ? ((Map<?, ?>) hash).get(hashField) : null);
+						}
+
+						@Override
+						public void onFailure(AerospikeException failure) {
+							answer.onFailure(failure);
+						}
+					}, asKey, redisBin);
+				}
+			}, this.limiter);
+		}
+		return hedged.read(new HedgedReads.Read<Object>() {
+			@Override
+			public Object read(boolean hedge, int timeout) {
+				if (!hedge)
+					return asClient.execute(timed(writePolicy, timeout), asKey, "redis", "HGET", Value.get(redisBin), Value.get(hashField));
+				// UDFs run on the master, so the hedge reads the hash and picks the field
+				Record record = asClient.get(timed(hedgePolicy, timeout), asKey, redisBin);
+				Object hash = (record == null) ? null : record.getValue(redisBin);
+				return (hash instanceof Map) ? ((Map<?, ?>) hash).get(hashField) : null;
+			}
+		}, this.writePolicy.timeout);
 	}
 
 
@@ -719,8 +1914,380 @@ public class RedisClient{
 				Value.get(field), Value.get(value));
 	}
 
+/*
+ * Geo operations
+ */
+
+	private GeoStore geo() {
+		if (this.geoStore == null)
+			this.geoStore = new GeoStore(this.asClient, this.writePolicy, this.policy, this.namespace, 
+					this.redisSet, this.geoSet, this.storeKeyBin ? this.keyBin : null);
+		return this.geoStore;
+	}
+
+
+	public long geoadd(String key, double longitude, double latitude, String member) {
+		Map<String, GeoCoordinate> members = new HashMap<String, GeoCoordinate>();
+		members.put(member, new GeoCoordinate(longitude, latitude));
+		return geo().add(key, members);
+	}
 
 
+	public long geoadd(String key, Map<String, GeoCoordinate> memberCoordinateMap) {
+		return geo().add(key, memberCoordinateMap);
+	}
 
 
+	public List<GeoCoordinate> geopos(String key, String... members) {
+		return geo().positions(key, members);
+	}
+
+
+	public Double geodist(String key, String member1, String member2) {
+		return geodist(key, member1, member2, GeoUnit.M);
+	}
+
+
+	public Double geodist(String key, String member1, String member2, GeoUnit unit) {
+		List<GeoCoordinate> positions = geo().positions(key, member1, member2);
+		GeoCoordinate a = positions.get(0);
+		GeoCoordinate b = positions.get(1);
+		if (a == null || b == null)
+			return null;
+		double meters = GeoHash.distance(a.getLongitude(), a.getLatitude(), b.getLongitude(), b.getLatitude());
+		// Redis replies with four decimals
+		return Math.round(unit.fromMeters(meters) * 10000) / 10000.0;
+	}
+
+
+	public List<GeoRadiusResponse> geosearch(String key, GeoCoordinate center, double radius, GeoUnit unit) {
+		return geo().search(key, center, radius, -1, unit, 0);
+	}
+
+
+	public List<GeoRadiusResponse> geosearch(String key, GeoCoordinate center, double radius, GeoUnit unit, int count) {
+		return geo().search(key, center, radius, -1, unit, count);
+	}
+
+
+	public List<GeoRadiusResponse> geosearch(String key, GeoCoordinate center, double width, double height, GeoUnit unit) {
+		return geo().search(key, center, width, height, unit, 0);
+	}
+
+
+	public List<GeoRadiusResponse> geosearch(String key, String member, double radius, GeoUnit unit) {
+		GeoCoordinate center = geo().positions(key, member).get(0);
+		if (center == null)
+			throw new AerospikeException(ResultCode.PARAMETER_ERROR, "ERR could not decode requested zset member");
+		return geo().search(key, center, radius, -1, unit, 0);
+	}
+
+/*
+ * Stream operations
+ */
+
+	/**
+	 * Sets the span of entry IDs, in milliseconds, kept in one bucket record.
+	 */
+	public void setStreamBucketMillis(long bucketMillis) {
+		this.streamBucketMillis = bucketMillis;
+		this.streamStore = null;
+	}
+
+	/**
+	 * Sets the most entries kept in one bucket record, 1000 by default; a
+	 * fast stream starts a new bucket when one fills up.
+	 */
+	public void setStreamBucketEntries(int maxEntries) {
+		this.streamBucketEntries = maxEntries;
+		this.streamStore = null;
+	}
+
+	private StreamStore streams() {
+		if (this.streamStore == null)
+			this.streamStore = new StreamStore(this.asClient, this.writePolicy, this.policy, this.namespace, 
+					this.redisSet, this.streamSet, this.redisBin, this.storeKeyBin ? this.keyBin : null,
+					this.streamBucketMillis, this.streamBucketEntries);
+		return this.streamStore;
+	}
+
+
+	public StreamEntryID xadd(String key, StreamEntryID id, Map<String, String> hash) {
+		return streams().add(key, id, hash);
+	}
+
+
+	public List<StreamEntry> xrange(String key, StreamEntryID start, StreamEntryID end, int count) {
+		return streams().range(key, (start == null) ? StreamEntryID.MINIMUM_ID : start, 
+				(end == null) ? StreamEntryID.MAXIMUM_ID : end, count);
+	}
+
+
+	public Long xlen(String key) {
+		return streams().length(key);
+	}
+
+
+	public String xgroupCreate(String key, String groupname, StreamEntryID id) {
+		return streams().createGroup(key, groupname, id);
+	}
+
+
+	public List<StreamEntry> xreadGroup(String groupname, String consumer, int count, String key, StreamEntryID id) {
+		return streams().readGroup(groupname, consumer, count, key, id);
+	}
+
+
+	public long xack(String key, String group, StreamEntryID... ids) {
+		return streams().ack(key, group, ids);
+	}
+
+/*
+ * Expiry notifications
+ */
+
+	/**
+	 * An expiry sweeper for this client's database, not yet started. It
+	 * reports the keys that expire, as keyspace notifications do in Redis.
+	 * Keys this client deletes or flushes while the sweeper runs are not
+	 * reported.
+	 */
+	public ExpirySweeper expirySweeper() {
+		return new ExpirySweeper(this, this.asClient, this.namespace, this.redisSet, this.keyBin, this.db);
+	}
+
+/*
+ * Pub/Sub operations
+ */
+
+	/**
+	 * Appends the message to the channel's ring buffer record. Redis returns the
+	 * number of clients that received the message; here only subscribers in
+	 * this JVM can be counted.
+	 */
+	public long publish(String channel, String message) {
+		Key asKey = new Key(this.namespace, this.pubSubSet, channel);
+		Object seq = this.asClient.execute(this.writePolicy, asKey, "redis", "PUBLISH", Value.get(PubSubHub.RING_BIN), 
+				Value.get(PubSubHub.SEQ_BIN), Value.get(PubSubHub.CAPACITY), Value.get(message));
+		if (((Number) seq).longValue() == 1){
+			// first message on this channel, so pattern subscribers can find it
+			Key directoryKey = new Key(this.namespace, this.pubSubSet, PubSubHub.DIRECTORY_KEY);
+			this.asClient.execute(this.writePolicy, directoryKey, "redis", "HSET", Value.get(PubSubHub.DIRECTORY_BIN), 
+					Value.get(channel), Value.get(System.currentTimeMillis()));
+		}
+		PubSubHub hub = this.pubSubHub.get();
+		if (hub == null)
+			return 0;
+		hub.published();
+		return hub.receivers(channel);
+	}
+
+
+	public void subscribe(RedisPubSub pubSub, String... channels) {
+		pubSub.proceed(pubSubHub(), channels, null);
+	}
+
+
+	public void psubscribe(RedisPubSub pubSub, String... patterns) {
+		pubSub.proceed(pubSubHub(), null, patterns);
+	}
+
+	/*
+	 * The hub of this client's subscribers, created with the first one
+	 */
+	private PubSubHub pubSubHub() {
+		PubSubHub hub = this.pubSubHub.get();
+		if (hub == null) {
+			this.pubSubHub.compareAndSet(null, new PubSubHub(this.aerospikeClient, this.namespace, this.pubSubSet));
+			hub = this.pubSubHub.get();
+		}
+		return hub;
+	}
+
+
+	@SuppressWarnings("unchecked")
+	public List<String> pubsubChannels(String pattern) {
+		Key directoryKey = new Key(this.namespace, this.pubSubSet, PubSubHub.DIRECTORY_KEY);
+		Record record = this.asClient.get(this.policy, directoryKey, PubSubHub.DIRECTORY_BIN);
+		List<String> result = new ArrayList<String>();
+		if (record == null || record.getValue(PubSubHub.DIRECTORY_BIN) == null)
+			return result;
+		GlobTrie<String> trie = new GlobTrie<String>();
+		trie.add(pattern, pattern);
+		for (String channel : ((Map<String, Object>) record.getValue(PubSubHub.DIRECTORY_BIN)).keySet()){
+			if (trie.matches(channel))
+				result.add(channel);
+		}
+		return result;
+	}
+
+/*
+ * HyperLogLog operations
+ */
+
+	/**
+	 * Hashes the elements here and sends only the register updates, so the
+	 * PFADD UDF touches the blob once however many elements are added.
+	 */
+	public long pfadd(String key, String... elements) {
+		Key asKey = new Key(this.namespace, this.redisSet, key);
+		List<Integer> updates = new ArrayList<Integer>(elements.length * 2);
+		for (String element : elements){
+			long hash = HyperLogLog.hash(element);
+			updates.add(HyperLogLog.index(hash));
+			updates.add(HyperLogLog.rank(hash));
+		}
+		Object changed = this.asClient.execute(this.writePolicy, asKey, "redis", "PFADD", 
+				Value.get(this.redisBin), Value.get(updates));
+		written(key);
+		return ((Number) changed).longValue();
+	}
+
+
+	/**
+	 * Reads every key in one batch and merges the registers here. A single
+	 * key with a valid cached cardinality is answered from the header.
+	 */
+	public long pfcount(String... keys) {
+		Record[] records = this.asClient.get(null, hllKeys(null, keys), this.redisBin);
+		if (records.length == 1){
+			if (records[0] == null)
+				return 0;
+			long cached = HyperLogLog.cachedCardinality(hllValue(records[0]));
+			if (cached >= 0)
+				return cached;
+		}
+		return HyperLogLog.count(mergeRegisters(records));
+	}
+
+
+	/**
+	 * Merges the sources (and the destination, if it exists) into a dense
+	 * HyperLogLog stored at the destination.
+	 */
+	public String pfmerge(String destkey, String... sourcekeys) {
+		Key[] asKeys = hllKeys(destkey, sourcekeys);
+		Record[] records = this.asClient.get(null, asKeys, this.redisBins);
+		byte[] value = HyperLogLog.packDense(mergeRegisters(records));
+		if (this.storeKeyBin)
+			this.asClient.put(this.writePolicy, asKeys[0], new Bin(this.keyBin, destkey), new Bin(this.redisBin, value),
+					Compression.flag(false));
+		else
+			this.asClient.put(this.writePolicy, asKeys[0], new Bin(this.redisBin, value), Compression.flag(false));
+		written(destkey);
+		return "OK";
+	}
+
+	private Key[] hllKeys(String first, String... keys) {
+		int offset = (first == null) ? 0 : 1;
+		Key[] asKeys = new Key[keys.length + offset];
+		if (first != null)
+			asKeys[0] = new Key(this.namespace, this.redisSet, first);
+		for (int i = 0; i < keys.length; i++){
+			asKeys[i + offset] = new Key(this.namespace, this.redisSet, keys[i]);
+		}
+		return asKeys;
+	}
+
+	private byte[] hllValue(Record record) {
+		Object value = record.getValue(this.redisBin);
+		if (!(value instanceof byte[]) || !HyperLogLog.isHyperLogLog((byte[]) value))
+			throw new AerospikeException(ResultCode.BIN_TYPE_ERROR, "WRONGTYPE Key is not a valid HyperLogLog string value.");
+		return (byte[]) value;
+	}
+
+	private byte[] mergeRegisters(Record[] records) {
+		byte[] max = new byte[HyperLogLog.REGISTERS];
+		byte[] registers = new byte[HyperLogLog.REGISTERS];
+		for (Record record : records){
+			if (record == null)
+				continue;
+			HyperLogLog.unpack(hllValue(record), registers);
+			HyperLogLog.merge(max, registers);
+		}
+		return max;
+	}
+
+	/*
+	 * Scripting
+	 */
+	/**
+	 * Runs a Redis Lua script on the record of its key. The script is
+	 * registered as a UDF module the first time it is seen; after that only
+	 * its SHA1 is used. Scripts must use exactly one key.
+	 */
+	public Object eval(String script, List<String> keys, List<String> args) {
+		return evalModule(scriptRegistry().load(script), keys, args);
+	}
+
+	public Object eval(String script, int keyCount, String... params) {
+		return eval(script, Arrays.asList(params).subList(0, keyCount), 
+				Arrays.asList(params).subList(keyCount, params.length));
+	}
+
+	public Object evalsha(String sha1, List<String> keys, List<String> args) {
+		return evalModule(sha1, keys, args);
+	}
+
+	public Object evalsha(String sha1, int keyCount, String... params) {
+		return evalsha(sha1, Arrays.asList(params).subList(0, keyCount), 
+				Arrays.asList(params).subList(keyCount, params.length));
+	}
+
+	public String scriptLoad(String script) {
+		return scriptRegistry().load(script);
+	}
+
+	public List<Boolean> scriptExists(String... sha1) {
+		ScriptRegistry registry = scriptRegistry();
+		List<Boolean> result = new ArrayList<Boolean>(sha1.length);
+		for (String sha : sha1){
+			result.add(registry.module(sha) != null);
+		}
+		return result;
+	}
+
+	public String scriptFlush() {
+		scriptRegistry().flush();
+		return "OK";
+	}
+
+	/*
+	 * The scripts this client has loaded, shared with its db views
+	 */
+	private ScriptRegistry scriptRegistry() {
+		ScriptRegistry registry = this.scriptRegistry.get();
+		if (registry == null) {
+			this.scriptRegistry.compareAndSet(null, new ScriptRegistry(this.aerospikeClient));
+			registry = this.scriptRegistry.get();
+		}
+		return registry;
+	}
+
+	private Object evalModule(String sha1, List<String> keys, List<String> args) {
+		if (keys.size() != 1)
+			throw new AerospikeException(ResultCode.PARAMETER_ERROR, "ERR scripts must use exactly one key");
+		String module = scriptRegistry().module(sha1);
+		if (module == null)
+			throw new AerospikeException(ResultCode.PARAMETER_ERROR, "NOSCRIPT No matching script. Please use EVAL.");
+		String key = keys.get(0);
+		Key asKey = new Key(this.namespace, this.redisSet, key);
+		Object result = this.asClient.execute(this.writePolicy, asKey, module, ScriptRegistry.FUNCTION, 
+				Value.get(this.redisBin), this.storeKeyBin ? Value.get(this.keyBin) : Value.getAsNull(), Value.get(key), Value.get(args));
+		BlockingPopScheduler.signal(asKey);
+		written(key);
+		return result;
+	}
+
+	/*
+	 * Reactive Streams
+	 */
+	/**
+	 * Publisher based KEYS, LRANGE, HVALS and HGETALL, which emit results as
+	 * they are read and respect the subscriber's demand.
+	 */
+	public ReactiveCommands reactive() {
+		return new ReactiveCommands(this.asClient, this.policy, this.scanPolicy, this.namespace, this.redisSet, 
+				this.redisBin, this.keyBin);
+	}
 }
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Receives messages for RedisClient.subscribe() and psubscribe(), in the
+ * same way as JedisPubSub. The subscribing thread runs every callback;
+ * messages are handed to it by the shared PubSubHub poller.
+ */
+public abstract class RedisPubSub {
+
+	private static final int MESSAGE = 0;
+	private static final int PMESSAGE = 1;
+	private static final int SUBSCRIBE = 2;
+	private static final int UNSUBSCRIBE = 3;
+	private static final int PSUBSCRIBE = 4;
+	private static final int PUNSUBSCRIBE = 5;
+
+	private static final class Event {
+		final int type;
+		final String pattern;
+		final String channel;
+		final String message;
+		final int count;
+
+		Event(int type, String pattern, String channel, String message, int count) {
+			this.type = type;
+			this.pattern = pattern;
+			this.channel = channel;
+			this.message = message;
+			this.count = count;
+		}
+	}
+
+	private final LinkedBlockingQueue<Event> events = new LinkedBlockingQueue<Event>();
+	private final Set<String> channels = new HashSet<String>();
+	private final Set<String> patterns = new HashSet<String>();
+	private volatile PubSubHub hub;
+
+	public void onMessage(String channel, String message) {
+	}
+
+	public void onPMessage(String pattern, String channel, String message) {
+	}
+
+	public void onSubscribe(String channel, int subscribedChannels) {
+	}
+
+	public void onUnsubscribe(String channel, int subscribedChannels) {
+	}
+
+	public void onPSubscribe(String pattern, int subscribedChannels) {
+	}
+
+	public void onPUnsubscribe(String pattern, int subscribedChannels) {
+	}
+
+	public void subscribe(String... channels) {
+		checkHub().subscribe(this, channels);
+	}
+
+	public void unsubscribe() {
+		checkHub().unsubscribe(this, getSubscribedChannels().toArray(new String[0]));
+	}
+
+	public void unsubscribe(String... channels) {
+		checkHub().unsubscribe(this, channels);
+	}
+
+	public void psubscribe(String... patterns) {
+		checkHub().psubscribe(this, patterns);
+	}
+
+	public void punsubscribe() {
+		checkHub().punsubscribe(this, getSubscribedPatterns().toArray(new String[0]));
+	}
+
+	public void punsubscribe(String... patterns) {
+		checkHub().punsubscribe(this, patterns);
+	}
+
+	public synchronized boolean isSubscribed() {
+		return this.channels.size() + this.patterns.size() > 0;
+	}
+
+	public synchronized int getSubscribedChannelsCount() {
+		return this.channels.size() + this.patterns.size();
+	}
+
+	public synchronized List<String> getSubscribedChannels() {
+		return new ArrayList<String>(this.channels);
+	}
+
+	public synchronized List<String> getSubscribedPatterns() {
+		return new ArrayList<String>(this.patterns);
+	}
+
+	private PubSubHub checkHub() {
+		PubSubHub current = this.hub;
+		if (current == null)
+			throw new IllegalStateException("RedisPubSub is not subscribed");
+		return current;
+	}
+
+	/*
+	 * Called by RedisClient on the subscribing thread; returns once every
+	 * channel and pattern has been unsubscribed.
+	 */
+	void proceed(PubSubHub hub, String[] channels, String[] patterns) {
+		this.hub = hub;
+		if (channels != null)
+			hub.subscribe(this, channels);
+		if (patterns != null)
+			hub.psubscribe(this, patterns);
+		try {
+			while (isSubscribed() || !this.events.isEmpty()) {
+				Event event = this.events.take();
+				switch (event.type) {
+				case MESSAGE:
+					onMessage(event.channel, event.message);
+					break;
+				case PMESSAGE:
+					onPMessage(event.pattern, event.channel, event.message);
+					break;
+				case SUBSCRIBE:
+					onSubscribe(event.channel, event.count);
+					break;
+				case UNSUBSCRIBE:
+					onUnsubscribe(event.channel, event.count);
+					break;
+				case PSUBSCRIBE:
+					onPSubscribe(event.pattern, event.count);
+					break;
+				case PUNSUBSCRIBE:
+					onPUnsubscribe(event.pattern, event.count);
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			hub.unsubscribe(this, getSubscribedChannels().toArray(new String[0]));
+			hub.punsubscribe(this, getSubscribedPatterns().toArray(new String[0]));
+		} finally {
+			this.events.clear();
+			this.hub = null;
+		}
+	}
+
+	/*
+	 * Subscription bookkeeping, called by the hub
+	 */
+	synchronized boolean addChannel(String channel) {
+		if (!this.channels.add(channel))
+			return false;
+		this.events.add(new Event(SUBSCRIBE, null, channel, null, getSubscribedChannelsCount()));
+		return true;
+	}
+
+	synchronized boolean removeChannel(String channel) {
+		if (!this.channels.remove(channel))
+			return false;
+		this.events.add(new Event(UNSUBSCRIBE, null, channel, null, getSubscribedChannelsCount()));
+		return true;
+	}
+
+	synchronized boolean addPattern(String pattern) {
+		if (!this.patterns.add(pattern))
+			return false;
+		this.events.add(new Event(PSUBSCRIBE, pattern, null, null, getSubscribedChannelsCount()));
+		return true;
+	}
+
+	synchronized boolean removePattern(String pattern) {
+		if (!this.patterns.remove(pattern))
+			return false;
+		this.events.add(new Event(PUNSUBSCRIBE, pattern, null, null, getSubscribedChannelsCount()));
+		return true;
+	}
+
+	void deliver(String channel, String message) {
+		this.events.add(new Event(MESSAGE, null, channel, message, 0));
+	}
+
+	void deliver(String pattern, String channel, String message) {
+		this.events.add(new Event(PMESSAGE, pattern, channel, message, 0));
+	}
+}
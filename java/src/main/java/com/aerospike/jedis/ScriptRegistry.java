@@ -0,0 +1,170 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Info;
+import com.aerospike.client.Language;
+import com.aerospike.client.ResultCode;
+import com.aerospike.client.cluster.Node;
+
+/**
+ * Registers Redis scripts for EVAL and EVALSHA as Aerospike UDF modules.
+ * <p>
+ * Each script becomes a module named <code>redis_eval_</code> followed by its
+ * SHA1, which wraps the script body in a function and hands it to the
+ * <code>redis_eval</code> runtime. A module is registered with the cluster
+ * once; the SHA1 to module mapping is then cached per RedisClient and its
+ * database views, so repeated calls neither upload the script nor ask the
+ * cluster about it.
+ */
+final class ScriptRegistry {
+
+	static final String RUNTIME_MODULE = "redis_eval";
+	static final String MODULE_PREFIX = "redis_eval_";
+	static final String FUNCTION = "EVAL";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final AerospikeClient asClient;
+	private final Map<String, String> modules = new ConcurrentHashMap<String, String>(); // SHA1 to module name
+	private volatile boolean runtimeRegistered;
+
+	ScriptRegistry(AerospikeClient asClient) {
+		this.asClient = asClient;
+	}
+
+	/**
+	 * Registers the script unless the cluster already has it, and returns its SHA1.
+	 */
+	String load(String script) {
+		String sha = sha1(script);
+		if (this.modules.containsKey(sha))
+			return sha;
+		String module = MODULE_PREFIX + sha;
+		List<String> registered = registeredModules();
+		if (!this.runtimeRegistered && !registered.contains(RUNTIME_MODULE)) {
+			this.asClient.register(null, "udf/" + RUNTIME_MODULE + ".lua", RUNTIME_MODULE + ".lua", Language.LUA).waitTillComplete();
+		}
+		this.runtimeRegistered = true;
+		if (!registered.contains(module))
+			register(module, source(sha, script));
+		this.modules.put(sha, module);
+		return sha;
+	}
+
+	/**
+	 * The module for a SHA1, or null if no script with that SHA1 is registered.
+	 */
+	String module(String sha) {
+		sha = sha.toLowerCase();
+		String module = this.modules.get(sha);
+		if (module == null && registeredModules().contains(MODULE_PREFIX + sha)) {
+			module = MODULE_PREFIX + sha;
+			this.modules.put(sha, module);
+		}
+		return module;
+	}
+
+	/**
+	 * Removes every script module from the cluster. The runtime stays registered.
+	 */
+	void flush() {
+		this.modules.clear();
+		Node node = this.asClient.getNodes()[0];
+		for (String module : registeredModules()) {
+			if (module.startsWith(MODULE_PREFIX))
+				Info.request(node, "udf-remove:filename=" + module + ".lua");
+		}
+	}
+
+	private List<String> registeredModules() {
+		List<String> names = new ArrayList<String>();
+		String list = Info.request(this.asClient.getNodes()[0], "udf-list");
+		for (String entry : list.split(";")) {
+			for (String field : entry.split(",")) {
+				if (field.startsWith("filename=") && field.endsWith(".lua"))
+					names.add(field.substring(9, field.length() - 4));
+			}
+		}
+		return names;
+	}
+
+	private void register(String module, String source) {
+		File file = null;
+		try {
+			file = File.createTempFile(module, ".lua");
+			OutputStream out = new FileOutputStream(file);
+			try {
+				out.write(source.getBytes(UTF8));
+			} finally {
+				out.close();
+			}
+			this.asClient.register(null, file.getPath(), module + ".lua", Language.LUA).waitTillComplete();
+		} catch (IOException e) {
+			throw new AerospikeException(ResultCode.SERVER_ERROR, "Cannot write script module: " + e.getMessage());
+		} finally {
+			if (file != null)
+				file.delete();
+		}
+	}
+
+	/*
+	 * The script body becomes a local function, so its locals and its
+	 * return value behave as they do in Redis.
+	 */
+	static String source(String sha, String script) {
+		return "-- Redis script " + sha + "\n"
+				+ "local runtime = require('" + RUNTIME_MODULE + "')\n"
+				+ "\n"
+				+ "local function script(KEYS, ARGV, redis)\n"
+				+ script + "\n"
+				+ "end\n"
+				+ "\n"
+				+ "function " + FUNCTION + "(rec, bin, key_bin, key, argv)\n"
+				+ "\treturn runtime.run(rec, bin, key_bin, key, argv, script)\n"
+				+ "end\n";
+	}
+
+	static String sha1(String script) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes(UTF8));
+			char[] hex = new char[digest.length * 2];
+			for (int i = 0; i < digest.length; i++) {
+				hex[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+				hex[i * 2 + 1] = HEX[digest[i] & 0xf];
+			}
+			return new String(hex);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import java.util.Map;
+
+/**
+ * One entry of a stream: its ID and field/value pairs.
+ */
+public class StreamEntry {
+
+	private final StreamEntryID id;
+	private final Map<String, String> fields;
+
+	public StreamEntry(StreamEntryID id, Map<String, String> fields) {
+		this.id = id;
+		this.fields = fields;
+	}
+
+	public StreamEntryID getID() {
+		return this.id;
+	}
+
+	public Map<String, String> getFields() {
+		return this.fields;
+	}
+
+	@Override
+	public String toString() {
+		return this.id + " " + this.fields;
+	}
+}
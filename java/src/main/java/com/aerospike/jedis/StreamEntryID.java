@@ -0,0 +1,128 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+/**
+ * A stream entry ID, <code>milliseconds-sequence</code>, as in Redis.
+ */
+public class StreamEntryID implements Comparable<StreamEntryID> {
+
+	/** Let XADD generate the ID ("*"). */
+	public static final StreamEntryID NEW_ENTRY = new StreamEntryID() {
+		@Override
+		public String toString() {
+			return "*";
+		}
+	};
+
+	/** Entries never delivered to any consumer of the group (">"). */
+	public static final StreamEntryID UNRECEIVED_ENTRY = new StreamEntryID() {
+		@Override
+		public String toString() {
+			return ">";
+		}
+	};
+
+	/** The last entry in the stream ("$"). */
+	public static final StreamEntryID LAST_ENTRY = new StreamEntryID() {
+		@Override
+		public String toString() {
+			return "$";
+		}
+	};
+
+	/** The smallest possible ID ("-"). */
+	public static final StreamEntryID MINIMUM_ID = new StreamEntryID(0, 0);
+
+	/** The largest possible ID ("+"). */
+	public static final StreamEntryID MAXIMUM_ID = new StreamEntryID(Long.MAX_VALUE, Long.MAX_VALUE);
+
+	private final long time;
+	private final long sequence;
+
+	private StreamEntryID() {
+		this(0, 0);
+	}
+
+	public StreamEntryID(long time, long sequence) {
+		this.time = time;
+		this.sequence = sequence;
+	}
+
+	public StreamEntryID(String id) {
+		if ("-".equals(id)) {
+			this.time = 0;
+			this.sequence = 0;
+		} else if ("+".equals(id)) {
+			this.time = Long.MAX_VALUE;
+			this.sequence = Long.MAX_VALUE;
+		} else {
+			int dash = id.indexOf('-');
+			if (dash < 0) {
+				this.time = Long.parseLong(id);
+				this.sequence = 0;
+			} else {
+				this.time = Long.parseLong(id.substring(0, dash));
+				this.sequence = Long.parseLong(id.substring(dash + 1));
+			}
+		}
+	}
+
+	public long getTime() {
+		return this.time;
+	}
+
+	public long getSequence() {
+		return this.sequence;
+	}
+
+	/**
+	 * The smallest ID greater than this one.
+	 */
+	StreamEntryID next() {
+		if (this.sequence == Long.MAX_VALUE)
+			return new StreamEntryID(this.time + 1, 0);
+		return new StreamEntryID(this.time, this.sequence + 1);
+	}
+
+	@Override
+	public int compareTo(StreamEntryID other) {
+		if (this.time != other.time)
+			return (this.time < other.time) ? -1 : 1;
+		if (this.sequence != other.sequence)
+			return (this.sequence < other.sequence) ? -1 : 1;
+		return 0;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof StreamEntryID))
+			return false;
+		StreamEntryID other = (StreamEntryID) obj;
+		return this.time == other.time && this.sequence == other.sequence;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (this.time ^ (this.time >>> 32)) * 31 + (int) (this.sequence ^ (this.sequence >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		return this.time + "-" + this.sequence;
+	}
+}
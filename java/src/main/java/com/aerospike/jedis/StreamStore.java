@@ -0,0 +1,332 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.IAerospikeClient;
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+import com.aerospike.client.ResultCode;
+import com.aerospike.client.Value;
+import com.aerospike.client.policy.BatchPolicy;
+import com.aerospike.client.policy.Policy;
+import com.aerospike.client.policy.WritePolicy;
+
+/**
+ * Redis Streams on time bucketed records.
+ * <p>
+ * The stream's own record, in the client's set under the Redis key, holds
+ * the entry count, the last ID and the first entry time of every bucket. The
+ * XADD UDF on it assigns the entry's ID, so IDs increase across the whole
+ * stream, and picks the bucket; the entry is then appended to that bucket
+ * record by XAPPEND, and XCOMMIT marks it appended. A bucket holds at most
+ * <code>bucketEntries</code> entries from one span of
+ * <code>bucketMillis</code>, so adding an entry is three record operations
+ * however long the stream is, and no record grows without bound. XLEN reads
+ * the count, and XRANGE batch reads just the buckets that overlap the
+ * requested ID range. Appends of concurrent XADDs can land out of ID order,
+ * so entries are sorted as they are read, and consumer groups are only given
+ * entries below the first one still in flight. The consumer groups, each
+ * with its last delivered ID and pending entries, are kept in a record of
+ * their own in the bucket set.
+ */
+final class StreamStore {
+
+	static final String BUCKETS_BIN = "redis-buckets";
+	static final String GROUPS_BIN = "redis-groups";
+	static final String LENGTH_BIN = "redis-length";
+	static final String TOP_BIN = "redis-top";
+	static final String FILL_BIN = "redis-fill";
+	static final String INFLIGHT_BIN = "redis-inflight"; // entries given an ID but not yet appended
+	private static final int BUCKETS_PER_BATCH = 16;
+	private static final long STALL_MILLIS = 10000; // an append in flight this long is taken as failed
+
+	private static final Comparator<StreamEntry> BY_ID = new Comparator<StreamEntry>() {
+		@Override
+		public int compare(StreamEntry a, StreamEntry b) {
+			return a.getID().compareTo(b.getID());
+		}
+	};
+
+	private final IAerospikeClient asClient;
+	private final WritePolicy writePolicy;
+	private final Policy policy;
+	private final BatchPolicy batchPolicy = new BatchPolicy();
+	private final String namespace;
+	private final String set;
+	private final String bucketSet;
+	private final String entriesBin;
+	private final String keyBin; // null when keys are stored as user keys
+	private final long bucketMillis;
+	private final int bucketEntries;
+
+	StreamStore(IAerospikeClient asClient, WritePolicy writePolicy, Policy policy, String namespace, String set,
+			String bucketSet, String entriesBin, String keyBin, long bucketMillis, int bucketEntries) {
+		this.asClient = asClient;
+		this.writePolicy = writePolicy;
+		this.policy = policy;
+		this.namespace = namespace;
+		this.set = set;
+		this.bucketSet = bucketSet;
+		this.entriesBin = entriesBin;
+		this.keyBin = keyBin;
+		this.bucketMillis = bucketMillis;
+		this.bucketEntries = bucketEntries;
+	}
+
+	private Key metaKey(String key) {
+		return new Key(this.namespace, this.set, key);
+	}
+
+	private Key bucketKey(String key, long bucket) {
+		return new Key(this.namespace, this.bucketSet, key + '\u0000' + bucket);
+	}
+
+	private Key groupsKey(String key) {
+		return new Key(this.namespace, this.bucketSet, key + '\u0000' + "groups");
+	}
+
+	StreamEntryID add(String key, StreamEntryID id, Map<String, String> hash) {
+		long time;
+		long sequence;
+		if (id == null || id == StreamEntryID.NEW_ENTRY) {
+			time = System.currentTimeMillis();
+			sequence = -1;
+		} else {
+			time = id.getTime();
+			sequence = id.getSequence();
+		}
+		List<?> result = (List<?>) this.asClient.execute(this.writePolicy, metaKey(key), "redis", "XADD",
+				Value.get(BUCKETS_BIN), Value.get(LENGTH_BIN), Value.get(TOP_BIN), Value.get(FILL_BIN),
+				Value.get(time), Value.get(sequence), Value.get(this.bucketMillis), Value.get(this.bucketEntries),
+				(this.keyBin == null) ? Value.getAsNull() : Value.get(this.keyBin), Value.get(key),
+				Value.get(INFLIGHT_BIN), Value.get(System.currentTimeMillis()), Value.get(STALL_MILLIS));
+		long ms = ((Number) result.get(0)).longValue();
+		long seq = ((Number) result.get(1)).longValue();
+		long bucket = ((Number) result.get(2)).longValue();
+		try {
+			this.asClient.execute(this.writePolicy, bucketKey(key, bucket), "redis", "XAPPEND",
+					Value.get(this.entriesBin), Value.get(ms), Value.get(seq), Value.getAsMap(hash));
+		} catch (AerospikeException e) {
+			// the ID stays used, as IDs may have gaps; only the count is taken back
+			this.asClient.execute(this.writePolicy, metaKey(key), "redis", "XUNCOUNT", Value.get(LENGTH_BIN),
+					Value.get(INFLIGHT_BIN), Value.get(ms), Value.get(seq));
+			throw e;
+		}
+		this.asClient.execute(this.writePolicy, metaKey(key), "redis", "XCOMMIT", Value.get(INFLIGHT_BIN),
+				Value.get(ms), Value.get(seq));
+		return new StreamEntryID(ms, seq);
+	}
+
+	List<StreamEntry> range(String key, StreamEntryID start, StreamEntryID end, int count) {
+		List<StreamEntry> result = new ArrayList<StreamEntry>();
+		List<Long> buckets = buckets(key);
+		// bucket i holds the IDs from the first of its own up to the first of bucket i + 1
+		List<Long> needed = new ArrayList<Long>();
+		for (int i = 0; i < buckets.size(); i++) {
+			if (buckets.get(i) <= end.getTime() && (i == buckets.size() - 1 || buckets.get(i + 1) >= start.getTime()))
+				needed.add((long) i);
+		}
+		for (int from = 0; from < needed.size(); from += BUCKETS_PER_BATCH) {
+			int to = Math.min(needed.size(), from + BUCKETS_PER_BATCH);
+			Key[] keys = new Key[to - from];
+			for (int i = from; i < to; i++) {
+				keys[i - from] = bucketKey(key, needed.get(i));
+			}
+			Record[] records = this.asClient.get(this.batchPolicy, keys, this.entriesBin);
+			for (Record record : records) {
+				if (record == null)
+					continue;
+				List<StreamEntry> entries = new ArrayList<StreamEntry>();
+				for (Object item : (List<?>) record.getValue(this.entriesBin)) {
+					StreamEntry entry = toEntry((List<?>) item);
+					if (entry.getID().compareTo(start) >= 0 && entry.getID().compareTo(end) <= 0)
+						entries.add(entry);
+				}
+				// IDs order the buckets, but not the appends within one
+				Collections.sort(entries, BY_ID);
+				for (StreamEntry entry : entries) {
+					result.add(entry);
+					if (count > 0 && result.size() == count)
+						return result;
+				}
+			}
+		}
+		return result;
+	}
+
+	long length(String key) {
+		Record record = this.asClient.get(this.policy, metaKey(key), LENGTH_BIN);
+		return (record == null || record.getValue(LENGTH_BIN) == null) ? 0 : record.getLong(LENGTH_BIN);
+	}
+
+	/**
+	 * Deletes the bucket records and the groups record of a stream whose own
+	 * record was deleted.
+	 */
+	void deleteBuckets(String key, int count) {
+		for (int bucket = 0; bucket < count; bucket++) {
+			this.asClient.delete(this.writePolicy, bucketKey(key, bucket));
+		}
+		this.asClient.delete(this.writePolicy, groupsKey(key));
+	}
+
+	String createGroup(String key, String group, StreamEntryID id) {
+		Record record = this.asClient.get(this.policy, metaKey(key), TOP_BIN);
+		if (record == null)
+			throw new AerospikeException(ResultCode.PARAMETER_ERROR, "ERR The XGROUP subcommand requires the key to exist.");
+		if (id == StreamEntryID.LAST_ENTRY)
+			id = lastId(record);
+		return (String) this.asClient.execute(this.writePolicy, groupsKey(key), "redis", "XGROUP_CREATE",
+				Value.get(GROUPS_BIN), Value.get(group), Value.get(id.getTime()), Value.get(id.getSequence()));
+	}
+
+	/**
+	 * With UNRECEIVED_ENTRY, claims up to count new entries for the consumer;
+	 * the group's last delivered ID is compared and set in one UDF call, and
+	 * the read is retried if another consumer got there first. Only entries
+	 * below the first one still in flight are claimed, so the group's last
+	 * delivered ID never passes an entry that is yet to land. With any other
+	 * ID, returns the consumer's pending entries after that ID.
+	 */
+	List<StreamEntry> readGroup(String group, String consumer, int count, String key, StreamEntryID id) {
+		if (id != StreamEntryID.UNRECEIVED_ENTRY)
+			return pending(group, consumer, count, key, id);
+		while (true) {
+			Record[] records = this.asClient.get(this.batchPolicy, new Key[] { metaKey(key), groupsKey(key) },
+					INFLIGHT_BIN, GROUPS_BIN);
+			Map<?, ?> state = group(records[1], key, group);
+			StreamEntryID last = new StreamEntryID(((Number) state.get("ms")).longValue(),
+					((Number) state.get("seq")).longValue());
+			List<StreamEntry> entries = range(key, last.next(), committed(records[0]), count);
+			if (entries.isEmpty())
+				return entries;
+			List<String> ids = new ArrayList<String>(entries.size());
+			for (StreamEntry entry : entries) {
+				ids.add(entry.getID().toString());
+			}
+			StreamEntryID newLast = entries.get(entries.size() - 1).getID();
+			Object claimed = this.asClient.execute(this.writePolicy, groupsKey(key), "redis", "XGROUP_DELIVER",
+					Value.get(GROUPS_BIN), Value.get(group), Value.get(consumer), Value.get(last.getTime()),
+					Value.get(last.getSequence()), Value.get(newLast.getTime()), Value.get(newLast.getSequence()),
+					Value.getAsList(ids), Value.get(System.currentTimeMillis()));
+			if (((Number) claimed).longValue() == 1)
+				return entries;
+		}
+	}
+
+	long ack(String key, String group, StreamEntryID... ids) {
+		List<String> idStrings = new ArrayList<String>(ids.length);
+		for (StreamEntryID id : ids) {
+			idStrings.add(id.toString());
+		}
+		Object acked = this.asClient.execute(this.writePolicy, groupsKey(key), "redis", "XACK", Value.get(GROUPS_BIN),
+				Value.get(group), Value.getAsList(idStrings));
+		return ((Number) acked).longValue();
+	}
+
+	private List<StreamEntry> pending(String group, String consumer, int count, String key, StreamEntryID after) {
+		Map<?, ?> pending = (Map<?, ?>) group(key, group).get("pending");
+		List<StreamEntryID> ids = new ArrayList<StreamEntryID>();
+		for (Map.Entry<?, ?> entry : pending.entrySet()) {
+			StreamEntryID id = new StreamEntryID((String) entry.getKey());
+			if (consumer.equals(((List<?>) entry.getValue()).get(0)) && id.compareTo(after) > 0)
+				ids.add(id);
+		}
+		Collections.sort(ids);
+		if (count > 0 && ids.size() > count)
+			ids = ids.subList(0, count);
+		List<StreamEntry> result = new ArrayList<StreamEntry>(ids.size());
+		if (ids.isEmpty())
+			return result;
+		Map<StreamEntryID, StreamEntry> found = new HashMap<StreamEntryID, StreamEntry>();
+		for (StreamEntry entry : range(key, ids.get(0), ids.get(ids.size() - 1), 0)) {
+			found.put(entry.getID(), entry);
+		}
+		for (StreamEntryID id : ids) {
+			StreamEntry entry = found.get(id);
+			// a pending entry that has since been deleted is reported without fields
+			result.add((entry == null) ? new StreamEntry(id, null) : entry);
+		}
+		return result;
+	}
+
+	/**
+	 * The highest ID below every entry still in flight, or MAXIMUM_ID.
+	 */
+	private static StreamEntryID committed(Record meta) {
+		List<?> inflight = (meta == null) ? null : (List<?>) meta.getValue(INFLIGHT_BIN);
+		if (inflight == null)
+			return StreamEntryID.MAXIMUM_ID;
+		long since = System.currentTimeMillis() - STALL_MILLIS;
+		StreamEntryID first = null;
+		for (Object item : inflight) {
+			List<?> append = (List<?>) item;
+			if (((Number) append.get(2)).longValue() < since)
+				continue; // given up on
+			StreamEntryID id = new StreamEntryID(((Number) append.get(0)).longValue(), ((Number) append.get(1)).longValue());
+			if (first == null || id.compareTo(first) < 0)
+				first = id;
+		}
+		if (first == null)
+			return StreamEntryID.MAXIMUM_ID;
+		if (first.getSequence() > 0)
+			return new StreamEntryID(first.getTime(), first.getSequence() - 1);
+		return new StreamEntryID(first.getTime() - 1, Long.MAX_VALUE);
+	}
+
+	private Map<?, ?> group(String key, String group) {
+		return group(this.asClient.get(this.policy, groupsKey(key), GROUPS_BIN), key, group);
+	}
+
+	private static Map<?, ?> group(Record record, String key, String group) {
+		Map<?, ?> groups = (record == null) ? null : (Map<?, ?>) record.getValue(GROUPS_BIN);
+		Map<?, ?> state = (groups == null) ? null : (Map<?, ?>) groups.get(group);
+		if (state == null)
+			throw new AerospikeException(ResultCode.PARAMETER_ERROR, "NOGROUP No such key '" + key
+					+ "' or consumer group '" + group + "'");
+		return state;
+	}
+
+	private static StreamEntryID lastId(Record record) {
+		if (record.getValue(TOP_BIN) == null)
+			return StreamEntryID.MINIMUM_ID;
+		List<?> top = (List<?>) record.getValue(TOP_BIN);
+		return new StreamEntryID(((Number) top.get(0)).longValue(), ((Number) top.get(1)).longValue());
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Long> buckets(String key) {
+		Record record = this.asClient.get(this.policy, metaKey(key), BUCKETS_BIN);
+		if (record == null || record.getValue(BUCKETS_BIN) == null)
+			return Collections.emptyList();
+		return (List<Long>) record.getValue(BUCKETS_BIN);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static StreamEntry toEntry(List<?> item) {
+		StreamEntryID id = new StreamEntryID(((Number) item.get(0)).longValue(), ((Number) item.get(1)).longValue());
+		return new StreamEntry(id, (Map<String, String>) item.get(2));
+	}
+}
@@ -0,0 +1,168 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * A Reactive Streams Publisher whose elements come from a blocking producer.
+ * <p>
+ * Each subscription gets a producer thread from a shared pool once the
+ * subscriber first requests elements. The producer hands elements to
+ * {@link Emitter#emit}, which waits while there is no outstanding demand, so
+ * a slow subscriber holds the producer instead of filling a buffer. A
+ * producer that must not wait uses {@link Emitter#tryEmit} and keeps what it
+ * could not hand on. All signals come from the producer thread.
+ */
+abstract class StreamingPublisher<T> implements Publisher<T> {
+
+	private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "redis-publisher-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * Produces every element in order, returning early once emit() returns false.
+	 */
+	abstract void produce(Emitter<T> emitter);
+
+	@Override
+	public void subscribe(Subscriber<? super T> subscriber) {
+		if (subscriber == null)
+			throw new NullPointerException("subscriber");
+		subscriber.onSubscribe(new Emitter<T>(this, subscriber));
+	}
+
+	static final class Emitter<T> implements Subscription, Runnable {
+		private final StreamingPublisher<T> publisher;
+		private final Subscriber<? super T> subscriber;
+		private final AtomicBoolean started = new AtomicBoolean();
+		private final Lock lock = new ReentrantLock();
+		private final Condition demanded = this.lock.newCondition();
+		private long demand = 0;
+		private volatile boolean cancelled;
+		private volatile Throwable invalidRequest;
+
+		Emitter(StreamingPublisher<T> publisher, Subscriber<? super T> subscriber) {
+			this.publisher = publisher;
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			this.lock.lock();
+			try {
+				if (n <= 0 && this.invalidRequest == null)
+					this.invalidRequest = new IllegalArgumentException("request must be positive, was " + n);
+				else
+					this.demand = (this.demand + n < 0) ? Long.MAX_VALUE : this.demand + n;
+				this.demanded.signalAll();
+			} finally {
+				this.lock.unlock();
+			}
+			if (this.started.compareAndSet(false, true))
+				executor.execute(this);
+		}
+
+		@Override
+		public void cancel() {
+			this.cancelled = true;
+			this.lock.lock();
+			try {
+				this.demanded.signalAll();
+			} finally {
+				this.lock.unlock();
+			}
+		}
+
+		boolean isCancelled() {
+			return this.cancelled || this.invalidRequest != null;
+		}
+
+		/**
+		 * Waits for demand, then signals the element. Returns false once the
+		 * subscription has been cancelled, so the producer can stop.
+		 */
+		boolean emit(T element) {
+			this.lock.lock();
+			try {
+				while (this.demand == 0 && !isCancelled())
+					this.demanded.awaitUninterruptibly();
+				if (isCancelled())
+					return false;
+				if (this.demand != Long.MAX_VALUE)
+					this.demand--;
+			} finally {
+				this.lock.unlock();
+			}
+			this.subscriber.onNext(element);
+			return true;
+		}
+
+		/**
+		 * Signals the element if there is demand, without waiting. Returns
+		 * false if there is none, or the subscription has been cancelled.
+		 */
+		boolean tryEmit(T element) {
+			this.lock.lock();
+			try {
+				if (this.demand == 0 || isCancelled())
+					return false;
+				if (this.demand != Long.MAX_VALUE)
+					this.demand--;
+			} finally {
+				this.lock.unlock();
+			}
+			this.subscriber.onNext(element);
+			return true;
+		}
+
+		@Override
+		public void run() {
+			try {
+				this.publisher.produce(this);
+			} catch (Throwable e) {
+				if (!this.cancelled)
+					this.subscriber.onError(e);
+				return;
+			}
+			if (this.cancelled)
+				return;
+			if (this.invalidRequest != null)
+				this.subscriber.onError(this.invalidRequest);
+			else
+				this.subscriber.onComplete();
+		}
+	}
+}
@@ -0,0 +1,431 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Bin;
+import com.aerospike.client.IAerospikeClient;
+import com.aerospike.client.Key;
+import com.aerospike.client.Operation;
+import com.aerospike.client.Record;
+import com.aerospike.client.ResultCode;
+import com.aerospike.client.Value;
+import com.aerospike.client.policy.BatchPolicy;
+import com.aerospike.client.policy.GenerationPolicy;
+import com.aerospike.client.policy.RecordExistsAction;
+import com.aerospike.client.policy.WritePolicy;
+
+/**
+ * Commands queued between MULTI and EXEC, as returned by
+ * {@link RedisClient#multi()}.
+ * <p>
+ * EXEC groups the queued commands by key and sends each key's commands as
+ * one operate() call (a read closes a call, so its result is exact). Keys
+ * watched with {@link RedisClient#watch(String...)} are written with
+ * <code>GenerationPolicy.EXPECT_GEN_EQUAL</code> against the generation read
+ * by WATCH, so an unchanged key costs no extra round trip and no lock.
+ * Watched keys that are only read, and every watched key when more than one
+ * is written, are checked first with one batch header read. Watched keys
+ * are written before the others, so a conflict leaves nothing applied and
+ * EXEC returns null, as Redis does. Values are compressed as SET compresses
+ * them; an APPEND to a compressed value reads it and writes it back.
+ * <p>
+ * Aerospike has no multi-record transaction: if a watched record changes in
+ * the short window between that check and its write, EXEC throws a
+ * GENERATION_ERROR after applying the keys written before it.
+ */
+public class Transaction {
+
+	private static final long AS_TIME_OFFSET = 1262304000000L; // in milliseconds
+
+	private static final int SET = 0;
+	private static final int GET = 1;
+	private static final int DEL = 2;
+	private static final int INCRBY = 3;
+	private static final int APPEND = 4;
+	private static final int EXPIRE = 5;
+
+	private static final class Command {
+		final int type;
+		final Object key;
+		final Object value;
+		final long amount;
+		final int index;
+
+		Command(int type, Object key, Object value, long amount, int index) {
+			this.type = type;
+			this.key = key;
+			this.value = value;
+			this.amount = amount;
+			this.index = index;
+		}
+
+		boolean writes() {
+			return this.type != GET;
+		}
+	}
+
+	private final RedisClient client;
+	private final IAerospikeClient asClient;
+	private final WritePolicy writePolicy;
+	private final String namespace;
+	private final String set;
+	private final String redisBin;
+	private final String keyBin;
+	private final Compression compression;
+	private final Map<Key, Integer> watched;
+	private final List<Command> commands = new ArrayList<Command>();
+	private boolean open = true;
+
+	/*
+	 * keyBin is null when the record stores its user key instead, and
+	 * compression null when values are not compressed.
+	 */
+	Transaction(RedisClient client, IAerospikeClient asClient, WritePolicy writePolicy, String namespace, String set,
+			String redisBin, String keyBin, Compression compression, Map<Key, Integer> watched) {
+		this.client = client;
+		this.asClient = asClient;
+		this.writePolicy = writePolicy;
+		this.namespace = namespace;
+		this.set = set;
+		this.redisBin = redisBin;
+		this.keyBin = keyBin;
+		this.compression = compression;
+		this.watched = watched;
+	}
+
+	private void queue(int type, Object key, Object value, long amount) {
+		if (!this.open)
+			throw new IllegalStateException("EXEC or DISCARD already called");
+		this.commands.add(new Command(type, key, value, amount, this.commands.size()));
+	}
+
+	public void set(Object key, Object value) {
+		queue(SET, key, value, 0);
+	}
+
+	public void get(Object key) {
+		queue(GET, key, null, 0);
+	}
+
+	public void del(Object key) {
+		queue(DEL, key, null, 0);
+	}
+
+	public void incr(Object key) {
+		queue(INCRBY, key, null, 1);
+	}
+
+	public void incrBy(Object key, long increment) {
+		queue(INCRBY, key, null, increment);
+	}
+
+	public void decr(Object key) {
+		queue(INCRBY, key, null, -1);
+	}
+
+	public void decrBy(Object key, long decrement) {
+		queue(INCRBY, key, null, -decrement);
+	}
+
+	public void append(Object key, Object value) {
+		queue(APPEND, key, value, 0);
+	}
+
+	public void expire(Object key, int seconds) {
+		queue(EXPIRE, key, null, seconds);
+	}
+
+	public void discard() {
+		this.open = false;
+		this.commands.clear();
+	}
+
+	/**
+	 * Runs the queued commands and returns their results in order, or null
+	 * if a watched key changed since WATCH.
+	 */
+	public List<Object> exec() {
+		if (!this.open)
+			throw new IllegalStateException("EXEC or DISCARD already called");
+		this.open = false;
+		Map<Key, List<Command>> byKey = new LinkedHashMap<Key, List<Command>>();
+		for (Command command : this.commands) {
+			Key asKey = new Key(this.namespace, this.set, Value.get(command.key));
+			List<Command> list = byKey.get(asKey);
+			if (list == null) {
+				list = new ArrayList<Command>();
+				byKey.put(asKey, list);
+			}
+			list.add(command);
+		}
+
+		List<Key> watchedWrites = new ArrayList<Key>();
+		List<Key> others = new ArrayList<Key>();
+		for (Map.Entry<Key, List<Command>> entry : byKey.entrySet()) {
+			if (this.watched.containsKey(entry.getKey()) && hasWrite(entry.getValue()))
+				watchedWrites.add(entry.getKey());
+			else
+				others.add(entry.getKey());
+		}
+		List<Key> check = new ArrayList<Key>();
+		for (Key asKey : this.watched.keySet()) {
+			if (watchedWrites.size() > 1 || !watchedWrites.contains(asKey))
+				check.add(asKey);
+		}
+		if (!check.isEmpty() && !unchanged(check))
+			return null;
+
+		Object[] results = new Object[this.commands.size()];
+		boolean applied = false;
+		List<Key> order = new ArrayList<Key>(watchedWrites);
+		order.addAll(others);
+		for (Key asKey : order) {
+			List<Command> commands = byKey.get(asKey);
+			try {
+				apply(asKey, commands, this.watched.get(asKey), results);
+			} catch (AerospikeException e) {
+				if (!applied && isConflict(e))
+					return null;
+				throw e;
+			}
+			if (hasWrite(commands))
+				this.client.written(commands.get(0).key);
+			applied = true;
+		}
+		return Arrays.asList(results);
+	}
+
+	private static boolean hasWrite(List<Command> commands) {
+		for (Command command : commands) {
+			if (command.writes())
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean isConflict(AerospikeException e) {
+		return e.getResultCode() == ResultCode.GENERATION_ERROR || e.getResultCode() == ResultCode.KEY_EXISTS_ERROR
+				|| e.getResultCode() == ResultCode.KEY_NOT_FOUND_ERROR;
+	}
+
+	private boolean unchanged(List<Key> keys) {
+		Record[] records = this.asClient.getHeader(new BatchPolicy(), keys.toArray(new Key[keys.size()]));
+		for (int i = 0; i < records.length; i++) {
+			int generation = (records[i] == null) ? 0 : records[i].generation;
+			if (generation != this.watched.get(keys.get(i)))
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Sends one key's commands, as few operate() calls as possible. Only the
+	 * first writing call carries the generation check.
+	 */
+	private void apply(Key asKey, List<Command> commands, Integer generation, Object[] results) {
+		List<Operation> operations = new ArrayList<Operation>();
+		List<Command> pending = new ArrayList<Command>();
+		boolean checked = (generation == null);
+		for (Command command : commands) {
+			switch (command.type) {
+			case SET:
+				if (this.keyBin != null)
+					operations.add(Operation.put(new Bin(this.keyBin, command.key)));
+				put(operations, command.value);
+				results[command.index] = "OK";
+				break;
+			case GET:
+				operations.add(Operation.get(this.redisBin));
+				operations.add(Operation.get(Compression.FLAG_BIN));
+				pending.add(command);
+				break;
+			case INCRBY:
+				if (this.keyBin != null)
+					operations.add(Operation.put(new Bin(this.keyBin, command.key)));
+				operations.add(Operation.add(new Bin(this.redisBin, command.amount)));
+				operations.add(Operation.get(this.redisBin));
+				pending.add(command);
+				break;
+			case APPEND:
+				if (this.compression != null) {
+					checked |= send(asKey, operations, pending, checked ? null : generation, -1, results);
+					results[command.index] = appendCompressed(asKey, command, checked ? null : generation);
+					checked = true;
+					continue;
+				}
+				if (this.keyBin != null)
+					operations.add(Operation.put(new Bin(this.keyBin, command.key)));
+				operations.add(Operation.append(new Bin(this.redisBin, Value.get(command.value))));
+				operations.add(Operation.get(this.redisBin));
+				pending.add(command);
+				break;
+			case EXPIRE:
+				checked |= send(asKey, operations, pending, checked ? null : generation, -1, results);
+				operations.add(Operation.touch());
+				pending.add(command);
+				checked |= send(asKey, operations, pending, checked ? null : generation, (int) command.amount, results);
+				continue;
+			case DEL:
+				checked |= send(asKey, operations, pending, checked ? null : generation, -1, results);
+				if (!checked && generation == 0) {
+					// a delete can't be made create only: the key must still be missing
+					if (this.asClient.exists(null, asKey))
+						throw new AerospikeException(ResultCode.KEY_EXISTS_ERROR, "Watched key was created");
+					results[command.index] = 0L;
+					checked = true;
+					continue;
+				}
+				WritePolicy wp = policy(checked ? null : generation, -1);
+				boolean existed = this.asClient.delete(wp, asKey);
+				if (!existed && !checked && generation > 0)
+					throw new AerospikeException(ResultCode.GENERATION_ERROR, "Watched key was deleted");
+				if (existed)
+					this.client.deleted(command.key);
+				results[command.index] = existed ? 1L : 0L;
+				checked = true;
+				continue;
+			}
+			if (!pending.isEmpty())
+				checked |= send(asKey, operations, pending, checked ? null : generation, -1, results);
+		}
+		send(asKey, operations, pending, checked ? null : generation, -1, results);
+	}
+
+	/**
+	 * Sends the operations gathered so far; returns true if they wrote.
+	 */
+	private boolean send(Key asKey, List<Operation> operations, List<Command> pending, Integer generation,
+			int expiration, Object[] results) {
+		if (operations.isEmpty())
+			return false;
+		boolean writes = false;
+		for (Operation operation : operations) {
+			writes |= operation.type != Operation.Type.READ;
+		}
+		Record record;
+		try {
+			WritePolicy wp = policy(writes ? generation : null, expiration);
+			if (expiration >= 0)
+				wp.recordExistsAction = RecordExistsAction.UPDATE_ONLY;
+			record = this.asClient.operate(wp, asKey, operations.toArray(new Operation[operations.size()]));
+		} catch (AerospikeException e) {
+			if (expiration < 0 || e.getResultCode() != ResultCode.KEY_NOT_FOUND_ERROR || generation != null)
+				throw e;
+			record = null; // EXPIRE on a missing key
+		}
+		for (Command command : pending) {
+			Object value = (record == null) ? null : record.getValue(this.redisBin);
+			switch (command.type) {
+			case GET:
+				value = Compression.decompress(record, this.redisBin, this.compression);
+				results[command.index] = (value == null) ? null : ValueCodecs.UTF8.decode(value);
+				break;
+			case INCRBY:
+				results[command.index] = ((Number) value).longValue();
+				break;
+			case APPEND:
+				results[command.index] = (long) ((String) value).length();
+				break;
+			case EXPIRE:
+				results[command.index] = (record == null) ? 0L : 1L;
+				break;
+			}
+		}
+		operations.clear();
+		pending.clear();
+		return writes;
+	}
+
+	/*
+	 * Adds the writes of a value, compressed as SET would, and its
+	 * compression flag. Several may wait for one operate() call, so a
+	 * compressed value is copied out of the buffer it shares with the next one.
+	 */
+	private void put(List<Operation> operations, Object value) {
+		Value plain = Value.get(value);
+		Value stored = (this.compression == null) ? plain : this.compression.compress(plain);
+		if (stored instanceof Value.ByteSegmentValue) {
+			Value.ByteSegmentValue segment = (Value.ByteSegmentValue) stored;
+			stored = Value.get(Arrays.copyOfRange(segment.getBytes(), segment.getOffset(),
+					segment.getOffset() + segment.getLength()));
+		}
+		operations.add(Operation.put(new Bin(this.redisBin, stored)));
+		operations.add(Operation.put(Compression.flag(stored != plain)));
+	}
+
+	/*
+	 * The server can't append to a compressed value, so the value is read,
+	 * appended to and written back with the time it has left, again if it
+	 * changed meanwhile. A watched key must still have the generation read
+	 * by WATCH.
+	 */
+	private long appendCompressed(Key asKey, Command command, Integer generation) {
+		while (true) {
+			Record record = this.asClient.get(null, asKey, this.redisBin, Compression.FLAG_BIN);
+			int current = (record == null) ? 0 : record.generation;
+			if (generation != null && current != generation)
+				throw new AerospikeException(ResultCode.GENERATION_ERROR, "Watched key was changed");
+			Object old = Compression.decompress(record, this.redisBin, this.compression);
+			String appended = (old == null) ? command.value.toString() : ValueCodecs.UTF8.decode(old) + command.value;
+			List<Operation> operations = new ArrayList<Operation>();
+			if (this.keyBin != null)
+				operations.add(Operation.put(new Bin(this.keyBin, command.key)));
+			put(operations, appended);
+			WritePolicy wp = policy(current, -1);
+			if (record != null && record.expiration == 0) {
+				wp.expiration = -1;
+			} else if (record != null) {
+				long ttl = record.expiration - (System.currentTimeMillis() - AS_TIME_OFFSET) / 1000;
+				wp.expiration = (int) Math.max(1, ttl);
+			}
+			try {
+				this.asClient.operate(wp, asKey, operations.toArray(new Operation[operations.size()]));
+				return appended.length();
+			} catch (AerospikeException e) {
+				if (generation != null || !isConflict(e))
+					throw e;
+			}
+		}
+	}
+
+	private WritePolicy policy(Integer generation, int expiration) {
+		WritePolicy wp = new WritePolicy();
+		wp.timeout = this.writePolicy.timeout;
+		wp.sendKey = this.writePolicy.sendKey;
+		wp.recordExistsAction = RecordExistsAction.UPDATE;
+		if (expiration >= 0)
+			wp.expiration = expiration;
+		if (generation != null) {
+			if (generation == 0) {
+				// the key did not exist when it was watched
+				wp.recordExistsAction = RecordExistsAction.CREATE_ONLY;
+			} else {
+				wp.recordExistsAction = RecordExistsAction.UPDATE_ONLY;
+				wp.generationPolicy = GenerationPolicy.EXPECT_GEN_EQUAL;
+				wp.generation = generation;
+			}
+		}
+		return wp;
+	}
+}
@@ -0,0 +1,28 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+/**
+ * The body of an optimistic transaction run by
+ * {@link RedisClient#multi(TransactionBlock, int, String...)}. It may read
+ * through the client, then queues its writes on the transaction; it is run
+ * again from the start whenever a watched key changed before EXEC.
+ */
+public interface TransactionBlock {
+
+	void execute(RedisClient client, Transaction transaction);
+}
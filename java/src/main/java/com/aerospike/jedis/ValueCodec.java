@@ -0,0 +1,39 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import com.aerospike.client.Value;
+
+/**
+ * Converts between an application value and what RedisClient stores in the
+ * value bin. The codecs in {@link ValueCodecs} cover raw bytes, UTF-8 strings
+ * and MessagePack; a Kryo or Protobuf codec implements this interface with
+ * encode returning Value.get(bytes) and decode parsing the byte[] it is given.
+ */
+public interface ValueCodec<T> {
+
+	/**
+	 * The bin value to store for value, which is not null.
+	 */
+	Value encode(T value);
+
+	/**
+	 * The value for a stored bin value: a String, byte[], Long, Double, List
+	 * or Map, as the Aerospike client returns it. Never called with null.
+	 */
+	T decode(Object stored);
+}
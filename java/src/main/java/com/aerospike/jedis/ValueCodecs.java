@@ -0,0 +1,108 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.ResultCode;
+import com.aerospike.client.Value;
+import com.aerospike.client.util.Packer;
+import com.aerospike.client.util.Unpacker;
+
+/**
+ * The built in value codecs.
+ */
+public final class ValueCodecs {
+
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private ValueCodecs() {
+	}
+
+	/**
+	 * Raw bytes, stored as a blob. The array is written to the command
+	 * buffer as it is, and a read returns the array the client parsed the
+	 * bin into, so neither side copies or converts. Values stored as
+	 * strings or numbers read back as their UTF-8 bytes.
+	 */
+	public static final ValueCodec<byte[]> BYTES = new ValueCodec<byte[]>() {
+		@Override
+		public Value encode(byte[] value) {
+			return Value.get(value);
+		}
+
+		@Override
+		public byte[] decode(Object stored) {
+			if (stored instanceof byte[])
+				return (byte[]) stored;
+			return stored.toString().getBytes(UTF_8);
+		}
+	};
+
+	/**
+	 * Strings, stored as Aerospike strings, which is how the String commands
+	 * store values. Blobs are read as UTF-8 and numbers (from INCR) as
+	 * their decimal form.
+	 */
+	public static final ValueCodec<String> UTF8 = new ValueCodec<String>() {
+		@Override
+		public Value encode(String value) {
+			return Value.get(value);
+		}
+
+		@Override
+		public String decode(Object stored) {
+			if (stored instanceof byte[])
+				return new String((byte[]) stored, UTF_8);
+			return stored.toString();
+		}
+	};
+
+	/**
+	 * Strings, numbers, booleans, byte arrays, lists and maps of them,
+	 * stored as one MessagePack blob. Unlike a list or map bin, the server
+	 * sees only bytes, so the value costs no server side parsing.
+	 */
+	public static final ValueCodec<Object> MESSAGE_PACK = new ValueCodec<Object>() {
+		@Override
+		public Value encode(Object value) {
+			Packer packer = new Packer();
+			try {
+				packer.packObject(value);
+			} catch (IOException e) {
+				throw new AerospikeException(ResultCode.SERIALIZE_ERROR, e);
+			}
+			return Value.get(packer.toByteArray());
+		}
+
+		@Override
+		public Object decode(Object stored) {
+			if (!(stored instanceof byte[]))
+				return stored;
+			byte[] bytes = (byte[]) stored;
+			try {
+				return new Unpacker.ObjectUnpacker(bytes, 0, bytes.length).unpackObject();
+			} catch (IOException e) {
+				throw new AerospikeException(ResultCode.SERIALIZE_ERROR, e);
+			} catch (ClassNotFoundException e) {
+				throw new AerospikeException(ResultCode.SERIALIZE_ERROR, e);
+			}
+		}
+	};
+}
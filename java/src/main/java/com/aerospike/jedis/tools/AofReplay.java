@@ -0,0 +1,908 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Log;
+import com.aerospike.jedis.RedisClient;
+
+/**
+ * Replays the write commands of a Redis AOF into Aerospike through a
+ * RedisClient, to keep Aerospike in step with Redis during a cutover.
+ * <p>
+ * The input is read as a stream: an AOF (with or without an RDB preamble),
+ * a Redis 7 appendonlydir, a captured replication stream or the output of
+ * MONITOR. With follow on, the replay waits for the last file to grow
+ * instead of stopping at its end, like <code>tail -f</code>.
+ * <p>
+ * Commands are applied by a set of lanes, each a queue and one thread. All
+ * the commands on a key go to the same lane, so they are applied in the order
+ * of the file while different keys are applied in parallel. DEL, UNLINK and
+ * MSET are split into one command per key. Commands on several keys that
+ * cannot be split, such as RENAME, wait for every lane to drain first.
+ * Commands inside MULTI/EXEC are applied one by one. Reads and commands
+ * that have no RedisClient equivalent are counted in {@link #getSkipped()}.
+ */
+public class AofReplay {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final long FOLLOW_INTERVAL = 100; // in milliseconds
+	private static final Set<String> IGNORED = new HashSet<String>(Arrays.asList("MULTI", "EXEC", "DISCARD", "PING", "REPLCONF"));
+
+	private enum Command {
+		SET(3) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				String key = args[1];
+				String value = args[2];
+				boolean nx = false, xx = false, keepTtl = false;
+				long expireAt = -1;
+				for (int i = 3; i < args.length; i++) {
+					String option = args[i].toUpperCase(Locale.ENGLISH);
+					if (option.equals("NX"))
+						nx = true;
+					else if (option.equals("XX"))
+						xx = true;
+					else if (option.equals("KEEPTTL"))
+						keepTtl = true;
+					else if (option.equals("EX") && i + 1 < args.length)
+						expireAt = System.currentTimeMillis() + Long.parseLong(args[++i]) * 1000;
+					else if (option.equals("PX") && i + 1 < args.length)
+						expireAt = System.currentTimeMillis() + Long.parseLong(args[++i]);
+					else if (option.equals("EXAT") && i + 1 < args.length)
+						expireAt = Long.parseLong(args[++i]) * 1000;
+					else if (option.equals("PXAT") && i + 1 < args.length)
+						expireAt = Long.parseLong(args[++i]);
+				}
+				long ttl = keepTtl ? jedis.ttl(key) : -1;
+				if (nx) {
+					if (jedis.setnx(key, value) == 0)
+						return;
+				} else if (xx) {
+					if (jedis.setxx(key, value) == 0)
+						return;
+				} else {
+					jedis.set(key, value);
+				}
+				if (expireAt >= 0)
+					expireAt(jedis, key, expireAt);
+				else if (ttl > 0)
+					jedis.expire(key, ttl);
+			}
+		},
+		SETNX(3) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				jedis.setnx(args[1], args[2]);
+			}
+		},
+		SETEX(4) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				jedis.setex(args[1], Integer.parseInt(args[2]), args[3]);
+			}
+		},
+		PSETEX(4) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				jedis.set(args[1], args[3]);
+				expireAt(jedis, args[1], System.currentTimeMillis() + Long.parseLong(args[2]));
+			}
+		},
+		MSET(3, 2, false) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				jedis.set(args[1], args[2]);
+			}
+		},
+		MSETNX(3, 0, true) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				jedis.msetnx(Arrays.copyOfRange(args, 1, args.length));
+			}
+		},
+		GETSET(3) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				jedis.getSet(args[1], args[2]);
+			}
+		},
+		APPEND(3) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				jedis.append(args[1], args[2]);
+			}
+		},
+		INCR(2) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				jedis.incr(args[1]);
+			}
+		},
+		INCRBY(3) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				jedis.incrBy(args[1], Long.parseLong(args[2]));
+			}
+		},
+		DECR(2) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				jedis.decr(args[1]);
+			}
+		},
+		DECRBY(3) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				jedis.decrBy(args[1], Long.parseLong(args[2]));
+			}
+		},
+		INCRBYFLOAT(3) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				jedis.incrByFloat(args[1], Double.parseDouble(args[2]));
+			}
+		},
+		SETBIT(4) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				jedis.setbit(args[1], Long.parseLong(args[2]), !args[3].equals("0"));
+			}
+		},
+		DEL(2, 1, false) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				jedis.del(args[1]);
+			}
+		},
+		UNLINK(2, 1, false) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				jedis.del(args[1]);
+			}
+		},
+		RENAME(3, 0, true) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				jedis.rename(args[1], args[2]);
+			}
+		},
+		EXPIRE(3) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				expireAt(jedis, args[1], System.currentTimeMillis() + Long.parseLong(args[2]) * 1000);
+			}
+		},
+		PEXPIRE(3) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				expireAt(jedis, args[1], System.currentTimeMillis() + Long.parseLong(args[2]));
+			}
+		},
+		EXPIREAT(3) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				expireAt(jedis, args[1], Long.parseLong(args[2]) * 1000);
+			}
+		},
+		PEXPIREAT(3) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				expireAt(jedis, args[1], Long.parseLong(args[2]));
+			}
+		},
+		PERSIST(2) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				if (jedis.exists(args[1]))
+					jedis.persist(args[1]);
+			}
+		},
+		RPUSH(3) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				for (int i = 2; i < args.length; i++)
+					jedis.rpush(args[1], args[i]);
+			}
+		},
+		LPUSH(3) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				for (int i = 2; i < args.length; i++)
+					jedis.lpush(args[1], args[i]);
+			}
+		},
+		RPUSHX(3) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				for (int i = 2; i < args.length; i++)
+					jedis.rpushx(args[1], args[i]);
+			}
+		},
+		LPUSHX(3) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				for (int i = 2; i < args.length; i++)
+					jedis.lpushx(args[1], args[i]);
+			}
+		},
+		LPOP(2) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				int count = (args.length > 2) ? Integer.parseInt(args[2]) : 1;
+				for (int i = 0; i < count; i++)
+					jedis.lpop(args[1]);
+			}
+		},
+		RPOP(2) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				int count = (args.length > 2) ? Integer.parseInt(args[2]) : 1;
+				for (int i = 0; i < count; i++)
+					jedis.rpop(args[1]);
+			}
+		},
+		RPOPLPUSH(3, 0, true) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				jedis.rpoplpush(args[1], args[2]);
+			}
+		},
+		LSET(4) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				jedis.lset(args[1], Integer.parseInt(args[2]), args[3]);
+			}
+		},
+		LTRIM(4) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				jedis.ltrim(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+			}
+		},
+		LREM(4) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				jedis.lrem(args[1], Integer.parseInt(args[2]), args[3]);
+			}
+		},
+		LINSERT(5) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				RedisClient.LIST_POSITION position = args[2].equalsIgnoreCase("BEFORE")
+						? RedisClient.LIST_POSITION.BEFORE : RedisClient.LIST_POSITION.AFTER;
+				jedis.linsert(args[1], position, args[3], args[4]);
+			}
+		},
+		HSET(4) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				for (int i = 2; i + 1 < args.length; i += 2)
+					jedis.hset(args[1], args[i], args[i + 1]);
+			}
+		},
+		HMSET(4) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				HSET.apply(jedis, args);
+			}
+		},
+		HSETNX(4) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				jedis.hsetnx(args[1], args[2], args[3]);
+			}
+		},
+		HDEL(3) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				for (int i = 2; i < args.length; i++)
+					jedis.hdel(args[1], args[i]);
+			}
+		},
+		HINCRBY(4) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				jedis.hincrBy(args[1], args[2], Long.parseLong(args[3]));
+			}
+		},
+		HINCRBYFLOAT(4) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				jedis.hincrByFloat(args[1], args[2], Double.parseDouble(args[3]));
+			}
+		},
+		PFADD(2) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				jedis.pfadd(args[1], Arrays.copyOfRange(args, 2, args.length));
+			}
+		},
+		PFMERGE(2, 0, true) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				jedis.pfmerge(args[1], Arrays.copyOfRange(args, 2, args.length));
+			}
+		},
+		GEOADD(5) {
+			@Override
+			void apply(RedisClient jedis, String[] args) {
+				int i = 2;
+				while (i < args.length && !Character.isDigit(args[i].charAt(args[i].length() - 1)))
+					i++; // NX, XX and CH
+				for (; i + 2 < args.length; i += 3)
+					jedis.geoadd(args[1], Double.parseDouble(args[i]), Double.parseDouble(args[i + 1]), args[i + 2]);
+			}
+		};
+
+		final int arity; // including the command name
+		final int split; // arguments per key when split, 0 if not split
+		final boolean barrier;
+
+		Command(int arity) {
+			this(arity, 0, false);
+		}
+
+		Command(int arity, int split, boolean barrier) {
+			this.arity = arity;
+			this.split = split;
+			this.barrier = barrier;
+		}
+
+		abstract void apply(RedisClient jedis, String[] args);
+	}
+
+	private static final Map<String, Command> COMMANDS = new HashMap<String, Command>();
+	static {
+		for (Command command : Command.values())
+			COMMANDS.put(command.name(), command);
+	}
+
+	/*
+	 * Expiry in the past deletes the key, as in Redis
+	 */
+	private static void expireAt(RedisClient jedis, String key, long millis) {
+		long ttl = millis - System.currentTimeMillis();
+		if (ttl <= 0)
+			jedis.del(key);
+		else
+			jedis.expire(key, Math.max(1, (ttl + 999) / 1000));
+	}
+
+	private static class Task {
+		final RedisClient client;
+		final Command command;
+		final String[] args;
+
+		Task(RedisClient client, Command command, String[] args) {
+			this.client = client;
+			this.command = command;
+			this.args = args;
+		}
+
+		void apply() {
+			this.command.apply(this.client, this.args);
+		}
+	}
+
+	private static final Task STOP = new Task(null, null, null);
+
+	private final class Lane extends Thread {
+		final BlockingQueue<Task> queue = new ArrayBlockingQueue<Task>(AofReplay.this.queueSize);
+		volatile long queued;
+		volatile long done;
+
+		Lane(int index) {
+			super("aof-replay-" + index);
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					Task task = this.queue.take();
+					if (task == STOP)
+						return;
+					apply(task);
+					this.done++;
+				}
+			} catch (InterruptedException e) {
+				// replay stopped
+			}
+		}
+
+		void submit(Task task) throws InterruptedException {
+			this.queued++;
+			this.queue.put(task);
+		}
+
+		boolean isIdle() {
+			return this.done == this.queued;
+		}
+	}
+
+	private final RedisClient jedis;
+	private int lanes = Runtime.getRuntime().availableProcessors() * 2;
+	private int queueSize = 1000;
+	private int db = 0;
+	private boolean follow = false;
+	private volatile boolean stopped;
+	private final AtomicLong applied = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final Map<String, Long> skipped = new HashMap<String, Long>();
+	private Lane[] running;
+	private int currentDb;
+
+	public AofReplay(RedisClient jedis) {
+		this.jedis = jedis;
+	}
+
+	/**
+	 * Threads that apply commands; each key always goes to the same one.
+	 */
+	public AofReplay setLanes(int lanes) {
+		this.lanes = Math.max(1, lanes);
+		return this;
+	}
+
+	public AofReplay setQueueSize(int queueSize) {
+		this.queueSize = queueSize;
+		return this;
+	}
+
+	/**
+	 * The Redis database to replay; commands on other databases are skipped.
+	 * With -1, every database is replayed into its own RedisClient.db() view.
+	 */
+	public AofReplay setDb(int db) {
+		this.db = db;
+		return this;
+	}
+
+	/**
+	 * Keeps reading the last file as it grows, until stop() is called.
+	 */
+	public AofReplay setFollow(boolean follow) {
+		this.follow = follow;
+		return this;
+	}
+
+	/**
+	 * Ends a replay: a following replay stops at the end of the data written
+	 * so far, any other at the next command.
+	 */
+	public void stop() {
+		this.stopped = true;
+	}
+
+	public long getApplied() {
+		return this.applied.get();
+	}
+
+	public long getErrors() {
+		return this.errors.get();
+	}
+
+	/**
+	 * The commands that were not applied, by name, with their counts.
+	 */
+	public synchronized Map<String, Long> getSkipped() {
+		return new HashMap<String, Long>(this.skipped);
+	}
+
+	/**
+	 * Replays an AOF file, or every file of a Redis 7 appendonlydir in the
+	 * order of its manifest. Returns the number of commands applied.
+	 */
+	public long run(File aof) throws IOException, InterruptedException {
+		List<File> files = new ArrayList<File>();
+		if (aof.isDirectory())
+			files.addAll(manifest(aof));
+		else
+			files.add(aof);
+		start();
+		try {
+			for (int i = 0; i < files.size() && !this.stopped; i++) {
+				boolean last = i == files.size() - 1;
+				InputStream in = new FileInputStream(files.get(i));
+				if (last && this.follow)
+					in = new FollowInputStream(in);
+				try {
+					read(new BufferedInputStream(in, 1 << 16));
+				} finally {
+					in.close();
+				}
+			}
+		} finally {
+			finish();
+		}
+		return this.applied.get();
+	}
+
+	/**
+	 * Replays the commands read from the stream. Returns the number of
+	 * commands applied.
+	 */
+	public long replay(InputStream in) throws IOException, InterruptedException {
+		start();
+		try {
+			read(new BufferedInputStream(in, 1 << 16));
+		} finally {
+			finish();
+		}
+		return this.applied.get();
+	}
+
+	private void start() {
+		this.stopped = false;
+		this.currentDb = 0;
+		this.running = new Lane[this.lanes];
+		for (int i = 0; i < this.running.length; i++) {
+			this.running[i] = new Lane(i);
+			this.running[i].start();
+		}
+	}
+
+	private void finish() throws InterruptedException {
+		for (Lane lane : this.running)
+			lane.queue.put(STOP);
+		for (Lane lane : this.running)
+			lane.join();
+	}
+
+	private void read(BufferedInputStream in) throws IOException, InterruptedException {
+		in.mark(5);
+		byte[] magic = new byte[5];
+		int length = 0;
+		while (length < magic.length) {
+			int read = in.read(magic, length, magic.length - length);
+			if (read < 0)
+				break;
+			length += read;
+		}
+		in.reset();
+		if (length == magic.length && new String(magic, UTF_8).equals("REDIS"))
+			readPreamble(in);
+
+		RespReader reader = new RespReader(in);
+		try {
+			byte[][] command;
+			while (!this.stopped && (command = reader.next()) != null) {
+				if (reader.getDb() >= 0)
+					this.currentDb = reader.getDb();
+				dispatch(command);
+			}
+		} catch (EOFException e) {
+			// a following replay that is stopped may end inside a command
+			if (!(this.follow && this.stopped))
+				throw e;
+		}
+	}
+
+	/*
+	 * An AOF rewritten with aof-use-rdb-preamble starts with an RDB snapshot
+	 */
+	private void readPreamble(InputStream in) throws IOException, InterruptedException {
+		RdbParser parser = new RdbParser(in);
+		parser.parse(new RdbParser.Handler() {
+			@Override
+			public void entry(RdbEntry entry) throws IOException {
+				final int expiration = RdbImport.expiration(entry);
+				final RedisClient client = client(entry.db);
+				if ((AofReplay.this.db >= 0 && entry.db != AofReplay.this.db) || expiration == 0 || client == null)
+					return;
+				final String key = new String(entry.key, UTF_8);
+				final Object value = RdbImport.value(entry);
+				try {
+					lane(key).submit(new Task(client, null, new String[] {"RDB", key}) {
+						@Override
+						void apply() {
+							this.client.putValue(key, value, expiration);
+						}
+					});
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Replay interrupted");
+				}
+			}
+		});
+		if (parser.getVersion() >= 5) {
+			byte[] checksum = new byte[8];
+			int length = 0;
+			while (length < checksum.length) {
+				int read = in.read(checksum, length, checksum.length - length);
+				if (read < 0)
+					break;
+				length += read;
+			}
+		}
+	}
+
+	private void dispatch(byte[][] raw) throws InterruptedException {
+		String name = new String(raw[0], UTF_8).toUpperCase(Locale.ENGLISH);
+		if (name.equals("SELECT")) {
+			if (raw.length > 1)
+				this.currentDb = Integer.parseInt(new String(raw[1], UTF_8));
+			return;
+		}
+		if (IGNORED.contains(name))
+			return;
+		Command command = COMMANDS.get(name);
+		if (command == null || (this.db >= 0 && this.currentDb != this.db)) {
+			skipped((command == null) ? name : "db " + this.currentDb);
+			return;
+		}
+		String[] args = new String[raw.length];
+		for (int i = 0; i < raw.length; i++)
+			args[i] = new String(raw[i], UTF_8);
+		RedisClient client = client(this.currentDb);
+		if (client == null) {
+			skipped("db " + this.currentDb);
+			return;
+		}
+		if (args.length < command.arity) {
+			failed(args, "wrong number of arguments");
+			return;
+		}
+		if (command.barrier) {
+			drain();
+			apply(new Task(client, command, args));
+		} else if (command.split > 0) {
+			for (int i = 1; i + command.split <= args.length; i += command.split) {
+				String[] part = new String[command.split + 1];
+				part[0] = name;
+				System.arraycopy(args, i, part, 1, command.split);
+				lane(part[1]).submit(new Task(client, command, part));
+			}
+		} else {
+			lane(args[1]).submit(new Task(client, command, args));
+		}
+	}
+
+	/*
+	 * The client for a database, or null if RedisClient has no set for it
+	 */
+	private RedisClient client(int db) {
+		if (this.db >= 0)
+			return this.jedis;
+		try {
+			return this.jedis.db(db);
+		} catch (AerospikeException e) {
+			return null;
+		}
+	}
+
+	private Lane lane(String key) {
+		return this.running[(key.hashCode() & 0x7FFFFFFF) % this.running.length];
+	}
+
+	/*
+	 * Waits until every lane has applied what it was given
+	 */
+	private void drain() {
+		for (Lane lane : this.running) {
+			while (!lane.isIdle())
+				LockSupport.parkNanos(100000);
+		}
+	}
+
+	private void apply(Task task) {
+		try {
+			task.apply();
+			this.applied.incrementAndGet();
+		} catch (RuntimeException e) {
+			failed(task.args, e.getMessage());
+		}
+	}
+
+	private void failed(String[] args, String message) {
+		this.errors.incrementAndGet();
+		if (Log.warnEnabled())
+			Log.warn("AOF replay of " + args[0] + " " + ((args.length > 1) ? args[1] : "") + " failed: " + message);
+	}
+
+	private synchronized void skipped(String name) {
+		Long count = this.skipped.get(name);
+		this.skipped.put(name, (count == null) ? 1L : count + 1);
+	}
+
+	/*
+	 * The base file and the incremental files listed by the manifest of a
+	 * Redis 7 appendonlydir, in replay order
+	 */
+	private static List<File> manifest(File dir) throws IOException {
+		File[] manifests = dir.listFiles();
+		File manifest = null;
+		if (manifests != null) {
+			for (File file : manifests) {
+				if (file.getName().endsWith(".manifest"))
+					manifest = file;
+			}
+		}
+		if (manifest == null)
+			throw new FileNotFoundException("No manifest in " + dir);
+		File base = null;
+		List<File> files = new ArrayList<File>();
+		BufferedReader reader = new BufferedReader(new FileReader(manifest));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] tokens = line.trim().split("\\s+");
+				String name = null;
+				String type = null;
+				for (int i = 0; i + 1 < tokens.length; i += 2) {
+					if (tokens[i].equals("file"))
+						name = tokens[i + 1];
+					else if (tokens[i].equals("type"))
+						type = tokens[i + 1];
+				}
+				if (name == null || type == null)
+					continue;
+				if (type.equals("b"))
+					base = new File(dir, name);
+				else if (type.equals("i"))
+					files.add(new File(dir, name));
+			}
+		} finally {
+			reader.close();
+		}
+		if (base != null)
+			files.add(0, base);
+		return files;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options options = new Options();
+		options.addOption("h", "host", true, "Aerospike seed host (default: 127.0.0.1)");
+		options.addOption("p", "port", true, "Aerospike port (default: 3000)");
+		options.addOption("n", "namespace", true, "Namespace (default: test)");
+		options.addOption("s", "set", true, "Set of the RedisClient (default: redisSet)");
+		options.addOption("d", "db", true, "Redis database to replay, -1 for all (default: 0)");
+		options.addOption("l", "lanes", true, "Threads applying commands (default: twice the processors)");
+		options.addOption("q", "queue", true, "Commands queued per thread (default: 1000)");
+		options.addOption("f", "follow", false, "Keep replaying the file as it grows, until interrupted");
+		options.addOption("u", "userKeys", false, "Store Redis keys as Aerospike user keys, see KEY_STORAGE.USER_KEY");
+		options.addOption("help", false, "Print this message");
+
+		CommandLine cl;
+		try {
+			cl = new PosixParser().parse(options, args);
+		} catch (ParseException e) {
+			System.err.println(e.getMessage());
+			cl = null;
+		}
+		if (cl == null || cl.hasOption("help") || cl.getArgs().length != 1) {
+			new HelpFormatter().printHelp("java " + AofReplay.class.getName() + " [options] <appendonly.aof|appendonlydir>", options);
+			return;
+		}
+		String namespace = cl.getOptionValue("n", "test");
+		AerospikeClient asClient = new AerospikeClient(cl.getOptionValue("h", "127.0.0.1"), Integer.parseInt(cl.getOptionValue("p", "3000")));
+		try {
+			RedisClient jedis = new RedisClient(asClient, namespace, cl.getOptionValue("s", "redisSet"));
+			if (cl.hasOption("u"))
+				jedis.setKeyStorage(RedisClient.KEY_STORAGE.USER_KEY);
+			final AofReplay replay = new AofReplay(jedis)
+					.setDb(Integer.parseInt(cl.getOptionValue("d", "0")))
+					.setQueueSize(Integer.parseInt(cl.getOptionValue("q", "1000")))
+					.setFollow(cl.hasOption("f"));
+			if (cl.hasOption("l"))
+				replay.setLanes(Integer.parseInt(cl.getOptionValue("l")));
+			final Thread main = Thread.currentThread();
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					replay.stop();
+					try {
+						main.join();
+					} catch (InterruptedException e) {
+						// exiting anyway
+					}
+				}
+			});
+			Thread progress = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						while (true) {
+							Thread.sleep(5000);
+							System.out.println(String.format("%d commands applied, %d failed", replay.getApplied(), replay.getErrors()));
+						}
+					} catch (InterruptedException e) {
+						// replay finished
+					}
+				}
+			}, "aof-replay-progress");
+			progress.setDaemon(true);
+			progress.start();
+			long start = System.currentTimeMillis();
+			replay.run(new File(cl.getArgs()[0]));
+			progress.interrupt();
+			System.out.println(String.format("Applied %d commands in %d seconds, %d failed; skipped %s",
+					replay.getApplied(), (System.currentTimeMillis() - start) / 1000, replay.getErrors(), replay.getSkipped()));
+		} finally {
+			asClient.close();
+		}
+	}
+
+	/*
+	 * Waits for more data at the end of the file until the replay is stopped
+	 */
+	private final class FollowInputStream extends InputStream {
+		private final InputStream in;
+
+		FollowInputStream(InputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return (read(b, 0, 1) < 0) ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			while (true) {
+				int read = this.in.read(b, off, len);
+				if (read >= 0 || AofReplay.this.stopped)
+					return read;
+				try {
+					Thread.sleep(FOLLOW_INTERVAL);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return -1;
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.in.close();
+		}
+	}
+}
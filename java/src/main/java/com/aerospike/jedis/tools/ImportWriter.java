@@ -0,0 +1,244 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis.tools;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Key;
+import com.aerospike.client.Log;
+import com.aerospike.client.cluster.Cluster;
+import com.aerospike.client.cluster.Node;
+import com.aerospike.client.cluster.Partition;
+
+/**
+ * Writes imported records in parallel, with a bounded queue and a set of
+ * writer threads per node, so a slow node does not hold up the writes for
+ * the others beyond its queue. Records are routed to the node that masters
+ * their partition. Writes are paced to a rate limit shared by all writers.
+ * <p>
+ * Every record carries the file offset it was read from. The offset of the
+ * oldest record not yet written is where an import can resume: everything
+ * before it has been written.
+ */
+final class ImportWriter {
+
+	/**
+	 * One record to write.
+	 */
+	interface Write {
+		void write();
+	}
+
+	private static final class Task {
+		final long seq;
+		final Write write;
+
+		Task(long seq, Write write) {
+			this.seq = seq;
+			this.write = write;
+		}
+	}
+
+	private static final class Position {
+		final long offset;
+		final int db;
+
+		Position(long offset, int db) {
+			this.offset = offset;
+			this.db = db;
+		}
+	}
+
+	private static final Task STOP = new Task(-1, null);
+
+	private final Cluster cluster;
+	private final Map<Node, BlockingQueue<Task>> lanes = new HashMap<Node, BlockingQueue<Task>>();
+	private final BlockingQueue<Task> sharedLane;
+	private final List<Thread> writers = new ArrayList<Thread>();
+	private final int writersPerLane;
+	private final int queueSize;
+	private final ConcurrentSkipListMap<Long, Position> inFlight = new ConcurrentSkipListMap<Long, Position>();
+	private final AtomicLong written = new AtomicLong();
+	private final long nanosPerWrite;
+	private long nextWrite; // guarded by this
+	private long seq;
+	private volatile Position lastSubmitted = new Position(0, 0);
+	private volatile RuntimeException failure;
+
+	/**
+	 * rate is in records per second, 0 for no limit.
+	 */
+	ImportWriter(AerospikeClient asClient, int writersPerNode, int queueSize, int rate) {
+		this.cluster = clusterOf(asClient);
+		this.writersPerLane = writersPerNode;
+		this.queueSize = queueSize;
+		this.nanosPerWrite = (rate > 0) ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+		if (this.cluster == null) {
+			// one shared lane, with a node's worth of writers per node
+			this.sharedLane = new ArrayBlockingQueue<Task>(queueSize * asClient.getNodes().length);
+			startWriters(this.sharedLane, writersPerNode * Math.max(1, asClient.getNodes().length), "shared");
+		} else {
+			this.sharedLane = null;
+		}
+	}
+
+	/*
+	 * The client does not expose its partition map, so it is taken from the
+	 * cluster field; without it, records are written through one shared lane.
+	 */
+	private static Cluster clusterOf(AerospikeClient asClient) {
+		try {
+			Field field = AerospikeClient.class.getDeclaredField("cluster");
+			field.setAccessible(true);
+			return (Cluster) field.get(asClient);
+		} catch (Exception e) {
+			if (Log.warnEnabled())
+				Log.warn("Import writes are not routed by node: " + e.getMessage());
+			return null;
+		}
+	}
+
+	private void startWriters(final BlockingQueue<Task> lane, int count, String name) {
+		for (int i = 0; i < count; i++) {
+			Thread writer = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					drain(lane);
+				}
+			}, "rdb-import-" + name + "-" + i);
+			writer.setDaemon(true);
+			writer.start();
+			this.writers.add(writer);
+		}
+	}
+
+	private void drain(BlockingQueue<Task> lane) {
+		try {
+			while (true) {
+				Task task = lane.take();
+				if (task == STOP)
+					return;
+				if (this.failure != null)
+					continue; // left in flight, for the next run to write
+				try {
+					pace();
+					task.write.write();
+					this.inFlight.remove(task.seq);
+					this.written.incrementAndGet();
+				} catch (RuntimeException e) {
+					this.failure = e;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void pace() throws InterruptedException {
+		if (this.nanosPerWrite == 0)
+			return;
+		long wait;
+		synchronized (this) {
+			long now = System.nanoTime();
+			this.nextWrite = Math.max(this.nextWrite + this.nanosPerWrite, now);
+			wait = this.nextWrite - now;
+		}
+		if (wait > 0)
+			TimeUnit.NANOSECONDS.sleep(wait);
+	}
+
+	private BlockingQueue<Task> lane(Key key) {
+		if (this.sharedLane != null)
+			return this.sharedLane;
+		Node node;
+		try {
+			node = this.cluster.getMasterNode(new Partition(key));
+		} catch (AerospikeException.InvalidNode e) {
+			node = null;
+		}
+		synchronized (this.lanes) {
+			BlockingQueue<Task> lane = this.lanes.get(node);
+			if (lane == null) {
+				lane = new ArrayBlockingQueue<Task>(this.queueSize);
+				this.lanes.put(node, lane);
+				startWriters(lane, this.writersPerLane, (node == null) ? "unrouted" : node.getName());
+			}
+			return lane;
+		}
+	}
+
+	/**
+	 * Queues a write of key, read at offset in database db; blocks while the
+	 * node's queue is full.
+	 */
+	void submit(Key key, long offset, int db, Write write) throws InterruptedException {
+		RuntimeException failed = this.failure;
+		if (failed != null)
+			throw failed;
+		long id = this.seq++;
+		Position position = new Position(offset, db);
+		this.inFlight.put(id, position);
+		this.lastSubmitted = position;
+		lane(key).put(new Task(id, write));
+	}
+
+	/**
+	 * Waits for the queued writes; throws the first write failure.
+	 */
+	void finish() throws InterruptedException {
+		List<BlockingQueue<Task>> all = new ArrayList<BlockingQueue<Task>>();
+		if (this.sharedLane != null)
+			all.add(this.sharedLane);
+		synchronized (this.lanes) {
+			all.addAll(this.lanes.values());
+		}
+		for (BlockingQueue<Task> lane : all) {
+			int count = (lane == this.sharedLane) ? this.writers.size() : this.writersPerLane;
+			for (int i = 0; i < count; i++)
+				lane.put(STOP);
+		}
+		for (Thread writer : this.writers)
+			writer.join();
+		if (this.failure != null)
+			throw this.failure;
+	}
+
+	long written() {
+		return this.written.get();
+	}
+
+	/**
+	 * The offset and database to resume from: those of the oldest record not
+	 * yet written, or of the last record queued when all are written.
+	 */
+	long[] resumePoint() {
+		Map.Entry<Long, Position> oldest = this.inFlight.firstEntry();
+		Position position = (oldest == null) ? this.lastSubmitted : oldest.getValue();
+		return new long[] { position.offset, position.db };
+	}
+}
@@ -0,0 +1,79 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis.tools;
+
+import java.io.File;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.jedis.RedisClient;
+
+/**
+ * Exports the keys of a RedisClient set to a local archive file, or imports
+ * one, with RedisClient.exportKeyspace() and importKeyspace().
+ */
+public class KeyspaceTool {
+
+	public static void main(String[] args) throws Exception {
+		Options options = new Options();
+		options.addOption("h", "host", true, "Aerospike seed host (default: 127.0.0.1)");
+		options.addOption("p", "port", true, "Aerospike port (default: 3000)");
+		options.addOption("n", "namespace", true, "Namespace (default: test)");
+		options.addOption("s", "set", true, "Set of the RedisClient (default: redisSet)");
+		options.addOption("c", "concurrency", true, "Nodes scanned at once by an export (default: all)");
+		options.addOption("r", "replace", false, "Import over keys that exist");
+		options.addOption("u", "userKeys", false, "Store Redis keys as Aerospike user keys, see KEY_STORAGE.USER_KEY");
+		options.addOption("help", false, "Print this message");
+
+		CommandLine cl;
+		try {
+			cl = new PosixParser().parse(options, args);
+		} catch (ParseException e) {
+			System.err.println(e.getMessage());
+			cl = null;
+		}
+		if (cl == null || cl.hasOption("help") || cl.getArgs().length != 2
+				|| !(cl.getArgs()[0].equals("export") || cl.getArgs()[0].equals("import"))) {
+			new HelpFormatter().printHelp("java " + KeyspaceTool.class.getName() + " [options] export|import <file>", options);
+			return;
+		}
+		File file = new File(cl.getArgs()[1]);
+		AerospikeClient asClient = new AerospikeClient(cl.getOptionValue("h", "127.0.0.1"), Integer.parseInt(cl.getOptionValue("p", "3000")));
+		try {
+			RedisClient jedis = new RedisClient(asClient, cl.getOptionValue("n", "test"), cl.getOptionValue("s", "redisSet"));
+			if (cl.hasOption("u"))
+				jedis.setKeyStorage(RedisClient.KEY_STORAGE.USER_KEY);
+			if (cl.hasOption("c"))
+				jedis.setScanConcurrency(Integer.parseInt(cl.getOptionValue("c")));
+			long start = System.currentTimeMillis();
+			long keys;
+			if (cl.getArgs()[0].equals("export"))
+				keys = jedis.exportKeyspace(file);
+			else
+				keys = jedis.importKeyspace(file, cl.hasOption("r"));
+			System.out.println(String.format("%sed %d keys in %d seconds", cl.getArgs()[0].equals("export") ? "Export" : "Import",
+					keys, (System.currentTimeMillis() - start) / 1000));
+		} finally {
+			asClient.close();
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis.tools;
+
+import java.util.List;
+
+/**
+ * One key of an RDB file, as read by {@link RdbParser}. Strings, list
+ * elements, set members, hash fields and values are the raw bytes Redis
+ * stored; integer encoded elements come back as their decimal form.
+ */
+public final class RdbEntry {
+
+	public static final int STRING = 0;
+	public static final int LIST = 1;
+	public static final int SET = 2;
+	public static final int ZSET = 3;
+	public static final int HASH = 4;
+
+	/** The database selected when the key was read. */
+	public final int db;
+	public final byte[] key;
+	public final int type;
+	/** Unix time in milliseconds, or -1 if the key does not expire. */
+	public final long expireAt;
+	/** The value of a STRING, else null. */
+	public final byte[] string;
+	/**
+	 * LIST elements, SET members, ZSET members or HASH fields and values
+	 * alternately; null for a STRING.
+	 */
+	public final List<byte[]> elements;
+	/** The score of each ZSET member, else null. */
+	public final double[] scores;
+	/** Where the entry starts in the file, its expiry included. */
+	public final long offset;
+
+	RdbEntry(int db, byte[] key, int type, long expireAt, byte[] string, List<byte[]> elements, double[] scores, long offset) {
+		this.db = db;
+		this.key = key;
+		this.type = type;
+		this.expireAt = expireAt;
+		this.string = string;
+		this.elements = elements;
+		this.scores = scores;
+		this.offset = offset;
+	}
+}
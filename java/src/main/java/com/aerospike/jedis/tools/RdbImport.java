@@ -0,0 +1,331 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis.tools;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.Key;
+import com.aerospike.jedis.RedisClient;
+
+/**
+ * Imports a Redis RDB snapshot into the record layout of RedisClient.
+ * <p>
+ * The file is streamed through {@link RdbParser}, and the records written
+ * by an {@link ImportWriter}. Strings are stored as SET stores them, lists
+ * as list bins and hashes as map bins. There are no set or sorted set
+ * commands yet, so sets are stored as maps of member to 1 and sorted sets as
+ * maps of member to score. Keys and elements are read as UTF-8; a string
+ * value that is not UTF-8 is stored as a blob.
+ * <p>
+ * Progress is saved to a checkpoint file every few seconds, and an import
+ * started with the same checkpoint continues from there. Records are written
+ * whole, so writing one again after a restart does no harm.
+ */
+public class RdbImport {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final long CHECKPOINT_INTERVAL = 5000; // in milliseconds
+
+	private final AerospikeClient asClient;
+	private final RedisClient jedis;
+	private final String namespace;
+	private final String set;
+	private int db = 0;
+	private int writersPerNode = 4;
+	private int queueSize = 1000;
+	private int rate = 0;
+	private long skipped;
+	private long expired;
+
+	public RdbImport(AerospikeClient asClient, RedisClient jedis, String namespace, String set) {
+		this.asClient = asClient;
+		this.jedis = jedis;
+		this.namespace = namespace;
+		this.set = set;
+	}
+
+	/**
+	 * The Redis database to import; keys of other databases are skipped.
+	 */
+	public RdbImport setDb(int db) {
+		this.db = db;
+		return this;
+	}
+
+	public RdbImport setWritersPerNode(int writersPerNode) {
+		this.writersPerNode = writersPerNode;
+		return this;
+	}
+
+	public RdbImport setQueueSize(int queueSize) {
+		this.queueSize = queueSize;
+		return this;
+	}
+
+	/**
+	 * Caps the writes per second across all nodes; 0 for no limit.
+	 */
+	public RdbImport setRate(int rate) {
+		this.rate = rate;
+		return this;
+	}
+
+	/**
+	 * Imports the file, resuming from the checkpoint if it exists. The
+	 * checkpoint is deleted once the whole file is imported. Returns the
+	 * number of records written.
+	 */
+	public long run(File rdb, final File checkpoint) throws IOException, InterruptedException {
+		long offset = 0;
+		int startDb = 0;
+		if (checkpoint != null && checkpoint.exists()) {
+			Properties saved = new Properties();
+			InputStream in = new FileInputStream(checkpoint);
+			try {
+				saved.load(in);
+			} finally {
+				in.close();
+			}
+			offset = Long.parseLong(saved.getProperty("offset"));
+			startDb = Integer.parseInt(saved.getProperty("db"));
+		}
+
+		final ImportWriter writer = new ImportWriter(this.asClient, this.writersPerNode, this.queueSize, this.rate);
+		final long fileLength = rdb.length();
+		Thread saver = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						Thread.sleep(CHECKPOINT_INTERVAL);
+						long[] resume = writer.resumePoint();
+						if (checkpoint != null)
+							saveCheckpoint(checkpoint, resume);
+						System.out.println(String.format("%d records written, %.1f%% of the file", writer.written(),
+								100.0 * resume[0] / Math.max(1, fileLength)));
+					}
+				} catch (InterruptedException e) {
+					// import finished
+				} catch (IOException e) {
+					System.err.println("Cannot save the checkpoint: " + e.getMessage());
+				}
+			}
+		}, "rdb-import-checkpoint");
+		saver.setDaemon(true);
+		saver.start();
+
+		InputStream in = new BufferedInputStream(new FileInputStream(rdb), 1 << 20);
+		try {
+			new RdbParser(in).parse(new RdbParser.Handler() {
+				@Override
+				public void entry(final RdbEntry entry) throws IOException {
+					submit(writer, entry);
+				}
+			}, offset, startDb);
+			writer.finish();
+		} catch (InterruptedException e) {
+			throw e;
+		} finally {
+			in.close();
+			saver.interrupt();
+			saver.join();
+			if (checkpoint != null)
+				saveCheckpoint(checkpoint, writer.resumePoint());
+		}
+		if (checkpoint != null)
+			checkpoint.delete();
+		return writer.written();
+	}
+
+	public long getSkipped() {
+		return this.skipped;
+	}
+
+	public long getExpired() {
+		return this.expired;
+	}
+
+	private void submit(ImportWriter writer, RdbEntry entry) throws IOException {
+		if (entry.db != this.db) {
+			this.skipped++;
+			return;
+		}
+		final int ttl = expiration(entry);
+		if (ttl == 0) {
+			this.expired++;
+			return;
+		}
+		final String key = new String(entry.key, UTF_8);
+		final Object value = value(entry);
+		try {
+			writer.submit(new Key(this.namespace, this.set, key), entry.offset, entry.db, new ImportWriter.Write() {
+				@Override
+				public void write() {
+					jedis.putValue(key, value, ttl);
+				}
+			});
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Import interrupted");
+		}
+	}
+
+	/**
+	 * The seconds left until the entry expires, rounded up; -1 if it has no
+	 * expiry, for a record that never expires, and 0 if it has already
+	 * expired.
+	 */
+	static int expiration(RdbEntry entry) {
+		if (entry.expireAt < 0)
+			return -1;
+		long ttl = entry.expireAt - System.currentTimeMillis();
+		return (ttl <= 0) ? 0 : (int) Math.max(1, (ttl + 999) / 1000);
+	}
+
+	/**
+	 * The entry's value as RedisClient.putValue() takes it.
+	 */
+	static Object value(RdbEntry entry) {
+		switch (entry.type) {
+		case RdbEntry.STRING:
+			return string(entry.string);
+		case RdbEntry.LIST: {
+			List<Object> list = new ArrayList<Object>(entry.elements.size());
+			for (byte[] element : entry.elements)
+				list.add(string(element));
+			return list;
+		}
+		case RdbEntry.SET: {
+			Map<Object, Long> map = new HashMap<Object, Long>();
+			for (byte[] member : entry.elements)
+				map.put(string(member), 1L);
+			return map;
+		}
+		case RdbEntry.ZSET: {
+			Map<Object, Double> map = new HashMap<Object, Double>();
+			for (int i = 0; i < entry.scores.length; i++)
+				map.put(string(entry.elements.get(i)), entry.scores[i]);
+			return map;
+		}
+		default: {
+			Map<Object, Object> map = new HashMap<Object, Object>();
+			for (int i = 0; i + 1 < entry.elements.size(); i += 2)
+				map.put(string(entry.elements.get(i)), string(entry.elements.get(i + 1)));
+			return map;
+		}
+		}
+	}
+
+	/*
+	 * A String when the bytes are valid UTF-8, otherwise the bytes
+	 */
+	private static Object string(byte[] bytes) {
+		try {
+			return UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+					.onUnmappableCharacter(CodingErrorAction.REPORT).decode(ByteBuffer.wrap(bytes)).toString();
+		} catch (CharacterCodingException e) {
+			return bytes;
+		}
+	}
+
+	private static void saveCheckpoint(File checkpoint, long[] resume) throws IOException {
+		Properties saved = new Properties();
+		saved.setProperty("offset", Long.toString(resume[0]));
+		saved.setProperty("db", Long.toString(resume[1]));
+		File temp = new File(checkpoint.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(temp);
+		try {
+			saved.store(out, "RDB import checkpoint");
+		} finally {
+			out.close();
+		}
+		if (!temp.renameTo(checkpoint)) {
+			checkpoint.delete();
+			if (!temp.renameTo(checkpoint))
+				throw new IOException("Cannot write " + checkpoint);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options options = new Options();
+		options.addOption("h", "host", true, "Aerospike seed host (default: 127.0.0.1)");
+		options.addOption("p", "port", true, "Aerospike port (default: 3000)");
+		options.addOption("n", "namespace", true, "Namespace (default: test)");
+		options.addOption("s", "set", true, "Set of the RedisClient (default: redisSet)");
+		options.addOption("d", "db", true, "Redis database to import (default: 0)");
+		options.addOption("w", "writers", true, "Writer threads per node (default: 4)");
+		options.addOption("q", "queue", true, "Records queued per node (default: 1000)");
+		options.addOption("r", "rate", true, "Maximum records written per second (default: no limit)");
+		options.addOption("c", "checkpoint", true, "Checkpoint file (default: <file>.checkpoint)");
+		options.addOption("u", "userKeys", false, "Store Redis keys as Aerospike user keys, see KEY_STORAGE.USER_KEY");
+		options.addOption("help", false, "Print this message");
+
+		CommandLine cl;
+		try {
+			cl = new PosixParser().parse(options, args);
+		} catch (ParseException e) {
+			System.err.println(e.getMessage());
+			cl = null;
+		}
+		if (cl == null || cl.hasOption("help") || cl.getArgs().length != 1) {
+			new HelpFormatter().printHelp("java " + RdbImport.class.getName() + " [options] <file.rdb>", options);
+			return;
+		}
+		File rdb = new File(cl.getArgs()[0]);
+		String namespace = cl.getOptionValue("n", "test");
+		String set = cl.getOptionValue("s", "redisSet");
+		AerospikeClient asClient = new AerospikeClient(cl.getOptionValue("h", "127.0.0.1"), Integer.parseInt(cl.getOptionValue("p", "3000")));
+		try {
+			RedisClient jedis = new RedisClient(asClient, namespace, set);
+			if (cl.hasOption("u"))
+				jedis.setKeyStorage(RedisClient.KEY_STORAGE.USER_KEY);
+			RdbImport importer = new RdbImport(asClient, jedis, namespace, set)
+					.setDb(Integer.parseInt(cl.getOptionValue("d", "0")))
+					.setWritersPerNode(Integer.parseInt(cl.getOptionValue("w", "4")))
+					.setQueueSize(Integer.parseInt(cl.getOptionValue("q", "1000")))
+					.setRate(Integer.parseInt(cl.getOptionValue("r", "0")));
+			long start = System.currentTimeMillis();
+			long written = importer.run(rdb, new File(cl.getOptionValue("c", rdb.getPath() + ".checkpoint")));
+			System.out.println(String.format("Imported %d records in %d seconds; %d expired, %d in other databases",
+					written, (System.currentTimeMillis() - start) / 1000, importer.getExpired(), importer.getSkipped()));
+		} finally {
+			asClient.close();
+		}
+	}
+}
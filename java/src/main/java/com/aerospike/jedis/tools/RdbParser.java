@@ -0,0 +1,690 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis.tools;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a Redis RDB file (versions 1 to 12) one key at a time, so only the
+ * value being read is held in memory. Strings, lists, sets, sorted sets and
+ * hashes are decoded from every encoding Redis has used: plain, ziplist,
+ * zipmap, intset, quicklist and listpack. Streams, module values and
+ * functions are read past and not returned.
+ */
+public final class RdbParser {
+
+	/**
+	 * Receives the entries in file order.
+	 */
+	public interface Handler {
+		void entry(RdbEntry entry) throws IOException;
+	}
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	// value types
+	private static final int TYPE_STRING = 0;
+	private static final int TYPE_LIST = 1;
+	private static final int TYPE_SET = 2;
+	private static final int TYPE_ZSET = 3;
+	private static final int TYPE_HASH = 4;
+	private static final int TYPE_ZSET_2 = 5;
+	private static final int TYPE_MODULE_2 = 7;
+	private static final int TYPE_HASH_ZIPMAP = 9;
+	private static final int TYPE_LIST_ZIPLIST = 10;
+	private static final int TYPE_SET_INTSET = 11;
+	private static final int TYPE_ZSET_ZIPLIST = 12;
+	private static final int TYPE_HASH_ZIPLIST = 13;
+	private static final int TYPE_LIST_QUICKLIST = 14;
+	private static final int TYPE_STREAM_LISTPACKS = 15;
+	private static final int TYPE_HASH_LISTPACK = 16;
+	private static final int TYPE_ZSET_LISTPACK = 17;
+	private static final int TYPE_LIST_QUICKLIST_2 = 18;
+	private static final int TYPE_STREAM_LISTPACKS_2 = 19;
+	private static final int TYPE_SET_LISTPACK = 20;
+	private static final int TYPE_STREAM_LISTPACKS_3 = 21;
+
+	// opcodes
+	private static final int OPCODE_SLOT_INFO = 0xF4;
+	private static final int OPCODE_FUNCTION2 = 0xF5;
+	private static final int OPCODE_MODULE_AUX = 0xF7;
+	private static final int OPCODE_IDLE = 0xF8;
+	private static final int OPCODE_FREQ = 0xF9;
+	private static final int OPCODE_AUX = 0xFA;
+	private static final int OPCODE_RESIZEDB = 0xFB;
+	private static final int OPCODE_EXPIRETIME_MS = 0xFC;
+	private static final int OPCODE_EXPIRETIME = 0xFD;
+	private static final int OPCODE_SELECTDB = 0xFE;
+	private static final int OPCODE_EOF = 0xFF;
+
+	// length encodings
+	private static final int ENCODING_INT8 = 0;
+	private static final int ENCODING_INT16 = 1;
+	private static final int ENCODING_INT32 = 2;
+	private static final int ENCODING_LZF = 3;
+
+	private static final int QUICKLIST_NODE_PLAIN = 1;
+
+	private static final class CountingInputStream extends FilterInputStream {
+		long position;
+
+		CountingInputStream(InputStream in, long position) {
+			super(in);
+			this.position = position;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0)
+				this.position++;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0)
+				this.position += n;
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			this.position += skipped;
+			return skipped;
+		}
+	}
+
+	private final CountingInputStream in;
+	private int version;
+	private int db;
+	private boolean encodedLength; // set by readLength for a special string encoding
+
+	/**
+	 * in should be buffered.
+	 */
+	public RdbParser(InputStream in) {
+		this.in = new CountingInputStream(in, 0);
+	}
+
+	public int getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Reads the file to its end, passing each key to the handler.
+	 */
+	public void parse(Handler handler) throws IOException {
+		parse(handler, 0, 0);
+	}
+
+	/**
+	 * Reads the file from offset, an RdbEntry.offset of an earlier run, in
+	 * database db; an offset of 0 reads it all.
+	 */
+	public void parse(Handler handler, long offset, int db) throws IOException {
+		readHeader();
+		if (offset > 0) {
+			skipFully(offset - this.in.position);
+			this.db = db;
+		}
+		long expireAt = -1;
+		long entryOffset = this.in.position;
+		while (true) {
+			int type = readByte();
+			switch (type) {
+			case OPCODE_EOF:
+				return; // the CRC64 that may follow is not checked
+			case OPCODE_SELECTDB:
+				this.db = (int) readLength();
+				break;
+			case OPCODE_RESIZEDB:
+				readLength();
+				readLength();
+				break;
+			case OPCODE_AUX:
+				readString();
+				readString();
+				break;
+			case OPCODE_EXPIRETIME:
+				expireAt = readLittleEndian(4) * 1000;
+				continue;
+			case OPCODE_EXPIRETIME_MS:
+				expireAt = readLittleEndian(8);
+				continue;
+			case OPCODE_IDLE:
+				readLength();
+				continue;
+			case OPCODE_FREQ:
+				readByte();
+				continue;
+			case OPCODE_SLOT_INFO:
+				readLength();
+				readLength();
+				readLength();
+				break;
+			case OPCODE_FUNCTION2:
+				readString();
+				break;
+			case OPCODE_MODULE_AUX:
+				readLength(); // module id
+				readLength(); // when opcode
+				readLength(); // when
+				skipModuleValue();
+				break;
+			default:
+				byte[] key = readString();
+				RdbEntry entry = readValue(type, key, expireAt, entryOffset);
+				if (entry != null)
+					handler.entry(entry);
+				break;
+			}
+			expireAt = -1;
+			entryOffset = this.in.position;
+		}
+	}
+
+	private void readHeader() throws IOException {
+		byte[] magic = new byte[9];
+		readFully(magic);
+		String header = new String(magic, ASCII);
+		if (!header.startsWith("REDIS"))
+			throw new IOException("Not an RDB file");
+		this.version = Integer.parseInt(header.substring(5));
+		if (this.version < 1 || this.version > 12)
+			throw new IOException("Unsupported RDB version " + this.version);
+	}
+
+	private RdbEntry readValue(int type, byte[] key, long expireAt, long offset) throws IOException {
+		switch (type) {
+		case TYPE_STRING:
+			return new RdbEntry(this.db, key, RdbEntry.STRING, expireAt, readString(), null, null, offset);
+		case TYPE_LIST:
+		case TYPE_SET: {
+			long size = readLength();
+			List<byte[]> elements = new ArrayList<byte[]>();
+			for (long i = 0; i < size; i++)
+				elements.add(readString());
+			return new RdbEntry(this.db, key, (type == TYPE_LIST) ? RdbEntry.LIST : RdbEntry.SET, expireAt, null, elements, null, offset);
+		}
+		case TYPE_ZSET:
+		case TYPE_ZSET_2: {
+			int size = (int) readLength();
+			List<byte[]> members = new ArrayList<byte[]>(size);
+			double[] scores = new double[size];
+			for (int i = 0; i < size; i++) {
+				members.add(readString());
+				scores[i] = (type == TYPE_ZSET_2) ? Double.longBitsToDouble(readLittleEndian(8)) : readAsciiDouble();
+			}
+			return new RdbEntry(this.db, key, RdbEntry.ZSET, expireAt, null, members, scores, offset);
+		}
+		case TYPE_HASH: {
+			long size = readLength();
+			List<byte[]> elements = new ArrayList<byte[]>();
+			for (long i = 0; i < size; i++) {
+				elements.add(readString());
+				elements.add(readString());
+			}
+			return new RdbEntry(this.db, key, RdbEntry.HASH, expireAt, null, elements, null, offset);
+		}
+		case TYPE_HASH_ZIPMAP:
+			return new RdbEntry(this.db, key, RdbEntry.HASH, expireAt, null, zipmap(readString()), null, offset);
+		case TYPE_LIST_ZIPLIST:
+			return new RdbEntry(this.db, key, RdbEntry.LIST, expireAt, null, ziplist(readString(), null), null, offset);
+		case TYPE_SET_INTSET:
+			return new RdbEntry(this.db, key, RdbEntry.SET, expireAt, null, intset(readString()), null, offset);
+		case TYPE_SET_LISTPACK:
+			return new RdbEntry(this.db, key, RdbEntry.SET, expireAt, null, listpack(readString(), null), null, offset);
+		case TYPE_HASH_ZIPLIST:
+			return new RdbEntry(this.db, key, RdbEntry.HASH, expireAt, null, ziplist(readString(), null), null, offset);
+		case TYPE_HASH_LISTPACK:
+			return new RdbEntry(this.db, key, RdbEntry.HASH, expireAt, null, listpack(readString(), null), null, offset);
+		case TYPE_ZSET_ZIPLIST:
+		case TYPE_ZSET_LISTPACK: {
+			List<byte[]> pairs = (type == TYPE_ZSET_ZIPLIST) ? ziplist(readString(), null) : listpack(readString(), null);
+			List<byte[]> members = new ArrayList<byte[]>(pairs.size() / 2);
+			double[] scores = new double[pairs.size() / 2];
+			for (int i = 0; i < scores.length; i++) {
+				members.add(pairs.get(2 * i));
+				scores[i] = Double.parseDouble(new String(pairs.get(2 * i + 1), ASCII));
+			}
+			return new RdbEntry(this.db, key, RdbEntry.ZSET, expireAt, null, members, scores, offset);
+		}
+		case TYPE_LIST_QUICKLIST:
+		case TYPE_LIST_QUICKLIST_2: {
+			long nodes = readLength();
+			List<byte[]> elements = new ArrayList<byte[]>();
+			for (long i = 0; i < nodes; i++) {
+				if (type == TYPE_LIST_QUICKLIST) {
+					ziplist(readString(), elements);
+				} else if (readLength() == QUICKLIST_NODE_PLAIN) {
+					elements.add(readString());
+				} else {
+					listpack(readString(), elements);
+				}
+			}
+			return new RdbEntry(this.db, key, RdbEntry.LIST, expireAt, null, elements, null, offset);
+		}
+		case TYPE_STREAM_LISTPACKS:
+		case TYPE_STREAM_LISTPACKS_2:
+		case TYPE_STREAM_LISTPACKS_3:
+			skipStream(type);
+			return null;
+		case TYPE_MODULE_2:
+			readLength(); // module id
+			skipModuleValue();
+			return null;
+		default:
+			throw new IOException("Unsupported RDB value type " + type + " at offset " + offset);
+		}
+	}
+
+	/*
+	 * Primitive reads
+	 */
+
+	private int readByte() throws IOException {
+		int b = this.in.read();
+		if (b < 0)
+			throw new EOFException("Truncated RDB file");
+		return b;
+	}
+
+	private void readFully(byte[] b) throws IOException {
+		int read = 0;
+		while (read < b.length) {
+			int n = this.in.read(b, read, b.length - read);
+			if (n < 0)
+				throw new EOFException("Truncated RDB file");
+			read += n;
+		}
+	}
+
+	private void skipFully(long n) throws IOException {
+		while (n > 0) {
+			long skipped = this.in.skip(n);
+			if (skipped <= 0) {
+				readByte();
+				skipped = 1;
+			}
+			n -= skipped;
+		}
+	}
+
+	private long readLittleEndian(int bytes) throws IOException {
+		long value = 0;
+		for (int i = 0; i < bytes; i++)
+			value |= ((long) readByte()) << (8 * i);
+		return value;
+	}
+
+	private long readBigEndian(int bytes) throws IOException {
+		long value = 0;
+		for (int i = 0; i < bytes; i++)
+			value = (value << 8) | readByte();
+		return value;
+	}
+
+	/*
+	 * A length; for a specially encoded string, the encoding, with
+	 * encodedLength set.
+	 */
+	private long readLength() throws IOException {
+		int first = readByte();
+		this.encodedLength = false;
+		switch (first >> 6) {
+		case 0:
+			return first & 0x3F;
+		case 1:
+			return ((first & 0x3F) << 8) | readByte();
+		case 2:
+			if (first == 0x80)
+				return readBigEndian(4);
+			if (first == 0x81)
+				return readBigEndian(8);
+			throw new IOException("Bad RDB length encoding " + first);
+		default:
+			this.encodedLength = true;
+			return first & 0x3F;
+		}
+	}
+
+	private byte[] readString() throws IOException {
+		long length = readLength();
+		if (this.encodedLength) {
+			switch ((int) length) {
+			case ENCODING_INT8:
+				return Long.toString((byte) readByte()).getBytes(ASCII);
+			case ENCODING_INT16:
+				return Long.toString((short) readLittleEndian(2)).getBytes(ASCII);
+			case ENCODING_INT32:
+				return Long.toString((int) readLittleEndian(4)).getBytes(ASCII);
+			case ENCODING_LZF: {
+				int compressed = (int) readLength();
+				int uncompressed = (int) readLength();
+				byte[] data = new byte[compressed];
+				readFully(data);
+				return lzf(data, uncompressed);
+			}
+			default:
+				throw new IOException("Bad RDB string encoding " + length);
+			}
+		}
+		byte[] value = new byte[(int) length];
+		readFully(value);
+		return value;
+	}
+
+	private double readAsciiDouble() throws IOException {
+		int length = readByte();
+		switch (length) {
+		case 253:
+			return Double.NaN;
+		case 254:
+			return Double.POSITIVE_INFINITY;
+		case 255:
+			return Double.NEGATIVE_INFINITY;
+		default:
+			byte[] digits = new byte[length];
+			readFully(digits);
+			return Double.parseDouble(new String(digits, ASCII));
+		}
+	}
+
+	static byte[] lzf(byte[] in, int length) throws IOException {
+		byte[] out = new byte[length];
+		int ip = 0;
+		int op = 0;
+		while (ip < in.length) {
+			int ctrl = in[ip++] & 0xFF;
+			if (ctrl < 32) {
+				ctrl++; // a run of literals
+				System.arraycopy(in, ip, out, op, ctrl);
+				ip += ctrl;
+				op += ctrl;
+			} else {
+				int len = ctrl >> 5; // a back reference
+				int ref = op - ((ctrl & 0x1F) << 8) - 1;
+				if (len == 7)
+					len += in[ip++] & 0xFF;
+				ref -= in[ip++] & 0xFF;
+				len += 2;
+				if (ref < 0 || op + len > length)
+					throw new IOException("Corrupt LZF string");
+				for (int i = 0; i < len; i++)
+					out[op++] = out[ref++];
+			}
+		}
+		if (op != length)
+			throw new IOException("Corrupt LZF string");
+		return out;
+	}
+
+	/*
+	 * Compact encodings, each held in one string
+	 */
+
+	private static long littleEndian(byte[] b, int offset, int bytes) {
+		long value = 0;
+		for (int i = 0; i < bytes; i++)
+			value |= ((long) (b[offset + i] & 0xFF)) << (8 * i);
+		return value;
+	}
+
+	private static byte[] decimal(long value) {
+		return Long.toString(value).getBytes(ASCII);
+	}
+
+	private static byte[] slice(byte[] b, int offset, int length) {
+		byte[] result = new byte[length];
+		System.arraycopy(b, offset, result, 0, length);
+		return result;
+	}
+
+	static List<byte[]> ziplist(byte[] zl, List<byte[]> elements) {
+		if (elements == null)
+			elements = new ArrayList<byte[]>();
+		int p = 10; // zlbytes, zltail, zllen
+		while ((zl[p] & 0xFF) != 0xFF) {
+			p += ((zl[p] & 0xFF) == 0xFE) ? 5 : 1; // prevlen
+			int encoding = zl[p] & 0xFF;
+			switch (encoding >> 6) {
+			case 0: {
+				int length = encoding & 0x3F;
+				elements.add(slice(zl, p + 1, length));
+				p += 1 + length;
+				break;
+			}
+			case 1: {
+				int length = ((encoding & 0x3F) << 8) | (zl[p + 1] & 0xFF);
+				elements.add(slice(zl, p + 2, length));
+				p += 2 + length;
+				break;
+			}
+			case 2: {
+				int length = (int) (((zl[p + 1] & 0xFFL) << 24) | ((zl[p + 2] & 0xFF) << 16) | ((zl[p + 3] & 0xFF) << 8) | (zl[p + 4] & 0xFF));
+				elements.add(slice(zl, p + 5, length));
+				p += 5 + length;
+				break;
+			}
+			default:
+				p++;
+				switch (encoding) {
+				case 0xC0:
+					elements.add(decimal((short) littleEndian(zl, p, 2)));
+					p += 2;
+					break;
+				case 0xD0:
+					elements.add(decimal((int) littleEndian(zl, p, 4)));
+					p += 4;
+					break;
+				case 0xE0:
+					elements.add(decimal(littleEndian(zl, p, 8)));
+					p += 8;
+					break;
+				case 0xF0:
+					elements.add(decimal((littleEndian(zl, p, 3) << 40) >> 40));
+					p += 3;
+					break;
+				case 0xFE:
+					elements.add(decimal(zl[p]));
+					p += 1;
+					break;
+				default:
+					elements.add(decimal((encoding & 0x0F) - 1)); // 0 to 12 in the encoding
+					break;
+				}
+			}
+		}
+		return elements;
+	}
+
+	static List<byte[]> listpack(byte[] lp, List<byte[]> elements) {
+		if (elements == null)
+			elements = new ArrayList<byte[]>();
+		int p = 6; // total bytes, element count
+		while ((lp[p] & 0xFF) != 0xFF) {
+			int encoding = lp[p] & 0xFF;
+			int start = p;
+			if ((encoding & 0x80) == 0) {
+				elements.add(decimal(encoding));
+				p += 1;
+			} else if ((encoding & 0xC0) == 0x80) {
+				int length = encoding & 0x3F;
+				elements.add(slice(lp, p + 1, length));
+				p += 1 + length;
+			} else if ((encoding & 0xE0) == 0xC0) {
+				int value = ((encoding & 0x1F) << 8) | (lp[p + 1] & 0xFF);
+				elements.add(decimal((value << 19) >> 19));
+				p += 2;
+			} else if ((encoding & 0xF0) == 0xE0) {
+				int length = ((encoding & 0x0F) << 8) | (lp[p + 1] & 0xFF);
+				elements.add(slice(lp, p + 2, length));
+				p += 2 + length;
+			} else {
+				switch (encoding) {
+				case 0xF0: {
+					int length = (int) littleEndian(lp, p + 1, 4);
+					elements.add(slice(lp, p + 5, length));
+					p += 5 + length;
+					break;
+				}
+				case 0xF1:
+					elements.add(decimal((short) littleEndian(lp, p + 1, 2)));
+					p += 3;
+					break;
+				case 0xF2:
+					elements.add(decimal((littleEndian(lp, p + 1, 3) << 40) >> 40));
+					p += 4;
+					break;
+				case 0xF3:
+					elements.add(decimal((int) littleEndian(lp, p + 1, 4)));
+					p += 5;
+					break;
+				case 0xF4:
+					elements.add(decimal(littleEndian(lp, p + 1, 8)));
+					p += 9;
+					break;
+				default:
+					throw new IllegalArgumentException("Bad listpack encoding " + encoding);
+				}
+			}
+			int size = p - start;
+			p += (size < 128) ? 1 : (size < 16383) ? 2 : (size < 2097151) ? 3 : (size < 268435455) ? 4 : 5; // backlen, as lpEncodeBacklen
+		}
+		return elements;
+	}
+
+	static List<byte[]> intset(byte[] is) {
+		int width = (int) littleEndian(is, 0, 4);
+		int count = (int) littleEndian(is, 4, 4);
+		List<byte[]> members = new ArrayList<byte[]>(count);
+		for (int i = 0; i < count; i++) {
+			long value = littleEndian(is, 8 + i * width, width);
+			if (width == 2)
+				value = (short) value;
+			else if (width == 4)
+				value = (int) value;
+			members.add(decimal(value));
+		}
+		return members;
+	}
+
+	static List<byte[]> zipmap(byte[] zm) {
+		List<byte[]> elements = new ArrayList<byte[]>();
+		int p = 1; // zmlen
+		while ((zm[p] & 0xFF) != 0xFF) {
+			int length = zm[p] & 0xFF;
+			if (length == 254) {
+				length = (int) littleEndian(zm, p + 1, 4);
+				p += 5;
+			} else {
+				p += 1;
+			}
+			elements.add(slice(zm, p, length));
+			p += length;
+			length = zm[p] & 0xFF;
+			if (length == 254) {
+				length = (int) littleEndian(zm, p + 1, 4);
+				p += 5;
+			} else {
+				p += 1;
+			}
+			int free = zm[p] & 0xFF;
+			elements.add(slice(zm, p + 1, length));
+			p += 1 + length + free;
+		}
+		return elements;
+	}
+
+	/*
+	 * Values that are read past
+	 */
+
+	private void skipStream(int type) throws IOException {
+		long listpacks = readLength();
+		for (long i = 0; i < listpacks; i++) {
+			readString(); // master ID
+			readString(); // listpack
+		}
+		readLength(); // length
+		readLength(); // last ID
+		readLength();
+		if (type >= TYPE_STREAM_LISTPACKS_2) {
+			readLength(); // first ID
+			readLength();
+			readLength(); // max deleted ID
+			readLength();
+			readLength(); // entries added
+		}
+		long groups = readLength();
+		for (long i = 0; i < groups; i++) {
+			readString(); // name
+			readLength(); // last delivered ID
+			readLength();
+			if (type >= TYPE_STREAM_LISTPACKS_2)
+				readLength(); // entries read
+			long pending = readLength();
+			for (long j = 0; j < pending; j++) {
+				skipFully(16 + 8); // ID, delivery time
+				readLength(); // delivery count
+			}
+			long consumers = readLength();
+			for (long j = 0; j < consumers; j++) {
+				readString(); // name
+				skipFully(8); // seen time
+				if (type >= TYPE_STREAM_LISTPACKS_3)
+					skipFully(8); // active time
+				long owned = readLength();
+				skipFully(16 * owned);
+			}
+		}
+	}
+
+	private void skipModuleValue() throws IOException {
+		while (true) {
+			long opcode = readLength();
+			switch ((int) opcode) {
+			case 0: // EOF
+				return;
+			case 1: // signed
+			case 2: // unsigned
+				readLength();
+				break;
+			case 3: // float
+				skipFully(4);
+				break;
+			case 4: // double
+				skipFully(8);
+				break;
+			case 5: // string
+				readString();
+				break;
+			default:
+				throw new IOException("Bad module value opcode " + opcode);
+			}
+		}
+	}
+}
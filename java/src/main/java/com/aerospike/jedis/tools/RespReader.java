@@ -0,0 +1,202 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.jedis.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads Redis commands one at a time from an AOF, a captured replication
+ * stream or the output of MONITOR.
+ * <p>
+ * AOF and replication streams are RESP arrays of bulk strings. A line that
+ * does not start with <code>*</code> is read as a MONITOR line, such as
+ * <code>1339518083.107412 [0 127.0.0.1:60866] "set" "key" "value"</code>,
+ * whose database number is kept in {@link #getDb()}.
+ */
+final class RespReader {
+
+	private final InputStream in;
+	private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+	private long position;
+	private int db = -1;
+
+	RespReader(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Bytes read so far; after next() returns, the offset of the next command.
+	 */
+	long getPosition() {
+		return this.position;
+	}
+
+	/**
+	 * The database of the last MONITOR line, -1 for RESP input.
+	 */
+	int getDb() {
+		return this.db;
+	}
+
+	/**
+	 * Returns the arguments of the next command, the command name first, or
+	 * null at the end of the input. A command cut short by the end of the
+	 * input is an EOFException.
+	 */
+	byte[][] next() throws IOException {
+		while (true) {
+			int first = read(true);
+			if (first < 0)
+				return null;
+			if (first == '\r' || first == '\n')
+				continue;
+			if (first == '*')
+				return readArray();
+			this.line.reset();
+			this.line.write(first);
+			readLine();
+			byte[][] command = parseMonitorLine(this.line.toByteArray());
+			if (command != null)
+				return command;
+		}
+	}
+
+	private byte[][] readArray() throws IOException {
+		int count = readNumber();
+		byte[][] args = new byte[Math.max(0, count)][];
+		for (int i = 0; i < args.length; i++) {
+			int type = read(false);
+			if (type != '$')
+				throw new IOException("Expected a bulk string at offset " + (this.position - 1));
+			int length = readNumber();
+			byte[] arg = new byte[length];
+			int offset = 0;
+			while (offset < length) {
+				int read = this.in.read(arg, offset, length - offset);
+				if (read < 0)
+					throw new EOFException("Command cut short at offset " + this.position);
+				offset += read;
+				this.position += read;
+			}
+			read(false);
+			read(false); // CRLF
+			args[i] = arg;
+		}
+		return args;
+	}
+
+	private int readNumber() throws IOException {
+		this.line.reset();
+		readLine();
+		try {
+			return Integer.parseInt(new String(this.line.toByteArray(), "US-ASCII").trim());
+		} catch (NumberFormatException e) {
+			throw new IOException("Bad length at offset " + this.position);
+		}
+	}
+
+	private void readLine() throws IOException {
+		while (true) {
+			int b = read(false);
+			if (b == '\n')
+				break;
+			if (b != '\r')
+				this.line.write(b);
+		}
+	}
+
+	private int read(boolean eofAllowed) throws IOException {
+		int b = this.in.read();
+		if (b < 0) {
+			if (eofAllowed)
+				return -1;
+			throw new EOFException("Command cut short at offset " + this.position);
+		}
+		this.position++;
+		return b;
+	}
+
+	/*
+	 * Returns null for lines that are not commands, such as the OK that
+	 * MONITOR prints first
+	 */
+	private byte[][] parseMonitorLine(byte[] text) {
+		int i = 0;
+		while (i < text.length && text[i] != '[' && text[i] != '"')
+			i++;
+		if (i < text.length && text[i] == '[') {
+			int db = 0;
+			boolean digits = false;
+			for (i++; i < text.length && text[i] >= '0' && text[i] <= '9'; i++) {
+				db = db * 10 + (text[i] - '0');
+				digits = true;
+			}
+			if (digits)
+				this.db = db;
+			while (i < text.length && text[i] != ']')
+				i++;
+		}
+		List<byte[]> args = new ArrayList<byte[]>();
+		ByteArrayOutputStream arg = new ByteArrayOutputStream();
+		for (; i < text.length; i++) {
+			if (text[i] != '"')
+				continue;
+			arg.reset();
+			for (i++; i < text.length && text[i] != '"'; i++) {
+				if (text[i] != '\\' || i + 1 >= text.length) {
+					arg.write(text[i]);
+					continue;
+				}
+				byte c = text[++i];
+				switch (c) {
+				case 'n':
+					arg.write('\n');
+					break;
+				case 'r':
+					arg.write('\r');
+					break;
+				case 't':
+					arg.write('\t');
+					break;
+				case 'a':
+					arg.write(7);
+					break;
+				case 'b':
+					arg.write('\b');
+					break;
+				case 'x':
+					if (i + 2 < text.length) {
+						arg.write(Integer.parseInt(new String(text, i + 1, 2), 16));
+						i += 2;
+						break;
+					}
+					arg.write(c);
+					break;
+				default:
+					arg.write(c);
+				}
+			}
+			args.add(arg.toByteArray());
+		}
+		return args.isEmpty() ? null : args.toArray(new byte[args.size()][]);
+	}
+}
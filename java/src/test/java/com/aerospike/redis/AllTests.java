@@ -22,7 +22,17 @@ import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
 @SuiteClasses({ StringValuesCommandsTest.class, HashesCommandsTest.class,
-		ListCommandsTest.class  })
+		ListCommandsTest.class, PublishSubscribeCommandsTest.class,
+		StreamsCommandsTest.class, HyperLogLogCommandsTest.class,
+		BitmapCommandsTest.class, GeoCommandsTest.class,
+		TransactionCommandsTest.class, ScriptingCommandsTest.class,
+		HotKeyCommandsTest.class, HedgedReadsTest.class,
+		ConcurrencyLimitTest.class, AsyncModeTest.class,
+		ReactiveCommandsTest.class, KeyScanTest.class,
+		ValueCodecTest.class, CompressionTest.class,
+		KeyStorageTest.class, RdbImportTest.class,
+		AofReplayTest.class, DumpRestoreTest.class,
+		DatabaseCommandsTest.class, ExpirySweeperTest.class  })
 public class AllTests {
 
 
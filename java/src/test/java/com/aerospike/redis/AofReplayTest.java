@@ -0,0 +1,131 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.jedis.RedisClient;
+import com.aerospike.jedis.tools.AofReplay;
+
+public class AofReplayTest  {
+
+	AerospikeClient asClient = new AerospikeClient("127.0.0.1", 3000);
+	RedisClient jedis = new RedisClient(asClient, "test", "redisSet");
+
+	private static String command(String... args) {
+		StringBuilder resp = new StringBuilder("*" + args.length + "\r\n");
+		for (String arg : args)
+			resp.append("$").append(arg.length()).append("\r\n").append(arg).append("\r\n");
+		return resp.toString();
+	}
+
+	@Test
+	public void replay() throws Exception {
+		jedis.del("aof-string", "aof-counter", "aof-list", "aof-hash", "aof-gone", "aof-renamed", "aof-db1");
+		String aof = command("SELECT", "0")
+				+ command("SET", "aof-string", "v1")
+				+ command("MULTI")
+				+ command("INCRBY", "aof-counter", "5")
+				+ command("INCR", "aof-counter")
+				+ command("EXEC")
+				+ command("RPUSH", "aof-list", "a", "b", "c")
+				+ command("LPOP", "aof-list")
+				+ command("HSET", "aof-hash", "f1", "v1", "f2", "v2")
+				+ command("HDEL", "aof-hash", "f1")
+				+ command("MSET", "aof-gone", "x", "aof-old", "y")
+				+ command("DEL", "aof-gone", "aof-nothing")
+				+ command("RENAME", "aof-old", "aof-renamed")
+				+ command("PEXPIREAT", "aof-string", Long.toString(System.currentTimeMillis() + 100000))
+				+ command("SET", "aof-string", "v2", "KEEPTTL")
+				+ command("GET", "aof-string")
+				+ command("SELECT", "1")
+				+ command("SET", "aof-db1", "other");
+		AofReplay replay = new AofReplay(jedis).setLanes(4);
+		replay.replay(new ByteArrayInputStream(aof.getBytes("UTF-8")));
+		assertEquals(0, replay.getErrors());
+		assertEquals(Long.valueOf(1), replay.getSkipped().get("GET"));
+		assertEquals(Long.valueOf(1), replay.getSkipped().get("db 1"));
+
+		assertEquals("v2", jedis.get("aof-string"));
+		assertTrue(jedis.ttl("aof-string") > 0);
+		assertEquals("6", jedis.get("aof-counter"));
+		assertEquals(Arrays.asList("b", "c"), jedis.lrange("aof-list", 0, -1));
+		Map<String, String> hash = jedis.hgetAll("aof-hash");
+		assertFalse(hash.containsKey("f1"));
+		assertEquals("v2", hash.get("f2"));
+		assertNull(jedis.get("aof-gone"));
+		assertEquals("y", jedis.get("aof-renamed"));
+		assertNull(jedis.get("aof-db1"));
+	}
+
+	@Test
+	public void monitorOutput() throws Exception {
+		jedis.del("monitor-key");
+		String monitor = "OK\n"
+				+ "1339518083.107412 [0 127.0.0.1:60866] \"set\" \"monitor-key\" \"a \\\"quoted\\\" value\"\n"
+				+ "1339518083.107413 [0 127.0.0.1:60866] \"get\" \"monitor-key\"\n"
+				+ "1339518083.107414 [1 127.0.0.1:60866] \"del\" \"monitor-key\"\n";
+		AofReplay replay = new AofReplay(jedis);
+		assertEquals(1, replay.replay(new ByteArrayInputStream(monitor.getBytes("UTF-8"))));
+		assertEquals("a \"quoted\" value", jedis.get("monitor-key"));
+	}
+
+	@Test
+	public void follow() throws Exception {
+		jedis.del("follow-key");
+		File file = File.createTempFile("appendonly", ".aof");
+		final FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(command("SET", "follow-key", "1").getBytes("UTF-8"));
+			out.flush();
+			final AofReplay replay = new AofReplay(jedis).setFollow(true);
+			Thread writer = new Thread() {
+				@Override
+				public void run() {
+					try {
+						Thread.sleep(300);
+						out.write(command("INCR", "follow-key").getBytes("UTF-8"));
+						out.flush();
+						Thread.sleep(500);
+					} catch (Exception e) {
+						// checked below
+					}
+					replay.stop();
+				}
+			};
+			writer.start();
+			assertEquals(2, replay.run(file));
+			writer.join();
+		} finally {
+			out.close();
+			file.delete();
+		}
+		assertEquals("2", jedis.get("follow-key"));
+	}
+}
@@ -0,0 +1,75 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.aerospike.client.async.AsyncClient;
+import com.aerospike.jedis.RedisClient;
+
+public class AsyncModeTest  {
+
+	AsyncClient asClient = new AsyncClient("127.0.0.1", 3000);
+	RedisClient jedis = new RedisClient(asClient, "test", "redisSet");
+
+	@Test
+	public void commands() {
+		jedis.del("foo", "counter", "hash");
+		assertEquals("OK", jedis.set("foo", "bar"));
+		assertEquals("bar", jedis.get("foo"));
+		assertTrue(jedis.exists("foo"));
+		assertEquals(3, jedis.incrBy("counter", 3));
+		assertEquals(Arrays.asList("bar", null), jedis.mget("foo", "missing"));
+		assertEquals(1, jedis.hset("hash", "field", "value"));
+		assertEquals("value", jedis.hget("hash", "field"));
+		jedis.del("foo");
+		assertNull(jedis.get("foo"));
+		assertFalse(jedis.exists("foo"));
+	}
+
+	@Test
+	public void manyWaitingThreads() throws InterruptedException {
+		final AtomicInteger failures = new AtomicInteger();
+		Thread[] threads = new Thread[100];
+		for (int i = 0; i < threads.length; i++){
+			final String key = "parked" + i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 20; j++){
+						jedis.set(key, "v" + j);
+						if (!("v" + j).equals(jedis.get(key)))
+							failures.incrementAndGet();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads){
+			thread.join();
+		}
+		assertEquals(0, failures.get());
+	}
+}
@@ -0,0 +1,199 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Key;
+import com.aerospike.jedis.RedisClient;
+
+public class BitmapCommandsTest  {
+
+	AerospikeClient asClient = new AerospikeClient("127.0.0.1", 3000);
+	RedisClient jedis = new RedisClient(asClient, "test", "redisSet");
+
+	@Test
+	public void setAndgetbit() {
+		jedis.del("foo");
+		boolean bit = jedis.setbit("foo", 0, true);
+		assertEquals(false, bit);
+
+		bit = jedis.getbit("foo", 0);
+		assertEquals(true, bit);
+
+		bit = jedis.setbit("foo", 0, false);
+		assertEquals(true, bit);
+
+		assertFalse(jedis.getbit("foo", 100));
+	}
+
+	@Test
+	public void setbitOffsetOutOfRange() {
+		try {
+			jedis.setbit("foo", -1, true);
+			fail("Expected an offset error");
+		} catch (AerospikeException e) {
+			assertTrue(e.getMessage().contains("bit offset"));
+		}
+	}
+
+	@Test
+	public void getbitOnString() {
+		// "`" is 0x60, bits 1 and 2 set
+		jedis.set("bitstring", "`");
+		assertFalse(jedis.getbit("bitstring", 0));
+		assertTrue(jedis.getbit("bitstring", 1));
+		assertTrue(jedis.getbit("bitstring", 2));
+		assertEquals(2, jedis.bitcount("bitstring"));
+	}
+
+	@Test
+	public void bitCount() {
+		jedis.del("foo");
+
+		jedis.setbit("foo", 16, true);
+		jedis.setbit("foo", 24, true);
+		jedis.setbit("foo", 40, true);
+		jedis.setbit("foo", 56, true);
+
+		long c4 = jedis.bitcount("foo");
+		assertEquals(4, c4);
+
+		long c3 = jedis.bitcount("foo", 2L, 5L);
+		assertEquals(3, c3);
+
+		long cNeg = jedis.bitcount("foo", -6L, -3L);
+		assertEquals(3, cNeg);
+	}
+
+	@Test
+	public void bitpos() {
+		jedis.del("foo");
+		jedis.setbit("foo", 3, true);
+		jedis.setbit("foo", 7, true);
+		jedis.setbit("foo", 13, true);
+		jedis.setbit("foo", 39, true);
+
+		assertEquals(3, jedis.bitpos("foo", true));
+		assertEquals(0, jedis.bitpos("foo", false));
+		assertEquals(13, jedis.bitpos("foo", true, 1));
+		assertEquals(39, jedis.bitpos("foo", true, 2, -1));
+		assertEquals(-1, jedis.bitpos("foo", true, 2, 3));
+
+		jedis.del("ones");
+		for (int i = 0; i < 8; i++) {
+			jedis.setbit("ones", i, true);
+		}
+		// without an end the value is padded with zeros on the right
+		assertEquals(8, jedis.bitpos("ones", false));
+		assertEquals(-1, jedis.bitpos("ones", false, 0, -1));
+		assertEquals(-1, jedis.bitpos("missing", true));
+		assertEquals(0, jedis.bitpos("missing", false));
+	}
+
+	@Test
+	public void bitOp() {
+		jedis.del("key1", "key2", "resultAnd", "resultOr", "resultXor");
+		jedis.setbit("key1", 1, true);
+		jedis.setbit("key2", 2, true);
+		jedis.bitop(RedisClient.BITOP.AND, "resultAnd", "key1", "key2");
+		assertEquals(0, jedis.bitcount("resultAnd"));
+		jedis.bitop(RedisClient.BITOP.OR, "resultOr", "key1", "key2");
+		assertTrue(jedis.getbit("resultOr", 1));
+		assertTrue(jedis.getbit("resultOr", 2));
+		jedis.bitop(RedisClient.BITOP.XOR, "resultXor", "key1", "key2");
+		assertEquals(2, jedis.bitcount("resultXor"));
+	}
+
+	@Test
+	public void bitOpNot() {
+		jedis.del("key", "resultNot");
+		jedis.setbit("key", 0, true);
+		jedis.setbit("key", 4, true);
+
+		long length = jedis.bitop(RedisClient.BITOP.NOT, "resultNot", "key");
+		assertEquals(1, length);
+		assertFalse(jedis.getbit("resultNot", 0));
+		assertTrue(jedis.getbit("resultNot", 1));
+		assertEquals(6, jedis.bitcount("resultNot"));
+	}
+
+	@Test
+	public void segmentedBitmap() {
+		jedis.del("dau", "dau_copy");
+		long far = 3L * 64 * 1024 * 8 + 5; // in the fourth segment
+		jedis.setbit("dau", 10, true);
+		jedis.setbit("dau", far, true);
+		assertTrue(jedis.getbit("dau", far));
+		assertEquals(2, jedis.bitcount("dau"));
+		assertEquals(far, jedis.bitpos("dau", true, 1));
+
+		long length = jedis.bitop(RedisClient.BITOP.OR, "dau_copy", "dau");
+		assertEquals(far / 8 + 1, length);
+		assertEquals(2, jedis.bitcount("dau_copy"));
+		assertTrue(jedis.getbit("dau_copy", far));
+	}
+
+	@Test
+	public void segmentsBelongToTheSet() {
+		RedisClient other = new RedisClient(asClient, "test", "redisOtherSet");
+		jedis.del("dau");
+		other.del("dau");
+		long far = 2L * 64 * 1024 * 8 + 1;
+		jedis.setbit("dau", far, true);
+		other.setbit("dau", 0, true);
+		assertFalse(other.getbit("dau", far));
+		other.del("dau");
+		assertTrue(jedis.getbit("dau", far));
+		jedis.del("dau");
+		assertFalse(jedis.getbit("dau", far));
+	}
+
+	@Test
+	public void segmentsGoWithTheirHead() {
+		jedis.del("dau");
+		long middle = 1L * 64 * 1024 * 8 + 3;
+		long far = 3L * 64 * 1024 * 8 + 5;
+		jedis.setbit("dau", middle, true);
+		jedis.set("dau", "fresh");
+		jedis.setbit("dau", far, true);
+		assertFalse(jedis.getbit("dau", middle));
+		assertEquals(1 + jedis.bitcount("dau", 0, 4), jedis.bitcount("dau"));
+		jedis.del("dau");
+	}
+
+	@Test
+	public void segmentsTakeTheTtlOfTheirHead() {
+		jedis.del("dau");
+		long far = 1L * 64 * 1024 * 8 + 3;
+		jedis.setbit("dau", 0, true);
+		jedis.expire("dau", 100);
+		jedis.setbit("dau", far, true);
+		Key segment = new Key("test", "redisSet-bitmap", "dau\u0000" + 1);
+		assertTrue(asClient.getHeader(null, segment).expiration > 0);
+		jedis.persist("dau");
+		assertEquals(0, asClient.getHeader(null, segment).expiration);
+		jedis.del("dau");
+	}
+}
@@ -0,0 +1,171 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.redis;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+import com.aerospike.jedis.Compression;
+import com.aerospike.jedis.RedisClient;
+import com.aerospike.jedis.Transaction;
+
+public class CompressionTest  {
+
+	AerospikeClient asClient = new AerospikeClient("127.0.0.1", 3000);
+	RedisClient jedis = new RedisClient(asClient, "test", "redisSet");
+
+	private static String html(int items) {
+		StringBuilder html = new StringBuilder();
+		for (int i = 0; i < items; i++){
+			html.append("<li class=\"item\">item ").append(i).append("</li>");
+		}
+		return html.toString();
+	}
+
+	private Object stored(String key) {
+		Record record = asClient.get(null, new Key("test", "redisSet", key), "redis-bin");
+		return record.getValue("redis-bin");
+	}
+
+	@After
+	public void compressionOff() {
+		jedis.setCompression(0, null);
+	}
+
+	@Test
+	public void largeValuesAreCompressed() {
+		jedis.setCompression(1024, null);
+		String fragment = html(1000);
+		jedis.set("fragment", fragment);
+		jedis.set("small", "foo");
+		assertTrue(stored("fragment") instanceof byte[]);
+		assertTrue(((byte[]) stored("fragment")).length < fragment.length() / 4);
+		assertEquals("foo", stored("small"));
+		assertEquals(fragment, jedis.get("fragment"));
+		assertEquals(Arrays.asList(fragment, "foo"), jedis.mget("fragment", "small"));
+	}
+
+	@Test
+	public void plainAndCompressedCoexist() {
+		String fragment = html(1000);
+		jedis.set("plain", fragment);
+		jedis.setCompression(1024, null);
+		jedis.set("compressed", fragment);
+		jedis.setCompression(0, null);
+		assertEquals(fragment, jedis.get("plain"));
+		assertEquals(fragment, jedis.get("compressed"));
+	}
+
+	@Test
+	public void append() {
+		jedis.setCompression(1024, null);
+		String fragment = html(1000);
+		jedis.set("fragment", fragment);
+		assertEquals(fragment.length() + 5, jedis.append("fragment", "<br/>"));
+		assertEquals(fragment + "<br/>", jedis.get("fragment"));
+		jedis.expire("fragment", 100);
+		jedis.append("fragment", "<br/>");
+		assertTrue(jedis.ttl("fragment") > 90);
+		assertTrue(jedis.ttl("fragment") <= 100);
+		assertEquals(fragment + "<br/><br/>", jedis.getSet("fragment", "bar"));
+	}
+
+	@Test
+	public void rename() {
+		jedis.setCompression(1024, null);
+		String fragment = html(1000);
+		jedis.set("fragment", fragment);
+		jedis.expire("fragment", 100);
+		jedis.rename("fragment", "renamed");
+		assertTrue(stored("renamed") instanceof byte[]);
+		assertEquals(fragment, jedis.get("renamed"));
+		assertTrue(jedis.ttl("renamed") > 90);
+	}
+
+	@Test
+	public void transaction() {
+		jedis.setCompression(1024, null);
+		String fragment = html(1000);
+		Transaction t = jedis.multi();
+		t.set("fragment", fragment);
+		t.append("fragment", "<br/>");
+		t.get("fragment");
+		List<Object> results = t.exec();
+		assertTrue(stored("fragment") instanceof byte[]);
+		assertEquals((long) fragment.length() + 5, results.get(1));
+		assertEquals(fragment + "<br/>", results.get(2));
+	}
+
+	@Test
+	public void bitmapCommands() {
+		jedis.setCompression(1024, null);
+		String fragment = html(1000);
+		jedis.set("fragment", fragment);
+		assertTrue(stored("fragment") instanceof byte[]);
+		long bits = 0;
+		for (byte b : fragment.getBytes()){
+			bits += Integer.bitCount(b & 0xff);
+		}
+		assertEquals(bits, jedis.bitcount("fragment"));
+		// '<' is 0x3C
+		assertFalse(jedis.getbit("fragment", 1));
+		assertTrue(jedis.getbit("fragment", 2));
+		assertFalse(jedis.setbit("fragment", 1, true));
+		assertTrue(jedis.getbit("fragment", 1));
+		assertEquals("|" + fragment.substring(1), jedis.get("fragment"));
+	}
+
+	@Test
+	public void userBytesLikeCompressedValues() {
+		// the header byte, then a valid zlib header
+		byte[] raw = { (byte) 0xC5, 0x78, (byte) 0x9C, 1, 2, 3 };
+		jedis.setCompression(1024, null);
+		jedis.set("raw".getBytes(), raw);
+		assertArrayEquals(raw, jedis.get("raw".getBytes()));
+		jedis.set("raw", html(1000));
+		jedis.setCompression(0, null);
+		jedis.set("raw".getBytes(), raw);
+		assertArrayEquals(raw, jedis.get("raw".getBytes()));
+		assertArrayEquals(raw, (byte[]) jedis.getSet("raw", "foo"));
+	}
+
+	@Test
+	public void dictionary() {
+		List<byte[]> samples = new ArrayList<byte[]>();
+		for (int i = 0; i < 100; i++){
+			samples.add(("{\"user\":\"u" + i + "\",\"status\":\"active\",\"plan\":\"premium\"}").getBytes());
+		}
+		byte[] dictionary = Compression.train(samples, 1024);
+		jedis.setCompression(32, dictionary);
+		String json = "{\"user\":\"u1234\",\"status\":\"active\",\"plan\":\"premium\"}";
+		jedis.set("json", json);
+		assertTrue(stored("json") instanceof byte[]);
+		assertEquals(json, jedis.get("json"));
+	}
+}
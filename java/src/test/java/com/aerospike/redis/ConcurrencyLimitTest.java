@@ -0,0 +1,81 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.jedis.GeoCoordinate;
+import com.aerospike.jedis.GeoUnit;
+import com.aerospike.jedis.RedisClient;
+
+public class ConcurrencyLimitTest  {
+
+	AerospikeClient asClient = new AerospikeClient("127.0.0.1", 3000);
+	RedisClient jedis = new RedisClient(asClient, "test", "redisSet");
+
+	@Test
+	public void queuedCommandsAllComplete() throws InterruptedException {
+		jedis.setConcurrencyLimit(2, 16, 10000);
+		final AtomicInteger failures = new AtomicInteger();
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++){
+			final String key = "limited" + i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 100; j++){
+						jedis.set(key, "v" + j);
+						if (!("v" + j).equals(jedis.get(key)))
+							failures.incrementAndGet();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads){
+			thread.join();
+		}
+		assertEquals(0, failures.get());
+		assertEquals(0, jedis.getInFlight());
+		int limit = jedis.getConcurrencyLimit();
+		assertTrue(limit >= 1 && limit <= 16);
+	}
+
+	@Test
+	public void largeListCallsComplete() {
+		jedis.setConcurrencyLimit(2, 16, 10000);
+		jedis.del("limitedGeo");
+		assertEquals(1, jedis.geoadd("limitedGeo", 13.361389, 38.115556, "Palermo"));
+		assertEquals(1, jedis.geosearch("limitedGeo", new GeoCoordinate(13.361389, 38.115556), 10, GeoUnit.KM).size());
+		jedis.del("limitedGeo");
+		assertEquals(0, jedis.getInFlight());
+	}
+
+	@Test
+	public void noLimit() {
+		jedis.setConcurrencyLimit(0, 0, 0);
+		jedis.set("foo", "bar");
+		assertEquals("bar", jedis.get("foo"));
+		assertEquals(0, jedis.getConcurrencyLimit());
+	}
+}
@@ -0,0 +1,101 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.AerospikeException;
+import com.aerospike.jedis.RedisClient;
+
+public class DatabaseCommandsTest  {
+
+	AerospikeClient asClient = new AerospikeClient("127.0.0.1", 3000);
+	RedisClient jedis = new RedisClient(asClient, "test", "redisSet");
+
+	@Test
+	public void selectDatabases() {
+		RedisClient client = new RedisClient(asClient, "test", "redisSet");
+		client.set("select-key", "db0");
+		assertEquals("OK", client.select(2));
+		assertEquals(2, client.getDB());
+		client.del("select-key");
+		assertNull(client.get("select-key"));
+		client.set("select-key", "db2");
+		client.select(0);
+		assertEquals("db0", client.get("select-key"));
+		assertEquals("db2", client.db(2).get("select-key"));
+		assertSame(client.db(2), client.db(2));
+		assertSame(client, client.db(0));
+	}
+
+	@Test
+	public void flushDB() {
+		RedisClient db3 = jedis.db(3);
+		db3.set("flush-key", "bar");
+		jedis.set("flush-key", "kept");
+		assertEquals("OK", db3.flushDB());
+		assertNull(db3.get("flush-key"));
+		assertEquals("kept", jedis.get("flush-key"));
+	}
+
+	@Test
+	public void flushDBBefore() throws Exception {
+		jedis.set("flush-old", "bar");
+		Thread.sleep(50);
+		long before = System.currentTimeMillis();
+		Thread.sleep(50);
+		jedis.set("flush-new", "bar");
+		jedis.flushDB(before);
+		assertNull(jedis.get("flush-old"));
+		assertEquals("bar", jedis.get("flush-new"));
+	}
+
+	@Test
+	public void flushAll() {
+		RedisClient client = new RedisClient(asClient, "test", "redisFlushAll");
+		client.set("flush-key", "db0");
+		client.db(7).set("flush-key", "db7");
+		client.db(7).hset("flush-hash", "f", "v");
+		assertEquals("OK", client.flushAll());
+		assertNull(client.get("flush-key"));
+		assertNull(client.db(7).get("flush-key"));
+		assertEquals(0, client.db(7).hgetAll("flush-hash").size());
+	}
+
+	@Test
+	public void flushAllKeepsOtherSets() {
+		RedisClient client = new RedisClient(asClient, "test", "redisFlushAll");
+		// its database 1 was once the name of the client's database 1 bitmap set
+		RedisClient other = new RedisClient(asClient, "test", "redisFlushAll-bitmap");
+		other.db(1).set("flush-other", "kept");
+		client.db(1).setbit("flush-bits", 600000, true);
+		assertEquals("OK", client.flushAll());
+		assertFalse(client.db(1).getbit("flush-bits", 600000));
+		assertEquals("kept", other.db(1).get("flush-other"));
+	}
+
+	@Test(expected = AerospikeException.class)
+	public void selectOutOfRange() {
+		jedis.select(16);
+	}
+}
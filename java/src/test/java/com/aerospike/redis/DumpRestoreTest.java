@@ -0,0 +1,152 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.redis;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Key;
+import com.aerospike.client.ResultCode;
+import com.aerospike.jedis.RedisClient;
+import com.aerospike.jedis.StreamEntryID;
+
+public class DumpRestoreTest  {
+
+	AerospikeClient asClient = new AerospikeClient("127.0.0.1", 3000);
+	RedisClient jedis = new RedisClient(asClient, "test", "redisSet");
+
+	@Test
+	public void dumpAndRestore() {
+		jedis.del("dump-string", "dump-list", "dump-hash", "dump-counter", "restore-string", "restore-list", "restore-hash", "restore-counter");
+		jedis.set("dump-string", "bar");
+		jedis.rpush("dump-list", "a");
+		jedis.rpush("dump-list", "b");
+		jedis.hset("dump-hash", "f", "v");
+		jedis.incrBy("dump-counter", 5);
+		assertNull(jedis.dump("dump-missing"));
+
+		assertEquals("OK", jedis.restore("restore-string", 0, jedis.dump("dump-string")));
+		assertEquals("OK", jedis.restore("restore-list", 100000, jedis.dump("dump-list")));
+		assertEquals("OK", jedis.restore("restore-hash", 0, jedis.dump("dump-hash")));
+		assertEquals("OK", jedis.restore("restore-counter", 0, jedis.dump("dump-counter")));
+		assertEquals("bar", jedis.get("restore-string"));
+		assertEquals(Arrays.asList("a", "b"), jedis.lrange("restore-list", 0, -1));
+		assertTrue(jedis.ttl("restore-list") > 0);
+		// no expiry asked for, so the record never expires
+		assertEquals(0, asClient.getHeader(null, new Key("test", "redisSet", "restore-string")).expiration);
+		assertEquals("v", jedis.hgetAll("restore-hash").get("f"));
+		assertEquals(6, jedis.incr("restore-counter"));
+
+		try {
+			jedis.restore("restore-string", 0, jedis.dump("dump-list"));
+			fail("RESTORE over an existing key");
+		} catch (AerospikeException e) {
+			assertEquals(ResultCode.KEY_EXISTS_ERROR, e.getResultCode());
+		}
+		jedis.restoreReplace("restore-string", 0, jedis.dump("dump-list"));
+		assertEquals(Arrays.asList("a", "b"), jedis.lrange("restore-string", 0, -1));
+
+		byte[] payload = jedis.dump("dump-string");
+		payload[0] ^= 1;
+		try {
+			jedis.restoreReplace("restore-string", 0, payload);
+			fail("RESTORE of a corrupt payload");
+		} catch (AerospikeException e) {
+			assertEquals(ResultCode.PARAMETER_ERROR, e.getResultCode());
+		}
+	}
+
+	@Test
+	public void binaryValues() {
+		byte[] value = { 0, 1, (byte) 0xFF };
+		jedis.set("dump-bytes".getBytes(), value);
+		jedis.restoreReplace("restore-bytes".getBytes(), 0, jedis.dump("dump-bytes".getBytes()));
+		assertArrayEquals(value, jedis.get("restore-bytes".getBytes()));
+	}
+
+	@Test
+	public void exportAndImport() throws Exception {
+		RedisClient target = new RedisClient(asClient, "test", "redisArchive");
+		for (int i = 0; i < 100; i++) {
+			jedis.setex("archive-" + i, 100000, "value-" + i);
+			target.del("archive-" + i);
+		}
+		jedis.hset("archive-hash", "f", "v");
+		jedis.restoreReplace("archive-hash", 0, jedis.dump("archive-hash")); // never expires
+		target.del("archive-hash");
+		File file = File.createTempFile("keyspace", ".archive");
+		try {
+			assertTrue(jedis.exportKeyspace(file) >= 101);
+			target.set("archive-0", "kept");
+			long imported = target.importKeyspace(file, false);
+			assertTrue(imported >= 100);
+			assertEquals("kept", target.get("archive-0"));
+			assertEquals("value-99", target.get("archive-99"));
+			assertTrue(target.ttl("archive-99") > 0);
+			assertEquals(0, asClient.getHeader(null, new Key("test", "redisArchive", "archive-hash")).expiration);
+			Map<String, String> hash = target.hgetAll("archive-hash");
+			assertEquals("v", hash.get("f"));
+
+			target.importKeyspace(file, true);
+			assertEquals("value-0", target.get("archive-0"));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void valuesInSeveralRecords() throws Exception {
+		jedis.del("dump-bitmap", "dump-geo", "dump-stream");
+		jedis.setbit("dump-bitmap", 600000, true);
+		jedis.geoadd("dump-geo", 13.361389, 38.115556, "Palermo");
+		jedis.xadd("dump-stream", StreamEntryID.NEW_ENTRY, Collections.singletonMap("f", "v"));
+		for (String key : new String[] {"dump-bitmap", "dump-geo", "dump-stream"}) {
+			try {
+				jedis.dump(key);
+				fail("DUMP of " + key);
+			} catch (AerospikeException e) {
+				assertEquals(ResultCode.PARAMETER_ERROR, e.getResultCode());
+			}
+		}
+
+		RedisClient target = new RedisClient(asClient, "test", "redisArchive");
+		target.del("dump-bitmap", "dump-geo", "dump-stream");
+		File file = File.createTempFile("keyspace", ".archive");
+		try {
+			jedis.exportKeyspace(file);
+			target.importKeyspace(file, true);
+			assertFalse(target.exists("dump-bitmap"));
+			assertFalse(target.exists("dump-geo"));
+			assertFalse(target.exists("dump-stream"));
+		} finally {
+			file.delete();
+		}
+	}
+}
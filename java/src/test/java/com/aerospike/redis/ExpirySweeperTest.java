@@ -0,0 +1,113 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.jedis.ExpirySweeper;
+import com.aerospike.jedis.RedisClient;
+
+public class ExpirySweeperTest  {
+
+	AerospikeClient asClient = new AerospikeClient("127.0.0.1", 3000);
+	RedisClient jedis = new RedisClient(asClient, "test", "redisExpiry");
+
+	@Test
+	public void notifiesExpiredKeys() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final String[] expired = new String[1];
+		ExpirySweeper sweeper = jedis.expirySweeper()
+				.setInterval(500)
+				.setRate(1000)
+				.addListener(new ExpirySweeper.Listener() {
+					@Override
+					public void expired(String key) {
+						if (key.equals("sweep-key")) {
+							expired[0] = key;
+							latch.countDown();
+						}
+					}
+				});
+		jedis.setex("sweep-key", 2, "bar");
+		jedis.set("sweep-kept", "bar");
+		sweeper.start();
+		try {
+			assertTrue(latch.await(10, TimeUnit.SECONDS));
+			assertEquals("sweep-key", expired[0]);
+			assertTrue(sweeper.getSweeps() > 0);
+			assertTrue(sweeper.getRecordsScanned() > 0);
+		} finally {
+			sweeper.stop();
+		}
+	}
+
+	@Test
+	public void extendedTtlIsNotReported() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(1);
+		ExpirySweeper sweeper = jedis.expirySweeper()
+				.setInterval(500)
+				.addListener(new ExpirySweeper.Listener() {
+					@Override
+					public void expired(String key) {
+						if (key.equals("sweep-extended"))
+							latch.countDown();
+					}
+				});
+		jedis.setex("sweep-extended", 2, "bar");
+		sweeper.start();
+		try {
+			Thread.sleep(1000);
+			jedis.expire("sweep-extended", 60);
+			assertTrue(!latch.await(3, TimeUnit.SECONDS));
+			assertEquals("bar", jedis.get("sweep-extended"));
+		} finally {
+			sweeper.stop();
+			jedis.del("sweep-extended");
+		}
+	}
+
+	@Test
+	public void deletedKeyIsNotReported() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(1);
+		ExpirySweeper sweeper = jedis.expirySweeper()
+				.setInterval(500)
+				.addListener(new ExpirySweeper.Listener() {
+					@Override
+					public void expired(String key) {
+						if (key.equals("sweep-deleted"))
+							latch.countDown();
+					}
+				});
+		jedis.setex("sweep-deleted", 2, "bar");
+		sweeper.start();
+		try {
+			// queued by a sweep within its last interval
+			Thread.sleep(1700);
+			jedis.del("sweep-deleted");
+			assertTrue(!latch.await(3, TimeUnit.SECONDS));
+		} finally {
+			sweeper.stop();
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.Key;
+import com.aerospike.jedis.GeoCoordinate;
+import com.aerospike.jedis.GeoRadiusResponse;
+import com.aerospike.jedis.GeoUnit;
+import com.aerospike.jedis.RedisClient;
+
+public class GeoCommandsTest  {
+
+	AerospikeClient asClient = new AerospikeClient("127.0.0.1", 3000);
+	RedisClient jedis = new RedisClient(asClient, "test", "redisSet");
+
+	@Before
+	public void sicily() {
+		jedis.del("Sicily");
+		Map<String, GeoCoordinate> members = new HashMap<String, GeoCoordinate>();
+		members.put("Palermo", new GeoCoordinate(13.361389, 38.115556));
+		members.put("Catania", new GeoCoordinate(15.087269, 37.502669));
+		assertEquals(2, jedis.geoadd("Sicily", members));
+	}
+
+	@Test
+	public void geoadd() {
+		assertEquals(0, jedis.geoadd("Sicily", 13.361389, 38.115556, "Palermo"));
+		assertEquals(1, jedis.geoadd("Sicily", 13.583333, 37.316667, "Agrigento"));
+		// moving a member replaces its position
+		assertEquals(0, jedis.geoadd("Sicily", 13.5, 37.3, "Agrigento"));
+		GeoCoordinate position = jedis.geopos("Sicily", "Agrigento").get(0);
+		assertEquals(13.5, position.getLongitude(), 0.0001);
+		assertEquals(37.3, position.getLatitude(), 0.0001);
+	}
+
+	@Test
+	public void keysFindsGeoSets() {
+		assertTrue(jedis.keys("Sicil.*").contains("Sicily"));
+	}
+
+	@Test
+	public void concurrentGeoaddOfOneMember() throws InterruptedException {
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			final double longitude = 13.5 + i * 0.01;
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 10; j++) {
+						jedis.geoadd("Sicily", longitude, 37.3, "Agrigento");
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		int found = 0;
+		for (GeoRadiusResponse response : jedis.geosearch("Sicily", new GeoCoordinate(13.5, 37.3), 100, GeoUnit.KM)) {
+			if (response.getMember().equals("Agrigento"))
+				found++;
+		}
+		assertEquals(1, found);
+	}
+
+	@Test
+	public void delRemovesTheMembers() {
+		jedis.del("Sicily");
+		assertFalse(jedis.exists("Sicily"));
+		assertNull(jedis.geopos("Sicily", "Palermo").get(0));
+		assertFalse(asClient.exists(null, new Key("test", "redisSet-geo", "Sicily\u0000Palermo")));
+		assertFalse(asClient.exists(null, new Key("test", "redisSet-geo", "Sicily\u0000Catania")));
+	}
+
+	@Test
+	public void geopos() {
+		List<GeoCoordinate> positions = jedis.geopos("Sicily", "Palermo", "Catania", "NonExisting");
+		assertEquals(3, positions.size());
+		assertEquals(13.36138933897018433, positions.get(0).getLongitude(), 0.000001);
+		assertEquals(38.11555639549629859, positions.get(0).getLatitude(), 0.000001);
+		assertEquals(15.08726745843887329, positions.get(1).getLongitude(), 0.000001);
+		assertNull(positions.get(2));
+	}
+
+	@Test
+	public void geodist() {
+		assertEquals(166274.1516, jedis.geodist("Sicily", "Palermo", "Catania"), 0.00001);
+		assertEquals(166.2742, jedis.geodist("Sicily", "Palermo", "Catania", GeoUnit.KM), 0.00001);
+		assertNull(jedis.geodist("Sicily", "Palermo", "NonExisting"));
+	}
+
+	@Test
+	public void geosearchRadius() {
+		List<GeoRadiusResponse> members = jedis.geosearch("Sicily", new GeoCoordinate(15, 37), 100, GeoUnit.KM);
+		assertEquals(1, members.size());
+		assertEquals("Catania", members.get(0).getMember());
+
+		members = jedis.geosearch("Sicily", new GeoCoordinate(15, 37), 200, GeoUnit.KM);
+		assertEquals(2, members.size());
+		assertEquals("Catania", members.get(0).getMember());
+		assertEquals(56.4413, members.get(0).getDistance(), 0.0001);
+		assertEquals("Palermo", members.get(1).getMember());
+		assertEquals(190.4424, members.get(1).getDistance(), 0.0001);
+
+		members = jedis.geosearch("Sicily", new GeoCoordinate(15, 37), 200, GeoUnit.KM, 1);
+		assertEquals(1, members.size());
+	}
+
+	@Test
+	public void geosearchBox() {
+		List<GeoRadiusResponse> members = jedis.geosearch("Sicily", new GeoCoordinate(15, 37), 400, 400, GeoUnit.KM);
+		assertEquals(2, members.size());
+		members = jedis.geosearch("Sicily", new GeoCoordinate(15, 37), 200, 200, GeoUnit.KM);
+		assertEquals(1, members.size());
+		assertEquals("Catania", members.get(0).getMember());
+	}
+
+	@Test
+	public void geosearchFromMember() {
+		List<GeoRadiusResponse> members = jedis.geosearch("Sicily", "Palermo", 100, GeoUnit.KM);
+		assertEquals(1, members.size());
+		assertEquals("Palermo", members.get(0).getMember());
+		assertTrue(members.get(0).getDistance() < 0.001);
+	}
+
+	@Test
+	public void geosearchMissingKey() {
+		jedis.del("NoSuchGeo");
+		assertTrue(jedis.geosearch("NoSuchGeo", new GeoCoordinate(15, 37), 200, GeoUnit.KM).isEmpty());
+	}
+}
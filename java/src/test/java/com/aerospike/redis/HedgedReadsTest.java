@@ -0,0 +1,91 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.async.AsyncClient;
+import com.aerospike.jedis.RedisClient;
+
+public class HedgedReadsTest  {
+
+	AerospikeClient asClient = new AerospikeClient("127.0.0.1", 3000);
+	RedisClient jedis = new RedisClient(asClient, "test", "redisSet");
+
+	@Test
+	public void hedgedGet() {
+		jedis.setHedgedReads(95, 0.05);
+		jedis.set("foo", "bar");
+		jedis.del("missing");
+		for (int i = 0; i < 500; i++){
+			assertEquals("bar", jedis.get("foo"));
+		}
+		assertNull(jedis.get("missing"));
+		// at most 5% of reads, plus the initial credit
+		assertTrue(jedis.hedgedReadCount() <= 500 * 0.05 + 1);
+	}
+
+	@Test
+	public void hedgedMget() {
+		jedis.setHedgedReads(95, 0.05);
+		jedis.set("foo1", "bar1");
+		jedis.set("foo2", "bar2");
+		jedis.del("foo3");
+		assertEquals(Arrays.asList("bar1", "bar2", null), jedis.mget("foo1", "foo2", "foo3"));
+	}
+
+	@Test
+	public void hedgedHget() {
+		jedis.setHedgedReads(95, 0.05);
+		jedis.del("hash");
+		jedis.hset("hash", "bar", "car");
+		assertEquals("car", jedis.hget("hash", "bar"));
+		assertNull(jedis.hget("hash", "foo"));
+	}
+
+	@Test
+	public void hedgedReadsRaceOnAsyncClient() {
+		RedisClient async = new RedisClient(new AsyncClient("127.0.0.1", 3000), "test", "redisSet");
+		async.setHedgedReads(95, 0.05);
+		async.set("foo", "bar");
+		async.del("missing", "hash");
+		async.hset("hash", "bar", "car");
+		for (int i = 0; i < 500; i++){
+			assertEquals("bar", async.get("foo"));
+		}
+		assertNull(async.get("missing"));
+		assertEquals(Arrays.asList("bar", null), async.mget("foo", "missing"));
+		assertEquals("car", async.hget("hash", "bar"));
+		assertNull(async.hget("hash", "foo"));
+		assertTrue(async.hedgedReadCount() <= 500 * 0.05 + 1);
+	}
+
+	@Test
+	public void hedgingOff() {
+		jedis.setHedgedReads(0, 0);
+		jedis.set("foo", "bar");
+		assertEquals("bar", jedis.get("foo"));
+		assertEquals(0, jedis.hedgedReadCount());
+	}
+}
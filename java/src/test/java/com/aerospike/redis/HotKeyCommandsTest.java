@@ -0,0 +1,94 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.jedis.HotKey;
+import com.aerospike.jedis.RedisClient;
+import com.aerospike.jedis.RedisClient.HOT_KEY_READS;
+
+public class HotKeyCommandsTest  {
+
+	AerospikeClient asClient = new AerospikeClient("127.0.0.1", 3000);
+	RedisClient jedis = new RedisClient(asClient, "test", "redisSet");
+
+	private void readMostly(String hotKey, int reads) {
+		for (int i = 0; i < reads; i++){
+			jedis.get(hotKey);
+			if (i % 10 == 0)
+				jedis.get("cold-" + i);
+		}
+	}
+
+	@Test
+	public void hotKeys() {
+		jedis.setHotKeyTracking(5, 1);
+		jedis.set("viral", "bar");
+		readMostly("viral", 2000);
+
+		List<HotKey> hotKeys = jedis.hotKeys();
+		assertTrue(hotKeys.size() <= 5);
+		assertEquals("viral", hotKeys.get(0).getKey());
+		assertTrue(hotKeys.get(0).isHot());
+		assertTrue(hotKeys.get(0).getReads() >= 2000);
+		for (int i = 1; i < hotKeys.size(); i++){
+			assertFalse(hotKeys.get(i).isHot());
+		}
+	}
+
+	@Test
+	public void hotKeysOff() {
+		jedis.setHotKeyTracking(0, 1);
+		jedis.get("viral");
+		assertTrue(jedis.hotKeys().isEmpty());
+	}
+
+	@Test
+	public void replicaReads() {
+		jedis.setHotKeyTracking(5, 1);
+		jedis.setHotKeyReads(HOT_KEY_READS.MASTER_PROLES, 0);
+		jedis.set("viral", "bar");
+		readMostly("viral", 2000);
+		assertEquals("bar", jedis.get("viral"));
+	}
+
+	@Test
+	public void cachedReadsSeeLocalWrites() {
+		jedis.setHotKeyTracking(5, 1);
+		jedis.setHotKeyReads(HOT_KEY_READS.CACHE, 60000);
+		jedis.set("viral", "bar");
+		readMostly("viral", 2000);
+		assertEquals("bar", jedis.get("viral"));
+
+		jedis.set("viral", "baz");
+		assertEquals("baz", jedis.get("viral"));
+		jedis.rename("viral", "renamed");
+		assertEquals(null, jedis.get("viral"));
+		jedis.rename("renamed", "viral");
+		assertEquals("baz", jedis.get("viral"));
+		jedis.del("viral");
+		assertEquals(null, jedis.get("viral"));
+	}
+}
@@ -0,0 +1,113 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.AerospikeException;
+import com.aerospike.jedis.RedisClient;
+
+public class HyperLogLogCommandsTest  {
+
+	AerospikeClient asClient = new AerospikeClient("127.0.0.1", 3000);
+	RedisClient jedis = new RedisClient(asClient, "test", "redisSet");
+
+	@Test
+	public void pfadd() {
+		jedis.del("hll", "hll_2");
+		long status = jedis.pfadd("hll", "a");
+		assertEquals(1, status);
+
+		status = jedis.pfadd("hll", "a");
+		assertEquals(0, status);
+
+		status = jedis.pfadd("hll_2");
+		assertEquals(1, status);
+		status = jedis.pfadd("hll_2");
+		assertEquals(0, status);
+	}
+
+	@Test
+	public void pfcount() {
+		jedis.del("hll", "hll_2", "hll_3");
+		long status = jedis.pfadd("hll", "foo", "bar", "zap");
+		assertEquals(1, status);
+
+		status = jedis.pfadd("hll", "zap", "zap", "zap");
+		assertEquals(0, status);
+
+		status = jedis.pfadd("hll", "foo", "bar");
+		assertEquals(0, status);
+
+		status = jedis.pfcount("hll");
+		assertEquals(3, status);
+
+		jedis.pfadd("hll_2", "foo", "bar", "zap");
+		jedis.pfadd("hll_3", "a", "b", "c", "foo");
+		status = jedis.pfcount("hll_2", "hll_3");
+		assertEquals(6, status);
+
+		assertEquals(0, jedis.pfcount("hll_missing"));
+	}
+
+	@Test
+	public void pfcountLarge() {
+		jedis.del("hll_large");
+		String[] batch = new String[1000];
+		for (int i = 0; i < 100; i++) {
+			for (int j = 0; j < batch.length; j++) {
+				batch[j] = "element:" + (i * batch.length + j);
+			}
+			jedis.pfadd("hll_large", batch);
+		}
+		long count = jedis.pfcount("hll_large");
+		// standard error of 16384 registers is 0.81%
+		assertTrue(Math.abs(count - 100000) < 3000);
+	}
+
+	@Test
+	public void pfmerge() {
+		jedis.del("hll1", "hll2", "hll3");
+		long status = jedis.pfadd("hll1", "foo", "bar", "zap", "a");
+		assertEquals(1, status);
+
+		status = jedis.pfadd("hll2", "a", "b", "c", "foo");
+		assertEquals(1, status);
+
+		String mergeStatus = jedis.pfmerge("hll3", "hll1", "hll2");
+		assertEquals("OK", mergeStatus);
+
+		status = jedis.pfcount("hll3");
+		assertEquals(6, status);
+	}
+
+	@Test
+	public void pfcountWrongType() {
+		jedis.set("hll_string", "not a hyperloglog");
+		try {
+			jedis.pfcount("hll_string");
+			fail("Expected a type error");
+		} catch (AerospikeException e) {
+			assertTrue(e.getMessage().contains("WRONGTYPE"));
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.jedis.KeyScan;
+import com.aerospike.jedis.RedisClient;
+
+public class KeyScanTest  {
+
+	AerospikeClient asClient = new AerospikeClient("127.0.0.1", 3000);
+	RedisClient jedis = new RedisClient(asClient, "test", "redisSet");
+
+	@Test
+	public void parallelKeys() {
+		for (int i = 0; i < 100; i++){
+			jedis.set("scan-key-" + i, "v");
+		}
+		jedis.setScanConcurrency(2);
+		Set<String> keys = jedis.keys("scan-key-\\d+");
+		assertEquals(100, keys.size());
+		assertTrue(keys.contains("scan-key-42"));
+		jedis.setScanConcurrency(0);
+		assertEquals(keys, jedis.keys("scan-key-\\d+"));
+	}
+
+	@Test
+	public void progress() {
+		for (int i = 0; i < 100; i++){
+			jedis.set("scan-key-" + i, "v");
+		}
+		KeyScan scan = jedis.scanKeys("scan-key-\\d+");
+		Set<String> keys = new HashSet<String>();
+		for (String key : scan){
+			keys.add(key);
+		}
+		assertEquals(100, keys.size());
+		assertTrue(scan.isDone());
+		assertEquals(1.0, scan.getProgress(), 0.0);
+		assertEquals(scan.getNodeCount(), scan.getNodesScanned());
+		assertTrue(scan.getRecordsScanned() >= 100);
+	}
+
+	@Test
+	public void cancel() {
+		for (int i = 0; i < 100; i++){
+			jedis.set("scan-key-" + i, "v");
+		}
+		KeyScan scan = jedis.scanKeys(".*");
+		scan.cancel();
+		while (scan.next() != null);
+		assertTrue(scan.isCancelled());
+		assertTrue(scan.isDone());
+	}
+}
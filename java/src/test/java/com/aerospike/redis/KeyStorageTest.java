@@ -0,0 +1,99 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+import com.aerospike.jedis.RedisClient;
+import com.aerospike.jedis.RedisClient.BITOP;
+import com.aerospike.jedis.RedisClient.KEY_STORAGE;
+
+public class KeyStorageTest  {
+
+	AerospikeClient asClient = new AerospikeClient("127.0.0.1", 3000);
+	RedisClient jedis = new RedisClient(asClient, "test", "redisSet");
+
+	private Record raw(String key) {
+		return asClient.get(null, new Key("test", "redisSet", key));
+	}
+
+	@Test
+	public void userKeys() {
+		jedis.setKeyStorage(KEY_STORAGE.USER_KEY);
+		jedis.set("userkey-foo", "bar");
+		jedis.del("userkey-counter");
+		assertEquals(3, jedis.incrBy("userkey-counter", 3));
+		assertNull(raw("userkey-foo").getValue("redis-key-bin"));
+		assertNull(raw("userkey-counter").getValue("redis-key-bin"));
+		Set<String> keys = jedis.keys("userkey-.*");
+		assertTrue(keys.contains("userkey-foo"));
+		assertTrue(keys.contains("userkey-counter"));
+		assertEquals("bar", jedis.get("userkey-foo"));
+	}
+
+	@Test
+	public void userKeysForEveryWrite() {
+		jedis.setKeyStorage(KEY_STORAGE.USER_KEY);
+		jedis.del("userkey-a", "userkey-b", "userkey-hll", "userkey-bits", "userkey-eval");
+		assertEquals(1, jedis.msetnx("userkey-a", "1", "userkey-b", "2"));
+		jedis.pfadd("userkey-hll-src", "x", "y");
+		jedis.pfmerge("userkey-hll", "userkey-hll-src");
+		jedis.setbit("userkey-bits-src", 7, true);
+		jedis.bitop(BITOP.OR, "userkey-bits", "userkey-bits-src");
+		jedis.eval("redis.call('SET', KEYS[1], ARGV[1])", 1, "userkey-eval", "bar");
+		for (String key : new String[] {"userkey-a", "userkey-b", "userkey-hll", "userkey-bits", "userkey-eval"}){
+			assertNull(key, raw(key).getValue("redis-key-bin"));
+		}
+		Set<String> keys = jedis.keys("userkey-.*");
+		assertTrue(keys.contains("userkey-a"));
+		assertTrue(keys.contains("userkey-hll"));
+		assertTrue(keys.contains("userkey-bits"));
+		assertTrue(keys.contains("userkey-eval"));
+	}
+
+	@Test
+	public void migration() {
+		jedis.set("migrate-old", "bar");
+		jedis.setex("migrate-ttl", 1000, "bar");
+		assertEquals("migrate-old", raw("migrate-old").getValue("redis-key-bin"));
+
+		jedis.setKeyStorage(KEY_STORAGE.USER_KEY);
+		jedis.set("migrate-new", "bar");
+		Set<String> keys = jedis.keys("migrate-.*");
+		assertTrue(keys.contains("migrate-old"));
+		assertTrue(keys.contains("migrate-new"));
+
+		assertTrue(jedis.migrateKeyStorage() >= 2);
+		assertNull(raw("migrate-old").getValue("redis-key-bin"));
+		assertEquals("bar", jedis.get("migrate-old"));
+		long ttl = jedis.ttl("migrate-ttl");
+		assertTrue(ttl > 900 && ttl <= 1000);
+		keys = jedis.keys("migrate-.*");
+		assertTrue(keys.contains("migrate-old"));
+		assertTrue(keys.contains("migrate-ttl"));
+		assertEquals(0, jedis.migrateKeyStorage());
+	}
+}
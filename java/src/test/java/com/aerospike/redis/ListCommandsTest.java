@@ -246,6 +246,14 @@ public class ListCommandsTest  {
 
 	}
 
+	@Test
+	public void rpopLastElement() {
+		jedis.rpush("foo", "a");
+		assertEquals("a", jedis.rpop("foo"));
+		assertEquals(0, jedis.llen("foo").intValue());
+		assertEquals(null, jedis.rpop("foo"));
+	}
+
 	@Test
 	public void rpoplpush() {
 		jedis.rpush("foo", "a");
@@ -320,6 +328,74 @@ public class ListCommandsTest  {
 		assertEquals(-1, status);
 
 
+	}
+
+	@Test
+	public void blpop() throws InterruptedException {
+		List<String> result = jedis.blpop(1, "foo");
+		assertEquals(null, result);
+
+		jedis.lpush("foo", "bar");
+		result = jedis.blpop(1, "foo");
+
+		assertEquals(2, result.size());
+		assertEquals("foo", result.get(0));
+		assertEquals("bar", result.get(1));
+
+		new Thread(new Runnable() {
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+				}
+				jedis.lpush("foo", "car");
+			}
+		}).start();
+		result = jedis.blpop(0, "bar", "foo");
+
+		assertEquals(2, result.size());
+		assertEquals("foo", result.get(0));
+		assertEquals("car", result.get(1));
+
+
+	}
+
+	@Test
+	public void brpop() throws InterruptedException {
+		List<String> result = jedis.brpop(1, "foo");
+		assertEquals(null, result);
+
+		jedis.lpush("foo", "bar");
+		jedis.lpush("foo", "car");
+		result = jedis.brpop(1, "foo");
+
+		assertEquals(2, result.size());
+		assertEquals("foo", result.get(0));
+		assertEquals("bar", result.get(1));
+
+
+	}
+
+	@Test
+	public void brpoplpush() {
+		jedis.del("dst");
+		new Thread(new Runnable() {
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+				}
+				jedis.lpush("foo", "a");
+			}
+		}).start();
+
+		String element = jedis.brpoplpush("foo", "dst", 0);
+
+		assertEquals("a", element);
+		assertEquals(1, jedis.llen("dst").intValue());
+		assertEquals(Arrays.asList("a"), jedis.lrange("dst", 0, 100));
+
+
 	}
 
 
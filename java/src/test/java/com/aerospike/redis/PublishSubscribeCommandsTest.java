@@ -0,0 +1,119 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.jedis.RedisClient;
+import com.aerospike.jedis.RedisPubSub;
+
+public class PublishSubscribeCommandsTest  {
+
+	AerospikeClient asClient = new AerospikeClient("127.0.0.1", 3000);
+	RedisClient jedis = new RedisClient(asClient, "test", "redisSet");
+
+	private void publishOne(final String channel, final String message) {
+		Thread t = new Thread(new Runnable() {
+			public void run() {
+				try {
+					Thread.sleep(100);
+					jedis.publish(channel, message);
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		t.start();
+	}
+
+	@Test
+	public void subscribe() throws InterruptedException {
+		jedis.subscribe(new RedisPubSub() {
+			public void onMessage(String channel, String message) {
+				assertEquals("foo", channel);
+				assertEquals("exit", message);
+				unsubscribe();
+			}
+
+			public void onSubscribe(String channel, int subscribedChannels) {
+				assertEquals("foo", channel);
+				assertEquals(1, subscribedChannels);
+
+				// now that I'm subscribed... publish
+				publishOne("foo", "exit");
+			}
+
+			public void onUnsubscribe(String channel, int subscribedChannels) {
+				assertEquals("foo", channel);
+				assertEquals(0, subscribedChannels);
+			}
+		}, "foo");
+	}
+
+	@Test
+	public void subscribeMany() {
+		jedis.subscribe(new RedisPubSub() {
+			public void onMessage(String channel, String message) {
+				unsubscribe(channel);
+			}
+
+			public void onSubscribe(String channel, int subscribedChannels) {
+				publishOne(channel, "exit");
+			}
+
+		}, "foo", "bar");
+	}
+
+	@Test
+	public void psubscribe() throws InterruptedException {
+		jedis.psubscribe(new RedisPubSub() {
+			public void onPSubscribe(String pattern, int subscribedChannels) {
+				assertEquals("foo.*", pattern);
+				assertEquals(1, subscribedChannels);
+				publishOne("foo.bar", "exit");
+
+			}
+
+			public void onPMessage(String pattern, String channel, String message) {
+				assertEquals("foo.*", pattern);
+				assertEquals("foo.bar", channel);
+				assertEquals("exit", message);
+				punsubscribe();
+			}
+
+			public void onPUnsubscribe(String pattern, int subscribedChannels) {
+				assertEquals("foo.*", pattern);
+				assertEquals(0, subscribedChannels);
+			}
+		}, "foo.*");
+	}
+
+	@Test
+	public void pubSubChannels() {
+		jedis.publish("testchan1", "hello");
+		jedis.publish("testchan2", "hello");
+		List<String> channels = jedis.pubsubChannels("testchan*");
+		assertTrue(channels.contains("testchan1"));
+		assertTrue(channels.contains("testchan2"));
+	}
+
+}
@@ -0,0 +1,293 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.Key;
+import com.aerospike.jedis.RedisClient;
+import com.aerospike.jedis.tools.RdbEntry;
+import com.aerospike.jedis.tools.RdbImport;
+import com.aerospike.jedis.tools.RdbParser;
+
+public class RdbImportTest  {
+
+	AerospikeClient asClient = new AerospikeClient("127.0.0.1", 3000);
+	RedisClient jedis = new RedisClient(asClient, "test", "redisSet");
+
+	/*
+	 * A version 9 dump with one key of each kind in db 0, an expired key and
+	 * a key in db 1
+	 */
+	private static byte[] dump() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write("REDIS0009".getBytes("US-ASCII"));
+		out.write(0xFA);
+		string(out, "redis-ver");
+		string(out, "5.0.7");
+		out.write(0xFE);
+		out.write(0);
+		out.write(0xFB);
+		out.write(7);
+		out.write(1);
+		// plain string, with an expiry a day from now
+		out.write(0xFC);
+		littleEndian(out, System.currentTimeMillis() + 86400000L, 8);
+		out.write(0);
+		string(out, "rdb-string");
+		string(out, "bar");
+		// integer encoded string
+		out.write(0);
+		string(out, "rdb-int");
+		out.write(0xC1);
+		littleEndian(out, 12345, 2);
+		// LZF string made of a single literal run
+		out.write(0);
+		string(out, "rdb-lzf");
+		out.write(0xC3);
+		out.write(6);
+		out.write(5);
+		out.write(4);
+		out.write("hello".getBytes("US-ASCII"));
+		// list
+		out.write(1);
+		string(out, "rdb-list");
+		out.write(3);
+		string(out, "a");
+		string(out, "b");
+		string(out, "c");
+		// intset of 16 bit integers
+		out.write(11);
+		string(out, "rdb-set");
+		out.write(12);
+		littleEndian(out, 2, 4);
+		littleEndian(out, 2, 4);
+		littleEndian(out, 7, 2);
+		littleEndian(out, 300, 2);
+		// sorted set with binary scores
+		out.write(5);
+		string(out, "rdb-zset");
+		out.write(2);
+		string(out, "x");
+		littleEndian(out, Double.doubleToLongBits(1.5), 8);
+		string(out, "y");
+		littleEndian(out, Double.doubleToLongBits(-2), 8);
+		// hash
+		out.write(4);
+		string(out, "rdb-hash");
+		out.write(2);
+		string(out, "f1");
+		string(out, "v1");
+		string(out, "f2");
+		string(out, "v2");
+		// already expired
+		out.write(0xFC);
+		littleEndian(out, 1000, 8);
+		out.write(0);
+		string(out, "rdb-expired");
+		string(out, "gone");
+		// another database
+		out.write(0xFE);
+		out.write(1);
+		out.write(0);
+		string(out, "rdb-db1");
+		string(out, "other");
+		out.write(0xFF);
+		littleEndian(out, 0, 8);
+		return out.toByteArray();
+	}
+
+	private static void string(ByteArrayOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes("UTF-8");
+		out.write(bytes.length);
+		out.write(bytes);
+	}
+
+	private static void littleEndian(ByteArrayOutputStream out, long value, int size) {
+		for (int i = 0; i < size; i++)
+			out.write((int) (value >>> (8 * i)) & 0xFF);
+	}
+
+	/*
+	 * A version 11 dump with a listpack set whose first entry, 16383 bytes
+	 * long, has a three byte backlen, and a list with a member that is not
+	 * UTF-8
+	 */
+	private static byte[] listpackDump() throws IOException {
+		ByteArrayOutputStream lp = new ByteArrayOutputStream();
+		littleEndian(lp, 0, 4); // total bytes, not checked
+		littleEndian(lp, 2, 2);
+		byte[] big = new byte[16378];
+		Arrays.fill(big, (byte) 'a');
+		lp.write(0xF0);
+		littleEndian(lp, big.length, 4);
+		lp.write(big);
+		lp.write(new byte[] {(byte) 0xFF, (byte) 0xFF, 1}); // backlen of 16383
+		lp.write(0x81);
+		lp.write('x');
+		lp.write(2);
+		lp.write(0xFF);
+		byte[] listpack = lp.toByteArray();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write("REDIS0011".getBytes("US-ASCII"));
+		out.write(0xFE);
+		out.write(0);
+		out.write(20);
+		string(out, "rdb-listpack");
+		out.write(0x80);
+		for (int i = 3; i >= 0; i--)
+			out.write((listpack.length >>> (8 * i)) & 0xFF);
+		out.write(listpack);
+		out.write(1);
+		string(out, "rdb-binary");
+		out.write(2);
+		string(out, "a");
+		out.write(2);
+		out.write(0xC3);
+		out.write(0x28);
+		out.write(0xFF);
+		littleEndian(out, 0, 8);
+		return out.toByteArray();
+	}
+
+	private static List<String> strings(List<byte[]> elements) {
+		List<String> result = new ArrayList<String>();
+		for (byte[] element : elements)
+			result.add(new String(element));
+		return result;
+	}
+
+	@Test
+	public void parse() throws IOException {
+		final List<RdbEntry> entries = new ArrayList<RdbEntry>();
+		RdbParser parser = new RdbParser(new ByteArrayInputStream(dump()));
+		parser.parse(new RdbParser.Handler() {
+			@Override
+			public void entry(RdbEntry entry) {
+				entries.add(entry);
+			}
+		});
+		assertEquals(9, parser.getVersion());
+		assertEquals(9, entries.size());
+		assertEquals("bar", new String(entries.get(0).string));
+		assertTrue(entries.get(0).expireAt > System.currentTimeMillis());
+		assertEquals("12345", new String(entries.get(1).string));
+		assertEquals(-1, entries.get(1).expireAt);
+		assertEquals("hello", new String(entries.get(2).string));
+		assertEquals(Arrays.asList("a", "b", "c"), strings(entries.get(3).elements));
+		assertEquals(Arrays.asList("7", "300"), strings(entries.get(4).elements));
+		assertEquals(RdbEntry.ZSET, entries.get(5).type);
+		assertEquals(-2.0, entries.get(5).scores[1], 0);
+		assertEquals(Arrays.asList("f1", "v1", "f2", "v2"), strings(entries.get(6).elements));
+		assertEquals(1, entries.get(8).db);
+
+		// resuming at an entry reads from there on
+		final List<RdbEntry> resumed = new ArrayList<RdbEntry>();
+		new RdbParser(new ByteArrayInputStream(dump())).parse(new RdbParser.Handler() {
+			@Override
+			public void entry(RdbEntry entry) {
+				resumed.add(entry);
+			}
+		}, entries.get(6).offset, 0);
+		assertEquals(3, resumed.size());
+		assertEquals("rdb-hash", new String(resumed.get(0).key));
+	}
+
+	@Test
+	public void importFile() throws Exception {
+		for (String key : new String[] {"rdb-string", "rdb-int", "rdb-lzf", "rdb-list", "rdb-set", "rdb-zset", "rdb-hash", "rdb-expired", "rdb-db1"})
+			jedis.del(key);
+		File file = File.createTempFile("dump", ".rdb");
+		File checkpoint = new File(file.getPath() + ".checkpoint");
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(dump());
+		} finally {
+			out.close();
+		}
+		try {
+			RdbImport importer = new RdbImport(asClient, jedis, "test", "redisSet").setWritersPerNode(2);
+			assertEquals(7, importer.run(file, checkpoint));
+			assertEquals(1, importer.getExpired());
+			assertEquals(1, importer.getSkipped());
+			assertFalse(checkpoint.exists());
+		} finally {
+			file.delete();
+		}
+		assertEquals("bar", jedis.get("rdb-string"));
+		assertTrue(jedis.ttl("rdb-string") > 0);
+		assertEquals("12345", jedis.get("rdb-int"));
+		assertEquals("hello", jedis.get("rdb-lzf"));
+		assertEquals(Arrays.asList("a", "b", "c"), jedis.lrange("rdb-list", 0, -1));
+		Map<String, String> hash = jedis.hgetAll("rdb-hash");
+		assertEquals("v1", hash.get("f1"));
+		assertEquals("v2", hash.get("f2"));
+		assertNull(jedis.get("rdb-expired"));
+		assertNull(jedis.get("rdb-db1"));
+		// no expiry in the dump, so the record never expires
+		assertEquals(0, asClient.getHeader(null, new Key("test", "redisSet", "rdb-int")).expiration);
+	}
+
+	@Test
+	public void listpackAndBinaryElements() throws Exception {
+		final List<RdbEntry> entries = new ArrayList<RdbEntry>();
+		new RdbParser(new ByteArrayInputStream(listpackDump())).parse(new RdbParser.Handler() {
+			@Override
+			public void entry(RdbEntry entry) {
+				entries.add(entry);
+			}
+		});
+		assertEquals(2, entries.size());
+		assertEquals(16378, entries.get(0).elements.get(0).length);
+		assertEquals("x", new String(entries.get(0).elements.get(1)));
+
+		jedis.del("rdb-listpack");
+		jedis.del("rdb-binary");
+		File file = File.createTempFile("dump", ".rdb");
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(listpackDump());
+		} finally {
+			out.close();
+		}
+		try {
+			assertEquals(2, new RdbImport(asClient, jedis, "test", "redisSet").run(file, new File(file.getPath() + ".checkpoint")));
+		} finally {
+			file.delete();
+		}
+		List<?> list = (List<?>) asClient.get(null, new Key("test", "redisSet", "rdb-binary")).getValue("redis-bin");
+		assertEquals("a", list.get(0));
+		assertTrue(Arrays.equals(new byte[] {(byte) 0xC3, 0x28}, (byte[]) list.get(1)));
+	}
+}
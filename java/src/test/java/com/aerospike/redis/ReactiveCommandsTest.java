@@ -0,0 +1,156 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.jedis.RedisClient;
+
+public class ReactiveCommandsTest  {
+
+	AerospikeClient asClient = new AerospikeClient("127.0.0.1", 3000);
+	RedisClient jedis = new RedisClient(asClient, "test", "redisSet");
+
+	/**
+	 * Requests batch elements at a time, and cancels after limit elements.
+	 */
+	static class Collector<T> implements Subscriber<T> {
+		final List<T> elements = new ArrayList<T>();
+		final CountDownLatch done = new CountDownLatch(1);
+		final int batch;
+		final int limit;
+		Subscription subscription;
+		Throwable error;
+		boolean completed;
+
+		Collector(int batch, int limit) {
+			this.batch = batch;
+			this.limit = limit;
+		}
+
+		@Override
+		public void onSubscribe(Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request(this.batch);
+		}
+
+		@Override
+		public void onNext(T element) {
+			this.elements.add(element);
+			if (this.elements.size() == this.limit) {
+				this.subscription.cancel();
+				this.done.countDown();
+			} else if (this.elements.size() % this.batch == 0) {
+				this.subscription.request(this.batch);
+			}
+		}
+
+		@Override
+		public void onError(Throwable error) {
+			this.error = error;
+			this.done.countDown();
+		}
+
+		@Override
+		public void onComplete() {
+			this.completed = true;
+			this.done.countDown();
+		}
+
+		List<T> await(Publisher<T> publisher) throws InterruptedException {
+			publisher.subscribe(this);
+			assertTrue(this.done.await(10, TimeUnit.SECONDS));
+			assertNull(this.error);
+			return this.elements;
+		}
+	}
+
+	@Test
+	public void lrange() throws InterruptedException {
+		jedis.del("biglist");
+		for (int i = 0; i < 250; i++){
+			jedis.rpush("biglist", "e" + i);
+		}
+		List<String> all = new Collector<String>(7, -1).await(jedis.reactive().lrange("biglist", 0, -1));
+		assertEquals(250, all.size());
+		for (int i = 0; i < 250; i++){
+			assertEquals("e" + i, all.get(i));
+		}
+
+		List<String> some = new Collector<String>(10, -1).await(jedis.reactive().lrange("biglist", 95, 104));
+		assertEquals(10, some.size());
+		assertEquals("e95", some.get(0));
+		assertEquals("e104", some.get(9));
+	}
+
+	@Test
+	public void lrangeCancel() throws InterruptedException {
+		jedis.del("biglist");
+		for (int i = 0; i < 50; i++){
+			jedis.rpush("biglist", "e" + i);
+		}
+		Collector<String> collector = new Collector<String>(5, 12);
+		List<String> first = collector.await(jedis.reactive().lrange("biglist", 0, -1));
+		assertEquals(12, first.size());
+		assertEquals("e11", first.get(11));
+	}
+
+	@Test
+	public void hashes() throws InterruptedException {
+		jedis.del("bighash");
+		Map<String, String> expected = new HashMap<String, String>();
+		for (int i = 0; i < 120; i++){
+			jedis.hset("bighash", "f" + i, "v" + i);
+			expected.put("f" + i, "v" + i);
+		}
+		List<Map.Entry<String, String>> entries = new Collector<Map.Entry<String, String>>(16, -1)
+				.await(jedis.reactive().hgetAll("bighash"));
+		Map<String, String> actual = new HashMap<String, String>();
+		for (Map.Entry<String, String> entry : entries){
+			actual.put(entry.getKey(), entry.getValue());
+		}
+		assertEquals(expected, actual);
+
+		List<String> values = new Collector<String>(16, -1).await(jedis.reactive().hvals("bighash"));
+		assertEquals(120, values.size());
+		assertTrue(values.containsAll(expected.values()));
+	}
+
+	@Test
+	public void keys() throws InterruptedException {
+		jedis.set("reactive-foo", "bar");
+		jedis.set("reactive-foobar", "bar");
+		List<String> keys = new Collector<String>(1, -1).await(jedis.reactive().keys("reactive-foo.*"));
+		assertTrue(keys.contains("reactive-foo"));
+		assertTrue(keys.contains("reactive-foobar"));
+	}
+}
@@ -0,0 +1,133 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.AerospikeException;
+import com.aerospike.jedis.RedisClient;
+
+public class ScriptingCommandsTest  {
+
+	AerospikeClient asClient = new AerospikeClient("127.0.0.1", 3000);
+	RedisClient jedis = new RedisClient(asClient, "test", "redisSet");
+
+	@Test
+	public void evalMultiBulk() {
+		String script = "return {KEYS[1],ARGV[1],ARGV[2]}";
+		List<String> keys = new ArrayList<String>();
+		keys.add("key1");
+		List<String> args = new ArrayList<String>();
+		args.add("first");
+		args.add("second");
+
+		List<?> response = (List<?>) jedis.eval(script, keys, args);
+
+		assertEquals(3, response.size());
+		assertEquals("key1", response.get(0));
+		assertEquals("first", response.get(1));
+		assertEquals("second", response.get(2));
+	}
+
+	@Test
+	public void evalWritesKey() {
+		jedis.del("foo");
+		String script = "redis.call('SET', KEYS[1], ARGV[1]) return redis.call('GET', KEYS[1])";
+		Object response = jedis.eval(script, 1, "foo", "bar");
+		assertEquals("bar", response);
+		assertEquals("bar", jedis.get("foo"));
+	}
+
+	@Test
+	public void evalInteger() {
+		jedis.del("counter");
+		String script = "return redis.call('INCRBY', KEYS[1], ARGV[1])";
+		assertEquals(5L, jedis.eval(script, 1, "counter", "5"));
+		assertEquals(10L, jedis.eval(script, 1, "counter", "5"));
+	}
+
+	@Test
+	public void evalNil() {
+		jedis.del("foo");
+		assertNull(jedis.eval("return redis.call('GET', KEYS[1])", 1, "foo"));
+	}
+
+	@Test
+	public void evalError() {
+		jedis.set("foo", "bar");
+		try {
+			jedis.eval("return redis.call('INCR', KEYS[1])", 1, "foo");
+			fail("INCR on a string must fail");
+		} catch (AerospikeException e) {
+			assertTrue(e.getMessage().contains("ERR value is not an integer"));
+		}
+		assertEquals("bar", jedis.get("foo"));
+	}
+
+	@Test
+	public void evalUndeclaredKey() {
+		try {
+			jedis.eval("return redis.call('GET', 'other')", 1, "foo");
+			fail("a key not in KEYS must be rejected");
+		} catch (AerospikeException e) {
+			assertTrue(e.getMessage().contains("not declared in KEYS"));
+		}
+	}
+
+	@Test
+	public void evalsha() {
+		jedis.del("foo");
+		String sha1 = jedis.scriptLoad("return redis.call('LPUSH', KEYS[1], ARGV[1])");
+		assertEquals(1L, jedis.evalsha(sha1, 1, "foo", "a"));
+		assertEquals(2L, jedis.evalsha(sha1, Arrays.asList("foo"), Arrays.asList("b")));
+	}
+
+	@Test
+	public void evalshaShaNotFound() {
+		try {
+			jedis.evalsha("ffffffffffffffffffffffffffffffffffffffff", 1, "foo");
+			fail("an unknown SHA1 must fail");
+		} catch (AerospikeException e) {
+			assertTrue(e.getMessage().contains("NOSCRIPT"));
+		}
+	}
+
+	@Test
+	public void scriptLoadAndExists() {
+		String sha1 = jedis.scriptLoad("return redis.call('GET', KEYS[1])");
+		assertEquals("d3c21d0c2b9ca22f82737626a27bcaf5d288f99f", sha1);
+		List<Boolean> exists = jedis.scriptExists(sha1, "ffffffffffffffffffffffffffffffffffffffff");
+		assertEquals(Arrays.asList(true, false), exists);
+	}
+
+	@Test
+	public void scriptFlush() {
+		String sha1 = jedis.scriptLoad("return 1");
+		assertEquals("OK", jedis.scriptFlush());
+		assertEquals(Arrays.asList(false), jedis.scriptExists(sha1));
+	}
+}
@@ -0,0 +1,193 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Key;
+import com.aerospike.client.Value;
+import com.aerospike.jedis.RedisClient;
+import com.aerospike.jedis.StreamEntry;
+import com.aerospike.jedis.StreamEntryID;
+
+public class StreamsCommandsTest  {
+
+	AerospikeClient asClient = new AerospikeClient("127.0.0.1", 3000);
+	RedisClient jedis = new RedisClient(asClient, "test", "redisSet");
+
+	// every test uses a fresh key, so entries of earlier runs are not counted
+	private String newStream() {
+		return "xstream-" + System.nanoTime();
+	}
+
+	private Map<String, String> fields(String field, String value) {
+		Map<String, String> map = new HashMap<String, String>();
+		map.put(field, value);
+		return map;
+	}
+
+	@Test
+	public void xadd() {
+		String key = newStream();
+		StreamEntryID id1 = jedis.xadd(key, StreamEntryID.NEW_ENTRY, fields("f1", "v1"));
+		StreamEntryID id2 = jedis.xadd(key, StreamEntryID.NEW_ENTRY, fields("f1", "v2"));
+		assertTrue(id2.compareTo(id1) > 0);
+		assertEquals(2, jedis.xlen(key).longValue());
+
+		StreamEntryID id3 = jedis.xadd(key, new StreamEntryID(id2.getTime(), id2.getSequence() + 5), fields("f1", "v3"));
+		assertEquals(id2.getSequence() + 5, id3.getSequence());
+
+		try {
+			jedis.xadd(key, id1, fields("f1", "v4"));
+			fail("AerospikeException expected");
+		} catch (AerospikeException e) {
+		}
+	}
+
+	@Test
+	public void xrange() {
+		String key = newStream();
+		StreamEntryID id1 = jedis.xadd(key, new StreamEntryID(1000, 0), fields("f1", "v1"));
+		StreamEntryID id2 = jedis.xadd(key, new StreamEntryID(61000, 0), fields("f1", "v2"));
+		StreamEntryID id3 = jedis.xadd(key, new StreamEntryID(121000, 0), fields("f1", "v3"));
+
+		List<StreamEntry> range = jedis.xrange(key, null, null, 10);
+		assertEquals(3, range.size());
+		assertEquals(id1, range.get(0).getID());
+		assertEquals("v1", range.get(0).getFields().get("f1"));
+
+		range = jedis.xrange(key, id2, id3, 10);
+		assertEquals(2, range.size());
+		assertEquals(id2, range.get(0).getID());
+
+		range = jedis.xrange(key, null, null, 1);
+		assertEquals(1, range.size());
+	}
+
+	@Test
+	public void xreadGroupAndAck() {
+		String key = newStream();
+		jedis.xadd(key, StreamEntryID.NEW_ENTRY, fields("f1", "v1"));
+		assertEquals("OK", jedis.xgroupCreate(key, "group", new StreamEntryID("0-0")));
+		StreamEntryID id2 = jedis.xadd(key, StreamEntryID.NEW_ENTRY, fields("f1", "v2"));
+
+		List<StreamEntry> read = jedis.xreadGroup("group", "consumer1", 10, key, StreamEntryID.UNRECEIVED_ENTRY);
+		assertEquals(2, read.size());
+		assertEquals(id2, read.get(1).getID());
+
+		read = jedis.xreadGroup("group", "consumer2", 10, key, StreamEntryID.UNRECEIVED_ENTRY);
+		assertEquals(0, read.size());
+
+		List<StreamEntry> pending = jedis.xreadGroup("group", "consumer1", 10, key, new StreamEntryID("0-0"));
+		assertEquals(2, pending.size());
+
+		assertEquals(1, jedis.xack(key, "group", id2));
+		pending = jedis.xreadGroup("group", "consumer1", 10, key, new StreamEntryID("0-0"));
+		assertEquals(1, pending.size());
+	}
+
+	@Test
+	public void fullBucketsRollOver() {
+		RedisClient client = new RedisClient(asClient, "test", "redisSet");
+		client.setStreamBucketEntries(2);
+		String key = newStream();
+		StreamEntryID last = null;
+		for (int i = 0; i < 5; i++) {
+			StreamEntryID id = client.xadd(key, StreamEntryID.NEW_ENTRY, fields("f1", "v" + i));
+			if (last != null)
+				assertTrue(id.compareTo(last) > 0);
+			last = id;
+		}
+		assertEquals(5, client.xlen(key).longValue());
+		List<StreamEntry> range = client.xrange(key, null, null, 0);
+		assertEquals(5, range.size());
+		assertEquals("v4", range.get(4).getFields().get("f1"));
+	}
+
+	@Test
+	public void streamIsAKeyOfTheSet() {
+		String key = newStream();
+		jedis.xadd(key, StreamEntryID.NEW_ENTRY, fields("f1", "v1"));
+		assertTrue(jedis.exists(key));
+		assertTrue(jedis.keys(key).contains(key));
+		jedis.del(key);
+		assertFalse(jedis.exists(key));
+		assertEquals(0, jedis.xlen(key).longValue());
+		assertEquals(0, jedis.xrange(key, null, null, 0).size());
+
+		RedisClient other = new RedisClient(asClient, "test", "redisOtherSet");
+		assertEquals(0, other.xlen(key).longValue());
+	}
+
+	@Test
+	public void xgroupCreateNeedsTheStream() {
+		try {
+			jedis.xgroupCreate(newStream(), "group", new StreamEntryID("0-0"));
+			fail("AerospikeException expected");
+		} catch (AerospikeException e) {
+		}
+	}
+
+	@Test
+	public void groupsAreNotInTheStreamRecord() {
+		String key = newStream();
+		jedis.xadd(key, StreamEntryID.NEW_ENTRY, fields("f1", "v1"));
+		jedis.xgroupCreate(key, "group", new StreamEntryID("0-0"));
+		assertEquals(1, jedis.xreadGroup("group", "consumer1", 10, key, StreamEntryID.UNRECEIVED_ENTRY).size());
+		assertNull(asClient.get(null, new Key("test", "redisSet", key)).getValue("redis-groups"));
+		jedis.del(key);
+		assertNull(asClient.get(null, new Key("test", "redisSet-stream", key + '\u0000' + "groups")));
+	}
+
+	@Test
+	public void xreadGroupWaitsForAppendsInFlight() {
+		String key = newStream();
+		jedis.xadd(key, new StreamEntryID(1000, 0), fields("f1", "v1"));
+		jedis.xgroupCreate(key, "group", new StreamEntryID("0-0"));
+		// an XADD that has its ID but has not appended the entry yet
+		List<?> early = (List<?>) asClient.execute(null, new Key("test", "redisSet", key), "redis", "XADD",
+				Value.get("redis-buckets"), Value.get("redis-length"), Value.get("redis-top"), Value.get("redis-fill"),
+				Value.get(2000), Value.get(0), Value.get(60000), Value.get(1000), Value.getAsNull(), Value.get(key),
+				Value.get("redis-inflight"), Value.get(System.currentTimeMillis()), Value.get(10000));
+		jedis.xadd(key, new StreamEntryID(3000, 0), fields("f1", "v3"));
+
+		List<StreamEntry> read = jedis.xreadGroup("group", "consumer1", 10, key, StreamEntryID.UNRECEIVED_ENTRY);
+		assertEquals(1, read.size());
+
+		Map<String, String> late = fields("f1", "v2");
+		asClient.execute(null, new Key("test", "redisSet-stream", key + '\u0000' + early.get(2)), "redis", "XAPPEND",
+				Value.get("redis-bin"), Value.get(2000), Value.get(0), Value.getAsMap(late));
+		asClient.execute(null, new Key("test", "redisSet", key), "redis", "XCOMMIT", Value.get("redis-inflight"),
+				Value.get(2000), Value.get(0));
+		read = jedis.xreadGroup("group", "consumer1", 10, key, StreamEntryID.UNRECEIVED_ENTRY);
+		assertEquals(2, read.size());
+		assertEquals(new StreamEntryID(2000, 0), read.get(0).getID());
+		assertEquals(new StreamEntryID(3000, 0), read.get(1).getID());
+	}
+}
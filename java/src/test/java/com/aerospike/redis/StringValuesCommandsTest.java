@@ -252,4 +252,21 @@ public class StringValuesCommandsTest  {
 		jedis.del("bar");
 		jedis.del("s");
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void keyCache() {
+		jedis.setKeyCache(4);
+		for (int i = 0; i < 20; i++){
+			jedis.set("cached" + i, "value" + i);
+		}
+		for (int i = 0; i < 20; i++){
+			assertEquals("value" + i, jedis.get("cached" + i));
+		}
+		assertEquals(0, jedis.setnx("cached1", "other"));
+		jedis.setex("cached1", 20, "bar");
+		long ttl = jedis.ttl("cached1");
+		assertTrue(ttl > 0 && ttl <= 20);
+		jedis.setKeyCache(0);
+		assertEquals("bar", jedis.get("cached1"));
+	}
+}
@@ -0,0 +1,175 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.ResultCode;
+import com.aerospike.jedis.RedisClient;
+import com.aerospike.jedis.Transaction;
+import com.aerospike.jedis.TransactionBlock;
+
+public class TransactionCommandsTest  {
+
+	AerospikeClient asClient = new AerospikeClient("127.0.0.1", 3000);
+	RedisClient jedis = new RedisClient(asClient, "test", "redisSet");
+	RedisClient nj = new RedisClient(asClient, "test", "redisSet");
+
+	@Test
+	public void multi() {
+		jedis.del("foo", "bar", "counter");
+		Transaction trans = jedis.multi();
+
+		trans.set("foo", "bar");
+		trans.incr("counter");
+		trans.append("foo", "baz");
+		trans.get("foo");
+		trans.incrBy("bar", 3);
+
+		List<Object> response = trans.exec();
+
+		List<Object> expected = new ArrayList<Object>();
+		expected.add("OK");
+		expected.add(1L);
+		expected.add(6L);
+		expected.add("barbaz");
+		expected.add(3L);
+		assertEquals(expected, response);
+	}
+
+	@Test
+	public void watch() {
+		jedis.del("mykey", "somekey");
+		jedis.watch("mykey", "somekey");
+		Transaction t = jedis.multi();
+
+		nj.set("mykey", "bar");
+
+		t.set("mykey", "foo");
+		List<Object> resp = t.exec();
+		assertNull(resp);
+		assertEquals("bar", jedis.get("mykey"));
+	}
+
+	@Test
+	public void watchMissingKeyThenDel() {
+		jedis.del("mykey");
+		jedis.watch("mykey");
+		Transaction t = jedis.multi();
+
+		nj.set("mykey", "bar");
+
+		t.del("mykey");
+		assertNull(t.exec());
+		assertEquals("bar", jedis.get("mykey"));
+	}
+
+	@Test
+	public void getBytes() {
+		jedis.set("mykey", "bar".getBytes());
+		Transaction t = jedis.multi();
+		t.get("mykey");
+		assertEquals("bar", t.exec().get(0));
+	}
+
+	@Test
+	public void watchReadOnlyKey() {
+		jedis.set("guard", "1");
+		jedis.watch("guard");
+		Transaction t = jedis.multi();
+
+		nj.set("guard", "2");
+
+		t.set("other", "foo");
+		assertNull(t.exec());
+	}
+
+	@Test
+	public void unwatch() {
+		jedis.set("mykey", "foo");
+		jedis.watch("mykey");
+		String status = jedis.unwatch();
+		assertEquals("OK", status);
+		Transaction t = jedis.multi();
+
+		nj.set("mykey", "bar");
+
+		t.set("mykey", "foo");
+		List<Object> resp = t.exec();
+		assertEquals(1, resp.size());
+		assertEquals("OK", resp.get(0));
+		assertEquals("foo", jedis.get("mykey"));
+	}
+
+	@Test
+	public void discard() {
+		jedis.set("mykey", "foo");
+		Transaction t = jedis.multi();
+		t.set("mykey", "bar");
+		t.discard();
+		assertEquals("foo", jedis.get("mykey"));
+	}
+
+	@Test
+	public void retryOnConflict() {
+		jedis.set("balance", "100");
+		final int[] attempts = { 0 };
+		List<Object> results = jedis.multi(new TransactionBlock() {
+			@Override
+			public void execute(RedisClient client, Transaction transaction) {
+				long balance = Long.parseLong(client.get("balance"));
+				if (attempts[0]++ == 0)
+					nj.set("balance", "50"); // a concurrent writer
+				transaction.set("balance", String.valueOf(balance - 10));
+			}
+		}, 3, "balance");
+		assertEquals(2, attempts[0]);
+		assertEquals("OK", results.get(0));
+		assertEquals("40", jedis.get("balance"));
+	}
+
+	@Test
+	public void renameToItself() {
+		jedis.set("mykey", "foo");
+		assertEquals("OK", jedis.rename("mykey", "mykey"));
+		assertEquals("foo", jedis.get("mykey"));
+	}
+
+	@Test
+	public void renameValueInSeveralRecords() {
+		jedis.del("mybitmap", "renamed");
+		jedis.setbit("mybitmap", 600000, true);
+		try {
+			jedis.rename("mybitmap", "renamed");
+			fail("RENAME of a segmented bitmap");
+		} catch (AerospikeException e) {
+			assertEquals(ResultCode.PARAMETER_ERROR, e.getResultCode());
+		}
+		assertTrue(jedis.getbit("mybitmap", 600000));
+		assertNull(jedis.get("renamed"));
+	}
+}
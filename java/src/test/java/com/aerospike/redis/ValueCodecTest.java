@@ -0,0 +1,95 @@
+/* 
+ * Copyright 2012-2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.aerospike.redis;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.jedis.RedisClient;
+import com.aerospike.jedis.ValueCodecs;
+
+public class ValueCodecTest  {
+
+	AerospikeClient asClient = new AerospikeClient("127.0.0.1", 3000);
+	RedisClient jedis = new RedisClient(asClient, "test", "redisSet");
+
+	private static byte[] readResource(String name) throws IOException {
+		InputStream in = new FileInputStream("src/test/resource/" + name);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) > 0)
+				out.write(buffer, 0, read);
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void bytes() throws IOException {
+		byte[] image = readResource("MySimpson.png");
+		jedis.set("simpson".getBytes(), image);
+		assertArrayEquals(image, jedis.get("simpson".getBytes()));
+		assertArrayEquals(image, jedis.get("simpson", ValueCodecs.BYTES));
+		jedis.del("missing");
+		assertNull(jedis.get("missing", ValueCodecs.BYTES));
+	}
+
+	@Test
+	public void slice() {
+		byte[] buffer = { 0x01, 0x02, 0x03, 0x04, 0x05 };
+		jedis.set("slice", buffer, 1, 3);
+		assertArrayEquals(new byte[] { 0x02, 0x03, 0x04 }, jedis.get("slice", ValueCodecs.BYTES));
+	}
+
+	@Test
+	public void utf8() {
+		jedis.set("unicode", "h\u00e9llo \u2603", ValueCodecs.UTF8);
+		assertEquals("h\u00e9llo \u2603", jedis.get("unicode"));
+		jedis.del("counter");
+		jedis.incrBy("counter", 42);
+		assertEquals("42", jedis.get("counter"));
+		List<String> values = jedis.mget("unicode", "counter");
+		assertEquals(Arrays.asList("h\u00e9llo \u2603", "42"), values);
+	}
+
+	@Test
+	public void messagePack() {
+		Map<String, Object> value = new HashMap<String, Object>();
+		value.put("name", "Homer");
+		value.put("age", 39L);
+		value.put("kids", Arrays.asList("Bart", "Lisa", "Maggie"));
+		jedis.set("homer", value, ValueCodecs.MESSAGE_PACK);
+		assertEquals(value, jedis.get("homer", ValueCodecs.MESSAGE_PACK));
+		assertEquals(Arrays.asList((Object) value), jedis.mget(ValueCodecs.MESSAGE_PACK, "homer"));
+	}
+}
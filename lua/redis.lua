@@ -26,7 +26,8 @@
 -- LIST : See http://redis.io/commands#list for detail of API
 --
 -- NB: Does not support multi key (RPOPLPUSH on multiple bin is) and blocking
---     operation is not supported
+--     operation is not supported here; BLPOP/BRPOP/BRPOPLPUSH are emulated by
+--     the client on top of LPOP/RPOP
 -- ############################################
 
 local function EXISTS(rec, bin)
@@ -48,9 +49,29 @@ local function UPDATE(rec)
 	end
 end
 
+-- Deletes the record for DEL and returns {segments, buckets, kept}: the
+-- bitmap segment records and stream bucket records it owned, which the
+-- client deletes next, and 1 if it was left for the client to delete
+-- (a GEO set, whose large list the client removes)
+function DEL(rec, segments_bin, buckets_bin, keep_bin)
+	if not aerospike:exists(rec) then
+		return nil
+	end
+	local owned = list()
+	list.append(owned, rec[segments_bin] or 0)
+	list.append(owned, (rec[buckets_bin] == nil) and 0 or #rec[buckets_bin])
+	if (rec[keep_bin] ~= nil) then
+		list.append(owned, 1)
+		return owned
+	end
+	list.append(owned, 0)
+	aerospike:remove(rec)
+	return owned
+end
+
 function LINDEX (rec, bin, index)
 	if (EXISTS(rec, bin)) then
-		l = rec[bin]
+		local l = rec[bin]
 		if (index >= 0) then
 			return l[index+1]
 		else
@@ -61,37 +82,30 @@ function LINDEX (rec, bin, index)
 end
 
 function LINSERT (rec, bin, pos, pivot, value)
-    info("LINSERT v:"..tostring(value).." pos:"..tostring(pos))
-
 	if (EXISTS(rec, bin)) then
-		local l     = rec[bin]
-		local new_l = list()
-		local inserted = 0
-		--info("LINSERT l:"..tostring(l).." v:"..tostring(value).." pivot:"..tostring(pos))
+		if (pos ~= "BEFORE" and pos ~= "AFTER") then
+			return -1
+		end
+		local l = rec[bin]
+		local i = 0
 		for v in list.iterator(l) do
-			if (v == pivot) and inserted ~= 1 then
-				if (pos == "BEFORE") then
-					list.append(new_l, value)
-					list.append(new_l, v)
-				elseif (pos == "AFTER") then
-					list.append(new_l, v)
-					list.append(new_l, value)
-				else 
-					return -1
+			i = i + 1
+			if (v == pivot) then
+				if (pos == "AFTER") then
+					i = i + 1
 				end
-				inserted = 1
-			else 
-				list.append(new_l, v)
+				if (i > #l) then
+					list.append(l, value)
+				else
+					list.insert(l, i, value)
+				end
+				rec[bin] = l
+				local length = #l
+				UPDATE(rec)
+				return length
 			end
-		end 
-		if (inserted == 1) then
-			rec[bin] = new_l
-			local length = #rec[bin]
-			UPDATE(rec)
-			return length
-		else
-			return -1
 		end
+		return -1
 	end
 	return 0
 end
@@ -139,12 +153,13 @@ end
 
 
 function LPUSHALL (rec, bin, value_list)
-	local l = rec[bin]
-	if (l == nil) then
-		l = list()
+	-- the values end up in reverse order at the head, as pushed one by one
+	local l = list()
+	for i = #value_list, 1, -1 do
+		list.append(l, value_list[i])
 	end
-	for value in list.iterator(value_list) do
-		list.prepend(l, value)
+	if (rec[bin] ~= nil) then
+		list.concat(l, rec[bin])
 	end
 	rec[bin] = l
 	local length = #l
@@ -187,78 +202,80 @@ function LSET (rec, bin, index, value)
 end
 
 function LREM (rec, bin, count, value)
-  --info("LREM b:"..tostring(bin).." c:"..tostring(count).." v:"..tostring(value))
 	if (EXISTS(rec, bin)) then
-	  local removed = 0
 		local l = rec[bin]
-    info("LREM l:"..tostring(l))
-		if (count == 0) then
-		  local newList = list()
-      for v in list.iterator(l) do
-        if v ~= value then
-          list.append(newList, v)
-        else
-          removed = removed + 1
-        end
-      end
-      l = newList
-		elseif count > 0 then
-		  local newList = list()
-  		for v in list.iterator(l) do
-  		  if v == value and removed < count then
-  				removed = removed + 1
-  			else
-  				list.append(newList, v)
-  			end
-  		end
-  		l = newList
-		else
-      local newList = list()
-      for v in list.iterator(l) do
-        --info("LREM v:"..tostring(v).." value:"..tostring(value))
-        if v == value and removed < math.abs(count) then
-          removed = removed + 1
-        else
-          list.append(newList, v)
-        end
-      end
-      l = newList
+		local size = #l
+		local first = 1
+		local limit = size
+		if (count > 0) then
+			limit = count
+		elseif (count < 0) then
+			-- the last -count matches go, so start at the earliest of them
+			limit = -count
+			local found = 0
+			first = size + 1
+			for i = size, 1, -1 do
+				if (l[i] == value) then
+					found = found + 1
+					first = i
+					if (found == limit) then
+						break
+					end
+				end
+			end
+		end
+		-- one pass that moves each kept element down over the removed ones
+		local removed = 0
+		local kept = first - 1
+		for i = first, size do
+			local v = l[i]
+			if (removed < limit) and (v == value) then
+				removed = removed + 1
+			else
+				kept = kept + 1
+				if (kept < i) then
+					l[kept] = v
+				end
+			end
+		end
+		if (removed > 0) then
+			list.trim(l, kept + 1)
+			rec[bin] = l
+			UPDATE(rec)
 		end
-		rec[bin] = l
-		UPDATE(rec)
 		return removed
-	else
-	 return 0
 	end
+	return 0
 end
 
+-- Keeps the elements from start to stop inclusive, as Redis does
 function LTRIM (rec, bin, start, stop)
 	if (EXISTS(rec, bin)) then
 		local l = rec[bin]
-		
+		local size = #l
 		if (start < 0) then
-			start = #l + start + 1 
+			start = math.max(0, size + start)
 		end
-
 		if (stop < 0) then
-			stop = #l + stop + 1
+			stop = size + stop
 		end
-
-		if (start >= stop) then
-			return "-Invalid Range"
+		if (stop >= size) then
+			stop = size - 1
 		end
-    info("LTRIM list:"..tostring(l).." start:"..tostring(start).." stop:"..tostring(stop))
 
-		local pre_list  = list.take(l, start)
-		if pre_list == nil then
-		  pre_list = list()
-		end
-		local post_list = list.drop(l, stop)
-		info("LTRIM pre_list:"..tostring(pre_list).." post_list:"..tostring(post_list))
-		for value in list.iterator(post_list) do
-			list.append(pre_list, value)
+		if (start > stop) then
+			rec[bin] = nil
+		elseif (start > 0 or stop < size - 1) then
+			if (stop < size - 1) then
+				list.trim(l, stop + 2)
+			end
+			if (start > 0) then
+				l = list.drop(l, start)
+			end
+			rec[bin] = l
+		else
+			return "OK"
 		end
-		rec[bin] = pre_list
 		UPDATE(rec)
 		return "OK"
 	end
@@ -270,12 +287,14 @@ function RPOP (rec, bin, count)
 		local l     = rec[bin]
  		local result_list = nil
 		if (#l <= count) then
+			-- every element is popped
+			result_list = l
 			rec[bin] = nil
-			result_list = list()
 		else
-      local start = #l - count
+			local start = #l - count
 			result_list = list.drop(l, start)
-			rec[bin] = list.take(l, start)
+			list.trim(l, start + 1)
+			rec[bin] = l
 		end
 		UPDATE(rec)
 		if (result_list ~= nil) then
@@ -300,19 +319,17 @@ function RPOPLPUSH (rec, bin1, bin2, count)
 		if (count > #l1) then
 			count = #l1
 		end
-		rec[bin1]     = list.take(l1, #l1 - count)
 		local value_l = list.drop(l1, #l1 - count)
+		if (count > 0) then
+			list.trim(l1, #l1 - count + 1)
+		end
+		rec[bin1] = l1
 
 		if (l2 == nil) then
 			l2 = list()
 		end
-		
-		if (value_l ~= nil) then
-			for value in list.iterator(value_l) do
-				list.append(l2, value)
-			end
-			rec[bin2] = l2 
-		end
+		list.concat(l2, value_l)
+		rec[bin2] = l2
 		UPDATE(rec)
 		return value_l
 	end	
@@ -546,14 +563,23 @@ end
 -- HASH : See http://redis.io/commands#GET or SET for detail of API
 -- ############################################
 
-function GETSET(rec, bin, value) 
---  if (EXISTS(rec, bin)) then
-    m = rec[bin]
-    rec[bin] = value
-    UPDATE(rec)
-    return m
---  end
---  return nil
+-- Returns {old value, 1 if the client had compressed it}, or {} if there
+-- was no value. The new value is plain, so the compression flag is cleared.
+function GETSET(rec, bin, value, flag_bin)
+	local result = list()
+	local m = rec[bin]
+	if (m ~= nil) then
+		list.append(result, m)
+		if (rec[flag_bin] ~= nil) then
+			list.append(result, 1)
+		else
+			list.append(result, 0)
+		end
+	end
+	rec[bin] = value
+	rec[flag_bin] = nil
+	UPDATE(rec)
+	return result
 end
 
 function INCRBYFLOAT(rec, bin, value) 
@@ -570,3 +596,618 @@ function INCRBYFLOAT(rec, bin, value)
 end
 
 
+
+
+-- ###########################################
+-- PUB/SUB : See http://redis.io/commands#pubsub for detail of API
+--
+-- Each channel is a record holding a ring buffer of the last `capacity`
+-- messages and the sequence number of the newest one. Message n (1 based)
+-- lives in slot ((n - 1) % capacity) + 1. Subscribers poll the sequence bin
+-- and tail the ring from the last sequence they have seen.
+-- ############################################
+
+function PUBLISH(rec, ring_bin, seq_bin, capacity, message)
+	local seq = rec[seq_bin]
+	if (seq == nil) then
+		seq = 0
+	end
+	local l = rec[ring_bin]
+	if (l == nil) then
+		l = list()
+	end
+	local slot = (seq % capacity) + 1
+	if (slot > #l) then
+		list.append(l, message)
+	else
+		l[slot] = message
+	end
+	rec[ring_bin] = l
+	rec[seq_bin] = seq + 1
+	UPDATE(rec)
+	return seq + 1
+end
+
+function PUBSUB_TAIL(rec, ring_bin, seq_bin, capacity, from)
+	local result = list()
+	if (not EXISTS(rec, seq_bin)) then
+		list.append(result, 0)
+		return result
+	end
+	local seq = rec[seq_bin]
+	list.append(result, seq)
+	local first = from + 1
+	if (seq - first + 1 > capacity) then
+		first = seq - capacity + 1
+	end
+	local l = rec[ring_bin]
+	for n = first, seq do
+		list.append(result, l[((n - 1) % capacity) + 1])
+	end
+	return result
+end
+
+
+-- ###########################################
+-- STREAM : See http://redis.io/commands#stream for detail of API
+--
+-- Entries are kept in bucket records, each entry a list {ms, seq, fields}.
+-- The stream's own record holds the entry count, the last ID {ms, seq}, the
+-- first entry time of every bucket (a bucket's number is its position) and
+-- the entries given an ID but not yet appended, each {ms, seq, since}. The
+-- consumer groups are kept in a record of their own:
+--   groups[name] = {ms = last delivered ms, seq = last delivered seq,
+--                   pending = {["ms-seq"] = {consumer, delivery time, count}}}
+-- ############################################
+
+-- Assigns the next entry's ID on the stream's own record and returns
+-- {ms, seq, bucket}; a seq below 0 asks for a generated ID. A new bucket is
+-- started when the current one is full or the ID moves to another span of
+-- bucket_millis. The entry stays in flight until XCOMMIT; entries in flight
+-- since before now - stall_millis are taken as failed and dropped.
+function XADD(rec, buckets_bin, length_bin, top_bin, fill_bin, ms, seq, bucket_millis, max_entries, key_bin, key,
+		inflight_bin, now, stall_millis)
+	local top = rec[top_bin]
+	if (seq < 0) then
+		seq = 0
+		if (top ~= nil) then
+			-- keep generated IDs increasing if the clock steps back
+			if (ms < top[1]) then
+				ms = top[1]
+			end
+			if (ms == top[1]) then
+				seq = top[2] + 1
+			end
+		end
+	elseif (ms == 0 and seq == 0) then
+		error("ERR The ID specified in XADD must be greater than 0-0")
+	elseif (top ~= nil) and ((ms < top[1]) or (ms == top[1] and seq <= top[2])) then
+		error("ERR The ID specified in XADD is equal or smaller than the target stream top item")
+	end
+	local buckets = rec[buckets_bin]
+	if (buckets == nil) then
+		buckets = list()
+	end
+	local fill = rec[fill_bin] or 0
+	local n = #buckets
+	if (n == 0) or (fill >= max_entries)
+			or (math.floor(ms / bucket_millis) ~= math.floor(buckets[n] / bucket_millis)) then
+		list.append(buckets, ms)
+		n = n + 1
+		fill = 0
+	end
+	top = list()
+	list.append(top, ms)
+	list.append(top, seq)
+	rec[top_bin] = top
+	rec[buckets_bin] = buckets
+	rec[fill_bin] = fill + 1
+	rec[length_bin] = (rec[length_bin] or 0) + 1
+	local inflight = list()
+	if (rec[inflight_bin] ~= nil) then
+		for append in list.iterator(rec[inflight_bin]) do
+			if (append[3] >= now - stall_millis) then
+				list.append(inflight, append)
+			end
+		end
+	end
+	local append = list()
+	list.append(append, ms)
+	list.append(append, seq)
+	list.append(append, now)
+	list.append(inflight, append)
+	rec[inflight_bin] = inflight
+	if (key_bin ~= nil) then
+		rec[key_bin] = key
+	end
+	UPDATE(rec)
+	local result = list()
+	list.append(result, ms)
+	list.append(result, seq)
+	list.append(result, n - 1)
+	return result
+end
+
+-- Appends an entry, with the ID XADD gave it, to its bucket record
+function XAPPEND(rec, bin, ms, seq, fields)
+	local l = rec[bin]
+	if (l == nil) then
+		l = list()
+	end
+	local entry = list()
+	list.append(entry, ms)
+	list.append(entry, seq)
+	list.append(entry, fields)
+	list.append(l, entry)
+	rec[bin] = l
+	UPDATE(rec)
+	return #l
+end
+
+-- Drops an entry from those in flight, returning whether it was there
+local function XLANDED(rec, inflight_bin, ms, seq)
+	if (rec[inflight_bin] == nil) then
+		return false
+	end
+	local inflight = list()
+	local found = false
+	for append in list.iterator(rec[inflight_bin]) do
+		if (append[1] == ms) and (append[2] == seq) then
+			found = true
+		else
+			list.append(inflight, append)
+		end
+	end
+	if found then
+		rec[inflight_bin] = inflight
+	end
+	return found
+end
+
+-- Marks an entry appended, so consumer groups can be given it
+function XCOMMIT(rec, inflight_bin, ms, seq)
+	if aerospike:exists(rec) and XLANDED(rec, inflight_bin, ms, seq) then
+		aerospike:update(rec)
+	end
+	return 0
+end
+
+-- Takes back the count of an entry whose append failed
+function XUNCOUNT(rec, length_bin, inflight_bin, ms, seq)
+	if not aerospike:exists(rec) then
+		return 0
+	end
+	local changed = XLANDED(rec, inflight_bin, ms, seq)
+	if (rec[length_bin] ~= nil and rec[length_bin] > 0) then
+		rec[length_bin] = rec[length_bin] - 1
+		changed = true
+	end
+	if changed then
+		aerospike:update(rec)
+	end
+	return 0
+end
+
+function XGROUP_CREATE(rec, bin, group, ms, seq)
+	local groups = rec[bin]
+	if (groups == nil) then
+		groups = map()
+	end
+	if (groups[group] ~= nil) then
+		error("BUSYGROUP Consumer Group name already exists")
+	end
+	local g = map()
+	g["ms"] = ms
+	g["seq"] = seq
+	g["pending"] = map()
+	groups[group] = g
+	rec[bin] = groups
+	UPDATE(rec)
+	return "OK"
+end
+
+function XGROUP_DELIVER(rec, bin, group, consumer, expected_ms, expected_seq, last_ms, last_seq, ids, now)
+	local groups = rec[bin]
+	if (groups == nil) or (groups[group] == nil) then
+		error("NOGROUP No such consumer group")
+	end
+	local g = groups[group]
+	if (g["ms"] ~= expected_ms) or (g["seq"] ~= expected_seq) then
+		-- another consumer claimed these entries first
+		return 0
+	end
+	local pending = g["pending"]
+	for id in list.iterator(ids) do
+		local p = list()
+		list.append(p, consumer)
+		list.append(p, now)
+		list.append(p, 1)
+		pending[id] = p
+	end
+	g["pending"] = pending
+	g["ms"] = last_ms
+	g["seq"] = last_seq
+	groups[group] = g
+	rec[bin] = groups
+	UPDATE(rec)
+	return 1
+end
+
+function XACK(rec, bin, group, ids)
+	local groups = rec[bin]
+	if (groups == nil) or (groups[group] == nil) then
+		return 0
+	end
+	local g = groups[group]
+	local pending = g["pending"]
+	local acked = 0
+	for id in list.iterator(ids) do
+		if (pending[id] ~= nil) then
+			pending[id] = nil
+			acked = acked + 1
+		end
+	end
+	if (acked > 0) then
+		g["pending"] = pending
+		groups[group] = g
+		rec[bin] = groups
+		UPDATE(rec)
+	end
+	return acked
+end
+
+
+-- ###########################################
+-- HYPERLOGLOG : See http://redis.io/commands#hyperloglog for detail of API
+--
+-- The bin holds the same bytes Redis stores for a HyperLogLog: a 16 byte
+-- header ("HYLL", encoding, 3 unused bytes, cached cardinality) followed by
+-- 16384 registers, either dense (6 bits each) or sparse (ZERO, XZERO and VAL
+-- run length opcodes). The client hashes the elements and sends the
+-- (index, rank) pairs; only the register update happens here. Byte offsets
+-- below are 1 based and Lua 5.1 has no bit operators, so bit fields are
+-- packed with arithmetic.
+-- ############################################
+
+local HLL_REGISTERS = 16384
+local HLL_HDR = 16
+local HLL_DENSE_SIZE = HLL_HDR + 12288
+local HLL_SPARSE_MAX_BYTES = 3000
+local HLL_SPARSE_VAL_MAX = 32
+
+local function HLL_NEW(size, encoding)
+	local b = bytes(size)
+	bytes.set_byte(b, 1, 72) -- H
+	bytes.set_byte(b, 2, 89) -- Y
+	bytes.set_byte(b, 3, 76) -- L
+	bytes.set_byte(b, 4, 76) -- L
+	bytes.set_byte(b, 5, encoding)
+	for i = 6, size do
+		bytes.set_byte(b, i, 0)
+	end
+	return b
+end
+
+local function HLL_DENSE_GET(b, index)
+	local pos = index * 6
+	local i = HLL_HDR + math.floor(pos / 8) + 1
+	local shift = 2 ^ (pos % 8)
+	local w = bytes.get_byte(b, i)
+	if (i < HLL_DENSE_SIZE) then
+		w = w + bytes.get_byte(b, i + 1) * 256
+	end
+	return math.floor(w / shift) % 64
+end
+
+local function HLL_DENSE_SET(b, index, value)
+	local pos = index * 6
+	local i = HLL_HDR + math.floor(pos / 8) + 1
+	local shift = 2 ^ (pos % 8)
+	local w = bytes.get_byte(b, i)
+	if (i < HLL_DENSE_SIZE) then
+		-- the last register fits in the last byte
+		w = w + bytes.get_byte(b, i + 1) * 256
+	end
+	w = w - (math.floor(w / shift) % 64) * shift + value * shift
+	bytes.set_byte(b, i, w % 256)
+	if (i < HLL_DENSE_SIZE) then
+		bytes.set_byte(b, i + 1, math.floor(w / 256))
+	end
+end
+
+-- sparse opcodes to a table of the non zero registers (0 based index)
+local function HLL_SPARSE_DECODE(b)
+	local regs = {}
+	local index = 0
+	local i = HLL_HDR + 1
+	local size = bytes.size(b)
+	while (i <= size) do
+		local op = bytes.get_byte(b, i)
+		if (op < 64) then
+			index = index + op + 1
+		elseif (op < 128) then
+			i = i + 1
+			index = index + (op - 64) * 256 + bytes.get_byte(b, i) + 1
+		else
+			local value = math.floor((op - 128) / 4) + 1
+			for n = 1, (op % 4) + 1 do
+				regs[index] = value
+				index = index + 1
+			end
+		end
+		i = i + 1
+	end
+	return regs
+end
+
+local function HLL_ZERO_OPS(ops, run)
+	while (run > 0) do
+		if (run > 64) then
+			local len = math.min(run, 16384)
+			table.insert(ops, 64 + math.floor((len - 1) / 256))
+			table.insert(ops, (len - 1) % 256)
+			run = run - len
+		else
+			table.insert(ops, run - 1)
+			run = 0
+		end
+	end
+end
+
+local function HLL_SPARSE_OPS(regs)
+	local indexes = {}
+	for index in pairs(regs) do
+		table.insert(indexes, index)
+	end
+	table.sort(indexes)
+	local ops = {}
+	local next_index = 0
+	local n = 1
+	while (n <= #indexes) do
+		local index = indexes[n]
+		local value = regs[index]
+		HLL_ZERO_OPS(ops, index - next_index)
+		local run = 1
+		while (run < 4) and (indexes[n + run] == index + run) and (regs[index + run] == value) do
+			run = run + 1
+		end
+		table.insert(ops, 128 + (value - 1) * 4 + run - 1)
+		next_index = index + run
+		n = n + run
+	end
+	HLL_ZERO_OPS(ops, HLL_REGISTERS - next_index)
+	return ops
+end
+
+function PFADD(rec, bin, updates)
+	local hll = rec[bin]
+	local created = 0
+	if (hll == nil) then
+		hll = HLL_NEW(HLL_HDR + 2, 1)
+		bytes.set_byte(hll, HLL_HDR + 1, 127) -- XZERO covering every register
+		bytes.set_byte(hll, HLL_HDR + 2, 255)
+		created = 1
+	end
+	local changed = 0
+	if (bytes.get_byte(hll, 5) == 0) then
+		for i = 1, #updates, 2 do
+			local index = updates[i]
+			local rank = updates[i + 1]
+			if (HLL_DENSE_GET(hll, index) < rank) then
+				HLL_DENSE_SET(hll, index, rank)
+				changed = 1
+			end
+		end
+	else
+		local regs = HLL_SPARSE_DECODE(hll)
+		local dense = false
+		for i = 1, #updates, 2 do
+			local index = updates[i]
+			local rank = updates[i + 1]
+			if ((regs[index] or 0) < rank) then
+				regs[index] = rank
+				changed = 1
+				if (rank > HLL_SPARSE_VAL_MAX) then
+					dense = true
+				end
+			end
+		end
+		if (changed == 1) then
+			local ops = nil
+			if (not dense) then
+				ops = HLL_SPARSE_OPS(regs)
+				dense = (#ops > HLL_SPARSE_MAX_BYTES)
+			end
+			if (dense) then
+				hll = HLL_NEW(HLL_DENSE_SIZE, 0)
+				for index, value in pairs(regs) do
+					HLL_DENSE_SET(hll, index, value)
+				end
+			else
+				hll = HLL_NEW(HLL_HDR + #ops, 1)
+				for i = 1, #ops do
+					bytes.set_byte(hll, HLL_HDR + i, ops[i])
+				end
+			end
+		end
+	end
+	if (changed == 1) then
+		-- invalidate the cached cardinality
+		local card = bytes.get_byte(hll, 16)
+		if (card < 128) then
+			bytes.set_byte(hll, 16, card + 128)
+		end
+	end
+	if (changed == 1) or (created == 1) then
+		rec[bin] = hll
+		UPDATE(rec)
+		return 1
+	end
+	return 0
+end
+
+
+-- ###########################################
+-- BITMAP : See http://redis.io/commands#string for detail of API
+--
+-- A bitmap is a bytes bin; bit 0 is the most significant bit of the first
+-- byte, as in Redis. A string value set by SET is read as its bytes; a
+-- compressed one is handed back to the client. The client splits large
+-- bitmaps into segment records, so these functions only ever see one
+-- segment and offsets are relative to it.
+-- ############################################
+
+local function BITMAP_BYTES(b)
+	if (type(b) == "string") then
+		local converted = bytes(string.len(b))
+		for i = 1, string.len(b) do
+			bytes.set_byte(converted, i, string.byte(b, i))
+		end
+		return converted
+	end
+	return b
+end
+
+-- A value the client compressed, which its flag bin marks. The client
+-- inflates these itself, the UDFs only report them.
+local function BITMAP_COMPRESSED(rec, flag_bin)
+	return (flag_bin ~= nil) and (rec[flag_bin] ~= nil)
+end
+
+-- A segment record passes the epoch of its head; a segment left by an
+-- older bitmap of the same key is stale and starts again from zeros.
+function SETBIT(rec, bin, offset, value, flag_bin, epoch_bin, epoch)
+	local result = list()
+	if BITMAP_COMPRESSED(rec, flag_bin) then
+		list.append(result, -1)
+		list.append(result, 0)
+		return result
+	end
+	local b = BITMAP_BYTES(rec[bin])
+	local created = 0
+	local size = 0
+	local stale = (epoch_bin ~= nil) and (rec[epoch_bin] ~= epoch)
+	if stale then
+		b = nil
+		rec[epoch_bin] = epoch
+	end
+	if (b == nil) then
+		created = 1
+	else
+		size = bytes.size(b)
+	end
+	local index = math.floor(offset / 8) + 1
+	local mask = 2 ^ (7 - (offset % 8))
+	local grown = false
+	if (index > size) then
+		-- zero pad up to the byte holding the bit
+		local padded = bytes(index)
+		for i = 1, size do
+			bytes.set_byte(padded, i, bytes.get_byte(b, i))
+		end
+		for i = size + 1, index do
+			bytes.set_byte(padded, i, 0)
+		end
+		b = padded
+		grown = true
+	end
+	local byte = bytes.get_byte(b, index)
+	local old = math.floor(byte / mask) % 2
+	if (old ~= value) or grown or stale or (type(rec[bin]) == "string") then
+		if (old ~= value) then
+			if (value == 1) then
+				byte = byte + mask
+			else
+				byte = byte - mask
+			end
+			bytes.set_byte(b, index, byte)
+		end
+		rec[bin] = b
+		UPDATE(rec)
+	end
+	list.append(result, old)
+	list.append(result, created)
+	return result
+end
+
+function GETBIT(rec, bin, offset, flag_bin)
+	if (not EXISTS(rec, bin)) then
+		return 0
+	end
+	local b = rec[bin]
+	if BITMAP_COMPRESSED(rec, flag_bin) then
+		return -1
+	end
+	local index = math.floor(offset / 8) + 1
+	local byte = 0
+	if (type(b) == "string") then
+		if (index <= string.len(b)) then
+			byte = string.byte(b, index)
+		end
+	elseif (index <= bytes.size(b)) then
+		byte = bytes.get_byte(b, index)
+	end
+	return math.floor(byte / 2 ^ (7 - (offset % 8))) % 2
+end
+
+-- Makes the head count at least count segments and gives it an epoch if it
+-- has none. Returns {epoch, created, ttl}: the epoch to stamp the segments
+-- with, 1 if the head was created here with the TTL of the write policy,
+-- and otherwise the head's TTL, kept across this write, 0 if it never
+-- expires.
+function BITMAP_SEGMENTS(rec, bin, count, epoch_bin, epoch, key_bin, key)
+	local result = list()
+	if not aerospike:exists(rec) then
+		rec[bin] = count
+		rec[epoch_bin] = epoch
+		if (key_bin ~= nil) then
+			rec[key_bin] = key
+		end
+		aerospike:create(rec)
+		list.append(result, epoch)
+		list.append(result, 1)
+		list.append(result, 0)
+		return result
+	end
+	local ttl = record.ttl(rec)
+	local current = rec[bin]
+	if (current == nil) or (current < count) or (rec[epoch_bin] == nil) then
+		if (current == nil) or (current < count) then
+			rec[bin] = count
+		end
+		if (rec[epoch_bin] == nil) then
+			rec[epoch_bin] = epoch
+		end
+		if (ttl == 0) then
+			record.set_ttl(rec, -1)
+		else
+			record.set_ttl(rec, ttl)
+		end
+		aerospike:update(rec)
+	end
+	list.append(result, rec[epoch_bin])
+	list.append(result, 0)
+	list.append(result, ttl)
+	return result
+end
+
+
+-- ###########################################
+-- GEO : See http://redis.io/commands#geo for detail of API
+--
+-- Members live in a large list managed by the client; this only stamps
+-- the set's record with the epoch its member records must carry.
+-- ############################################
+
+function GEO_EPOCH(rec, bin, epoch, key_bin, key)
+	local current = rec[bin]
+	if (current == nil) then
+		rec[bin] = epoch
+		if (key_bin ~= nil) then
+			rec[key_bin] = key
+		end
+		UPDATE(rec)
+		return epoch
+	end
+	return current
+end
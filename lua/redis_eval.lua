@@ -0,0 +1,420 @@
+-- Redis scripting runtime for Aerospike
+--
+-- EVAL and EVALSHA run a Redis Lua script as an Aerospike UDF on the record
+-- of the script's single key. RedisClient turns each script into a small
+-- module, registered once as redis_eval_<sha1>.lua, which requires this
+-- runtime and calls run() with the script body wrapped as a function.
+--
+-- The script sees KEYS, ARGV and a redis table with call, pcall,
+-- status_reply, error_reply and log. redis.call supports the commands below
+-- on KEYS[1]; values are stored the way RedisClient stores them, so the key
+-- can be read with the normal client afterwards.
+--
+-- NB: Only single key scripts are supported, the record is the unit that
+--     Aerospike updates atomically
+--
+-- Usage
+-- ====
+--
+-- aql > register module './redis_eval.lua'
+-- ############################################
+
+local M = {}
+
+local ERR_NOT_INTEGER = "ERR value is not an integer or out of range"
+local ERR_SYNTAX = "ERR syntax error"
+local ERR_WRONGTYPE = "WRONGTYPE Operation against a key holding the wrong kind of value"
+
+local function EXISTS(state)
+	return state.rec[state.bin] ~= nil
+end
+
+local function to_reply_string(v)
+	if type(v) == "number" and v == math.floor(v) then
+		return string.format("%d", v)
+	end
+	return tostring(v)
+end
+
+local function to_integer(v)
+	local n = tonumber(v)
+	if n == nil or n ~= math.floor(n) then
+		error(ERR_NOT_INTEGER, 0)
+	end
+	return n
+end
+
+local function value_of(state, kind)
+	if not EXISTS(state) then
+		return nil
+	end
+	local v = state.rec[state.bin]
+	local t = getmetatable(v) == getmetatable(list()) and "list"
+		or getmetatable(v) == getmetatable(map()) and "map"
+		or "string"
+	if t ~= kind then
+		error(ERR_WRONGTYPE, 0)
+	end
+	return v
+end
+
+local function store(state, v)
+	state.rec[state.bin] = v
+	state.dirty = true
+end
+
+local commands = {}
+
+commands.GET = function(state, args)
+	local v = value_of(state, "string")
+	if v == nil then
+		return false
+	end
+	return to_reply_string(v)
+end
+
+commands.SET = function(state, args)
+	local ttl = nil
+	local nx, xx = false, false
+	local i = 3
+	while args[i] ~= nil do
+		local option = string.upper(args[i])
+		if option == "NX" then
+			nx = true
+		elseif option == "XX" then
+			xx = true
+		elseif option == "EX" and args[i + 1] ~= nil then
+			ttl = to_integer(args[i + 1])
+			i = i + 1
+		elseif option == "PX" and args[i + 1] ~= nil then
+			ttl = math.max(1, math.floor(to_integer(args[i + 1]) / 1000))
+			i = i + 1
+		else
+			error(ERR_SYNTAX, 0)
+		end
+		i = i + 1
+	end
+	local exists = EXISTS(state)
+	if (nx and exists) or (xx and not exists) then
+		return false
+	end
+	store(state, tostring(args[2]))
+	if ttl ~= nil then
+		state.ttl = ttl
+	end
+	return {ok = "OK"}
+end
+
+commands.DEL = function(state, args)
+	if not EXISTS(state) then
+		return 0
+	end
+	state.rec[state.bin] = nil
+	state.dirty = false
+	state.deleted = true
+	return 1
+end
+
+commands.EXISTS = function(state, args)
+	return EXISTS(state) and 1 or 0
+end
+
+local function incr_by(state, increment)
+	local v = value_of(state, "string")
+	local n = (v == nil) and 0 or to_integer(v)
+	n = n + increment
+	store(state, n)
+	return n
+end
+
+commands.INCR = function(state, args)
+	return incr_by(state, 1)
+end
+
+commands.INCRBY = function(state, args)
+	return incr_by(state, to_integer(args[2]))
+end
+
+commands.DECR = function(state, args)
+	return incr_by(state, -1)
+end
+
+commands.DECRBY = function(state, args)
+	return incr_by(state, -to_integer(args[2]))
+end
+
+commands.EXPIRE = function(state, args)
+	if not EXISTS(state) then
+		return 0
+	end
+	state.ttl = math.max(1, to_integer(args[2]))
+	state.dirty = true
+	return 1
+end
+
+commands.PEXPIRE = function(state, args)
+	if not EXISTS(state) then
+		return 0
+	end
+	state.ttl = math.max(1, math.floor(to_integer(args[2]) / 1000))
+	state.dirty = true
+	return 1
+end
+
+local function ttl_of(state)
+	if not EXISTS(state) then
+		return -2
+	end
+	local ttl = state.ttl or record.ttl(state.rec)
+	if ttl == nil or ttl <= 0 or ttl >= 4294967295 then
+		return -1
+	end
+	return ttl
+end
+
+commands.TTL = function(state, args)
+	return ttl_of(state)
+end
+
+commands.PTTL = function(state, args)
+	local ttl = ttl_of(state)
+	return (ttl < 0) and ttl or ttl * 1000
+end
+
+commands.HGET = function(state, args)
+	local m = value_of(state, "map")
+	if m == nil or m[args[2]] == nil then
+		return false
+	end
+	return to_reply_string(m[args[2]])
+end
+
+commands.HSET = function(state, args)
+	local m = value_of(state, "map") or map()
+	local added = 0
+	local i = 2
+	while args[i] ~= nil do
+		if args[i + 1] == nil then
+			error("ERR wrong number of arguments for 'hset' command", 0)
+		end
+		if m[args[i]] == nil then
+			added = added + 1
+		end
+		m[args[i]] = args[i + 1]
+		i = i + 2
+	end
+	store(state, m)
+	return added
+end
+
+commands.HDEL = function(state, args)
+	local m = value_of(state, "map")
+	if m == nil then
+		return 0
+	end
+	local removed = 0
+	local i = 2
+	while args[i] ~= nil do
+		if m[args[i]] ~= nil then
+			m[args[i]] = nil
+			removed = removed + 1
+		end
+		i = i + 1
+	end
+	store(state, m)
+	return removed
+end
+
+commands.HEXISTS = function(state, args)
+	local m = value_of(state, "map")
+	return (m ~= nil and m[args[2]] ~= nil) and 1 or 0
+end
+
+commands.HINCRBY = function(state, args)
+	local m = value_of(state, "map") or map()
+	local n = (m[args[2]] == nil) and 0 or to_integer(m[args[2]])
+	n = n + to_integer(args[3])
+	m[args[2]] = n
+	store(state, m)
+	return n
+end
+
+commands.HGETALL = function(state, args)
+	local result = {}
+	local m = value_of(state, "map")
+	if m ~= nil then
+		for k, v in map.iterator(m) do
+			table.insert(result, k)
+			table.insert(result, to_reply_string(v))
+		end
+	end
+	return result
+end
+
+local function push(state, args, prepend)
+	local l = value_of(state, "list") or list()
+	local i = 2
+	while args[i] ~= nil do
+		if prepend then
+			list.prepend(l, args[i])
+		else
+			list.append(l, args[i])
+		end
+		i = i + 1
+	end
+	store(state, l)
+	return #l
+end
+
+commands.LPUSH = function(state, args)
+	return push(state, args, true)
+end
+
+commands.RPUSH = function(state, args)
+	return push(state, args, false)
+end
+
+local function pop(state, first)
+	local l = value_of(state, "list")
+	if l == nil or #l == 0 then
+		return false
+	end
+	local v
+	if first then
+		v = l[1]
+		store(state, list.drop(l, 1))
+	else
+		v = l[#l]
+		store(state, list.take(l, #l - 1))
+	end
+	return to_reply_string(v)
+end
+
+commands.LPOP = function(state, args)
+	return pop(state, true)
+end
+
+commands.RPOP = function(state, args)
+	return pop(state, false)
+end
+
+commands.LLEN = function(state, args)
+	local l = value_of(state, "list")
+	return (l == nil) and 0 or #l
+end
+
+commands.LRANGE = function(state, args)
+	local result = {}
+	local l = value_of(state, "list")
+	if l == nil then
+		return result
+	end
+	local size = #l
+	local start, stop = to_integer(args[2]), to_integer(args[3])
+	if start < 0 then start = math.max(0, size + start) end
+	if stop < 0 then stop = size + stop end
+	stop = math.min(stop, size - 1)
+	for i = start, stop do
+		table.insert(result, to_reply_string(l[i + 1]))
+	end
+	return result
+end
+
+local function call(state, name, ...)
+	local args = {...}
+	if type(name) ~= "string" then
+		error("ERR Please specify at least one argument for this redis lib call", 0)
+	end
+	local command = commands[string.upper(name)]
+	if command == nil then
+		error("ERR Unknown Redis command called from script: " .. name, 0)
+	end
+	if args[1] ~= state.key then
+		error("ERR Script attempted to access a key not declared in KEYS: " .. tostring(args[1]), 0)
+	end
+	return command(state, args)
+end
+
+local function new_redis(state)
+	local redis = {
+		LOG_DEBUG = 0, LOG_VERBOSE = 1, LOG_NOTICE = 2, LOG_WARNING = 3
+	}
+	redis.call = function(...)
+		return call(state, ...)
+	end
+	redis.pcall = function(...)
+		local ok, result = pcall(call, state, ...)
+		if ok then
+			return result
+		end
+		return {err = tostring(result)}
+	end
+	redis.status_reply = function(status)
+		return {ok = status}
+	end
+	redis.error_reply = function(message)
+		return {err = message}
+	end
+	redis.log = function(level, message)
+		if level >= redis.LOG_WARNING then
+			warn("%s", tostring(message))
+		else
+			info("%s", tostring(message))
+		end
+	end
+	return redis
+end
+
+-- Converts a script result as Redis does: false is nil, numbers are
+-- truncated to integers, and an array stops at its first nil
+local function reply(v)
+	local t = type(v)
+	if v == nil or v == false then
+		return nil
+	elseif v == true then
+		return 1
+	elseif t == "number" then
+		return math.floor(v)
+	elseif t == "table" then
+		if v.err ~= nil then
+			error(tostring(v.err), 0)
+		elseif v.ok ~= nil then
+			return v.ok
+		end
+		local l = list()
+		local i = 1
+		while v[i] ~= nil do
+			list.append(l, reply(v[i]))
+			i = i + 1
+		end
+		return l
+	end
+	return v
+end
+
+function M.run(rec, bin, key_bin, key, argv, script)
+	local ARGV = {}
+	for v in list.iterator(argv) do
+		table.insert(ARGV, v)
+	end
+	local state = {rec = rec, bin = bin, key = key, dirty = false, deleted = false}
+	local result = reply(script({key}, ARGV, new_redis(state)))
+	if state.dirty then
+		if (key_bin ~= nil) then
+			rec[key_bin] = key
+		end
+		if state.ttl ~= nil then
+			record.set_ttl(rec, state.ttl)
+		end
+		if aerospike:exists(rec) then
+			aerospike:update(rec)
+		else
+			aerospike:create(rec)
+		end
+	elseif state.deleted and aerospike:exists(rec) then
+		aerospike:remove(rec)
+	end
+	return result
+end
+
+return M